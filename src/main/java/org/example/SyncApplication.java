@@ -1,13 +1,17 @@
 package org.example;
 
+import org.example.dao.CheckpointDao;
+import org.example.service.BackfillService;
 import org.example.service.OrderSyncService;
 import org.example.service.ItemSyncService;
 import org.example.service.DeliveryNoticeSyncService;
+import org.example.service.OutboxDispatcher;
 import org.example.service.impl.OrderSyncServiceImpl;
 import org.example.service.impl.ItemSyncServiceImpl;
 import org.example.service.impl.DeliveryNoticeSyncServiceImpl;
 import org.example.dm.service.DmJdySyncService;
 import org.example.util.LogUtil;
+import org.example.util.SyncMetrics;
 
 import java.time.LocalDateTime;
 import java.time.ZoneId;
@@ -25,6 +29,7 @@ import java.util.concurrent.TimeUnit;
 public class SyncApplication {
 
     private static final int SYNC_INTERVAL_MINUTES = 3; // 定时同步间隔（分钟）
+    private static final int OUTBOX_DISPATCH_INTERVAL_SECONDS = 10; // 出箱推送间隔（秒）
 
     /**
      * 主程序入口
@@ -43,6 +48,8 @@ public class SyncApplication {
             System.out.println("正在验证数据库连接...");
             // 验证数据库连接
             try {
+                // 一次性加载全部同步检查点，之后的读取走内存
+                CheckpointDao.getInstance().preload();
                 // 通过调用一个简单的查询来测试数据库连接
                 org.example.service.DatabaseService.getInstance().getLastSyncId();
                 LogUtil.logInfo("数据库连接成功");
@@ -85,15 +92,35 @@ public class SyncApplication {
                         itemService.syncProcess();
                         System.out.println("物料同步完成");
                         return;
+                    case "outbox":
+                        // 只执行出箱推送
+                        OutboxDispatcher.getInstance().dispatch();
+                        OutboxDispatcher.getInstance().shutdown();
+                        System.out.println("出箱推送完成");
+                        return;
+                    case "backfill":
+                        // 历史数据回补：backfill <order|item> [任务名]
+                        if (args.length < 2) {
+                            System.out.println("用法: backfill <order|item> [任务名]");
+                            return;
+                        }
+                        boolean completed = BackfillService.getInstance()
+                                .run(args[1].toLowerCase(), args.length > 2 ? args[2] : null);
+                        if (OutboxDispatcher.getInstance().isEnabled()) {
+                            OutboxDispatcher.getInstance().dispatch();
+                            OutboxDispatcher.getInstance().shutdown();
+                        }
+                        System.out.println(completed ? "历史数据回补完成" : "历史数据回补未全部完成，重新执行可从断点继续");
+                        return;
                     default:
                         System.out.println("未知的同步类型: " + syncType);
-                        System.out.println("支持的类型: dmpush, delivery, order, item");
+                        System.out.println("支持的类型: dmpush, delivery, order, item, outbox, backfill");
                         return;
                 }
             }
 
             // 没有参数时，启动定时同步
-            final ScheduledExecutorService scheduler = Executors.newScheduledThreadPool(1);
+            final ScheduledExecutorService scheduler = Executors.newScheduledThreadPool(2);
 
             // 创建同步任务
             Runnable syncTask = new SyncTask();
@@ -101,6 +128,13 @@ public class SyncApplication {
             scheduler.scheduleAtFixedRate(syncTask, 0, SYNC_INTERVAL_MINUTES, TimeUnit.MINUTES);
             LogUtil.logInfo("同步任务已启动，每" + SYNC_INTERVAL_MINUTES + "分钟执行一次");
 
+            // 出箱模式下，由独立任务推送出箱中的数据
+            if (OutboxDispatcher.getInstance().isEnabled()) {
+                scheduler.scheduleWithFixedDelay(new OutboxTask(), OUTBOX_DISPATCH_INTERVAL_SECONDS,
+                        OUTBOX_DISPATCH_INTERVAL_SECONDS, TimeUnit.SECONDS);
+                LogUtil.logInfo("出箱推送任务已启动，每" + OUTBOX_DISPATCH_INTERVAL_SECONDS + "秒执行一次");
+            }
+
             // 添加关闭钩子
             Thread shutdownHook = new Thread(() -> {
                 LogUtil.logInfo("正在关闭程序...");
@@ -115,6 +149,8 @@ public class SyncApplication {
             e.printStackTrace();
             System.exit(1);
         } finally {
+            // 单次执行模式下写入尚未写入的检查点
+            CheckpointDao.getInstance().flush();
             // 数据库连接池会自动管理连接
             LogUtil.logInfo("程序已退出");
         }
@@ -153,6 +189,8 @@ public class SyncApplication {
                 Thread.currentThread().interrupt(); // 恢复中断状态
             }
         }
+        OutboxDispatcher.getInstance().shutdown();
+        CheckpointDao.getInstance().flush();
     }
 
     /**
@@ -174,6 +212,9 @@ public class SyncApplication {
         @Override
         public void run() {
             try {
+                // 核对检查点，发现外部修改时以数据库为准
+                CheckpointDao.getInstance().reconcile();
+
                 // 阶段1: 推送DM数据到简道云（本地数据库 → 简道云）
                 // 注：DM数据现在通过EDI推送服务接收，不再需要远程拉取
                 boolean dmHasData = dmJdySyncService.pushDataToJiandaoyun();
@@ -195,7 +236,25 @@ public class SyncApplication {
 
             } catch (Exception e) {
                 LogUtil.logError("同步过程发生异常: " + e.getMessage());
+            } finally {
+                // 本轮同步结束，写入合并后的检查点
+                CheckpointDao.getInstance().flush();
+                SyncMetrics.logBacklogSummary();
+            }
+        }
+    }
+
+    /**
+     * 出箱推送任务类
+     */
+    private static class OutboxTask implements Runnable {
+        @Override
+        public void run() {
+            try {
+                OutboxDispatcher.getInstance().dispatch();
+            } catch (Exception e) {
+                LogUtil.logError("出箱推送发生异常: " + e.getMessage());
             }
         }
     }
-}
\ No newline at end of file
+}
@@ -1,8 +1,6 @@
 package org.example.config;
 
-import com.fasterxml.jackson.databind.ObjectMapper;
 import java.io.File;
-import java.io.InputStream;
 import java.util.Map;
 import java.util.Properties;
 import java.util.logging.Logger;
@@ -13,19 +11,14 @@ import java.util.logging.Logger;
  */
 public class ConfigManager {
     private static final Logger logger = Logger.getLogger(ConfigManager.class.getName());
-    private static final Properties props = new Properties();
     private static ConfigManager instance;
-    private static final ObjectMapper mapper = new ObjectMapper();
-    
-    // 字段映射
-    private Map<String, String> fieldMapping;
-    private Map<String, Map<String, String>> subTables;
-    private Map<String, String> itemFieldMapping;
+
+    // 属性和字段映射均读取当前配置快照，配置文件变化后自动使用新快照
+    private final ConfigSnapshotService snapshots;
 
     // 私有构造函数，防止外部实例化
     private ConfigManager() {
-        loadProperties();
-        loadFieldMappings();
+        this.snapshots = ConfigSnapshotService.getInstance();
     }
 
     // 单例模式获取实例
@@ -36,36 +29,24 @@ public class ConfigManager {
         return instance;
     }
 
-    // 加载配置文件
-    private void loadProperties() {
-        try {
-            // 加载配置文件
-            try (InputStream input = getClass().getClassLoader().getResourceAsStream("application.properties")) {
-                if (input == null) {
-                    throw new RuntimeException("配置文件 application.properties 未找到");
-                }
-                props.load(input);
-                logger.info("配置文件加载成功");
-            }
-        } catch (Exception e) {
-            logger.severe("配置文件加载失败: " + e.getMessage());
-            throw new RuntimeException("配置文件加载失败", e);
-        }
+    // 获取当前配置快照
+    public ConfigSnapshot getSnapshot() {
+        return snapshots.current();
     }
 
     // 获取配置属性
     public String getProperty(String key) {
-        return props.getProperty(key);
+        return snapshots.current().getProperty(key);
     }
 
     // 获取配置属性，如果不存在则返回默认值
     public String getProperty(String key, String defaultValue) {
-        return props.getProperty(key, defaultValue);
+        return snapshots.current().getProperty(key, defaultValue);
     }
 
     // 获取整型属性
     public int getIntProperty(String key, int defaultValue) {
-        String value = props.getProperty(key);
+        String value = snapshots.current().getProperty(key);
         if (value == null) {
             return defaultValue;
         }
@@ -79,16 +60,16 @@ public class ConfigManager {
 
     // 获取布尔型属性
     public boolean getBooleanProperty(String key, boolean defaultValue) {
-        String value = props.getProperty(key);
+        String value = snapshots.current().getProperty(key);
         if (value == null) {
             return defaultValue;
         }
         return Boolean.parseBoolean(value);
     }
 
-    // 获取所有属性
+    // 获取所有属性（当前配置快照的副本）
     public Properties getAllProperties() {
-        return props;
+        return snapshots.current().copyProperties();
     }
 
     // 检查文件是否存在
@@ -97,62 +78,28 @@ public class ConfigManager {
         return file.exists();
     }
     
-    // 加载字段映射配置
-    private void loadFieldMappings() {
-        try {
-            // 加载订单字段映射
-            String mappingPath = props.getProperty("field.mapping.path", "field_mapping.json");
-            File mappingFile = new File(mappingPath);
-            
-            if (mappingFile.exists()) {
-                FieldMappingConfig config = mapper.readValue(mappingFile, FieldMappingConfig.class);
-                this.fieldMapping = config.getMainFields();
-                this.subTables = config.getSubTables();
-                logger.info("订单字段映射加载成功，主表字段数量: " + fieldMapping.size());
-            } else {
-                logger.warning("订单字段映射文件未找到: " + mappingFile.getAbsolutePath());
-            }
-            
-            // 加载物料字段映射
-            String itemMappingPath = props.getProperty("item.field.mapping.path", "item_field_mapping.json");
-            File itemMappingFile = new File(itemMappingPath);
-            
-            if (itemMappingFile.exists()) {
-                FieldMappingConfig itemConfig = mapper.readValue(itemMappingFile, FieldMappingConfig.class);
-                this.itemFieldMapping = itemConfig.getMainFields();
-                logger.info("物料字段映射加载成功，字段数量: " + itemFieldMapping.size());
-            } else {
-                logger.warning("物料字段映射文件未找到: " + itemMappingFile.getAbsolutePath());
-            }
-            
-        } catch (Exception e) {
-            logger.severe("字段映射配置加载失败: " + e.getMessage());
-            throw new RuntimeException("字段映射配置加载失败", e);
-        }
-    }
-    
     // 获取订单字段映射
     public Map<String, String> getFieldMapping() {
-        return fieldMapping;
+        return snapshots.current().getOrderMapping().getMainFields();
     }
     
     // 获取订单字段映射中的特定字段
     public String getFieldMapping(String key) {
-        return fieldMapping != null ? fieldMapping.get(key) : null;
+        return getFieldMapping().get(key);
     }
     
     // 获取子表映射
     public Map<String, Map<String, String>> getSubTables() {
-        return subTables;
+        return snapshots.current().getOrderMapping().getSubTables();
     }
     
     // 获取物料字段映射
     public Map<String, String> getItemFieldMapping() {
-        return itemFieldMapping;
+        return snapshots.current().getItemMapping().getMainFields();
     }
     
     // 获取物料字段映射中的特定字段
     public String getItemFieldMapping(String key) {
-        return itemFieldMapping != null ? itemFieldMapping.get(key) : null;
+        return getItemFieldMapping().get(key);
     }
 } 
\ No newline at end of file
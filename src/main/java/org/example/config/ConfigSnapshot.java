@@ -0,0 +1,273 @@
+package org.example.config;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+
+/**
+ * 配置快照
+ * 一次加载得到的全部配置：application.properties、DM数据库配置以及各字段映射文件。
+ * 快照创建后不再修改（映射均为只读视图，属性只提供查询和副本），可在任意线程共享；
+ * 配置文件变化时由 ConfigSnapshotService 生成新快照整体替换，同一次转换中读取的各项配置始终来自同一版本。
+ */
+public final class ConfigSnapshot {
+    private final long version;
+    private final Properties properties;
+    private final Properties dmProperties;
+    private final boolean dmPropertiesLoaded;
+    private final MappingFile orderMapping;
+    private final MappingFile itemMapping;
+    private final MappingFile deliveryMapping;
+    private final MappingFile dmFieldMapping;
+    private final MappingFile dmToJdyMapping;
+    // 快照读取的文件及其修改时间/大小，用于判断文件是否变化
+    private final Map<Path, String> fileStamps;
+
+    ConfigSnapshot(long version, Properties properties, Properties dmProperties, boolean dmPropertiesLoaded,
+            MappingFile orderMapping, MappingFile itemMapping, MappingFile deliveryMapping,
+            MappingFile dmFieldMapping, MappingFile dmToJdyMapping, Map<Path, String> fileStamps) {
+        this.version = version;
+        this.properties = properties;
+        this.dmProperties = dmProperties;
+        this.dmPropertiesLoaded = dmPropertiesLoaded;
+        this.orderMapping = orderMapping;
+        this.itemMapping = itemMapping;
+        this.deliveryMapping = deliveryMapping;
+        this.dmFieldMapping = dmFieldMapping;
+        this.dmToJdyMapping = dmToJdyMapping;
+        this.fileStamps = Collections.unmodifiableMap(new LinkedHashMap<>(fileStamps));
+    }
+
+    /**
+     * 快照版本号，每次替换加1
+     */
+    public long getVersion() {
+        return version;
+    }
+
+    // 获取配置属性
+    public String getProperty(String key) {
+        return properties.getProperty(key);
+    }
+
+    // 获取配置属性，如果不存在则返回默认值
+    public String getProperty(String key, String defaultValue) {
+        return properties.getProperty(key, defaultValue);
+    }
+
+    /**
+     * 获取全部配置属性的副本（修改副本不影响快照）
+     */
+    public Properties copyProperties() {
+        Properties copy = new Properties();
+        copy.putAll(properties);
+        return copy;
+    }
+
+    // 获取DM数据库配置属性
+    public String getDmProperty(String key) {
+        return dmProperties.getProperty(key);
+    }
+
+    // 获取DM数据库配置属性，如果不存在则返回默认值
+    public String getDmProperty(String key, String defaultValue) {
+        return dmProperties.getProperty(key, defaultValue);
+    }
+
+    /**
+     * DM数据库配置文件是否已加载
+     */
+    public boolean hasDmProperties() {
+        return dmPropertiesLoaded;
+    }
+
+    /**
+     * 订单字段映射（field.mapping.path）
+     */
+    public MappingFile getOrderMapping() {
+        return orderMapping;
+    }
+
+    /**
+     * 物料字段映射（item.field.mapping.path）
+     */
+    public MappingFile getItemMapping() {
+        return itemMapping;
+    }
+
+    /**
+     * 采购物料通知单字段映射（delivery.field.mapping.path），启动时解析失败为null
+     */
+    public MappingFile getDeliveryMapping() {
+        return deliveryMapping;
+    }
+
+    /**
+     * 客户DM字段映射（dm.field.mapping.path），启动时解析失败为null
+     */
+    public MappingFile getDmFieldMapping() {
+        return dmFieldMapping;
+    }
+
+    /**
+     * 客户DM到简道云字段映射（dm.to.jdy.field.mapping.path），启动时解析失败为null
+     */
+    public MappingFile getDmToJdyMapping() {
+        return dmToJdyMapping;
+    }
+
+    /**
+     * 按文件路径查找快照中已加载的映射文件
+     * @param path 映射文件路径（相对路径按工作目录解析）
+     * @return 映射文件，不在快照中或文件不存在时返回null
+     */
+    public MappingFile findMapping(String path) {
+        if (path == null || path.isEmpty()) {
+            return null;
+        }
+        Path target = normalize(path);
+        for (MappingFile mapping : new MappingFile[] { orderMapping, itemMapping, deliveryMapping,
+                dmFieldMapping, dmToJdyMapping }) {
+            if (mapping != null && mapping.exists() && mapping.getPath().equals(target)) {
+                return mapping;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * 快照读取的全部文件（含当时不存在的文件，文件创建后也会触发重新加载）
+     */
+    public Set<Path> getSourceFiles() {
+        return fileStamps.keySet();
+    }
+
+    Map<Path, String> getFileStamps() {
+        return fileStamps;
+    }
+
+    // 供生成下一版本快照时沿用，不对外暴露可修改的属性对象
+    Properties properties() {
+        return properties;
+    }
+
+    Properties dmProperties() {
+        return dmProperties;
+    }
+
+    static Path normalize(String path) {
+        return Paths.get(path).toAbsolutePath().normalize();
+    }
+
+    /**
+     * 一个映射文件的只读内容
+     * main_fields 与 sub_tables 按字段映射文件的通用结构解析，其他结构（如DM字段映射）通过 getRoot 读取
+     */
+    public static final class MappingFile {
+        private final Path path;
+        private final boolean exists;
+        private final Map<String, Object> root;
+        private final Map<String, String> mainFields;
+        private final Map<String, Map<String, String>> subTables;
+
+        MappingFile(Path path, boolean exists, Map<String, Object> root) {
+            this.path = path;
+            this.exists = exists;
+            this.root = freezeMap(root);
+            this.mainFields = stringMap(root.get("main_fields"));
+            Map<String, Map<String, String>> tables = new LinkedHashMap<>();
+            Object subTablesNode = root.get("sub_tables");
+            if (subTablesNode instanceof Map) {
+                for (Map.Entry<?, ?> entry : ((Map<?, ?>) subTablesNode).entrySet()) {
+                    tables.put(String.valueOf(entry.getKey()), stringMap(entry.getValue()));
+                }
+            }
+            this.subTables = Collections.unmodifiableMap(tables);
+        }
+
+        /**
+         * 文件不存在时的空映射
+         */
+        static MappingFile absent(Path path) {
+            return new MappingFile(path, false, Collections.<String, Object>emptyMap());
+        }
+
+        public Path getPath() {
+            return path;
+        }
+
+        /**
+         * 映射是否来自文件（文件不存在时为空映射）
+         */
+        public boolean exists() {
+            return exists;
+        }
+
+        /**
+         * 文件的完整内容
+         */
+        public Map<String, Object> getRoot() {
+            return root;
+        }
+
+        /**
+         * 主表字段映射（main_fields）
+         */
+        public Map<String, String> getMainFields() {
+            return mainFields;
+        }
+
+        /**
+         * 子表字段映射（sub_tables）
+         */
+        public Map<String, Map<String, String>> getSubTables() {
+            return subTables;
+        }
+
+        /**
+         * 指定子表的字段映射，不存在时返回null
+         */
+        public Map<String, String> getSubTable(String subTableName) {
+            return subTables.get(subTableName);
+        }
+
+        private static Map<String, String> stringMap(Object node) {
+            Map<String, String> fields = new LinkedHashMap<>();
+            if (node instanceof Map) {
+                for (Map.Entry<?, ?> entry : ((Map<?, ?>) node).entrySet()) {
+                    Object value = entry.getValue();
+                    fields.put(String.valueOf(entry.getKey()), value != null ? value.toString() : null);
+                }
+            }
+            return Collections.unmodifiableMap(fields);
+        }
+
+        private static Map<String, Object> freezeMap(Map<?, ?> map) {
+            Map<String, Object> frozen = new LinkedHashMap<>();
+            for (Map.Entry<?, ?> entry : map.entrySet()) {
+                frozen.put(String.valueOf(entry.getKey()), freeze(entry.getValue()));
+            }
+            return Collections.unmodifiableMap(frozen);
+        }
+
+        private static Object freeze(Object value) {
+            if (value instanceof Map) {
+                return freezeMap((Map<?, ?>) value);
+            }
+            if (value instanceof List) {
+                List<Object> frozen = new ArrayList<>();
+                for (Object item : (List<?>) value) {
+                    frozen.add(freeze(item));
+                }
+                return Collections.unmodifiableList(frozen);
+            }
+            return value;
+        }
+    }
+}
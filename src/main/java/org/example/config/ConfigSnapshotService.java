@@ -0,0 +1,408 @@
+package org.example.config;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.example.util.Constants;
+import org.example.util.LogUtil;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Properties;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 配置快照服务
+ * 启动时一次性加载 application.properties、DM数据库配置和全部字段映射文件，生成只读的配置快照供各服务共享，
+ * 不再由各服务各自读取、各自缓存映射文件。后台线程通过 WatchService 监听配置文件所在目录，
+ * 文件新建、修改或删除时重新加载并整体替换快照：未变化的文件沿用上一版本的解析结果；
+ * 任一文件解析失败时放弃本次加载、继续使用当前快照；运行中被删除的文件保留原配置。
+ * 提取规则文件和产品信息数据库由各自的服务编译，快照只记录其文件状态，文件变化同样生成新快照并通知监听器，
+ * 由 ExtractionRules、ProductInfoDatabase 注册的监听器重新加载。
+ * 只在启动时读取的配置（连接池、线程数、单例服务中的字段等）修改后不会生效，重新加载时记录需重启的警告。
+ */
+public class ConfigSnapshotService {
+    private static ConfigSnapshotService instance;
+    private static final ObjectMapper mapper = new ObjectMapper();
+    private static final String APPLICATION_PROPERTIES = "application.properties";
+    private static final String ABSENT = "absent";
+    // 由其他服务解析、快照只监听文件状态的数据文件：配置项 -> 默认路径
+    private static final String[][] DATA_FILES = {
+            { "extraction.rules.path", "extraction_rules.json" },
+            { "product.info.database.path", "product_info_database.json" } };
+    // 只在启动时读取的配置项（以"."结尾的为前缀），修改后需重启才能生效
+    private static final String[] STARTUP_ONLY_KEYS = {
+            "db.", "external.db.config", "dm.db.",
+            "jdy.apiUrl", "jdy.queryUrl", "jdy.updateUrl", "jdy.apiToken", "jdy.appId", "jdy.entryId", "jdy.itemEntryId",
+            "dm.jdy.appId", "dm.jdy.entryId", "dm.push.pageSize",
+            "sync.maxRetry", "sync.retryInterval", "sync.maxBatchSize", "sync.capture.mode", "sync.uow.snapshot",
+            "sync.checkpoint.", "sync.outbox.", "sync.backfill.", "sync.transform.parallelism",
+            "sync.extraction.cache.", "extraction.rules.path", "product.info.database.path", "config.watch." };
+
+    private final List<Runnable> reloadListeners = new CopyOnWriteArrayList<>();
+    private volatile ConfigSnapshot current;
+
+    // 私有构造函数，防止外部实例化
+    private ConfigSnapshotService() {
+        try {
+            this.current = build(null);
+        } catch (IOException e) {
+            LogUtil.logError("[配置] 配置加载失败: " + e.getMessage());
+            throw new RuntimeException("配置加载失败", e);
+        }
+        LogUtil.logInfo("[配置] 配置快照加载完成，共 " + current.getSourceFiles().size() + " 个配置文件");
+
+        if (Boolean.parseBoolean(current.getProperty("config.watch.enabled", "true"))) {
+            startWatcher(Math.max(0, intProperty("config.watch.debounceMs", 500)));
+        }
+    }
+
+    // 单例模式获取实例
+    public static synchronized ConfigSnapshotService getInstance() {
+        if (instance == null) {
+            instance = new ConfigSnapshotService();
+        }
+        return instance;
+    }
+
+    /**
+     * 获取当前配置快照
+     * @return 当前配置快照
+     */
+    public ConfigSnapshot current() {
+        return current;
+    }
+
+    /**
+     * 注册配置更新监听器（快照替换后调用）
+     * @param listener 监听器
+     */
+    public void addReloadListener(Runnable listener) {
+        reloadListeners.add(listener);
+    }
+
+    /**
+     * 立即检查配置文件，有文件变化时重新加载并替换快照
+     * @return 是否替换了快照
+     */
+    public synchronized boolean checkForUpdate() {
+        ConfigSnapshot previous = current;
+        ConfigSnapshot next;
+        try {
+            next = build(previous);
+        } catch (Exception e) {
+            LogUtil.logError("[配置] 配置文件加载失败，继续使用当前配置: " + e.getMessage());
+            return false;
+        }
+        if (next.getFileStamps().equals(previous.getFileStamps())) {
+            return false;
+        }
+
+        current = next;
+        LogUtil.logInfo("[配置] 配置文件已更新，配置快照版本: " + next.getVersion());
+        warnStartupOnlyChanges(previous.properties(), next.properties());
+        warnStartupOnlyChanges(previous.dmProperties(), next.dmProperties());
+        for (Runnable listener : reloadListeners) {
+            try {
+                listener.run();
+            } catch (Exception e) {
+                LogUtil.logError("[配置] 配置更新监听器执行异常: " + e.getMessage());
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 只在启动时读取的配置项发生变化时记录警告：运行中的服务仍使用启动时的值
+     */
+    private static void warnStartupOnlyChanges(Properties previous, Properties next) {
+        if (previous == next) {
+            return;
+        }
+        Set<String> keys = new TreeSet<>(previous.stringPropertyNames());
+        keys.addAll(next.stringPropertyNames());
+        for (String key : keys) {
+            String before = previous.getProperty(key);
+            String after = next.getProperty(key);
+            if (isStartupOnly(key) && !Objects.equals(before, after)) {
+                boolean secret = key.endsWith("password") || key.endsWith("Token");
+                LogUtil.logWarning("[配置] " + key + " 只在启动时读取，修改需重启后生效"
+                        + (secret ? "" : "（当前仍使用 " + before + "，新值 " + after + "）"));
+            }
+        }
+    }
+
+    private static boolean isStartupOnly(String key) {
+        for (String startupKey : STARTUP_ONLY_KEYS) {
+            if (startupKey.endsWith(".") ? key.startsWith(startupKey) : key.equals(startupKey)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 加载全部配置文件生成快照
+     * @param previous 当前快照，启动时为null；修改时间和大小未变的文件直接沿用其中的解析结果
+     */
+    private ConfigSnapshot build(ConfigSnapshot previous) throws IOException {
+        Map<Path, String> previousStamps = previous != null ? previous.getFileStamps() : null;
+        Map<Path, String> stamps = new LinkedHashMap<>();
+
+        Properties properties = loadApplicationProperties(previous, stamps);
+
+        String dmConfigPath = properties.getProperty("dm.db.config", "dm_db.properties");
+        Path dmConfig = ConfigSnapshot.normalize(dmConfigPath);
+        File dmConfigFile = dmConfig.toFile();
+        String dmStamp = stamp(dmConfigFile);
+        stamps.put(dmConfig, dmStamp);
+        Properties dmProperties;
+        boolean dmLoaded;
+        if (previous != null && dmStamp.equals(previousStamps.get(dmConfig))) {
+            dmProperties = previous.dmProperties();
+            dmLoaded = previous.hasDmProperties();
+        } else if (!dmConfigFile.exists()) {
+            if (previous != null && previous.hasDmProperties()) {
+                LogUtil.logWarning("[配置] DM配置文件已不存在: " + dmConfig + "，继续使用当前配置");
+            }
+            dmProperties = previous != null ? previous.dmProperties() : new Properties();
+            dmLoaded = previous != null && previous.hasDmProperties();
+        } else {
+            dmProperties = new Properties();
+            try (InputStream input = new FileInputStream(dmConfigFile)) {
+                dmProperties.load(input);
+            }
+            dmLoaded = true;
+            LogUtil.logInfo("[配置] DM配置文件加载成功: " + dmConfig);
+        }
+
+        ConfigSnapshot.MappingFile orderMapping = loadMapping("订单字段映射",
+                properties.getProperty("field.mapping.path", Constants.DEFAULT_FIELD_MAPPING_PATH),
+                previous != null ? previous.getOrderMapping() : null, previousStamps, stamps, true);
+        ConfigSnapshot.MappingFile itemMapping = loadMapping("物料字段映射",
+                properties.getProperty("item.field.mapping.path", Constants.DEFAULT_ITEM_FIELD_MAPPING_PATH),
+                previous != null ? previous.getItemMapping() : null, previousStamps, stamps, true);
+        ConfigSnapshot.MappingFile deliveryMapping = loadMapping("采购物料通知单字段映射",
+                properties.getProperty("delivery.field.mapping.path", Constants.DEFAULT_DELIVERY_FIELD_MAPPING_PATH),
+                previous != null ? previous.getDeliveryMapping() : null, previousStamps, stamps, false);
+        ConfigSnapshot.MappingFile dmFieldMapping = loadMapping("DM字段映射",
+                dmProperties.getProperty("dm.field.mapping.path", "./dm_field_mapping.json"),
+                previous != null ? previous.getDmFieldMapping() : null, previousStamps, stamps, false);
+        ConfigSnapshot.MappingFile dmToJdyMapping = loadMapping("DM到简道云字段映射",
+                properties.getProperty("dm.to.jdy.field.mapping.path", "dm_to_jdy_field_mapping.json"),
+                previous != null ? previous.getDmToJdyMapping() : null, previousStamps, stamps, false);
+
+        for (String[] dataFile : DATA_FILES) {
+            File file = new File(properties.getProperty(dataFile[0], dataFile[1]));
+            stamps.put(ConfigSnapshot.normalize(file.getPath()), stamp(file));
+        }
+
+        return new ConfigSnapshot(previous != null ? previous.getVersion() + 1 : 1, properties, dmProperties,
+                dmLoaded, orderMapping, itemMapping, deliveryMapping, dmFieldMapping, dmToJdyMapping, stamps);
+    }
+
+    /**
+     * 加载 application.properties：类路径下的资源为普通文件时按文件读取并监听，打包在jar中时只在启动时读取一次
+     */
+    private Properties loadApplicationProperties(ConfigSnapshot previous, Map<Path, String> stamps) throws IOException {
+        File file = applicationPropertiesFile();
+        if (file == null) {
+            if (previous != null) {
+                return previous.properties();
+            }
+            try (InputStream input = getClass().getClassLoader().getResourceAsStream(APPLICATION_PROPERTIES)) {
+                if (input == null) {
+                    throw new IOException("配置文件 " + APPLICATION_PROPERTIES + " 未找到");
+                }
+                Properties properties = new Properties();
+                properties.load(input);
+                LogUtil.logInfo("[配置] 配置文件加载成功: classpath:" + APPLICATION_PROPERTIES);
+                return properties;
+            }
+        }
+
+        Path path = file.toPath().toAbsolutePath().normalize();
+        String stamp = stamp(file);
+        stamps.put(path, stamp);
+        if (previous != null && stamp.equals(previous.getFileStamps().get(path))) {
+            return previous.properties();
+        }
+        if (!file.exists()) {
+            if (previous != null) {
+                LogUtil.logWarning("[配置] 配置文件已不存在: " + path + "，继续使用当前配置");
+                return previous.properties();
+            }
+            throw new IOException("配置文件 " + APPLICATION_PROPERTIES + " 未找到");
+        }
+        Properties properties = new Properties();
+        try (InputStream input = new FileInputStream(file)) {
+            properties.load(input);
+        }
+        LogUtil.logInfo("[配置] 配置文件加载成功: " + path);
+        return properties;
+    }
+
+    private File applicationPropertiesFile() {
+        URL url = getClass().getClassLoader().getResource(APPLICATION_PROPERTIES);
+        if (url == null || !"file".equals(url.getProtocol())) {
+            return null;
+        }
+        try {
+            return new File(url.toURI());
+        } catch (Exception e) {
+            return null;
+        }
+    }
+
+    /**
+     * 加载一个字段映射文件
+     * @param name 映射名称（用于日志）
+     * @param path 文件路径
+     * @param previous 当前快照中的同一映射
+     * @param previousStamps 当前快照的文件状态，启动时为null
+     * @param stamps 本次加载的文件状态
+     * @param required 是否为必需映射：必需映射启动时解析失败则启动失败，其他映射记录错误后为null
+     * @return 映射内容，文件不存在时为空映射
+     */
+    @SuppressWarnings("unchecked")
+    private ConfigSnapshot.MappingFile loadMapping(String name, String path, ConfigSnapshot.MappingFile previous,
+            Map<Path, String> previousStamps, Map<Path, String> stamps, boolean required) throws IOException {
+        Path normalized = ConfigSnapshot.normalize(path);
+        File file = normalized.toFile();
+        String stamp = stamp(file);
+        stamps.put(normalized, stamp);
+
+        if (previousStamps != null && stamp.equals(previousStamps.get(normalized))
+                && (previous == null || previous.getPath().equals(normalized))) {
+            return previous;
+        }
+        if (!file.exists()) {
+            if (previous != null && previous.exists() && previous.getPath().equals(normalized)) {
+                LogUtil.logWarning("[配置] " + name + "文件已不存在: " + normalized + "，继续使用当前配置");
+                return previous;
+            }
+            LogUtil.logWarning("[配置] " + name + "文件未找到: " + normalized);
+            return ConfigSnapshot.MappingFile.absent(normalized);
+        }
+
+        try {
+            Map<String, Object> root = mapper.readValue(file, Map.class);
+            if (root == null) {
+                throw new IOException("文件内容为空");
+            }
+            ConfigSnapshot.MappingFile mapping = new ConfigSnapshot.MappingFile(normalized, true, root);
+            LogUtil.logInfo("[配置] " + name + "加载成功: " + normalized + "，主表字段数量: "
+                    + mapping.getMainFields().size());
+            return mapping;
+        } catch (IOException e) {
+            if (previousStamps == null && !required) {
+                LogUtil.logError("[配置] " + name + "加载失败: " + e.getMessage());
+                return null;
+            }
+            throw new IOException(name + "加载失败: " + e.getMessage(), e);
+        }
+    }
+
+    private static String stamp(File file) {
+        return file.exists() ? file.lastModified() + ":" + file.length() : ABSENT;
+    }
+
+    private int intProperty(String key, int defaultValue) {
+        String value = current.getProperty(key);
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            return Integer.parseInt(value.trim());
+        } catch (NumberFormatException e) {
+            LogUtil.logWarning("无法将属性 " + key + " 的值 '" + value + "' 转换为整数，使用默认值 " + defaultValue);
+            return defaultValue;
+        }
+    }
+
+    /**
+     * 启动配置文件监听线程
+     * @param debounceMs 合并连续文件事件的等待时间（毫秒）
+     */
+    private void startWatcher(long debounceMs) {
+        Thread thread = new Thread(() -> watch(debounceMs), "config-watcher");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    private void watch(long debounceMs) {
+        try (WatchService watchService = FileSystems.getDefault().newWatchService()) {
+            Set<Path> watchedDirectories = new HashSet<>();
+            registerDirectories(watchService, watchedDirectories);
+            LogUtil.logInfo("[配置] 开始监听配置文件变化: " + watchedDirectories);
+
+            while (!Thread.currentThread().isInterrupted()) {
+                boolean changed = drainEvents(watchService.take());
+                // 合并短时间内的连续事件：编辑器保存或覆盖复制文件时常产生多次修改事件
+                WatchKey key;
+                while ((key = watchService.poll(debounceMs, TimeUnit.MILLISECONDS)) != null) {
+                    changed |= drainEvents(key);
+                }
+                if (changed) {
+                    checkForUpdate();
+                    // 配置文件路径可能随属性变化，补充监听新目录
+                    registerDirectories(watchService, watchedDirectories);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (Exception e) {
+            LogUtil.logError("[配置] 配置文件监听异常，停止监听: " + e.getMessage());
+        }
+    }
+
+    /**
+     * 取出监听事件，返回是否涉及当前快照读取的文件
+     */
+    private boolean drainEvents(WatchKey key) {
+        boolean relevant = false;
+        Path directory = (Path) key.watchable();
+        Set<Path> sourceFiles = current.getSourceFiles();
+        for (WatchEvent<?> event : key.pollEvents()) {
+            if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                relevant = true;
+            } else if (sourceFiles.contains(directory.resolve((Path) event.context()))) {
+                relevant = true;
+            }
+        }
+        key.reset();
+        return relevant;
+    }
+
+    private void registerDirectories(WatchService watchService, Set<Path> watchedDirectories) {
+        for (Path file : current.getSourceFiles()) {
+            Path directory = file.getParent();
+            if (directory == null || watchedDirectories.contains(directory) || !Files.isDirectory(directory)) {
+                continue;
+            }
+            try {
+                directory.register(watchService, StandardWatchEventKinds.ENTRY_CREATE,
+                        StandardWatchEventKinds.ENTRY_MODIFY, StandardWatchEventKinds.ENTRY_DELETE);
+                watchedDirectories.add(directory);
+            } catch (IOException e) {
+                LogUtil.logWarning("[配置] 无法监听配置目录: " + directory + "，" + e.getMessage());
+            }
+        }
+    }
+}
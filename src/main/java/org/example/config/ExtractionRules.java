@@ -0,0 +1,136 @@
+package org.example.config;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.example.util.ExtractionRuleSet;
+import org.example.util.LogUtil;
+
+import java.io.File;
+import java.io.InputStream;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * 文本提取规则管理类
+ * 负责加载提取规则文件并编译为规则集：工作目录下存在规则文件（extraction.rules.path）时使用该文件，
+ * 否则使用程序内置的默认规则。规则文件由配置快照服务随其他配置文件一起监听，文件变化时重新编译并整体替换，
+ * 新增客户规则无需重新部署；新规则编译失败时继续使用原规则。
+ */
+public class ExtractionRules {
+    private static ExtractionRules instance;
+    private static final ObjectMapper mapper = new ObjectMapper();
+    private static final String DEFAULT_RESOURCE = "extraction_rules.json";
+
+    private final File rulesFile;
+    private final List<Runnable> reloadListeners = new CopyOnWriteArrayList<>();
+
+    private volatile ExtractionRuleSet current;
+    // 当前规则对应的文件修改时间，使用内置规则时为0
+    private volatile long loadedModified = 0;
+
+    // 私有构造函数，防止外部实例化
+    private ExtractionRules() {
+        ConfigManager config = ConfigManager.getInstance();
+        this.rulesFile = new File(config.getProperty("extraction.rules.path", "extraction_rules.json"));
+        this.current = loadInitial();
+        ConfigSnapshotService.getInstance().addReloadListener(this::checkForUpdate);
+    }
+
+    // 单例模式获取实例
+    public static synchronized ExtractionRules getInstance() {
+        if (instance == null) {
+            instance = new ExtractionRules();
+        }
+        return instance;
+    }
+
+    /**
+     * 获取当前规则集
+     * @return 当前规则集
+     */
+    public ExtractionRuleSet current() {
+        return current;
+    }
+
+    /**
+     * 注册规则更新监听器（规则替换后调用，如清空提取结果缓存）
+     * @param listener 监听器
+     */
+    public void addReloadListener(Runnable listener) {
+        reloadListeners.add(listener);
+    }
+
+    /**
+     * 立即检查规则文件，文件有变化时重新加载
+     * @return 是否替换了规则
+     */
+    public synchronized boolean checkForUpdate() {
+        long modified = rulesFile.exists() ? rulesFile.lastModified() : 0;
+        if (modified == loadedModified) {
+            return false;
+        }
+        if (modified == 0) {
+            // 规则文件被删除：保留当前规则，不回退到内置规则，避免运行中的提取结果突然变化
+            LogUtil.logWarning("[提取规则] 规则文件已不存在: " + rulesFile.getAbsolutePath() + "，继续使用当前规则");
+            loadedModified = 0;
+            return false;
+        }
+
+        try {
+            ExtractionRuleSet rules = ExtractionRuleSet.compile(mapper.readTree(rulesFile),
+                    rulesFile.getAbsolutePath());
+            current = rules;
+            loadedModified = modified;
+            LogUtil.logInfo("[提取规则] 规则文件已更新并重新编译: " + describe(rules));
+        } catch (Exception e) {
+            // 记录修改时间，同一版本的错误文件不反复编译；文件再次修改时重试
+            loadedModified = modified;
+            LogUtil.logError("[提取规则] 规则文件编译失败，继续使用当前规则: " + e.getMessage());
+            return false;
+        }
+
+        for (Runnable listener : reloadListeners) {
+            try {
+                listener.run();
+            } catch (Exception e) {
+                LogUtil.logError("[提取规则] 规则更新监听器执行异常: " + e.getMessage());
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 启动时加载规则：优先使用规则文件，文件不存在或无效时使用内置默认规则
+     */
+    private ExtractionRuleSet loadInitial() {
+        if (rulesFile.exists()) {
+            long modified = rulesFile.lastModified();
+            try {
+                ExtractionRuleSet rules = ExtractionRuleSet.compile(mapper.readTree(rulesFile),
+                        rulesFile.getAbsolutePath());
+                loadedModified = modified;
+                LogUtil.logInfo("[提取规则] 加载规则文件: " + describe(rules));
+                return rules;
+            } catch (Exception e) {
+                loadedModified = modified;
+                LogUtil.logError("[提取规则] 规则文件编译失败，使用内置默认规则: " + e.getMessage());
+            }
+        }
+
+        try (InputStream input = getClass().getClassLoader().getResourceAsStream(DEFAULT_RESOURCE)) {
+            if (input == null) {
+                throw new RuntimeException("内置提取规则 " + DEFAULT_RESOURCE + " 未找到");
+            }
+            ExtractionRuleSet rules = ExtractionRuleSet.compile(mapper.readTree(input), "classpath:" + DEFAULT_RESOURCE);
+            LogUtil.logInfo("[提取规则] 加载内置默认规则: " + describe(rules));
+            return rules;
+        } catch (RuntimeException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new RuntimeException("内置提取规则加载失败", e);
+        }
+    }
+
+    private static String describe(ExtractionRuleSet rules) {
+        return rules.getSource() + "（版本 " + rules.getVersion() + "，共 " + rules.getRuleCount() + " 条规则）";
+    }
+}
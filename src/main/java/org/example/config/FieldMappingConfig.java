@@ -1,11 +1,8 @@
 package org.example.config;
 
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
 import com.fasterxml.jackson.annotation.JsonProperty;
-import com.fasterxml.jackson.databind.ObjectMapper;
-import org.example.util.LogUtil;
 
-import java.io.File;
-import java.io.IOException;
 import java.util.HashMap;
 import java.util.Map;
 
@@ -13,10 +10,10 @@ import java.util.Map;
  * 字段映射配置类
  * 用于存储数据库字段与简道云字段的映射关系
  */
+@JsonIgnoreProperties(ignoreUnknown = true)
 public class FieldMappingConfig {
     
     private static FieldMappingConfig instance;
-    private static final ObjectMapper mapper = new ObjectMapper();
     
     @JsonProperty("main_fields")
     private Map<String, String> mainFields = new HashMap<>();
@@ -26,9 +23,11 @@ public class FieldMappingConfig {
     
     private Map<String, String> itemFields = new HashMap<>();
     
+    // 共享实例不保存映射，读取当前配置快照中的订单和物料字段映射
+    private ConfigSnapshotService snapshots;
+    
     // 私有构造函数
     private FieldMappingConfig() {
-        // 不在构造函数中加载映射，避免循环依赖
     }
     
     /**
@@ -37,52 +36,19 @@ public class FieldMappingConfig {
     public static synchronized FieldMappingConfig getInstance() {
         if (instance == null) {
             instance = new FieldMappingConfig();
-            instance.loadMappings(); // 在实例创建后再加载映射
+            instance.snapshots = ConfigSnapshotService.getInstance();
         }
         return instance;
     }
     
-    /**
-     * 加载字段映射配置
-     */
-    private void loadMappings() {
-        try {
-            // 直接使用默认路径，避免循环依赖
-            String mappingPath = "field_mapping.json";
-            File mappingFile = new File(mappingPath);
-            
-            if (mappingFile.exists()) {
-                FieldMappingConfig orderConfig = mapper.readValue(mappingFile, FieldMappingConfig.class);
-                this.mainFields = orderConfig.getMainFields();
-                this.subTables = orderConfig.getSubTables();
-                // 订单字段映射加载成功
-            } else {
-                LogUtil.logWarning("订单字段映射文件未找到: " + mappingFile.getAbsolutePath());
-            }
-            
-            // 加载物料字段映射
-            String itemMappingPath = "item_field_mapping.json";
-            File itemMappingFile = new File(itemMappingPath);
-            
-            if (itemMappingFile.exists()) {
-                FieldMappingConfig itemConfig = mapper.readValue(itemMappingFile, FieldMappingConfig.class);
-                this.itemFields = itemConfig.getMainFields();
-                // 物料字段映射加载成功
-            } else {
-                LogUtil.logWarning("物料字段映射文件未找到: " + itemMappingFile.getAbsolutePath());
-            }
-            
-        } catch (Exception e) {
-            LogUtil.logError("加载字段映射配置失败: " + e.getMessage());
-            throw new RuntimeException("字段映射配置加载失败", e);
-        }
-    }
-    
     /**
      * 获取主表字段映射
      * @return 主表字段映射
      */
     public Map<String, String> getMainFields() {
+        if (snapshots != null) {
+            return snapshots.current().getOrderMapping().getMainFields();
+        }
         return mainFields;
     }
     
@@ -99,6 +65,9 @@ public class FieldMappingConfig {
      * @return 物料字段映射
      */
     public Map<String, String> getItemFields() {
+        if (snapshots != null) {
+            return snapshots.current().getItemMapping().getMainFields();
+        }
         return itemFields;
     }
     
@@ -115,6 +84,9 @@ public class FieldMappingConfig {
      * @return 子表字段映射
      */
     public Map<String, Map<String, String>> getSubTables() {
+        if (snapshots != null) {
+            return snapshots.current().getOrderMapping().getSubTables();
+        }
         return subTables;
     }
     
@@ -132,7 +104,7 @@ public class FieldMappingConfig {
      * @return 子表字段映射，如果不存在则返回null
      */
     public Map<String, String> getSubTableMapping(String subTableName) {
-        return subTables.get(subTableName);
+        return getSubTables().get(subTableName);
     }
     
     /**
@@ -141,7 +113,7 @@ public class FieldMappingConfig {
      * @return 简道云字段名，如果不存在则返回null
      */
     public String getJdyField(String dbField) {
-        return mainFields.get(dbField);
+        return getMainFields().get(dbField);
     }
     
     /**
@@ -150,6 +122,6 @@ public class FieldMappingConfig {
      * @return 简道云字段名，如果不存在则返回null
      */
     public String getItemJdyField(String dbField) {
-        return itemFields.get(dbField);
+        return getItemFields().get(dbField);
     }
 } 
\ No newline at end of file
@@ -7,7 +7,9 @@ import org.example.util.Constants;
 import java.io.File;
 import java.io.IOException;
 import java.util.HashMap;
+import java.util.LinkedHashSet;
 import java.util.Map;
+import java.util.Set;
 
 /**
  * 字段映射加载器
@@ -100,4 +102,51 @@ public class FieldMappingLoader {
     public FieldMappingConfig loadItemMapping() throws IOException {
         return loadMapping(Constants.DEFAULT_ITEM_FIELD_MAPPING_PATH);
     }
-} 
\ No newline at end of file
+
+    /**
+     * 获取映射文件中已配置的源字段，用于生成查询列清单
+     * 目标字段为"待创建"的源字段不会同步，不计入结果
+     * @param mappingPath 映射文件路径
+     * @param subTableName 子表名，为null时返回主表字段（不含子表占位字段）
+     * @return 源字段集合，映射文件加载失败或子表不存在时返回null
+     */
+    public Set<String> getMappedColumns(String mappingPath, String subTableName) {
+        // 配置快照中已加载的映射文件直接使用快照内容，其他文件按路径加载
+        Map<String, String> mainFields;
+        Map<String, Map<String, String>> subTables;
+        ConfigSnapshot.MappingFile snapshotMapping = ConfigSnapshotService.getInstance().current()
+                .findMapping(mappingPath);
+        if (snapshotMapping != null) {
+            mainFields = snapshotMapping.getMainFields();
+            subTables = snapshotMapping.getSubTables();
+        } else {
+            FieldMappingConfig config;
+            try {
+                config = loadMapping(mappingPath);
+            } catch (IOException e) {
+                LogUtil.logWarning("加载字段映射失败，查询将读取全部候选列: " + e.getMessage());
+                return null;
+            }
+            mainFields = config.getMainFields();
+            subTables = config.getSubTables();
+        }
+
+        Map<String, String> fields = subTableName != null
+                ? subTables.get(subTableName)
+                : mainFields;
+        if (fields == null) {
+            return null;
+        }
+
+        Set<String> columns = new LinkedHashSet<>();
+        for (Map.Entry<String, String> entry : fields.entrySet()) {
+            if (subTableName == null && subTables.containsKey(entry.getKey())) {
+                continue;
+            }
+            if (!"待创建".equals(entry.getValue())) {
+                columns.add(entry.getKey());
+            }
+        }
+        return columns;
+    }
+}
@@ -2,123 +2,181 @@ package org.example.config;
 
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import org.example.util.InstructionText;
+import org.example.util.KeywordScanner;
 import org.example.util.LogUtil;
 
 import java.io.File;
-import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
 /**
  * 产品信息数据库管理类
  * 负责加载和查询产品信息配置
+ * 加载时编译为不可变的型号目录：型号名称建立关键词自动机，从文本中识别型号时只匹配目录中的真实型号；
+ * 按容量区分文件系统的型号预先生成各容量档位的产品信息，查询结果为只读视图，不再每次复制。
+ * 数据库文件由配置快照服务随其他配置文件一起监听，文件变化时整体替换目录。
  */
 public class ProductInfoDatabase {
     private static ProductInfoDatabase instance;
-    private Map<String, Map<String, String>> productDatabase;
     private static final ObjectMapper objectMapper = new ObjectMapper();
-    
-    // 型号和容量提取的正则表达式
-    // 匹配格式：FOR Lexar S60 32GB 或 FOR Lexar S60 或 S60 32GB
-    // 容量必须紧跟GB才有效，避免将序号误识别为容量
-    private static final Pattern MODEL_CAPACITY_PATTERN = Pattern.compile(
-        "(?:FOR\\s+)?(?:Lexar\\s+)?([A-Z]\\d+[A-Z]?|[A-Z]+\\d+)(?:\\s+(\\d+)\\s*GB)?", 
-        Pattern.CASE_INSENSITIVE
-    );
-    
+
+    // 型号名称格式（文本中可识别的型号写法），如 S60、D40T、TT2；型号后可跟容量，如 FOR Lexar S60 32GB
+    private static final Pattern MODEL_TOKEN = Pattern.compile("[A-Z]\\d+[A-Z]?|[A-Z]+\\d+", Pattern.CASE_INSENSITIVE);
+    // 型号之后的容量，容量必须紧跟GB才有效，避免将序号误识别为容量
+    private static final Pattern CAPACITY = Pattern.compile("\\s+(\\d+)\\s*GB", Pattern.CASE_INSENSITIVE);
+    // 只有S80和D400需要根据容量判断文件系统
+    private static final Set<String> CAPACITY_DEPENDENT_MODELS = new HashSet<>(Arrays.asList("S80", "D400"));
+    private static final int LARGE_CAPACITY_GB = 512;
+
+    private final File databaseFile;
+    private final List<Runnable> reloadListeners = new CopyOnWriteArrayList<>();
+
+    private volatile Catalog catalog;
+    // 当前目录对应的文件修改时间，文件不存在时为0
+    private volatile long loadedModified = 0;
+
     private ProductInfoDatabase() {
-        loadProductDatabase();
+        ConfigManager config = ConfigManager.getInstance();
+        this.databaseFile = new File(config.getProperty("product.info.database.path", "product_info_database.json"));
+        this.catalog = loadProductDatabase();
+        ConfigSnapshotService.getInstance().addReloadListener(this::checkForUpdate);
     }
-    
+
     public static synchronized ProductInfoDatabase getInstance() {
         if (instance == null) {
             instance = new ProductInfoDatabase();
         }
         return instance;
     }
-    
+
+    /**
+     * 注册数据库更新监听器（目录替换后调用，如清空提取结果缓存）
+     * @param listener 监听器
+     */
+    public void addReloadListener(Runnable listener) {
+        reloadListeners.add(listener);
+    }
+
+    /**
+     * 立即检查数据库文件，文件有变化时重新加载
+     * @return 是否替换了目录
+     */
+    public synchronized boolean checkForUpdate() {
+        long modified = databaseFile.exists() ? databaseFile.lastModified() : 0;
+        if (modified == loadedModified) {
+            return false;
+        }
+        if (modified == 0) {
+            // 文件被删除：保留当前目录
+            LogUtil.logWarning("产品信息数据库文件已不存在: " + databaseFile.getAbsolutePath() + "，继续使用当前数据");
+            loadedModified = 0;
+            return false;
+        }
+
+        Catalog loaded = loadProductDatabase();
+        if (loaded == null) {
+            return false;
+        }
+        catalog = loaded;
+        for (Runnable listener : reloadListeners) {
+            try {
+                listener.run();
+            } catch (Exception e) {
+                LogUtil.logError("产品信息数据库更新监听器执行异常: " + e.getMessage());
+            }
+        }
+        return true;
+    }
+
     /**
      * 加载产品信息数据库
+     * @return 型号目录；启动时文件不存在或无效返回空目录，运行中重新加载失败返回null（保留原目录）
      */
-    private void loadProductDatabase() {
-        productDatabase = new HashMap<>();
+    private Catalog loadProductDatabase() {
+        boolean initial = catalog == null;
+        if (!databaseFile.exists()) {
+            LogUtil.logError("产品信息数据库文件不存在: " + databaseFile.getPath());
+            return initial ? Catalog.EMPTY : null;
+        }
+
+        long modified = databaseFile.lastModified();
+        // 记录修改时间，同一版本的错误文件不反复加载；文件再次修改时重试
+        loadedModified = modified;
         try {
-            File configFile = new File("product_info_database.json");
-            if (!configFile.exists()) {
-                LogUtil.logError("产品信息数据库文件不存在: product_info_database.json");
-                return;
-            }
-            
-            JsonNode rootNode = objectMapper.readTree(configFile);
+            JsonNode rootNode = objectMapper.readTree(databaseFile);
+            Map<String, Map<String, String>> products = new LinkedHashMap<>();
             JsonNode productsNode = rootNode.get("products");
-            
+
             if (productsNode != null) {
                 productsNode.fields().forEachRemaining(entry -> {
-                    String model = entry.getKey();
-                    JsonNode productInfo = entry.getValue();
-                    
                     Map<String, String> info = new HashMap<>();
-                    productInfo.fields().forEachRemaining(field -> {
+                    entry.getValue().fields().forEachRemaining(field -> {
                         info.put(field.getKey(), field.getValue().asText());
                     });
-                    
-                    productDatabase.put(model.toUpperCase(), info);
+                    products.put(entry.getKey().toUpperCase(), info);
                 });
             }
-            
-            LogUtil.logInfo("成功加载产品信息数据库，包含 " + productDatabase.size() + " 个产品型号");
-            
-        } catch (IOException e) {
+
+            Catalog loaded = new Catalog(products);
+            LogUtil.logInfo((initial ? "成功加载" : "产品信息数据库已更新，重新加载") + "产品信息数据库，包含 "
+                    + products.size() + " 个产品型号");
+            if (loaded.unindexedModels > 0) {
+                LogUtil.logInfo("其中 " + loaded.unindexedModels + " 个型号名称不符合型号格式，不参与从文本中识别，仅支持按名称查询");
+            }
+            return loaded;
+        } catch (Exception e) {
             LogUtil.logError("加载产品信息数据库失败: " + e.getMessage());
+            return initial ? Catalog.EMPTY : null;
         }
     }
-    
+
+    /**
+     * 当前型号目录
+     */
+    private Catalog current() {
+        return catalog;
+    }
+
     /**
      * 根据型号和容量获取产品信息
      * @param model 产品型号
      * @param capacityGB 容量(GB)
-     * @return 产品信息映射
+     * @return 产品信息的只读视图，型号不存在时返回空Map
      */
     public Map<String, String> getProductInfo(String model, Integer capacityGB) {
         if (model == null || model.trim().isEmpty()) {
-            return new HashMap<>();
-        }
-        
-        String upperModel = model.toUpperCase().trim();
-        Map<String, String> baseInfo = productDatabase.get(upperModel);
-        
-        if (baseInfo == null) {
-            return new HashMap<>();
-        }
-        
-        // 创建返回结果的副本
-        Map<String, String> result = new HashMap<>(baseInfo);
-        
-        // 特殊处理：只有S80和D400需要根据容量判断文件系统
-        if ("S80".equals(upperModel) || "D400".equals(upperModel)) {
-            if (capacityGB != null && capacityGB >= 512) {
-                // S80和D400在≥512GB时使用exFAT
-                String specialFileSystem = baseInfo.get("file_system_512gb_plus");
-                if (specialFileSystem != null && !specialFileSystem.isEmpty()) {
-                    result.put("file_system", specialFileSystem);
-                } else {
-                    result.put("file_system", "exFAT");
-                }
-                LogUtil.logInfo("型号 " + model + " 容量 " + capacityGB + "GB 使用文件系统: " + result.get("file_system"));
-            } else if (capacityGB == null) {
-                // S80和D400识别不到容量时默认FAT32
-                result.put("file_system", "FAT32");
-                LogUtil.logInfo("型号 " + model + " 未识别到容量，默认使用FAT32");
-            }
-            // 如果有容量但<512GB，使用数据库中的file_system值（已在baseInfo中）
+            return Collections.emptyMap();
         }
-        // 其他型号直接使用数据库中的file_system值，不需要根据容量判断
-        
-        return result;
+
+        ModelEntry entry = current().models.get(model.toUpperCase().trim());
+        return entry != null ? entry.forCapacity(capacityGB) : Collections.<String, String>emptyMap();
+    }
+
+    /**
+     * 从文本中识别型号和容量并返回对应的产品信息（一次完成识别和查询，每条记录调用一次）
+     * @param text 文本内容
+     * @return 产品信息的只读视图，未识别到已知型号时返回空Map
+     */
+    public Map<String, String> resolveProductInfo(String text) {
+        Catalog snapshot = current();
+        ModelMatch match = findModel(snapshot, text);
+        if (match == null) {
+            return Collections.emptyMap();
+        }
+        return snapshot.models.get(match.key).forCapacity(match.capacity);
     }
-    
+
     /**
      * 从文本中提取型号和容量信息
      * @param text 文本内容
@@ -126,52 +184,169 @@ public class ProductInfoDatabase {
      */
     public Map<String, Object> extractModelAndCapacity(String text) {
         Map<String, Object> result = new HashMap<>();
-        
-        if (text == null || text.trim().isEmpty()) {
-            return result;
-        }
-        
-        Matcher matcher = MODEL_CAPACITY_PATTERN.matcher(text);
-        if (matcher.find()) {
-            String model = matcher.group(1);
-            String capacityStr = matcher.group(2);
-            
-            result.put("model", model);
-            
-            if (capacityStr != null && !capacityStr.trim().isEmpty()) {
-                try {
-                    Integer capacity = Integer.parseInt(capacityStr);
-                    result.put("capacity", capacity);
-                    // 从文本中提取到型号和容量信息
-                } catch (NumberFormatException e) {
-                    LogUtil.logError("解析容量失败: " + capacityStr);
-                }
-            } else {
-                // 只提取到型号，没有容量信息
+        ModelMatch match = findModel(current(), text);
+        if (match != null) {
+            result.put("model", match.model);
+            if (match.capacity != null) {
+                result.put("capacity", match.capacity);
             }
         }
-        
         return result;
     }
-    
+
     /**
      * 检查是否包含产品型号信息
      * @param text 文本内容
      * @return 是否包含型号信息
      */
     public boolean containsModelInfo(String text) {
-        if (text == null || text.trim().isEmpty()) {
-            return false;
-        }
-        
-        return MODEL_CAPACITY_PATTERN.matcher(text).find();
+        return findModel(current(), text) != null;
     }
-    
+
     /**
      * 获取所有支持的产品型号
      * @return 产品型号列表
      */
     public java.util.Set<String> getSupportedModels() {
-        return productDatabase.keySet();
+        return current().models.keySet();
+    }
+
+    /**
+     * 在文本中查找第一个已知型号（位置相同时取较长的型号名称）
+     * 型号须是文本中一个完整的型号写法：前面不紧接英文字母，且从该位置起按型号格式匹配的内容恰好是型号名称
+     * （如"S600"、"XS60"中不识别S60），与原先按型号格式取第一个匹配的写法规则一致。
+     */
+    private static ModelMatch findModel(Catalog snapshot, String text) {
+        if (text == null || text.trim().isEmpty() || snapshot.names.length == 0) {
+            return null;
+        }
+
+        KeywordScanner.KeywordIndex index = snapshot.scanner.scan(InstructionText.foldCase(text));
+        int length = text.length();
+        Matcher token = MODEL_TOKEN.matcher(text);
+        String bestName = null;
+        int bestPos = Integer.MAX_VALUE;
+        for (String name : snapshot.names) {
+            int pos = index.first(name, 0, length);
+            while (pos >= 0 && pos <= bestPos) {
+                if (isModelAt(token, text, pos, name.length())) {
+                    if (pos < bestPos || name.length() > bestName.length()) {
+                        bestName = name;
+                        bestPos = pos;
+                    }
+                    break;
+                }
+                pos = index.first(name, pos + 1, length);
+            }
+        }
+        if (bestName == null) {
+            return null;
+        }
+
+        int end = bestPos + bestName.length();
+        Integer capacity = null;
+        Matcher capacityMatcher = CAPACITY.matcher(text).region(end, length);
+        if (capacityMatcher.lookingAt()) {
+            try {
+                capacity = Integer.parseInt(capacityMatcher.group(1));
+            } catch (NumberFormatException e) {
+                LogUtil.logError("解析容量失败: " + capacityMatcher.group(1));
+            }
+        }
+        return new ModelMatch(bestName, text.substring(bestPos, end), capacity);
+    }
+
+    private static boolean isModelAt(Matcher token, String text, int pos, int length) {
+        if (pos > 0 && isAsciiLetter(text.charAt(pos - 1))) {
+            return false;
+        }
+        token.region(pos, text.length());
+        return token.lookingAt() && token.end() == pos + length;
+    }
+
+    private static boolean isAsciiLetter(char c) {
+        return (c >= 'A' && c <= 'Z') || (c >= 'a' && c <= 'z');
+    }
+
+    /**
+     * 文本中识别到的型号
+     */
+    private static final class ModelMatch {
+        private final String key;
+        private final String model;
+        private final Integer capacity;
+
+        ModelMatch(String key, String model, Integer capacity) {
+            this.key = key;
+            this.model = model;
+            this.capacity = capacity;
+        }
+    }
+
+    /**
+     * 不可变的型号目录：型号 -> 各容量档位的产品信息，及型号名称的关键词自动机
+     */
+    private static final class Catalog {
+        static final Catalog EMPTY = new Catalog(Collections.<String, Map<String, String>>emptyMap());
+
+        private final Map<String, ModelEntry> models;
+        private final String[] names;
+        private final KeywordScanner scanner;
+        private final int unindexedModels;
+
+        Catalog(Map<String, Map<String, String>> products) {
+            Map<String, ModelEntry> entries = new LinkedHashMap<>();
+            List<String> indexed = new ArrayList<>();
+            for (Map.Entry<String, Map<String, String>> product : products.entrySet()) {
+                String model = product.getKey();
+                entries.put(model, new ModelEntry(model, product.getValue()));
+                // 只有符合型号格式的名称才可能从文本中识别出来
+                if (MODEL_TOKEN.matcher(model).matches()) {
+                    indexed.add(model);
+                }
+            }
+            this.models = Collections.unmodifiableMap(entries);
+            this.names = indexed.toArray(new String[0]);
+            this.scanner = new KeywordScanner(names);
+            this.unindexedModels = products.size() - names.length;
+        }
+    }
+
+    /**
+     * 一个型号的产品信息，按容量区分文件系统的型号预先生成各档位
+     */
+    private static final class ModelEntry {
+        private final Map<String, String> base;
+        private final Map<String, String> largeCapacity;
+        private final Map<String, String> unknownCapacity;
+
+        ModelEntry(String model, Map<String, String> info) {
+            this.base = Collections.unmodifiableMap(new HashMap<>(info));
+            if (CAPACITY_DEPENDENT_MODELS.contains(model)) {
+                // ≥512GB时使用exFAT（或数据库中配置的大容量文件系统）
+                String specialFileSystem = info.get("file_system_512gb_plus");
+                this.largeCapacity = withFileSystem(info,
+                        specialFileSystem != null && !specialFileSystem.isEmpty() ? specialFileSystem : "exFAT");
+                // 识别不到容量时默认FAT32
+                this.unknownCapacity = withFileSystem(info, "FAT32");
+            } else {
+                this.largeCapacity = base;
+                this.unknownCapacity = base;
+            }
+        }
+
+        Map<String, String> forCapacity(Integer capacityGB) {
+            if (capacityGB == null) {
+                return unknownCapacity;
+            }
+            // 有容量但<512GB时使用数据库中的file_system值
+            return capacityGB >= LARGE_CAPACITY_GB ? largeCapacity : base;
+        }
+
+        private static Map<String, String> withFileSystem(Map<String, String> info, String fileSystem) {
+            Map<String, String> variant = new HashMap<>(info);
+            variant.put("file_system", fileSystem);
+            return Collections.unmodifiableMap(variant);
+        }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,175 @@
+package org.example.dao;
+
+import org.example.DatabaseConnectionPool;
+import org.example.util.LogUtil;
+
+import java.sql.*;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 历史数据回补进度数据访问对象
+ * 回补任务按ID区间切分，每个区间一行记录在 sync_backfill_range 中，进程中断后从各区间的 last_id 继续
+ * 与增量同步检查点（sync_checkpoint）相互独立
+ */
+public class BackfillDao {
+    private static BackfillDao instance;
+
+    // 区间状态
+    public static final int STATUS_PENDING = 0; // 未完成
+    public static final int STATUS_DONE = 2;    // 已完成
+
+    /**
+     * 回补区间
+     */
+    public static class Range {
+        private final long id;
+        private final int rangeStart;
+        private final int rangeEnd;
+        private final int lastId;
+
+        public Range(long id, int rangeStart, int rangeEnd, int lastId) {
+            this.id = id;
+            this.rangeStart = rangeStart;
+            this.rangeEnd = rangeEnd;
+            this.lastId = lastId;
+        }
+
+        public long getId() { return id; }
+        public int getRangeStart() { return rangeStart; }
+        public int getRangeEnd() { return rangeEnd; }
+        public int getLastId() { return lastId; }
+    }
+
+    private BackfillDao() {
+    }
+
+    public static synchronized BackfillDao getInstance() {
+        if (instance == null) {
+            instance = new BackfillDao();
+        }
+        return instance;
+    }
+
+    /**
+     * 任务是否已切分过区间
+     * @param jobName 回补任务名
+     * @return 是否已存在区间记录，查询失败时返回null
+     */
+    public Boolean hasRanges(String jobName) {
+        try (Connection conn = DatabaseConnectionPool.getConnection();
+                PreparedStatement pstmt = conn.prepareStatement(
+                        "SELECT TOP 1 1 FROM sync_backfill_range WHERE job_name = ?")) {
+            pstmt.setString(1, jobName);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                return rs.next();
+            }
+        } catch (SQLException e) {
+            LogUtil.logError("[回补] 查询任务 " + jobName + " 的区间失败: " + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * 将ID空间切分为区间并写入（同一事务）
+     * @param jobName 回补任务名
+     * @param minId 最小ID
+     * @param maxId 最大ID
+     * @param rangeSize 每个区间的ID跨度
+     * @return 写入的区间数，失败时返回-1
+     */
+    public int createRanges(String jobName, int minId, int maxId, int rangeSize) {
+        String sql = "INSERT INTO sync_backfill_range (job_name, range_start, range_end, last_id, status, updated_time) " +
+                "VALUES (?, ?, ?, ?, " + STATUS_PENDING + ", GETDATE())";
+
+        Connection conn = null;
+        try {
+            conn = DatabaseConnectionPool.getConnection();
+            conn.setAutoCommit(false);
+
+            int count = 0;
+            try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
+                // 区间为 (range_start, range_end]，last_id 从 range_start 开始推进
+                for (long start = (long) minId - 1; start < maxId; start += rangeSize) {
+                    int end = (int) Math.min(start + rangeSize, maxId);
+                    pstmt.setString(1, jobName);
+                    pstmt.setInt(2, (int) start);
+                    pstmt.setInt(3, end);
+                    pstmt.setInt(4, (int) start);
+                    pstmt.addBatch();
+                    count++;
+                }
+                pstmt.executeBatch();
+            }
+
+            conn.commit();
+            return count;
+        } catch (SQLException e) {
+            LogUtil.logError("[回补] 切分任务 " + jobName + " 的区间失败: " + e.getMessage());
+            if (conn != null) {
+                try {
+                    conn.rollback();
+                } catch (SQLException ex) {
+                    LogUtil.logError("回滚回补区间事务失败: " + ex.getMessage());
+                }
+            }
+            return -1;
+        } finally {
+            if (conn != null) {
+                try {
+                    conn.setAutoCommit(true);
+                    conn.close();
+                } catch (SQLException e) {
+                    LogUtil.logError("关闭连接失败: " + e.getMessage());
+                }
+            }
+        }
+    }
+
+    /**
+     * 查询任务中未完成的区间
+     * @param jobName 回补任务名
+     * @return 未完成区间，按起始ID升序
+     */
+    public List<Range> findUnfinishedRanges(String jobName) {
+        List<Range> ranges = new ArrayList<>();
+        String sql = "SELECT id, range_start, range_end, last_id FROM sync_backfill_range " +
+                "WHERE job_name = ? AND status <> " + STATUS_DONE + " ORDER BY range_start ASC";
+
+        try (Connection conn = DatabaseConnectionPool.getConnection();
+                PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            pstmt.setString(1, jobName);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                while (rs.next()) {
+                    ranges.add(new Range(rs.getLong("id"), rs.getInt("range_start"),
+                            rs.getInt("range_end"), rs.getInt("last_id")));
+                }
+            }
+        } catch (SQLException e) {
+            LogUtil.logError("[回补] 查询任务 " + jobName + " 的未完成区间失败: " + e.getMessage());
+        }
+        return ranges;
+    }
+
+    /**
+     * 记录区间进度
+     * @param rangeId 区间记录ID
+     * @param lastId 已处理的最大ID
+     * @param done 区间是否已处理完成
+     * @return 是否成功
+     */
+    public boolean updateProgress(long rangeId, int lastId, boolean done) {
+        String sql = "UPDATE sync_backfill_range SET last_id = ?, status = ?, updated_time = GETDATE() WHERE id = ?";
+
+        try (Connection conn = DatabaseConnectionPool.getConnection();
+                PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            pstmt.setInt(1, lastId);
+            pstmt.setInt(2, done ? STATUS_DONE : STATUS_PENDING);
+            pstmt.setLong(3, rangeId);
+            return pstmt.executeUpdate() > 0;
+        } catch (SQLException e) {
+            LogUtil.logError("[回补] 更新区间进度失败 (id=" + rangeId + "): " + e.getMessage());
+            return false;
+        }
+    }
+}
@@ -0,0 +1,202 @@
+package org.example.dao;
+
+import org.example.DatabaseConnectionPool;
+import org.example.util.LogUtil;
+
+import java.sql.*;
+import java.util.*;
+
+/**
+ * SQL Server 变更跟踪（Change Tracking）数据访问对象
+ * 按数据流保存已同步的变更版本，并通过 CHANGETABLE(CHANGES ...) 获取自该版本以来变更过的主表ID
+ *
+ * 使用前需在数据库和相关表上启用变更跟踪：
+ * ALTER DATABASE LC_EDI SET CHANGE_TRACKING = ON (CHANGE_RETENTION = 7 DAYS, AUTO_CLEANUP = ON);
+ * ALTER TABLE oms_order ENABLE CHANGE_TRACKING;
+ */
+public class ChangeTrackingDao {
+    private static ChangeTrackingDao instance;
+
+    /**
+     * 一次变更捕获的结果
+     */
+    public static class ChangeSet {
+        private final String stream;
+        private final List<Integer> ids;
+        private final long version;
+        private final boolean unchanged;
+
+        public ChangeSet(String stream, List<Integer> ids, long version) {
+            this(stream, ids, version, false);
+        }
+
+        private ChangeSet(String stream, List<Integer> ids, long version, boolean unchanged) {
+            this.stream = stream;
+            this.ids = ids;
+            this.version = version;
+            this.unchanged = unchanged;
+        }
+
+        /**
+         * 数据库版本自上次同步以来未变化时的空变更集合，提交时无需保存版本
+         */
+        static ChangeSet unchanged(String stream, long version) {
+            return new ChangeSet(stream, Collections.<Integer>emptyList(), version, true);
+        }
+
+        public String getStream() { return stream; }
+        public List<Integer> getIds() { return ids; }
+        public long getVersion() { return version; }
+        public boolean isUnchanged() { return unchanged; }
+    }
+
+    private ChangeTrackingDao() {
+    }
+
+    public static synchronized ChangeTrackingDao getInstance() {
+        if (instance == null) {
+            instance = new ChangeTrackingDao();
+        }
+        return instance;
+    }
+
+    /**
+     * 捕获主表及其子表自上次同步版本以来的变更
+     * 子表的新增和修改会映射为对应的主表ID；子表删除时行已不存在，无法回溯主表，不在捕获范围内
+     *
+     * @param stream 数据流标识
+     * @param parentTable 主表名（主键列为id）
+     * @param childTables 子表名 -> 指向主表的外键字段名
+     * @return 变更集合，失败时返回null
+     */
+    public ChangeSet captureChanges(String stream, String parentTable, Map<String, String> childTables) {
+        try (Connection conn = DatabaseConnectionPool.getConnection()) {
+            // 先取当前版本，之后发生的变更留给下一轮
+            long currentVersion = getCurrentVersion(conn);
+            Long lastVersion = getLastVersion(conn, stream);
+
+            if (lastVersion == null) {
+                saveVersion(conn, stream, currentVersion);
+                LogUtil.logInfo("[变更跟踪] " + stream + " 初始化同步版本: " + currentVersion);
+                return new ChangeSet(stream, Collections.<Integer>emptyList(), currentVersion);
+            }
+            if (lastVersion == currentVersion) {
+                // 数据库自上次同步以来没有任何提交的变更，无需检查有效版本和查询 CHANGETABLE
+                return ChangeSet.unchanged(stream, currentVersion);
+            }
+
+            List<String> tables = new ArrayList<>();
+            tables.add(parentTable);
+            tables.addAll(childTables.keySet());
+            for (String table : tables) {
+                long minValidVersion = getMinValidVersion(conn, table);
+                if (lastVersion < minValidVersion) {
+                    // 变更记录已被清理，无法计算增量，需通过回补模式补齐
+                    LogUtil.logError("[变更跟踪] " + stream + " 同步版本 " + lastVersion + " 早于表 " + table +
+                            " 的最小有效版本 " + minValidVersion + "，已重置为当前版本，请执行数据回补");
+                    saveVersion(conn, stream, currentVersion);
+                    return new ChangeSet(stream, Collections.<Integer>emptyList(), currentVersion);
+                }
+            }
+
+            StringBuilder sql = new StringBuilder();
+            sql.append("SELECT ct.id FROM CHANGETABLE(CHANGES ").append(parentTable).append(", ?) AS ct ")
+                    .append("WHERE ct.SYS_CHANGE_OPERATION <> 'D' AND ct.SYS_CHANGE_VERSION <= ?");
+            for (Map.Entry<String, String> child : childTables.entrySet()) {
+                sql.append(" UNION SELECT c.").append(child.getValue())
+                        .append(" FROM CHANGETABLE(CHANGES ").append(child.getKey()).append(", ?) AS ct ")
+                        .append("JOIN ").append(child.getKey()).append(" c ON c.id = ct.id ")
+                        .append("WHERE ct.SYS_CHANGE_VERSION <= ?");
+            }
+
+            Set<Integer> ids = new TreeSet<>();
+            try (PreparedStatement pstmt = conn.prepareStatement(sql.toString())) {
+                int index = 1;
+                for (int i = 0; i < tables.size(); i++) {
+                    pstmt.setLong(index++, lastVersion);
+                    pstmt.setLong(index++, currentVersion);
+                }
+                try (ResultSet rs = pstmt.executeQuery()) {
+                    while (rs.next()) {
+                        int id = rs.getInt(1);
+                        if (!rs.wasNull()) {
+                            ids.add(id);
+                        }
+                    }
+                }
+            }
+
+            return new ChangeSet(stream, new ArrayList<>(ids), currentVersion);
+        } catch (SQLException e) {
+            LogUtil.logError("[变更跟踪] 捕获 " + stream + " 变更失败: " + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * 提交变更集合的版本，下次从该版本之后开始捕获
+     * @param changeSet 已处理完成的变更集合
+     */
+    public void commit(ChangeSet changeSet) {
+        if (changeSet.isUnchanged()) {
+            return;
+        }
+        try (Connection conn = DatabaseConnectionPool.getConnection()) {
+            saveVersion(conn, changeSet.getStream(), changeSet.getVersion());
+        } catch (SQLException e) {
+            LogUtil.logError("[变更跟踪] 保存 " + changeSet.getStream() + " 同步版本失败: " + e.getMessage());
+        }
+    }
+
+    private long getCurrentVersion(Connection conn) throws SQLException {
+        try (Statement stmt = conn.createStatement();
+                ResultSet rs = stmt.executeQuery("SELECT CHANGE_TRACKING_CURRENT_VERSION()")) {
+            if (rs.next()) {
+                long version = rs.getLong(1);
+                if (!rs.wasNull()) {
+                    return version;
+                }
+            }
+        }
+        throw new SQLException("数据库未启用变更跟踪");
+    }
+
+    private long getMinValidVersion(Connection conn, String table) throws SQLException {
+        try (PreparedStatement pstmt = conn.prepareStatement(
+                "SELECT CHANGE_TRACKING_MIN_VALID_VERSION(OBJECT_ID(?))")) {
+            pstmt.setString(1, table);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                if (rs.next()) {
+                    long version = rs.getLong(1);
+                    if (!rs.wasNull()) {
+                        return version;
+                    }
+                }
+            }
+        }
+        throw new SQLException("表 " + table + " 未启用变更跟踪");
+    }
+
+    private Long getLastVersion(Connection conn, String stream) throws SQLException {
+        try (PreparedStatement pstmt = conn.prepareStatement(
+                "SELECT last_version FROM sync_ct_version WHERE stream = ?")) {
+            pstmt.setString(1, stream);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                return rs.next() ? rs.getLong("last_version") : null;
+            }
+        }
+    }
+
+    private void saveVersion(Connection conn, String stream, long version) throws SQLException {
+        String sql = "MERGE sync_ct_version AS t USING (SELECT ? AS stream, ? AS last_version) AS s " +
+                "ON t.stream = s.stream " +
+                "WHEN MATCHED THEN UPDATE SET last_version = s.last_version, updated_time = GETDATE() " +
+                "WHEN NOT MATCHED THEN INSERT (stream, last_version, updated_time) " +
+                "VALUES (s.stream, s.last_version, GETDATE());";
+        try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            pstmt.setString(1, stream);
+            pstmt.setLong(2, version);
+            pstmt.executeUpdate();
+        }
+    }
+}
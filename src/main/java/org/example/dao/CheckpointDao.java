@@ -0,0 +1,471 @@
+package org.example.dao;
+
+import org.example.DatabaseConnectionPool;
+import org.example.config.ConfigManager;
+import org.example.model.SyncCheckpoint;
+import org.example.util.Constants;
+import org.example.util.LogUtil;
+
+import java.sql.*;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 同步检查点数据访问对象
+ * 每个数据流/分区在 sync_checkpoint 中独占一行，通过 version 列做比较并交换（CAS）更新，
+ * 不同数据流和工作线程互不覆盖；读取走进程内缓存，更新冲突时重新加载后重试。
+ * 首次读取某数据流时从旧的 sync_status 单行表迁移初始值。
+ *
+ * 启动时一次性加载全部检查点；不带连接的更新采用写后缓冲：先修改内存中的检查点，
+ * 同一检查点的多次修改合并后按间隔写入数据库，每轮同步结束和程序关闭时强制写入；
+ * 各同步流程在每页推送到简道云后调用 flush，崩溃时检查点最多回退到上一页之前的状态。
+ * 每轮同步开始时核对数据库中的版本号，发现外部修改（如人工回退检查点）时以数据库为准。
+ */
+public class CheckpointDao {
+    private static CheckpointDao instance;
+
+    // 数据流标识
+    public static final String STREAM_ORDER = "order";
+    public static final String STREAM_ITEM = "item";
+    public static final String STREAM_DELIVERY = "delivery";
+    public static final String STREAM_DM = "dm";
+
+    public static final String DEFAULT_PARTITION = "";
+
+    private static final int MAX_CAS_RETRY = 5;
+
+    private static final String CHECKPOINT_FIELDS =
+            "stream, partition_key, last_id, last_time, sync_date, sync_count, version";
+
+    private final Map<String, SyncCheckpoint> cache = new ConcurrentHashMap<>();
+    // 尚未写入数据库的修改，按检查点合并（由 this 同步）
+    private final Map<String, PendingWrite> pending = new LinkedHashMap<>();
+    private final boolean writeBehind;
+    private final long flushIntervalMillis;
+    private long lastFlushMillis = System.currentTimeMillis();
+
+    /**
+     * 检查点修改回调，在最新的检查点副本上修改需要推进的字段
+     */
+    public interface Mutation {
+        void apply(SyncCheckpoint checkpoint);
+    }
+
+    /**
+     * 一个检查点的待写入修改：基于最近一次已知的数据库值按顺序应用
+     */
+    private static class PendingWrite implements Mutation {
+        private final String stream;
+        private final String partitionKey;
+        private SyncCheckpoint base;
+        private final List<Mutation> mutations = new ArrayList<>();
+
+        PendingWrite(String stream, String partitionKey, SyncCheckpoint base) {
+            this.stream = stream;
+            this.partitionKey = partitionKey;
+            this.base = base;
+        }
+
+        @Override
+        public void apply(SyncCheckpoint checkpoint) {
+            for (Mutation mutation : mutations) {
+                mutation.apply(checkpoint);
+            }
+        }
+    }
+
+    private CheckpointDao() {
+        ConfigManager config = ConfigManager.getInstance();
+        this.writeBehind = config.getBooleanProperty("sync.checkpoint.writeBehind", true);
+        this.flushIntervalMillis = config.getIntProperty("sync.checkpoint.flushIntervalMs", 5000);
+    }
+
+    public static synchronized CheckpointDao getInstance() {
+        if (instance == null) {
+            instance = new CheckpointDao();
+        }
+        return instance;
+    }
+
+    /**
+     * 启动时一次性加载全部检查点到缓存
+     * @return 加载的检查点数，失败时返回-1（之后按需逐个加载）
+     */
+    public int preload() {
+        String sql = "SELECT " + CHECKPOINT_FIELDS + " FROM sync_checkpoint";
+        int count = 0;
+        try (Connection conn = DatabaseConnectionPool.getConnection();
+                Statement stmt = conn.createStatement();
+                ResultSet rs = stmt.executeQuery(sql)) {
+            synchronized (this) {
+                while (rs.next()) {
+                    SyncCheckpoint checkpoint = readCheckpoint(rs);
+                    String key = cacheKey(checkpoint.getStream(), checkpoint.getPartitionKey());
+                    if (!pending.containsKey(key)) {
+                        cache.put(key, checkpoint);
+                    }
+                    count++;
+                }
+            }
+        } catch (SQLException e) {
+            LogUtil.logError("加载同步检查点失败: " + e.getMessage());
+            return -1;
+        }
+        LogUtil.logInfo("已加载同步检查点 " + count + " 个");
+        return count;
+    }
+
+    /**
+     * 核对缓存与数据库中的检查点版本，发现外部修改时以数据库值为准
+     * 有未写入修改的检查点，以数据库值为基础重新应用这些修改
+     * @return 被外部修改的检查点数，失败时返回-1
+     */
+    public synchronized int reconcile() {
+        String sql = "SELECT " + CHECKPOINT_FIELDS + " FROM sync_checkpoint";
+        int changed = 0;
+        try (Connection conn = DatabaseConnectionPool.getConnection();
+                Statement stmt = conn.createStatement();
+                ResultSet rs = stmt.executeQuery(sql)) {
+            while (rs.next()) {
+                SyncCheckpoint latest = readCheckpoint(rs);
+                String key = cacheKey(latest.getStream(), latest.getPartitionKey());
+                PendingWrite write = pending.get(key);
+                SyncCheckpoint known = write != null ? write.base : cache.get(key);
+                if (known == null || known.getVersion() == latest.getVersion()) {
+                    continue;
+                }
+
+                changed++;
+                LogUtil.logWarning(String.format("检测到同步检查点被外部修改 (%s%s): last_id %s -> %s, last_time %s -> %s",
+                        latest.getStream(), latest.getPartitionKey().isEmpty() ? "" : "/" + latest.getPartitionKey(),
+                        known.getLastId(), latest.getLastId(), known.getLastTime(), latest.getLastTime()));
+                if (write != null) {
+                    write.base = latest;
+                    SyncCheckpoint effective = latest.copy();
+                    write.apply(effective);
+                    cache.put(key, effective);
+                } else {
+                    cache.put(key, latest);
+                }
+            }
+        } catch (SQLException e) {
+            LogUtil.logError("核对同步检查点失败: " + e.getMessage());
+            return -1;
+        }
+        return changed;
+    }
+
+    /**
+     * 读取数据流默认分区的检查点
+     * @param stream 数据流标识
+     * @return 检查点副本，失败时返回null
+     */
+    public SyncCheckpoint get(String stream) {
+        return get(stream, DEFAULT_PARTITION);
+    }
+
+    /**
+     * 读取检查点（优先读取缓存）
+     * @param stream 数据流标识
+     * @param partitionKey 分区标识
+     * @return 检查点副本，失败时返回null
+     */
+    public SyncCheckpoint get(String stream, String partitionKey) {
+        SyncCheckpoint cached = cache.get(cacheKey(stream, partitionKey));
+        if (cached != null) {
+            return cached.copy();
+        }
+
+        try (Connection conn = DatabaseConnectionPool.getConnection()) {
+            SyncCheckpoint loaded = load(conn, stream, partitionKey);
+            cache.put(cacheKey(stream, partitionKey), loaded);
+            return loaded.copy();
+        } catch (SQLException e) {
+            LogUtil.logError("读取同步检查点失败 (" + stream + "): " + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * 更新检查点（不参与调用方事务）
+     * 启用写后缓冲时只修改内存中的检查点，由 flush 合并写入数据库
+     * @param stream 数据流标识
+     * @param partitionKey 分区标识
+     * @param mutation 检查点修改回调
+     * @return 是否成功（写后缓冲时表示修改已接受）
+     */
+    public boolean update(String stream, String partitionKey, Mutation mutation) {
+        if (!writeBehind) {
+            try (Connection conn = DatabaseConnectionPool.getConnection()) {
+                SyncCheckpoint updated = casUpdate(conn, stream, partitionKey, null, mutation);
+                cache.put(cacheKey(stream, partitionKey), updated);
+                return true;
+            } catch (SQLException e) {
+                LogUtil.logError("更新同步检查点失败 (" + stream + "): " + e.getMessage());
+                return false;
+            }
+        }
+
+        synchronized (this) {
+            String key = cacheKey(stream, partitionKey);
+            PendingWrite write = pending.get(key);
+            if (write == null) {
+                SyncCheckpoint base = get(stream, partitionKey);
+                if (base == null) {
+                    return false;
+                }
+                write = new PendingWrite(stream, partitionKey, base);
+                pending.put(key, write);
+            }
+            write.mutations.add(mutation);
+
+            SyncCheckpoint cached = cache.get(key);
+            SyncCheckpoint effective = cached != null ? cached.copy() : write.base.copy();
+            mutation.apply(effective);
+            cache.put(key, effective);
+
+            if (System.currentTimeMillis() - lastFlushMillis >= flushIntervalMillis) {
+                flush();
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 将写后缓冲中的修改写入数据库（每个检查点一次CAS更新）
+     * 写入失败的修改保留在缓冲中，下次写入时重试
+     * @return 是否全部写入成功
+     */
+    public synchronized boolean flush() {
+        lastFlushMillis = System.currentTimeMillis();
+        if (pending.isEmpty()) {
+            return true;
+        }
+
+        try (Connection conn = DatabaseConnectionPool.getConnection()) {
+            Iterator<Map.Entry<String, PendingWrite>> it = pending.entrySet().iterator();
+            while (it.hasNext()) {
+                Map.Entry<String, PendingWrite> entry = it.next();
+                PendingWrite write = entry.getValue();
+                SyncCheckpoint updated = casUpdate(conn, write.stream, write.partitionKey, write.base, write);
+                cache.put(entry.getKey(), updated);
+                it.remove();
+            }
+            return true;
+        } catch (SQLException e) {
+            LogUtil.logError("写入同步检查点失败，将在下次写入时重试: " + e.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * 使用指定连接更新检查点（可参与调用方事务）
+     * 该检查点在写后缓冲中的修改先用独立连接写入；调用方事务可能回滚，
+     * 更新后只清除缓存，下次读取时从数据库重新加载
+     * @param conn 数据库连接
+     * @param stream 数据流标识
+     * @param partitionKey 分区标识
+     * @param mutation 检查点修改回调
+     * @throws SQLException 如果更新失败或重试后仍然冲突
+     */
+    public synchronized void update(Connection conn, String stream, String partitionKey, Mutation mutation)
+            throws SQLException {
+        String key = cacheKey(stream, partitionKey);
+        PendingWrite write = pending.get(key);
+        if (write != null) {
+            try (Connection own = DatabaseConnectionPool.getConnection()) {
+                cache.put(key, casUpdate(own, stream, partitionKey, write.base, write));
+                pending.remove(key);
+            }
+        }
+
+        try {
+            casUpdate(conn, stream, partitionKey, null, mutation);
+        } finally {
+            cache.remove(key);
+        }
+    }
+
+    /**
+     * 比较并交换更新，version 不一致时重新加载最新值后重试
+     * @param base 更新基于的数据库值，为null时使用缓存（无待写入修改时缓存即数据库值）或从数据库加载
+     */
+    private SyncCheckpoint casUpdate(Connection conn, String stream, String partitionKey, SyncCheckpoint base,
+            Mutation mutation) throws SQLException {
+        SyncCheckpoint cached = base != null ? base : cache.get(cacheKey(stream, partitionKey));
+        SyncCheckpoint current = cached != null ? cached.copy() : load(conn, stream, partitionKey);
+
+        String sql = "UPDATE sync_checkpoint SET last_id = ?, last_time = ?, sync_date = ?, sync_count = ?, " +
+                "version = version + 1, updated_time = GETDATE() " +
+                "WHERE stream = ? AND partition_key = ? AND version = ?";
+
+        for (int attempt = 0; attempt < MAX_CAS_RETRY; attempt++) {
+            SyncCheckpoint next = current.copy();
+            mutation.apply(next);
+
+            try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
+                setNullableInt(pstmt, 1, next.getLastId());
+                if (next.getLastTime() != null) {
+                    pstmt.setTimestamp(2, Timestamp.valueOf(next.getLastTime()));
+                } else {
+                    pstmt.setNull(2, Types.TIMESTAMP);
+                }
+                if (next.getSyncDate() != null) {
+                    pstmt.setDate(3, java.sql.Date.valueOf(next.getSyncDate()));
+                } else {
+                    pstmt.setNull(3, Types.DATE);
+                }
+                pstmt.setInt(4, next.getSyncCount());
+                pstmt.setString(5, stream);
+                pstmt.setString(6, partitionKey);
+                pstmt.setLong(7, current.getVersion());
+
+                if (pstmt.executeUpdate() == 1) {
+                    next.setVersion(current.getVersion() + 1);
+                    return next;
+                }
+            }
+
+            // 其他进程或线程已推进检查点，基于最新值重新计算
+            current = load(conn, stream, partitionKey);
+        }
+
+        throw new SQLException("同步检查点并发更新冲突，已重试" + MAX_CAS_RETRY + "次 (" + stream + ")");
+    }
+
+    /**
+     * 从数据库加载检查点，不存在时从 sync_status 迁移初始值并插入
+     */
+    private SyncCheckpoint load(Connection conn, String stream, String partitionKey) throws SQLException {
+        SyncCheckpoint checkpoint = select(conn, stream, partitionKey);
+        if (checkpoint != null) {
+            return checkpoint;
+        }
+
+        SyncCheckpoint initial = new SyncCheckpoint();
+        initial.setStream(stream);
+        initial.setPartitionKey(partitionKey);
+        if (DEFAULT_PARTITION.equals(partitionKey)) {
+            seedFromLegacy(conn, initial);
+        }
+
+        String sql = "INSERT INTO sync_checkpoint (" + CHECKPOINT_FIELDS + ", updated_time) " +
+                "SELECT ?, ?, ?, ?, ?, ?, 0, GETDATE() WHERE NOT EXISTS " +
+                "(SELECT 1 FROM sync_checkpoint WITH (UPDLOCK, HOLDLOCK) WHERE stream = ? AND partition_key = ?)";
+        try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            pstmt.setString(1, stream);
+            pstmt.setString(2, partitionKey);
+            setNullableInt(pstmt, 3, initial.getLastId());
+            if (initial.getLastTime() != null) {
+                pstmt.setTimestamp(4, Timestamp.valueOf(initial.getLastTime()));
+            } else {
+                pstmt.setNull(4, Types.TIMESTAMP);
+            }
+            if (initial.getSyncDate() != null) {
+                pstmt.setDate(5, java.sql.Date.valueOf(initial.getSyncDate()));
+            } else {
+                pstmt.setNull(5, Types.DATE);
+            }
+            pstmt.setInt(6, initial.getSyncCount());
+            pstmt.setString(7, stream);
+            pstmt.setString(8, partitionKey);
+            if (pstmt.executeUpdate() > 0) {
+                LogUtil.logInfo("初始化同步检查点: " + stream + " (last_id=" + initial.getLastId() + ")");
+            }
+        }
+
+        // 并发初始化时以先写入的一方为准
+        checkpoint = select(conn, stream, partitionKey);
+        if (checkpoint == null) {
+            throw new SQLException("初始化同步检查点失败 (" + stream + ")");
+        }
+        return checkpoint;
+    }
+
+    private SyncCheckpoint select(Connection conn, String stream, String partitionKey) throws SQLException {
+        String sql = "SELECT " + CHECKPOINT_FIELDS + " FROM sync_checkpoint WHERE stream = ? AND partition_key = ?";
+        try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            pstmt.setString(1, stream);
+            pstmt.setString(2, partitionKey);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                return rs.next() ? readCheckpoint(rs) : null;
+            }
+        }
+    }
+
+    private static SyncCheckpoint readCheckpoint(ResultSet rs) throws SQLException {
+        SyncCheckpoint checkpoint = new SyncCheckpoint();
+        checkpoint.setStream(rs.getString("stream"));
+        checkpoint.setPartitionKey(rs.getString("partition_key"));
+        int lastId = rs.getInt("last_id");
+        checkpoint.setLastId(rs.wasNull() ? null : lastId);
+        Timestamp lastTime = rs.getTimestamp("last_time");
+        checkpoint.setLastTime(lastTime != null ? lastTime.toLocalDateTime() : null);
+        java.sql.Date syncDate = rs.getDate("sync_date");
+        checkpoint.setSyncDate(syncDate != null ? syncDate.toLocalDate() : null);
+        checkpoint.setSyncCount(rs.getInt("sync_count"));
+        checkpoint.setVersion(rs.getLong("version"));
+        return checkpoint;
+    }
+
+    /**
+     * 从旧的 sync_status 单行表读取该数据流的检查点初始值
+     */
+    private void seedFromLegacy(Connection conn, SyncCheckpoint checkpoint) {
+        try (Statement stmt = conn.createStatement();
+                ResultSet rs = stmt.executeQuery("SELECT TOP 1 * FROM sync_status ORDER BY id DESC")) {
+            if (!rs.next()) {
+                return;
+            }
+            switch (checkpoint.getStream()) {
+                case STREAM_ORDER:
+                    checkpoint.setLastId(rs.getInt("last_sync_id"));
+                    java.sql.Date syncDate = rs.getDate("sync_date");
+                    checkpoint.setSyncDate(syncDate != null ? syncDate.toLocalDate() : null);
+                    // sync_status 中的计数以自定义码字符保存
+                    String syncCode = rs.getString("sync_count");
+                    if (syncCode != null && !syncCode.trim().isEmpty()) {
+                        char codeChar = syncCode.trim().charAt(0);
+                        for (int i = 0; i < Constants.CUSTOM_CODE_CHARS.length; i++) {
+                            if (Constants.CUSTOM_CODE_CHARS[i] == codeChar) {
+                                checkpoint.setSyncCount(i);
+                                break;
+                            }
+                        }
+                    }
+                    break;
+                case STREAM_ITEM:
+                    checkpoint.setLastId(rs.getInt("item_sync_id"));
+                    break;
+                case STREAM_DELIVERY:
+                    int deliverySyncId = rs.getInt("delivery_sync_id");
+                    checkpoint.setLastId(rs.wasNull() ? null : deliverySyncId);
+                    break;
+                case STREAM_DM:
+                    Timestamp lastSyncTime = rs.getTimestamp("last_sync_time");
+                    checkpoint.setLastTime(lastSyncTime != null ? lastSyncTime.toLocalDateTime() : null);
+                    break;
+                default:
+                    break;
+            }
+        } catch (SQLException e) {
+            LogUtil.logWarning("读取旧同步状态失败，检查点从空值开始 (" + checkpoint.getStream() + "): " + e.getMessage());
+        }
+    }
+
+    private static void setNullableInt(PreparedStatement pstmt, int index, Integer value) throws SQLException {
+        if (value != null) {
+            pstmt.setInt(index, value);
+        } else {
+            pstmt.setNull(index, Types.INTEGER);
+        }
+    }
+
+    private static String cacheKey(String stream, String partitionKey) {
+        return stream + "|" + partitionKey;
+    }
+}
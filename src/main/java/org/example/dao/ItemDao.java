@@ -2,6 +2,7 @@ package org.example.dao;
 
 import org.example.DatabaseConnectionPool;
 import org.example.model.ItemRecord;
+import org.example.model.SyncCheckpoint;
 import org.example.util.LogUtil;
 
 import java.sql.*;
@@ -48,14 +49,8 @@ public class ItemDao {
      * 获取上次物料同步ID
      */
     public Integer getLastItemSyncId() {
-        try (Connection conn = DatabaseConnectionPool.getConnection();
-                Statement stmt = conn.createStatement()) {
-            ResultSet rs = stmt.executeQuery("SELECT TOP 1 item_sync_id FROM sync_status ORDER BY id DESC");
-            return rs.next() ? rs.getInt("item_sync_id") : null;
-        } catch (SQLException e) {
-            LogUtil.logError("获取物料同步ID失败: " + e.getMessage());
-            return null;
-        }
+        SyncCheckpoint checkpoint = CheckpointDao.getInstance().get(CheckpointDao.STREAM_ITEM);
+        return checkpoint != null ? checkpoint.getLastId() : null;
     }
 
     /**
@@ -118,21 +113,7 @@ public class ItemDao {
      * @param lastItemSyncId 最后同步的物料ID
      */
     public void updateItemSyncStatus(int lastItemSyncId) {
-        String sql = "UPDATE sync_status SET item_sync_id = ? WHERE id = 1";
-
-        try (Connection conn = DatabaseConnectionPool.getConnection();
-                PreparedStatement pstmt = conn.prepareStatement(sql)) {
-
-            pstmt.setInt(1, lastItemSyncId);
-            int rowsAffected = pstmt.executeUpdate();
-
-            if (rowsAffected == 0) {
-                LogUtil.logError("更新物料同步状态失败，不存在ID为1的记录");
-            } else {
-                // 物料同步状态已更新
-            }
-        } catch (SQLException e) {
-            LogUtil.logError("更新物料同步状态失败: " + e.getMessage());
-        }
+        CheckpointDao.getInstance().update(CheckpointDao.STREAM_ITEM, CheckpointDao.DEFAULT_PARTITION,
+                checkpoint -> checkpoint.advanceLastId(lastItemSyncId));
     }
-}
\ No newline at end of file
+}
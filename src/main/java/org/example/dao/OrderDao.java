@@ -2,6 +2,7 @@ package org.example.dao;
 
 import org.example.DatabaseConnectionPool;
 import org.example.model.OrderRecord;
+import org.example.model.SyncCheckpoint;
 import org.example.util.LogUtil;
 
 import java.sql.*;
@@ -59,14 +60,8 @@ public class OrderDao {
      * 获取上次同步ID
      */
     public Integer getLastSyncId() {
-        try (Connection conn = DatabaseConnectionPool.getConnection();
-                Statement stmt = conn.createStatement()) {
-            ResultSet rs = stmt.executeQuery("SELECT TOP 1 last_sync_id FROM sync_status ORDER BY id DESC");
-            return rs.next() ? rs.getInt("last_sync_id") : null;
-        } catch (SQLException e) {
-            LogUtil.logError("获取同步ID失败: " + e.getMessage());
-            return null;
-        }
+        SyncCheckpoint checkpoint = CheckpointDao.getInstance().get(CheckpointDao.STREAM_ORDER);
+        return checkpoint != null ? checkpoint.getLastId() : null;
     }
 
     /**
@@ -77,18 +72,12 @@ public class OrderDao {
         result.put("sync_date", LocalDate.now());
         result.put("sync_count", 0);
 
-        try (Connection conn = DatabaseConnectionPool.getConnection();
-                Statement stmt = conn.createStatement()) {
-            ResultSet rs = stmt.executeQuery("SELECT TOP 1 sync_date, sync_count FROM sync_status ORDER BY id DESC");
-            if (rs.next()) {
-                java.sql.Date syncDate = rs.getDate("sync_date");
-                if (syncDate != null) {
-                    result.put("sync_date", syncDate.toLocalDate());
-                }
-                result.put("sync_count", rs.getInt("sync_count"));
+        SyncCheckpoint checkpoint = CheckpointDao.getInstance().get(CheckpointDao.STREAM_ORDER);
+        if (checkpoint != null) {
+            if (checkpoint.getSyncDate() != null) {
+                result.put("sync_date", checkpoint.getSyncDate());
             }
-        } catch (SQLException e) {
-            LogUtil.logError("获取同步日期和计数失败: " + e.getMessage());
+            result.put("sync_count", checkpoint.getSyncCount());
         }
 
         return result;
@@ -152,23 +141,10 @@ public class OrderDao {
      * 更新同步状态
      */
     public void updateSyncStatus(int lastSyncId, LocalDate syncDate, int syncCount) {
-        String sql = "UPDATE sync_status SET last_sync_id = ?, sync_date = ?, sync_count = ? WHERE id = 1";
-
-        try (Connection conn = DatabaseConnectionPool.getConnection();
-                PreparedStatement pstmt = conn.prepareStatement(sql)) {
-
-            pstmt.setInt(1, lastSyncId);
-            pstmt.setDate(2, java.sql.Date.valueOf(syncDate));
-            pstmt.setInt(3, syncCount);
-            int rowsAffected = pstmt.executeUpdate();
-
-            if (rowsAffected == 0) {
-                LogUtil.logError("更新同步状态失败，不存在ID为1的记录");
-            } else {
-                // 同步状态已更新
-            }
-        } catch (SQLException e) {
-            LogUtil.logError("更新同步状态失败: " + e.getMessage());
-        }
+        CheckpointDao.getInstance().update(CheckpointDao.STREAM_ORDER, CheckpointDao.DEFAULT_PARTITION, checkpoint -> {
+            checkpoint.advanceLastId(lastSyncId);
+            checkpoint.setSyncDate(syncDate);
+            checkpoint.setSyncCount(syncCount);
+        });
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,259 @@
+package org.example.dao;
+
+import org.example.DatabaseConnectionPool;
+import org.example.model.OutboxRecord;
+import org.example.util.LogUtil;
+
+import java.sql.*;
+import java.util.*;
+
+/**
+ * 简道云写入出箱数据访问对象
+ * 负责 jdy_outbox 表的写入、批量认领和状态回写
+ */
+public class OutboxDao {
+    private static OutboxDao instance;
+
+    // 出箱记录状态
+    public static final int STATUS_PENDING = 0;     // 待推送
+    public static final int STATUS_DISPATCHING = 1; // 已认领，推送中
+    public static final int STATUS_DONE = 2;        // 推送成功
+    public static final int STATUS_FAILED = 9;      // 超过最大尝试次数
+
+    private static final int IN_CLAUSE_CHUNK_SIZE = 500;
+
+    private static final String OUTBOX_FIELDS = String.join(", ",
+            "id", "stream", "app_id", "entry_id", "biz_key", "lookup_conditions", "operation",
+            "data_id", "payload", "update_omit_fields", "start_workflow", "attempts");
+
+    /**
+     * 检查点更新回调
+     * 与出箱记录写入在同一个事务中执行
+     */
+    public interface CheckpointUpdate {
+        void apply(Connection conn) throws SQLException;
+    }
+
+    private OutboxDao() {
+    }
+
+    public static synchronized OutboxDao getInstance() {
+        if (instance == null) {
+            instance = new OutboxDao();
+        }
+        return instance;
+    }
+
+    /**
+     * 写入出箱记录并更新检查点（同一事务）
+     * @param records 出箱记录
+     * @param checkpoint 检查点更新回调，可为null
+     * @return 是否成功
+     */
+    public boolean enqueue(List<OutboxRecord> records, CheckpointUpdate checkpoint) {
+        String sql = "INSERT INTO jdy_outbox (stream, app_id, entry_id, biz_key, lookup_conditions, operation, " +
+                "data_id, payload, update_omit_fields, start_workflow, status, attempts, next_attempt_time, created_time, " +
+                "updated_time) VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, " + STATUS_PENDING + ", 0, GETDATE(), GETDATE(), GETDATE())";
+
+        Connection conn = null;
+        try {
+            conn = DatabaseConnectionPool.getConnection();
+            conn.setAutoCommit(false);
+
+            if (!records.isEmpty()) {
+                try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
+                    for (OutboxRecord record : records) {
+                        pstmt.setString(1, record.getStream());
+                        pstmt.setString(2, record.getAppId());
+                        pstmt.setString(3, record.getEntryId());
+                        pstmt.setString(4, record.getBizKey());
+                        pstmt.setString(5, record.getLookupConditions());
+                        pstmt.setString(6, record.getOperation());
+                        pstmt.setString(7, record.getDataId());
+                        pstmt.setString(8, record.getPayload());
+                        pstmt.setString(9, record.getUpdateOmitFields());
+                        pstmt.setBoolean(10, record.isStartWorkflow());
+                        pstmt.addBatch();
+                    }
+                    pstmt.executeBatch();
+                }
+            }
+
+            if (checkpoint != null) {
+                checkpoint.apply(conn);
+            }
+
+            conn.commit();
+            return true;
+        } catch (SQLException e) {
+            LogUtil.logError("写入出箱记录失败: " + e.getMessage());
+            if (conn != null) {
+                try {
+                    conn.rollback();
+                } catch (SQLException ex) {
+                    LogUtil.logError("回滚出箱事务失败: " + ex.getMessage());
+                }
+            }
+            return false;
+        } finally {
+            if (conn != null) {
+                try {
+                    conn.setAutoCommit(true);
+                    conn.close();
+                } catch (SQLException e) {
+                    LogUtil.logError("关闭连接失败: " + e.getMessage());
+                }
+            }
+        }
+    }
+
+    /**
+     * 查询仍在出箱中（待推送或推送中）的业务主键
+     * 这些主键在简道云中可能尚未创建，轮询阶段需改用UPSERT
+     * @param stream 数据流标识
+     * @param bizKeys 业务主键集合
+     * @return 仍在出箱中的业务主键
+     */
+    public Set<String> findInFlightKeys(String stream, Collection<String> bizKeys) {
+        Set<String> result = new HashSet<>();
+        if (bizKeys == null || bizKeys.isEmpty()) {
+            return result;
+        }
+
+        List<String> keys = new ArrayList<>(new LinkedHashSet<>(bizKeys));
+        try (Connection conn = DatabaseConnectionPool.getConnection()) {
+            for (int start = 0; start < keys.size(); start += IN_CLAUSE_CHUNK_SIZE) {
+                List<String> chunk = keys.subList(start, Math.min(start + IN_CLAUSE_CHUNK_SIZE, keys.size()));
+                String placeholders = String.join(", ", Collections.nCopies(chunk.size(), "?"));
+                String sql = "SELECT DISTINCT biz_key FROM jdy_outbox WHERE stream = ? AND status IN (" +
+                        STATUS_PENDING + ", " + STATUS_DISPATCHING + ") AND biz_key IN (" + placeholders + ")";
+
+                try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
+                    pstmt.setString(1, stream);
+                    for (int i = 0; i < chunk.size(); i++) {
+                        pstmt.setString(i + 2, chunk.get(i));
+                    }
+                    try (ResultSet rs = pstmt.executeQuery()) {
+                        while (rs.next()) {
+                            result.add(rs.getString("biz_key"));
+                        }
+                    }
+                }
+            }
+        } catch (SQLException e) {
+            LogUtil.logError("查询出箱中的业务主键失败: " + e.getMessage());
+        }
+        return result;
+    }
+
+    /**
+     * 批量认领待推送记录
+     * 使用 UPDATE TOP(n) ... OUTPUT 一次完成认领，READPAST 跳过其他进程已锁定的行；
+     * 认领后超过租约时间仍未完成的记录视为推送进程中断，可被重新认领；
+     * 同一业务主键只认领最早的一条未完成记录，保证按写入顺序推送
+     * @param limit 最大认领数量
+     * @param leaseMinutes 认领租约（分钟）
+     * @return 认领到的记录，按ID升序
+     */
+    public List<OutboxRecord> claim(int limit, int leaseMinutes) {
+        List<OutboxRecord> claimed = new ArrayList<>();
+        String sql = "UPDATE TOP (?) jdy_outbox WITH (ROWLOCK, READPAST) " +
+                "SET status = " + STATUS_DISPATCHING + ", claimed_time = GETDATE(), updated_time = GETDATE() " +
+                "OUTPUT " + prefixed("inserted.", OUTBOX_FIELDS) + " " +
+                "WHERE ((status = " + STATUS_PENDING + " AND next_attempt_time <= GETDATE()) " +
+                "OR (status = " + STATUS_DISPATCHING + " AND claimed_time < DATEADD(MINUTE, -?, GETDATE()))) " +
+                "AND NOT EXISTS (SELECT 1 FROM jdy_outbox prev WHERE prev.stream = jdy_outbox.stream " +
+                "AND prev.entry_id = jdy_outbox.entry_id AND prev.biz_key = jdy_outbox.biz_key " +
+                "AND prev.id < jdy_outbox.id AND prev.status IN (" + STATUS_PENDING + ", " + STATUS_DISPATCHING + "))";
+
+        try (Connection conn = DatabaseConnectionPool.getConnection();
+                PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            pstmt.setInt(1, limit);
+            pstmt.setInt(2, leaseMinutes);
+
+            try (ResultSet rs = pstmt.executeQuery()) {
+                while (rs.next()) {
+                    OutboxRecord record = new OutboxRecord();
+                    record.setId(rs.getLong("id"));
+                    record.setStream(rs.getString("stream"));
+                    record.setAppId(rs.getString("app_id"));
+                    record.setEntryId(rs.getString("entry_id"));
+                    record.setBizKey(rs.getString("biz_key"));
+                    record.setLookupConditions(rs.getString("lookup_conditions"));
+                    record.setOperation(rs.getString("operation"));
+                    record.setDataId(rs.getString("data_id"));
+                    record.setPayload(rs.getString("payload"));
+                    record.setUpdateOmitFields(rs.getString("update_omit_fields"));
+                    record.setStartWorkflow(rs.getBoolean("start_workflow"));
+                    record.setAttempts(rs.getInt("attempts"));
+                    claimed.add(record);
+                }
+            }
+        } catch (SQLException e) {
+            LogUtil.logError("认领出箱记录失败: " + e.getMessage());
+        }
+
+        // OUTPUT 子句不保证顺序
+        claimed.sort(Comparator.comparing(OutboxRecord::getId));
+        return claimed;
+    }
+
+    /**
+     * 标记记录推送成功
+     * @param ids 记录ID列表
+     */
+    public void markDone(Collection<Long> ids) {
+        if (ids == null || ids.isEmpty()) {
+            return;
+        }
+        String sql = "UPDATE jdy_outbox SET status = " + STATUS_DONE + ", last_error = NULL, " +
+                "updated_time = GETDATE() WHERE id = ?";
+
+        try (Connection conn = DatabaseConnectionPool.getConnection();
+                PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            for (Long id : ids) {
+                pstmt.setLong(1, id);
+                pstmt.addBatch();
+            }
+            pstmt.executeBatch();
+        } catch (SQLException e) {
+            LogUtil.logError("标记出箱记录完成失败: " + e.getMessage());
+        }
+    }
+
+    /**
+     * 记录推送失败，按退避时间重新排队；达到最大尝试次数后标记为失败
+     * @param id 记录ID
+     * @param error 错误信息
+     * @param maxAttempts 最大尝试次数
+     * @param backoffSeconds 重试退避时间（秒）
+     */
+    public void markRetry(long id, String error, int maxAttempts, long backoffSeconds) {
+        String sql = "UPDATE jdy_outbox SET attempts = attempts + 1, " +
+                "status = CASE WHEN attempts + 1 >= ? THEN " + STATUS_FAILED + " ELSE " + STATUS_PENDING + " END, " +
+                "next_attempt_time = DATEADD(SECOND, ?, GETDATE()), last_error = ?, updated_time = GETDATE() " +
+                "WHERE id = ?";
+
+        try (Connection conn = DatabaseConnectionPool.getConnection();
+                PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            pstmt.setInt(1, maxAttempts);
+            pstmt.setLong(2, backoffSeconds);
+            pstmt.setString(3, error != null && error.length() > 1000 ? error.substring(0, 1000) : error);
+            pstmt.setLong(4, id);
+            pstmt.executeUpdate();
+        } catch (SQLException e) {
+            LogUtil.logError("更新出箱记录重试状态失败: " + e.getMessage());
+        }
+    }
+
+    private static String prefixed(String prefix, String fields) {
+        StringBuilder sb = new StringBuilder();
+        for (String field : fields.split(", ")) {
+            if (sb.length() > 0) {
+                sb.append(", ");
+            }
+            sb.append(prefix).append(field);
+        }
+        return sb.toString();
+    }
+}
@@ -1,28 +1,27 @@
 package org.example.dm.config;
 
-import com.fasterxml.jackson.databind.ObjectMapper;
+import org.example.config.ConfigSnapshot;
+import org.example.config.ConfigSnapshotService;
 import org.example.util.LogUtil;
 
-import java.io.File;
-import java.io.FileInputStream;
-import java.io.InputStream;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
-import java.util.Properties;
 
 /**
  * 客户DM配置管理器
- * 负责加载和管理DM相关配置
+ * 负责提供DM相关配置，DM数据库配置和字段映射均读取当前配置快照
  */
 public class DmConfigManager {
     private static DmConfigManager instance;
-    private final Properties properties;
-    private Map<String, Object> fieldMapping;
+    private final ConfigSnapshotService snapshots;
     
     private DmConfigManager() {
-        this.properties = new Properties();
-        loadProperties();
-        loadFieldMapping();
+        this.snapshots = ConfigSnapshotService.getInstance();
+        if (!snapshots.current().hasDmProperties()) {
+            LogUtil.logError("加载DM配置文件失败: DM配置文件不存在");
+            throw new RuntimeException("加载DM配置文件失败");
+        }
     }
     
     public static synchronized DmConfigManager getInstance() {
@@ -33,42 +32,11 @@ public class DmConfigManager {
     }
     
     /**
-     * 加载配置文件
+     * 当前的DM字段映射配置，映射文件不存在或加载失败时为空
      */
-    private void loadProperties() {
-        try {
-            // 加载DM数据库配置
-            String dmConfigPath = "dm_db.properties";
-            try (InputStream input = new FileInputStream(dmConfigPath)) {
-                properties.load(input);
-                LogUtil.logInfo("DM配置文件加载成功");
-            }
-        } catch (Exception e) {
-            LogUtil.logError("加载DM配置文件失败: " + e.getMessage());
-            throw new RuntimeException("加载DM配置文件失败", e);
-        }
-    }
-    
-    /**
-     * 加载字段映射配置
-     */
-    private void loadFieldMapping() {
-        try {
-            String mappingPath = properties.getProperty("dm.field.mapping.path", "./dm_field_mapping.json");
-            File mappingFile = new File(mappingPath);
-            
-            if (mappingFile.exists()) {
-                ObjectMapper mapper = new ObjectMapper();
-                fieldMapping = mapper.readValue(mappingFile, Map.class);
-                LogUtil.logInfo("DM字段映射配置加载成功: " + mappingPath);
-            } else {
-                LogUtil.logWarning("DM字段映射配置文件不存在: " + mappingPath);
-                fieldMapping = new HashMap<>();
-            }
-        } catch (Exception e) {
-            LogUtil.logError("加载DM字段映射配置失败: " + e.getMessage());
-            fieldMapping = new HashMap<>();
-        }
+    private Map<String, Object> fieldMapping() {
+        ConfigSnapshot.MappingFile mapping = snapshots.current().getDmFieldMapping();
+        return mapping != null ? mapping.getRoot() : Collections.<String, Object>emptyMap();
     }
     
     /**
@@ -77,7 +45,7 @@ public class DmConfigManager {
      * @return 配置值
      */
     public String getProperty(String key) {
-        return properties.getProperty(key);
+        return snapshots.current().getDmProperty(key);
     }
     
     /**
@@ -87,7 +55,7 @@ public class DmConfigManager {
      * @return 配置值
      */
     public String getProperty(String key, String defaultValue) {
-        return properties.getProperty(key, defaultValue);
+        return snapshots.current().getDmProperty(key, defaultValue);
     }
     
     /**
@@ -96,6 +64,7 @@ public class DmConfigManager {
      */
     @SuppressWarnings("unchecked")
     public Map<String, String> getMainTableMapping() {
+        Map<String, Object> fieldMapping = fieldMapping();
         if (fieldMapping.containsKey("main_table")) {
             Map<String, Object> mainTable = (Map<String, Object>) fieldMapping.get("main_table");
             if (mainTable.containsKey("source_to_local")) {
@@ -111,6 +80,7 @@ public class DmConfigManager {
      */
     @SuppressWarnings("unchecked")
     public Map<String, String> getDetailTableMapping() {
+        Map<String, Object> fieldMapping = fieldMapping();
         if (fieldMapping.containsKey("detail_table")) {
             Map<String, Object> detailTable = (Map<String, Object>) fieldMapping.get("detail_table");
             if (detailTable.containsKey("source_to_local")) {
@@ -126,6 +96,7 @@ public class DmConfigManager {
      */
     @SuppressWarnings("unchecked")
     public Map<String, Object> getStatusMapping() {
+        Map<String, Object> fieldMapping = fieldMapping();
         if (fieldMapping.containsKey("status_mapping")) {
             return (Map<String, Object>) fieldMapping.get("status_mapping");
         }
@@ -156,6 +127,14 @@ public class DmConfigManager {
         return Integer.parseInt(getProperty("dm.sync.batchSize", "50"));
     }
     
+    /**
+     * 获取每轮拉取的最大页数
+     * @return 每轮最大页数
+     */
+    public int getMaxPagesPerCycle() {
+        return Math.max(1, Integer.parseInt(getProperty("dm.sync.maxPagesPerCycle", "20")));
+    }
+    
     /**
      * 获取最大重试次数
      * @return 最大重试次数
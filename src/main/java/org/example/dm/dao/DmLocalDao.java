@@ -1,14 +1,29 @@
 package org.example.dm.dao;
 
+import com.microsoft.sqlserver.jdbc.SQLServerBulkCopy;
+import com.microsoft.sqlserver.jdbc.SQLServerBulkCopyOptions;
+import com.microsoft.sqlserver.jdbc.SQLServerConnection;
 import org.example.DatabaseConnectionPool;
+import org.example.config.ConfigManager;
+import org.example.config.ConfigSnapshotService;
+import org.example.config.FieldMappingLoader;
+import org.example.dao.CheckpointDao;
 import org.example.dm.model.DmOrder;
 import org.example.dm.model.DmOrderDetail;
+import org.example.model.SyncCheckpoint;
+import org.example.util.ColumnProjection;
 import org.example.util.LogUtil;
 
 import java.sql.*;
 import java.time.LocalDateTime;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 /**
  * DM本地数据访问对象
@@ -16,8 +31,127 @@ import java.util.List;
  */
 public class DmLocalDao {
     private static DmLocalDao instance;
+
+    // 批量写入时主表/子表的业务字段（不含id、order_id及同步状态字段）
+    private static final String[] ORDER_COLUMNS = {
+            "source_id", "order_no", "month_settlement", "factory", "person_in_charge",
+            "currency", "mark", "tax_rate", "payment_terms", "remarks",
+            "in_warehouse", "material_warehouse", "original_terms",
+            "total_quantity", "total_tax_amount",
+            "department", "creator", "auditor", "approver",
+            "submit_time", "modify_time", "order_status",
+            "i_ord", "fill_date", "price_book", "responsible_department",
+            "current_payment_date", "original_payment_date", "document_type"};
+    private static final String[] DETAIL_COLUMNS = {
+            "order_no", "line_no", "material_code", "material_desc",
+            "quantity", "unit_price", "tax_unit_price", "tax_amount", "price_book",
+            "suggested_quantity", "source_doc_no", "modify_time",
+            "source_id", "i_ord", "same_auxiliary", "update_mark", "expand_mark"};
+
+    private static final int IN_CLAUSE_CHUNK_SIZE = 500;
+    static final String DETAIL_STAGING_TABLE = "#dm_order_detail_stage";
+
+    /**
+     * 本地订单主键映射（source_id / order_no -> 本地id）
+     */
+    public static class OrderKeyMap {
+        private final Map<Integer, Integer> bySourceId = new HashMap<>();
+        private final Map<String, Integer> byOrderNo = new HashMap<>();
+
+        /**
+         * 解析本地订单ID（优先source_id，其次order_no）
+         * @return 本地订单ID，不存在返回null
+         */
+        public Integer resolve(DmOrder order) {
+            Integer id = order.getSourceId() != null ? bySourceId.get(order.getSourceId()) : null;
+            if (id == null && order.getOrderNo() != null) {
+                id = byOrderNo.get(order.getOrderNo());
+            }
+            return id;
+        }
+
+        /**
+         * 记录订单的本地ID（插入新订单后调用，保证同页重复订单走更新）
+         */
+        public void put(DmOrder order, Integer localId) {
+            if (order.getSourceId() != null) {
+                bySourceId.put(order.getSourceId(), localId);
+            }
+            if (order.getOrderNo() != null) {
+                byOrderNo.put(order.getOrderNo(), localId);
+            }
+        }
+    }
+
+    /**
+     * 同步状态累加器
+     * 收集一个批次内各订单的推送结果，由 flushSyncStatus 一次性写回
+     */
+    public static class SyncStatusBatch {
+        private final Set<Integer> syncedIds = new LinkedHashSet<>();
+        private final Map<Integer, String> failedErrors = new LinkedHashMap<>();
+
+        /**
+         * 记录推送成功的订单
+         */
+        public void markSynced(Integer orderId) {
+            failedErrors.remove(orderId);
+            syncedIds.add(orderId);
+        }
+
+        /**
+         * 记录推送失败的订单（重试次数加一并记录错误信息）
+         */
+        public void markFailed(Integer orderId, String error) {
+            syncedIds.remove(orderId);
+            failedErrors.put(orderId, error);
+        }
+
+        public boolean isEmpty() {
+            return syncedIds.isEmpty() && failedErrors.isEmpty();
+        }
+
+        public int size() {
+            return syncedIds.size() + failedErrors.size();
+        }
+    }
+
+    /**
+     * 批量写入结果
+     */
+    public static class BulkUpsertResult {
+        private final int inserted;
+        private final int updated;
+        private final int details;
+
+        public BulkUpsertResult(int inserted, int updated, int details) {
+            this.inserted = inserted;
+            this.updated = updated;
+            this.details = details;
+        }
+
+        public int getInserted() { return inserted; }
+        public int getUpdated() { return updated; }
+        public int getDetails() { return details; }
+    }
     
+    // 推送读取的列：主键/关联键 + 简道云映射中已配置的列，映射文件更新后重新生成
+    private volatile ColumnProjection orderProjection;
+    private volatile ColumnProjection detailProjection;
+
     private DmLocalDao() {
+        buildProjections();
+        ConfigSnapshotService.getInstance().addReloadListener(this::buildProjections);
+    }
+
+    private void buildProjections() {
+        String mappingPath = ConfigManager.getInstance()
+                .getProperty("dm.to.jdy.field.mapping.path", "dm_to_jdy_field_mapping.json");
+        FieldMappingLoader loader = FieldMappingLoader.getInstance();
+        this.orderProjection = ColumnProjection.of(new String[]{"id", "order_no"}, ORDER_COLUMNS,
+                loader.getMappedColumns(mappingPath, null));
+        this.detailProjection = ColumnProjection.of(new String[]{"id", "order_id"}, DETAIL_COLUMNS,
+                loader.getMappedColumns(mappingPath, "order_details"));
     }
     
     public static synchronized DmLocalDao getInstance() {
@@ -32,45 +166,45 @@ public class DmLocalDao {
      * @return 上次同步时间
      */
     public LocalDateTime getLastSyncTime() {
-        try (Connection conn = DatabaseConnectionPool.getConnection();
-             Statement stmt = conn.createStatement()) {
-            
-            ResultSet rs = stmt.executeQuery(
-                "SELECT TOP 1 last_sync_time FROM sync_status ORDER BY id DESC");
-            
-            if (rs.next()) {
-                Timestamp timestamp = rs.getTimestamp("last_sync_time");
-                if (timestamp != null) {
-                    return timestamp.toLocalDateTime();
-                }
-            }
-        } catch (SQLException e) {
-            LogUtil.logError("获取DM同步时间戳失败: " + e.getMessage());
+        SyncCheckpoint checkpoint = CheckpointDao.getInstance().get(CheckpointDao.STREAM_DM);
+        if (checkpoint != null && checkpoint.getLastTime() != null) {
+            return checkpoint.getLastTime();
         }
-        
         return LocalDateTime.now().minusDays(7);
     }
     
     /**
-     * 更新同步时间戳
-     * @param syncTime 同步时间
+     * 获取上次同步位置的源ID
+     * 与上次同步时间组成 (modify_time, source_id) 组合位置，保存在检查点的 last_id 中
+     * @return 源ID，旧版检查点只记录了时间时返回null
      */
-    public void updateLastSyncTime(LocalDateTime syncTime) {
-        String sql = "UPDATE sync_status SET last_sync_time = ? WHERE id = 1";
-        
-        try (Connection conn = DatabaseConnectionPool.getConnection();
-             PreparedStatement pstmt = conn.prepareStatement(sql)) {
-            
-            pstmt.setTimestamp(1, Timestamp.valueOf(syncTime));
-            int rowsAffected = pstmt.executeUpdate();
-            
-            if (rowsAffected == 0) {
-                LogUtil.logError("更新DM同步时间戳失败，不存在ID为1的记录");
-            } else {
-                LogUtil.logInfo("DM同步时间戳已更新: " + syncTime);
-            }
-        } catch (SQLException e) {
-            LogUtil.logError("更新DM同步时间戳失败: " + e.getMessage());
+    public Integer getLastSyncSourceId() {
+        SyncCheckpoint checkpoint = CheckpointDao.getInstance().get(CheckpointDao.STREAM_DM);
+        if (checkpoint != null && checkpoint.getLastTime() != null) {
+            return checkpoint.getLastId();
+        }
+        return null;
+    }
+
+    /**
+     * 更新同步位置（按 (modify_time, source_id) 比较，只前进不后退）
+     * @param syncTime 已同步的最大修改时间
+     * @param sourceId 该修改时间内已同步的最大源ID
+     */
+    public void updateLastSyncPosition(LocalDateTime syncTime, Integer sourceId) {
+        boolean updated = CheckpointDao.getInstance().update(CheckpointDao.STREAM_DM, CheckpointDao.DEFAULT_PARTITION,
+                checkpoint -> {
+                    LocalDateTime lastTime = checkpoint.getLastTime();
+                    Integer lastId = checkpoint.getLastId();
+                    if (lastTime == null || syncTime.isAfter(lastTime)
+                            || (syncTime.isEqual(lastTime) && sourceId != null
+                                && (lastId == null || sourceId > lastId))) {
+                        checkpoint.setLastTime(syncTime);
+                        checkpoint.setLastId(sourceId);
+                    }
+                });
+        if (updated) {
+            LogUtil.logInfo("DM同步位置已更新: " + syncTime + ", source_id=" + sourceId);
         }
     }
     
@@ -122,6 +256,64 @@ public class DmLocalDao {
         return null;
     }
     
+    /**
+     * 一次查询一页订单对应的本地订单ID
+     * @param orders 远程订单列表
+     * @return 主键映射，查询失败时返回null
+     */
+    public OrderKeyMap lookupOrderIds(List<DmOrder> orders) {
+        OrderKeyMap keyMap = new OrderKeyMap();
+        Set<Integer> sourceIds = new LinkedHashSet<>();
+        Set<String> orderNos = new LinkedHashSet<>();
+        for (DmOrder order : orders) {
+            if (order.getSourceId() != null) {
+                sourceIds.add(order.getSourceId());
+            }
+            if (order.getOrderNo() != null) {
+                orderNos.add(order.getOrderNo());
+            }
+        }
+
+        try (Connection conn = DatabaseConnectionPool.getConnection()) {
+            List<Integer> sourceIdList = new ArrayList<>(sourceIds);
+            for (int start = 0; start < sourceIdList.size(); start += IN_CLAUSE_CHUNK_SIZE) {
+                List<Integer> chunk = sourceIdList.subList(start, Math.min(start + IN_CLAUSE_CHUNK_SIZE, sourceIdList.size()));
+                String sql = "SELECT id, source_id FROM dm_order WHERE source_id IN (" +
+                             String.join(", ", Collections.nCopies(chunk.size(), "?")) + ")";
+                try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
+                    for (int i = 0; i < chunk.size(); i++) {
+                        pstmt.setInt(i + 1, chunk.get(i));
+                    }
+                    ResultSet rs = pstmt.executeQuery();
+                    while (rs.next()) {
+                        keyMap.bySourceId.putIfAbsent(rs.getInt("source_id"), rs.getInt("id"));
+                    }
+                }
+            }
+
+            List<String> orderNoList = new ArrayList<>(orderNos);
+            for (int start = 0; start < orderNoList.size(); start += IN_CLAUSE_CHUNK_SIZE) {
+                List<String> chunk = orderNoList.subList(start, Math.min(start + IN_CLAUSE_CHUNK_SIZE, orderNoList.size()));
+                String sql = "SELECT id, order_no FROM dm_order WHERE order_no IN (" +
+                             String.join(", ", Collections.nCopies(chunk.size(), "?")) + ")";
+                try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
+                    for (int i = 0; i < chunk.size(); i++) {
+                        pstmt.setString(i + 1, chunk.get(i));
+                    }
+                    ResultSet rs = pstmt.executeQuery();
+                    while (rs.next()) {
+                        keyMap.byOrderNo.putIfAbsent(rs.getString("order_no"), rs.getInt("id"));
+                    }
+                }
+            }
+        } catch (SQLException e) {
+            LogUtil.logError("批量查询本地订单ID失败: " + e.getMessage());
+            return null;
+        }
+
+        return keyMap;
+    }
+
     /**
      * 插入订单（主表）
      * @param order 订单对象
@@ -403,78 +595,290 @@ public class DmLocalDao {
         return successCount;
     }
     
+    /**
+     * 批量写入一页订单（主表+子表）
+     * 订单和明细先写入会话临时表，再在一个事务内用 MERGE 写入主表、按页替换子表：
+     * 已存在的订单（优先按source_id，其次按order_no匹配）更新并重置为待同步，不存在的插入
+     * @param orders 订单列表（含明细）
+     * @return 写入结果，失败时整页回滚并返回null
+     */
+    public BulkUpsertResult bulkUpsertOrders(List<DmOrder> orders) {
+        if (orders == null || orders.isEmpty()) {
+            return new BulkUpsertResult(0, 0, 0);
+        }
+
+        String orderColumns = String.join(", ", ORDER_COLUMNS);
+        String detailColumns = String.join(", ", DETAIL_COLUMNS);
+
+        Connection conn = null;
+        try {
+            conn = DatabaseConnectionPool.getConnection();
+            conn.setAutoCommit(false);
+
+            createStagingTables(conn);
+
+            // 1. 写入临时表
+            String orderStageSql = "INSERT INTO #dm_order_stage (row_no, " + orderColumns + ") VALUES (?, " +
+                    String.join(", ", Collections.nCopies(ORDER_COLUMNS.length, "?")) + ")";
+            try (PreparedStatement orderStmt = conn.prepareStatement(orderStageSql)) {
+                int rowNo = 0;
+                for (DmOrder order : orders) {
+                    rowNo++;
+                    orderStmt.setInt(1, rowNo);
+                    bindOrderColumns(orderStmt, 2, order);
+                    orderStmt.addBatch();
+                }
+                orderStmt.executeBatch();
+            }
+            // 明细是否使用 SQLServerBulkCopy（关闭时退回参数化批处理），每页读取当前配置，修改后下一页生效
+            if (ConfigManager.getInstance().getBooleanProperty("dm.pull.bulkCopy", true)) {
+                stageDetailsWithBulkCopy(conn, orders);
+            } else {
+                stageDetailsWithBatch(conn, orders);
+            }
+
+            int detailCount;
+            try (Statement stmt = conn.createStatement()) {
+                // 2. 解析本地订单ID（优先source_id，其次order_no）
+                stmt.executeUpdate("UPDATE s SET local_id = COALESCE(" +
+                        "(SELECT TOP 1 o.id FROM dm_order o WHERE o.source_id = s.source_id), " +
+                        "(SELECT TOP 1 o.id FROM dm_order o WHERE o.order_no = s.order_no)) " +
+                        "FROM #dm_order_stage s");
+
+                // 3. 合并主表
+                StringBuilder updateSet = new StringBuilder();
+                StringBuilder sourceValues = new StringBuilder();
+                for (String column : ORDER_COLUMNS) {
+                    updateSet.append(column).append(" = s.").append(column).append(", ");
+                    sourceValues.append("s.").append(column).append(", ");
+                }
+                stmt.executeUpdate("MERGE dm_order AS t USING #dm_order_stage AS s ON t.id = s.local_id " +
+                        "WHEN MATCHED THEN UPDATE SET " + updateSet + "sync_status = 0, updated_time = GETDATE() " +
+                        "WHEN NOT MATCHED BY TARGET THEN INSERT (" + orderColumns + ", sync_status, created_time, updated_time) " +
+                        "VALUES (" + sourceValues + "0, GETDATE(), GETDATE()) " +
+                        "OUTPUT s.row_no, inserted.id, $action INTO #dm_order_merged (row_no, order_id, merge_action);");
+
+                // 4. 替换本页订单的子表
+                stmt.executeUpdate("DELETE d FROM dm_order_detail d JOIN #dm_order_merged m ON d.order_id = m.order_id");
+                StringBuilder detailValues = new StringBuilder();
+                for (String column : DETAIL_COLUMNS) {
+                    detailValues.append("s.").append(column).append(", ");
+                }
+                detailCount = stmt.executeUpdate("INSERT INTO dm_order_detail (order_id, " + detailColumns +
+                        ", created_time, updated_time) SELECT m.order_id, " + detailValues + "GETDATE(), GETDATE() " +
+                        "FROM " + DETAIL_STAGING_TABLE + " s JOIN #dm_order_merged m ON m.row_no = s.row_no");
+            }
+
+            int inserted = 0;
+            int updated = 0;
+            try (Statement stmt = conn.createStatement();
+                 ResultSet rs = stmt.executeQuery(
+                         "SELECT merge_action, COUNT(*) AS cnt FROM #dm_order_merged GROUP BY merge_action")) {
+                while (rs.next()) {
+                    if ("INSERT".equals(rs.getString("merge_action"))) {
+                        inserted = rs.getInt("cnt");
+                    } else if ("UPDATE".equals(rs.getString("merge_action"))) {
+                        updated = rs.getInt("cnt");
+                    }
+                }
+            }
+
+            conn.commit();
+            return new BulkUpsertResult(inserted, updated, detailCount);
+        } catch (SQLException e) {
+            LogUtil.logError("批量写入DM订单失败，已回滚本页: " + e.getMessage());
+            if (conn != null) {
+                try {
+                    conn.rollback();
+                } catch (SQLException ex) {
+                    LogUtil.logError("回滚DM订单批量写入失败: " + ex.getMessage());
+                }
+            }
+            return null;
+        } finally {
+            if (conn != null) {
+                // 临时表属于会话，连接归还连接池前需清理
+                try (Statement stmt = conn.createStatement()) {
+                    dropStagingTables(stmt);
+                } catch (SQLException e) {
+                    LogUtil.logError("清理DM订单临时表失败: " + e.getMessage());
+                }
+                try {
+                    conn.setAutoCommit(true);
+                    conn.close();
+                } catch (SQLException e) {
+                    LogUtil.logError("关闭连接失败: " + e.getMessage());
+                }
+            }
+        }
+    }
+
+    /**
+     * 按目标表结构创建本页的临时表，保证字段类型一致
+     */
+    static void createStagingTables(Connection conn) throws SQLException {
+        try (Statement stmt = conn.createStatement()) {
+            dropStagingTables(stmt);
+            stmt.execute("SELECT TOP 0 " + String.join(", ", ORDER_COLUMNS) + " INTO #dm_order_stage FROM dm_order");
+            stmt.execute("ALTER TABLE #dm_order_stage ADD row_no INT NOT NULL, local_id INT NULL");
+            stmt.execute("SELECT TOP 0 " + String.join(", ", DETAIL_COLUMNS) + " INTO " + DETAIL_STAGING_TABLE +
+                    " FROM dm_order_detail");
+            stmt.execute("ALTER TABLE " + DETAIL_STAGING_TABLE + " ADD row_no INT NOT NULL");
+            stmt.execute("CREATE TABLE #dm_order_merged (row_no INT, order_id INT, merge_action NVARCHAR(10))");
+        }
+    }
+
+    /**
+     * 逐行参数化批量写入明细临时表
+     * 驱动会把批处理中的每一行作为单独的RPC发送，明细多时往返次数与行数成正比
+     * @return 写入行数
+     */
+    static int stageDetailsWithBatch(Connection conn, List<DmOrder> orders) throws SQLException {
+        String detailStageSql = "INSERT INTO " + DETAIL_STAGING_TABLE + " (row_no, " + String.join(", ", DETAIL_COLUMNS) +
+                ") VALUES (?, " + String.join(", ", Collections.nCopies(DETAIL_COLUMNS.length, "?")) + ")";
+        int count = 0;
+        try (PreparedStatement detailStmt = conn.prepareStatement(detailStageSql)) {
+            int rowNo = 0;
+            for (DmOrder order : orders) {
+                rowNo++;
+                if (order.getDetails() != null) {
+                    for (DmOrderDetail detail : order.getDetails()) {
+                        detailStmt.setInt(1, rowNo);
+                        bindDetailColumns(detailStmt, 2, detail);
+                        detailStmt.addBatch();
+                        count++;
+                    }
+                }
+            }
+            if (count > 0) {
+                detailStmt.executeBatch();
+            }
+        }
+        return count;
+    }
+
+    /**
+     * 通过 SQLServerBulkCopy 将整页明细以一个批量复制流写入临时表
+     * 使用调用方连接且不启用内部事务，临时表可见并参与调用方事务
+     */
+    static void stageDetailsWithBulkCopy(Connection conn, List<DmOrder> orders) throws SQLException {
+        DmOrderDetailBulkRecord record = DmOrderDetailBulkRecord.forStagingTable(
+                conn, DETAIL_STAGING_TABLE, DETAIL_COLUMNS, orders);
+
+        SQLServerBulkCopyOptions options = new SQLServerBulkCopyOptions();
+        options.setUseInternalTransaction(false);
+        options.setKeepNulls(true);
+        options.setBatchSize(0); // 0表示整个数据源作为一个批次
+
+        try (SQLServerBulkCopy bulkCopy = new SQLServerBulkCopy(conn.unwrap(SQLServerConnection.class))) {
+            bulkCopy.setDestinationTableName(DETAIL_STAGING_TABLE);
+            bulkCopy.setBulkCopyOptions(options);
+            bulkCopy.addColumnMapping("row_no", "row_no");
+            for (String column : DETAIL_COLUMNS) {
+                bulkCopy.addColumnMapping(column, column);
+            }
+            bulkCopy.writeToServer(record);
+        }
+    }
+
+    static void dropStagingTables(Statement stmt) throws SQLException {
+        stmt.execute("IF OBJECT_ID('tempdb..#dm_order_stage') IS NOT NULL DROP TABLE #dm_order_stage");
+        stmt.execute("IF OBJECT_ID('tempdb.." + DETAIL_STAGING_TABLE + "') IS NOT NULL DROP TABLE " + DETAIL_STAGING_TABLE);
+        stmt.execute("IF OBJECT_ID('tempdb..#dm_order_merged') IS NOT NULL DROP TABLE #dm_order_merged");
+    }
+
+    /**
+     * 按 ORDER_COLUMNS 顺序绑定订单字段
+     */
+    private int bindOrderColumns(PreparedStatement pstmt, int idx, DmOrder order) throws SQLException {
+        pstmt.setInt(idx++, order.getSourceId());
+        pstmt.setString(idx++, order.getOrderNo());
+        pstmt.setString(idx++, order.getMonthSettlement());
+        pstmt.setString(idx++, order.getFactory());
+        pstmt.setString(idx++, order.getPersonInCharge());
+        pstmt.setString(idx++, order.getCurrency());
+        pstmt.setString(idx++, order.getMark());
+        pstmt.setBigDecimal(idx++, order.getTaxRate());
+        pstmt.setString(idx++, order.getPaymentTerms());
+        pstmt.setString(idx++, order.getRemarks());
+        pstmt.setString(idx++, order.getInWarehouse());
+        pstmt.setString(idx++, order.getMaterialWarehouse());
+        pstmt.setString(idx++, order.getOriginalTerms());
+        pstmt.setBigDecimal(idx++, order.getTotalQuantity());
+        pstmt.setBigDecimal(idx++, order.getTotalTaxAmount());
+        pstmt.setString(idx++, order.getDepartment());
+        pstmt.setString(idx++, order.getCreator());
+        pstmt.setString(idx++, order.getAuditor());
+        pstmt.setString(idx++, order.getApprover());
+        setTimestamp(pstmt, idx++, order.getSubmitTime());
+        pstmt.setTimestamp(idx++, Timestamp.valueOf(order.getModifyTime()));
+        pstmt.setInt(idx++, order.getOrderStatus());
+        pstmt.setString(idx++, order.getIOrd());
+        setTimestamp(pstmt, idx++, order.getFillDate());
+        pstmt.setString(idx++, order.getPriceBook());
+        pstmt.setString(idx++, order.getResponsibleDepartment());
+        setTimestamp(pstmt, idx++, order.getCurrentPaymentDate());
+        setTimestamp(pstmt, idx++, order.getOriginalPaymentDate());
+        pstmt.setString(idx++, order.getDocumentType());
+        return idx;
+    }
+
+    /**
+     * 按 DETAIL_COLUMNS 顺序绑定明细字段
+     */
+    private static int bindDetailColumns(PreparedStatement pstmt, int idx, DmOrderDetail detail) throws SQLException {
+        pstmt.setString(idx++, detail.getOrderNo());
+        if (detail.getLineNo() != null) {
+            pstmt.setInt(idx++, detail.getLineNo());
+        } else {
+            pstmt.setNull(idx++, Types.INTEGER);
+        }
+        pstmt.setString(idx++, detail.getMaterialCode());
+        pstmt.setString(idx++, detail.getMaterialDesc());
+        pstmt.setBigDecimal(idx++, detail.getQuantity());
+        pstmt.setBigDecimal(idx++, detail.getUnitPrice());
+        pstmt.setBigDecimal(idx++, detail.getTaxUnitPrice());
+        pstmt.setBigDecimal(idx++, detail.getTaxAmount());
+        pstmt.setString(idx++, detail.getPriceBook());
+        pstmt.setBigDecimal(idx++, detail.getSuggestedQuantity());
+        pstmt.setString(idx++, detail.getSourceDocNo());
+        setTimestamp(pstmt, idx++, detail.getModifyTime());
+        if (detail.getSourceId() != null) {
+            pstmt.setInt(idx++, detail.getSourceId());
+        } else {
+            pstmt.setNull(idx++, Types.INTEGER);
+        }
+        pstmt.setString(idx++, detail.getIOrd());
+        pstmt.setString(idx++, detail.getSameAuxiliary());
+        pstmt.setString(idx++, detail.getUpdateMark());
+        pstmt.setString(idx++, detail.getExpandMark());
+        return idx;
+    }
+
+    private static void setTimestamp(PreparedStatement pstmt, int idx, LocalDateTime value) throws SQLException {
+        if (value != null) {
+            pstmt.setTimestamp(idx, Timestamp.valueOf(value));
+        } else {
+            pstmt.setNull(idx, Types.TIMESTAMP);
+        }
+    }
+
     /**
      * 查询待同步的订单（sync_status = 0）
      * @return 待同步订单列表
      */
     public List<DmOrder> queryPendingOrders() {
         List<DmOrder> orders = new ArrayList<>();
-        String sql = "SELECT * FROM dm_order WHERE sync_status = 0 AND sync_attempts < 10 ORDER BY id ASC";
+        ColumnProjection projection = orderProjection;
+        String sql = "SELECT " + projection.selectList() +
+                     " FROM dm_order WHERE sync_status = 0 AND sync_attempts < 10 ORDER BY id ASC";
         
         try (Connection conn = DatabaseConnectionPool.getConnection();
              Statement stmt = conn.createStatement();
              ResultSet rs = stmt.executeQuery(sql)) {
             
             while (rs.next()) {
-                DmOrder order = new DmOrder();
-                order.setId(rs.getInt("id"));
-                order.setSourceId(rs.getInt("source_id"));
-                order.setOrderNo(rs.getString("order_no"));
-                order.setMonthSettlement(rs.getString("month_settlement"));
-                order.setFactory(rs.getString("factory"));
-                order.setPersonInCharge(rs.getString("person_in_charge"));
-                order.setCurrency(rs.getString("currency"));
-                order.setMark(rs.getString("mark"));
-                order.setTaxRate(rs.getBigDecimal("tax_rate"));
-                order.setPaymentTerms(rs.getString("payment_terms"));
-                order.setRemarks(rs.getString("remarks"));
-                order.setInWarehouse(rs.getString("in_warehouse"));
-                order.setMaterialWarehouse(rs.getString("material_warehouse"));
-                order.setOriginalTerms(rs.getString("original_terms"));
-                order.setTotalQuantity(rs.getBigDecimal("total_quantity"));
-                order.setTotalTaxAmount(rs.getBigDecimal("total_tax_amount"));
-                order.setDepartment(rs.getString("department"));
-                order.setCreator(rs.getString("creator"));
-                order.setAuditor(rs.getString("auditor"));
-                order.setApprover(rs.getString("approver"));
-                
-                Timestamp submitTime = rs.getTimestamp("submit_time");
-                if (submitTime != null) {
-                    order.setSubmitTime(submitTime.toLocalDateTime());
-                }
-
-                Timestamp modifyTime = rs.getTimestamp("modify_time");
-                if (modifyTime != null) {
-                    order.setModifyTime(modifyTime.toLocalDateTime());
-                }
-                order.setOrderStatus(rs.getInt("order_status"));
-                order.setSyncStatus(rs.getInt("sync_status"));
-                order.setSyncAttempts(rs.getInt("sync_attempts"));
-                order.setSyncError(rs.getString("sync_error"));
-                
-                order.setIOrd(rs.getString("i_ord"));
-                
-                Timestamp fillDate = rs.getTimestamp("fill_date");
-                if (fillDate != null) {
-                    order.setFillDate(fillDate.toLocalDateTime());
-                }
-                
-                order.setPriceBook(rs.getString("price_book"));
-                order.setResponsibleDepartment(rs.getString("responsible_department"));
-                
-                Timestamp currentPaymentDate = rs.getTimestamp("current_payment_date");
-                if (currentPaymentDate != null) {
-                    order.setCurrentPaymentDate(currentPaymentDate.toLocalDateTime());
-                }
-                
-                Timestamp originalPaymentDate = rs.getTimestamp("original_payment_date");
-                if (originalPaymentDate != null) {
-                    order.setOriginalPaymentDate(originalPaymentDate.toLocalDateTime());
-                }
-                
-                order.setDocumentType(rs.getString("document_type"));
-                
-                orders.add(order);
+                orders.add(readOrder(rs, projection));
             }
         } catch (SQLException e) {
             LogUtil.logError("查询待同步订单失败: " + e.getMessage());
@@ -484,6 +888,89 @@ public class DmLocalDao {
         return orders;
     }
     
+    /**
+     * 探测待同步订单数量，只读主键，不读取订单和明细内容
+     * @param limit 最多计数的行数，超过时返回limit
+     * @return 待同步订单数（不超过limit），失败时返回-1
+     */
+    public int countPendingOrders(int limit) {
+        String sql = "SELECT COUNT(*) FROM (SELECT TOP (?) id FROM dm_order " +
+                     "WHERE sync_status = 0 AND sync_attempts < 10) t";
+        try (Connection conn = DatabaseConnectionPool.getConnection();
+             PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            pstmt.setInt(1, limit);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                return rs.next() ? rs.getInt(1) : 0;
+            }
+        } catch (SQLException e) {
+            LogUtil.logError("探测待同步DM订单失败: " + e.getMessage());
+            return -1;
+        }
+    }
+
+    /**
+     * 分页查询待同步的订单及其明细（sync_status = 0）
+     * 按ID键集分页：主表一次查询一页，明细按订单ID列表一次查询后挂到对应订单上
+     * @param afterId 上一页最大订单ID（首页传0）
+     * @param pageSize 每页订单数
+     * @return 本页待同步订单（已填充明细），失败时返回空列表
+     */
+    public List<DmOrder> queryPendingOrderPage(int afterId, int pageSize) {
+        List<DmOrder> orders = new ArrayList<>();
+        ColumnProjection projection = orderProjection;
+        ColumnProjection detailColumns = detailProjection;
+        String sql = "SELECT TOP (?) " + projection.selectList() +
+                     " FROM dm_order WHERE sync_status = 0 AND sync_attempts < 10 AND id > ? ORDER BY id ASC";
+
+        try (Connection conn = DatabaseConnectionPool.getConnection()) {
+            try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
+                pstmt.setInt(1, pageSize);
+                pstmt.setInt(2, afterId);
+                try (ResultSet rs = pstmt.executeQuery()) {
+                    while (rs.next()) {
+                        orders.add(readOrder(rs, projection));
+                    }
+                }
+            }
+
+            if (orders.isEmpty()) {
+                return orders;
+            }
+
+            Map<Integer, List<DmOrderDetail>> detailsByOrder = new HashMap<>();
+            for (DmOrder order : orders) {
+                List<DmOrderDetail> details = new ArrayList<>();
+                order.setDetails(details);
+                detailsByOrder.put(order.getId(), details);
+            }
+
+            for (int start = 0; start < orders.size(); start += IN_CLAUSE_CHUNK_SIZE) {
+                List<DmOrder> chunk = orders.subList(start, Math.min(start + IN_CLAUSE_CHUNK_SIZE, orders.size()));
+                String detailSql = "SELECT " + detailColumns.selectList() + " FROM dm_order_detail WHERE order_id IN (" +
+                                   String.join(", ", Collections.nCopies(chunk.size(), "?")) + ") ORDER BY order_id, line_no ASC";
+                try (PreparedStatement pstmt = conn.prepareStatement(detailSql)) {
+                    for (int i = 0; i < chunk.size(); i++) {
+                        pstmt.setInt(i + 1, chunk.get(i).getId());
+                    }
+                    try (ResultSet rs = pstmt.executeQuery()) {
+                        while (rs.next()) {
+                            DmOrderDetail detail = readOrderDetail(rs, detailColumns);
+                            List<DmOrderDetail> details = detailsByOrder.get(detail.getOrderId());
+                            if (details != null) {
+                                details.add(detail);
+                            }
+                        }
+                    }
+                }
+            }
+        } catch (SQLException e) {
+            LogUtil.logError("分页查询待同步订单失败 (afterId=" + afterId + "): " + e.getMessage());
+            return new ArrayList<>();
+        }
+
+        return orders;
+    }
+
     /**
      * 查询订单的所有明细
      * @param orderId 订单ID
@@ -491,7 +978,8 @@ public class DmLocalDao {
      */
     public List<DmOrderDetail> queryOrderDetails(Integer orderId) {
         List<DmOrderDetail> details = new ArrayList<>();
-        String sql = "SELECT * FROM dm_order_detail WHERE order_id = ? ORDER BY line_no ASC";
+        ColumnProjection projection = detailProjection;
+        String sql = "SELECT " + projection.selectList() + " FROM dm_order_detail WHERE order_id = ? ORDER BY line_no ASC";
         
         try (Connection conn = DatabaseConnectionPool.getConnection();
              PreparedStatement pstmt = conn.prepareStatement(sql)) {
@@ -500,42 +988,7 @@ public class DmLocalDao {
             ResultSet rs = pstmt.executeQuery();
             
             while (rs.next()) {
-                DmOrderDetail detail = new DmOrderDetail();
-                detail.setId(rs.getInt("id"));
-                detail.setOrderId(rs.getInt("order_id"));
-                detail.setOrderNo(rs.getString("order_no"));
-                
-                Integer lineNo = rs.getInt("line_no");
-                if (!rs.wasNull()) {
-                    detail.setLineNo(lineNo);
-                }
-                
-                detail.setMaterialCode(rs.getString("material_code"));
-                detail.setMaterialDesc(rs.getString("material_desc"));
-                detail.setQuantity(rs.getBigDecimal("quantity"));
-                detail.setUnitPrice(rs.getBigDecimal("unit_price"));
-                detail.setTaxUnitPrice(rs.getBigDecimal("tax_unit_price"));
-                detail.setTaxAmount(rs.getBigDecimal("tax_amount"));
-                detail.setPriceBook(rs.getString("price_book"));
-                detail.setSuggestedQuantity(rs.getBigDecimal("suggested_quantity"));
-                detail.setSourceDocNo(rs.getString("source_doc_no"));
-                
-                Timestamp modifyTime = rs.getTimestamp("modify_time");
-                if (modifyTime != null) {
-                    detail.setModifyTime(modifyTime.toLocalDateTime());
-                }
-                
-                Integer sourceId = rs.getInt("source_id");
-                if (!rs.wasNull()) {
-                    detail.setSourceId(sourceId);
-                }
-                
-                detail.setIOrd(rs.getString("i_ord"));
-                detail.setSameAuxiliary(rs.getString("same_auxiliary"));
-                detail.setUpdateMark(rs.getString("update_mark"));
-                detail.setExpandMark(rs.getString("expand_mark"));
-                
-                details.add(detail);
+                details.add(readOrderDetail(rs, projection));
             }
         } catch (SQLException e) {
             LogUtil.logError("查询订单明细失败 (order_id=" + orderId + "): " + e.getMessage());
@@ -545,6 +998,100 @@ public class DmLocalDao {
         return details;
     }
     
+    /**
+     * 读取一行dm_order数据（未投影的列保持为空）
+     */
+    private DmOrder readOrder(ResultSet rs, ColumnProjection p) throws SQLException {
+        DmOrder order = new DmOrder();
+        order.setId(rs.getInt("id"));
+        order.setSourceId(getInt(rs, p, "source_id"));
+        order.setOrderNo(rs.getString("order_no"));
+        order.setMonthSettlement(getString(rs, p, "month_settlement"));
+        order.setFactory(getString(rs, p, "factory"));
+        order.setPersonInCharge(getString(rs, p, "person_in_charge"));
+        order.setCurrency(getString(rs, p, "currency"));
+        order.setMark(getString(rs, p, "mark"));
+        order.setTaxRate(getBigDecimal(rs, p, "tax_rate"));
+        order.setPaymentTerms(getString(rs, p, "payment_terms"));
+        order.setRemarks(getString(rs, p, "remarks"));
+        order.setInWarehouse(getString(rs, p, "in_warehouse"));
+        order.setMaterialWarehouse(getString(rs, p, "material_warehouse"));
+        order.setOriginalTerms(getString(rs, p, "original_terms"));
+        order.setTotalQuantity(getBigDecimal(rs, p, "total_quantity"));
+        order.setTotalTaxAmount(getBigDecimal(rs, p, "total_tax_amount"));
+        order.setDepartment(getString(rs, p, "department"));
+        order.setCreator(getString(rs, p, "creator"));
+        order.setAuditor(getString(rs, p, "auditor"));
+        order.setApprover(getString(rs, p, "approver"));
+        order.setSubmitTime(getDateTime(rs, p, "submit_time"));
+        order.setModifyTime(getDateTime(rs, p, "modify_time"));
+        order.setOrderStatus(getInt(rs, p, "order_status"));
+        order.setIOrd(getString(rs, p, "i_ord"));
+        order.setFillDate(getDateTime(rs, p, "fill_date"));
+        order.setPriceBook(getString(rs, p, "price_book"));
+        order.setResponsibleDepartment(getString(rs, p, "responsible_department"));
+        order.setCurrentPaymentDate(getDateTime(rs, p, "current_payment_date"));
+        order.setOriginalPaymentDate(getDateTime(rs, p, "original_payment_date"));
+        order.setDocumentType(getString(rs, p, "document_type"));
+        return order;
+    }
+
+    /**
+     * 读取一行dm_order_detail数据（未投影的列保持为空）
+     */
+    private DmOrderDetail readOrderDetail(ResultSet rs, ColumnProjection p) throws SQLException {
+        DmOrderDetail detail = new DmOrderDetail();
+        detail.setId(rs.getInt("id"));
+        detail.setOrderId(rs.getInt("order_id"));
+        detail.setOrderNo(getString(rs, p, "order_no"));
+        detail.setLineNo(getInteger(rs, p, "line_no"));
+        detail.setMaterialCode(getString(rs, p, "material_code"));
+        detail.setMaterialDesc(getString(rs, p, "material_desc"));
+        detail.setQuantity(getBigDecimal(rs, p, "quantity"));
+        detail.setUnitPrice(getBigDecimal(rs, p, "unit_price"));
+        detail.setTaxUnitPrice(getBigDecimal(rs, p, "tax_unit_price"));
+        detail.setTaxAmount(getBigDecimal(rs, p, "tax_amount"));
+        detail.setPriceBook(getString(rs, p, "price_book"));
+        detail.setSuggestedQuantity(getBigDecimal(rs, p, "suggested_quantity"));
+        detail.setSourceDocNo(getString(rs, p, "source_doc_no"));
+        detail.setModifyTime(getDateTime(rs, p, "modify_time"));
+        detail.setSourceId(getInteger(rs, p, "source_id"));
+        detail.setIOrd(getString(rs, p, "i_ord"));
+        detail.setSameAuxiliary(getString(rs, p, "same_auxiliary"));
+        detail.setUpdateMark(getString(rs, p, "update_mark"));
+        detail.setExpandMark(getString(rs, p, "expand_mark"));
+        return detail;
+    }
+
+    private static String getString(ResultSet rs, ColumnProjection p, String column) throws SQLException {
+        return p.contains(column) ? rs.getString(column) : null;
+    }
+
+    private static java.math.BigDecimal getBigDecimal(ResultSet rs, ColumnProjection p, String column)
+            throws SQLException {
+        return p.contains(column) ? rs.getBigDecimal(column) : null;
+    }
+
+    private static int getInt(ResultSet rs, ColumnProjection p, String column) throws SQLException {
+        return p.contains(column) ? rs.getInt(column) : 0;
+    }
+
+    private static Integer getInteger(ResultSet rs, ColumnProjection p, String column) throws SQLException {
+        if (!p.contains(column)) {
+            return null;
+        }
+        int value = rs.getInt(column);
+        return rs.wasNull() ? null : value;
+    }
+
+    private static LocalDateTime getDateTime(ResultSet rs, ColumnProjection p, String column) throws SQLException {
+        if (!p.contains(column)) {
+            return null;
+        }
+        Timestamp value = rs.getTimestamp(column);
+        return value != null ? value.toLocalDateTime() : null;
+    }
+
     /**
      * 更新同步状态
      * @param orderId 订单ID
@@ -570,6 +1117,77 @@ public class DmLocalDao {
         return false;
     }
     
+    /**
+     * 一次性写回一个批次的同步状态（同一事务）
+     * 成功订单按ID列表集合更新，失败订单通过JDBC批处理更新重试次数和错误信息
+     * @param batch 同步状态累加器，写回成功后清空
+     * @return 是否成功
+     */
+    public boolean flushSyncStatus(SyncStatusBatch batch) {
+        if (batch == null || batch.isEmpty()) {
+            return true;
+        }
+
+        String failedSql = "UPDATE dm_order SET sync_attempts = sync_attempts + 1, sync_error = ?, " +
+                           "updated_time = GETDATE() WHERE id = ?";
+
+        Connection conn = null;
+        try {
+            conn = DatabaseConnectionPool.getConnection();
+            conn.setAutoCommit(false);
+
+            List<Integer> syncedIds = new ArrayList<>(batch.syncedIds);
+            for (int start = 0; start < syncedIds.size(); start += IN_CLAUSE_CHUNK_SIZE) {
+                List<Integer> chunk = syncedIds.subList(start, Math.min(start + IN_CLAUSE_CHUNK_SIZE, syncedIds.size()));
+                String sql = "UPDATE dm_order SET sync_status = 1, sync_error = NULL, updated_time = GETDATE() " +
+                             "WHERE id IN (" + String.join(", ", Collections.nCopies(chunk.size(), "?")) + ")";
+                try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
+                    for (int i = 0; i < chunk.size(); i++) {
+                        pstmt.setInt(i + 1, chunk.get(i));
+                    }
+                    pstmt.executeUpdate();
+                }
+            }
+
+            if (!batch.failedErrors.isEmpty()) {
+                try (PreparedStatement pstmt = conn.prepareStatement(failedSql)) {
+                    for (Map.Entry<Integer, String> entry : batch.failedErrors.entrySet()) {
+                        String error = entry.getValue();
+                        pstmt.setString(1, error != null && error.length() > 500 ? error.substring(0, 500) : error);
+                        pstmt.setInt(2, entry.getKey());
+                        pstmt.addBatch();
+                    }
+                    pstmt.executeBatch();
+                }
+            }
+
+            conn.commit();
+            batch.syncedIds.clear();
+            batch.failedErrors.clear();
+            return true;
+
+        } catch (SQLException e) {
+            LogUtil.logError("批量更新同步状态失败 (" + batch.size() + "条): " + e.getMessage());
+            if (conn != null) {
+                try {
+                    conn.rollback();
+                } catch (SQLException ex) {
+                    LogUtil.logError("回滚同步状态事务失败: " + ex.getMessage());
+                }
+            }
+            return false;
+        } finally {
+            if (conn != null) {
+                try {
+                    conn.setAutoCommit(true);
+                    conn.close();
+                } catch (SQLException e) {
+                    LogUtil.logError("关闭连接失败: " + e.getMessage());
+                }
+            }
+        }
+    }
+
     /**
      * 增加重试次数
      * @param orderId 订单ID
@@ -0,0 +1,133 @@
+package org.example.dm.dao;
+
+import com.microsoft.sqlserver.jdbc.ISQLServerBulkRecord;
+import org.example.dm.model.DmOrder;
+import org.example.dm.model.DmOrderDetail;
+
+import java.sql.*;
+import java.time.LocalDateTime;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * DM订单明细批量复制数据源
+ * 将一页订单的全部明细按行提供给 SQLServerBulkCopy，每行第一列为订单在本页中的行号（row_no），
+ * 其余列与 DETAIL_COLUMNS 一致；列类型、精度取自目标临时表，避免驱动端类型转换
+ */
+class DmOrderDetailBulkRecord implements ISQLServerBulkRecord {
+    private final String[] columnNames;
+    private final int[] columnTypes;
+    private final int[] precisions;
+    private final int[] scales;
+    private final Set<Integer> ordinals = new LinkedHashSet<>();
+
+    private final List<DmOrder> orders;
+    private int orderIndex = 0;
+    private int detailIndex = -1;
+
+    private DmOrderDetailBulkRecord(ResultSetMetaData metaData, List<DmOrder> orders) throws SQLException {
+        int count = metaData.getColumnCount();
+        this.columnNames = new String[count];
+        this.columnTypes = new int[count];
+        this.precisions = new int[count];
+        this.scales = new int[count];
+        for (int i = 0; i < count; i++) {
+            columnNames[i] = metaData.getColumnName(i + 1);
+            columnTypes[i] = metaData.getColumnType(i + 1);
+            precisions[i] = metaData.getPrecision(i + 1);
+            scales[i] = metaData.getScale(i + 1);
+            ordinals.add(i + 1);
+        }
+        this.orders = orders;
+    }
+
+    /**
+     * 按临时表结构创建数据源
+     * @param conn 数据库连接（临时表所在会话）
+     * @param stagingTable 临时表名
+     * @param detailColumns 明细业务字段
+     * @param orders 本页订单（行号按列表顺序从1开始）
+     */
+    static DmOrderDetailBulkRecord forStagingTable(Connection conn, String stagingTable, String[] detailColumns,
+            List<DmOrder> orders) throws SQLException {
+        String sql = "SELECT TOP 0 row_no, " + String.join(", ", detailColumns) + " FROM " + stagingTable;
+        try (Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery(sql)) {
+            return new DmOrderDetailBulkRecord(rs.getMetaData(), orders);
+        }
+    }
+
+    @Override
+    public Set<Integer> getColumnOrdinals() {
+        return ordinals;
+    }
+
+    @Override
+    public String getColumnName(int column) {
+        return columnNames[column - 1];
+    }
+
+    @Override
+    public int getColumnType(int column) {
+        return columnTypes[column - 1];
+    }
+
+    @Override
+    public int getPrecision(int column) {
+        return precisions[column - 1];
+    }
+
+    @Override
+    public int getScale(int column) {
+        return scales[column - 1];
+    }
+
+    @Override
+    public boolean isAutoIncrement(int column) {
+        return false;
+    }
+
+    @Override
+    public boolean next() {
+        detailIndex++;
+        while (orderIndex < orders.size()) {
+            List<DmOrderDetail> details = orders.get(orderIndex).getDetails();
+            if (details != null && detailIndex < details.size()) {
+                return true;
+            }
+            orderIndex++;
+            detailIndex = 0;
+        }
+        return false;
+    }
+
+    @Override
+    public Object[] getRowData() {
+        DmOrderDetail detail = orders.get(orderIndex).getDetails().get(detailIndex);
+        return new Object[]{
+                orderIndex + 1,
+                detail.getOrderNo(),
+                detail.getLineNo(),
+                detail.getMaterialCode(),
+                detail.getMaterialDesc(),
+                detail.getQuantity(),
+                detail.getUnitPrice(),
+                detail.getTaxUnitPrice(),
+                detail.getTaxAmount(),
+                detail.getPriceBook(),
+                detail.getSuggestedQuantity(),
+                detail.getSourceDocNo(),
+                toTimestamp(detail.getModifyTime()),
+                detail.getSourceId(),
+                detail.getIOrd(),
+                detail.getSameAuxiliary(),
+                detail.getUpdateMark(),
+                detail.getExpandMark()
+        };
+    }
+
+    private static Timestamp toTimestamp(LocalDateTime value) {
+        return value != null ? Timestamp.valueOf(value) : null;
+    }
+}
@@ -4,12 +4,19 @@ import org.example.dm.DmDatabaseConnectionPool;
 import org.example.dm.config.DmConfigManager;
 import org.example.dm.model.DmOrder;
 import org.example.dm.model.DmOrderDetail;
+import org.example.config.ConfigSnapshotService;
+import org.example.util.ColumnProjection;
 import org.example.util.LogUtil;
 
 import java.sql.*;
 import java.time.LocalDateTime;
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
 
 /**
  * DM远程数据访问对象
@@ -17,12 +24,34 @@ import java.util.List;
  */
 public class DmRemoteDao {
     private static DmRemoteDao instance;
+    private static final int DETAIL_BATCH_SIZE = 100; // 批量查询明细时每条SQL包含的订单数
+
+    // 映射为DmOrder/DmOrderDetail时读取的本地字段名，查询时转换为客户字段名
+    private static final String[] ORDER_FIELDS = {
+            "source_id", "order_no", "month_settlement", "factory", "person_in_charge",
+            "currency", "mark", "tax_rate", "payment_terms", "remarks",
+            "in_warehouse", "material_warehouse", "original_terms",
+            "total_quantity", "total_tax_amount",
+            "department", "creator", "auditor", "approver",
+            "submit_time", "modify_time", "order_status"};
+    private static final String[] DETAIL_FIELDS = {
+            "order_no", "line_no", "material_code", "material_desc",
+            "quantity", "unit_price", "tax_unit_price", "tax_amount", "price_book",
+            "suggested_quantity", "source_doc_no", "modify_time"};
+
     private final DmDatabaseConnectionPool connectionPool;
     private final DmConfigManager configManager;
+    private volatile ColumnProjection orderProjection;
+    private volatile ColumnProjection detailProjection;
     
     private DmRemoteDao() {
         this.connectionPool = DmDatabaseConnectionPool.getInstance();
         this.configManager = DmConfigManager.getInstance();
+        // 字段映射或表名可能随配置更新变化，下次查询时按新配置重新生成查询列
+        ConfigSnapshotService.getInstance().addReloadListener(() -> {
+            orderProjection = null;
+            detailProjection = null;
+        });
     }
     
     public static synchronized DmRemoteDao getInstance() {
@@ -33,32 +62,47 @@ public class DmRemoteDao {
     }
     
     /**
-     * 查询增量主表数据
-     * @param lastSyncTime 上次同步时间
+     * 按 (modify_time, source_id) 组合键集分页查询增量主表数据
+     * 同一 modify_time 的大量记录按 source_id 继续翻页，不会因页大小不足而停滞或跳过记录
+     * @param lastSyncTime 已同步位置的修改时间，为null时从头查询
+     * @param lastSourceId 已同步位置的源ID（同一修改时间内的分页依据），为null时包含 lastSyncTime 时刻的全部记录
      * @param batchSize 批次大小
-     * @return 订单列表
+     * @return 订单列表（按 modify_time, source_id 升序），失败时返回空列表
      */
-    public List<DmOrder> fetchIncrementalOrders(LocalDateTime lastSyncTime, int batchSize) {
+    public List<DmOrder> fetchIncrementalOrders(LocalDateTime lastSyncTime, Integer lastSourceId, int batchSize) {
         List<DmOrder> orders = new ArrayList<>();
         String tableName = configManager.getMainTableName();
         String modifyTimeField = configManager.getSourceFieldName("modify_time");
-        
-        String sql = "SELECT TOP " + batchSize + " * FROM " + tableName + " " +
-                     (lastSyncTime != null ? "WHERE " + modifyTimeField + " > ? " : "") +
-                     "ORDER BY " + modifyTimeField + " ASC";
-        
-        try (Connection conn = connectionPool.getConnection();
-             PreparedStatement pstmt = conn.prepareStatement(sql)) {
-            
+        String sourceIdField = configManager.getSourceFieldName("source_id");
+
+        try (Connection conn = connectionPool.getConnection()) {
+            String where = "";
             if (lastSyncTime != null) {
-                pstmt.setTimestamp(1, Timestamp.valueOf(lastSyncTime));
+                where = lastSourceId != null
+                        ? "WHERE (" + modifyTimeField + " > ? OR (" + modifyTimeField + " = ? AND " +
+                          sourceIdField + " > ?)) "
+                        : "WHERE " + modifyTimeField + " >= ? ";
             }
-            
-            ResultSet rs = pstmt.executeQuery();
-            
-            while (rs.next()) {
-                DmOrder order = mapResultSetToOrder(rs);
-                orders.add(order);
+            String sql = "SELECT TOP " + batchSize + " " + getOrderProjection(conn).selectList() +
+                         " FROM " + tableName + " " + where +
+                         "ORDER BY " + modifyTimeField + " ASC, " + sourceIdField + " ASC";
+
+            try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
+                if (lastSyncTime != null) {
+                    Timestamp timestamp = Timestamp.valueOf(lastSyncTime);
+                    pstmt.setTimestamp(1, timestamp);
+                    if (lastSourceId != null) {
+                        pstmt.setTimestamp(2, timestamp);
+                        pstmt.setInt(3, lastSourceId);
+                    }
+                }
+
+                ResultSet rs = pstmt.executeQuery();
+
+                while (rs.next()) {
+                    DmOrder order = mapResultSetToOrder(rs);
+                    orders.add(order);
+                }
             }
             
             LogUtil.logInfo("从DM远程数据库获取到 " + orders.size() + " 条订单记录");
@@ -86,19 +130,19 @@ public class DmRemoteDao {
         
         // 主子表关联：子表order_no格式为"主表order_no-序号"（如MO2401001-01）
         // 通过LIKE字符串匹配关联主表：d.order_no LIKE m.order_no + '-%'
-        String sql = "SELECT d.* FROM " + detailTableName + " d " +
-                     "INNER JOIN " + mainTableName + " o ON d." + orderNoField + " LIKE o." + orderNoField + " + '-%' " +
-                     "WHERE o." + orderNoField + " = ?";
-        
-        try (Connection conn = connectionPool.getConnection();
-             PreparedStatement pstmt = conn.prepareStatement(sql)) {
-            
-            pstmt.setString(1, orderNo);
-            ResultSet rs = pstmt.executeQuery();
-            
-            while (rs.next()) {
-                DmOrderDetail detail = mapResultSetToDetail(rs);
-                details.add(detail);
+        try (Connection conn = connectionPool.getConnection()) {
+            String sql = "SELECT " + getDetailProjection(conn).selectList("d") + " FROM " + detailTableName + " d " +
+                         "INNER JOIN " + mainTableName + " o ON d." + orderNoField + " LIKE o." + orderNoField + " + '-%' " +
+                         "WHERE o." + orderNoField + " = ?";
+
+            try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
+                pstmt.setString(1, orderNo);
+                ResultSet rs = pstmt.executeQuery();
+
+                while (rs.next()) {
+                    DmOrderDetail detail = mapResultSetToDetail(rs);
+                    details.add(detail);
+                }
             }
             
         } catch (SQLException e) {
@@ -108,6 +152,147 @@ public class DmRemoteDao {
         return details;
     }
     
+    /**
+     * 批量查询一页订单的子表数据
+     * 每个订单号使用参数化前缀匹配 d.order_no LIKE 'MO2401001-%'，可走order_no索引范围查找，
+     * 一页订单只需少量查询，结果在客户端按主表订单号分组
+     * @param orderNos 主表订单号列表
+     * @return 主表订单号 -> 订单明细列表（无明细的订单对应空列表）
+     */
+    public Map<String, List<DmOrderDetail>> fetchOrderDetailsBatch(List<String> orderNos) {
+        Map<String, List<DmOrderDetail>> result = new HashMap<>();
+        Set<String> parents = new LinkedHashSet<>();
+        for (String orderNo : orderNos) {
+            if (orderNo != null && !orderNo.isEmpty()) {
+                parents.add(orderNo);
+                result.put(orderNo, new ArrayList<>());
+            }
+        }
+        if (parents.isEmpty()) {
+            return result;
+        }
+
+        String detailTableName = configManager.getDetailTableName();
+        String orderNoField = configManager.getSourceDetailFieldName("order_no");
+        List<String> parentList = new ArrayList<>(parents);
+
+        try (Connection conn = connectionPool.getConnection()) {
+            String selectList = getDetailProjection(conn).selectList("d");
+            for (int start = 0; start < parentList.size(); start += DETAIL_BATCH_SIZE) {
+                List<String> chunk = parentList.subList(start, Math.min(start + DETAIL_BATCH_SIZE, parentList.size()));
+
+                StringBuilder sql = new StringBuilder("SELECT ").append(selectList)
+                        .append(" FROM ").append(detailTableName).append(" d WHERE ");
+                for (int i = 0; i < chunk.size(); i++) {
+                    if (i > 0) {
+                        sql.append(" OR ");
+                    }
+                    sql.append("d.").append(orderNoField).append(" LIKE ? ESCAPE '!'");
+                }
+
+                try (PreparedStatement pstmt = conn.prepareStatement(sql.toString())) {
+                    for (int i = 0; i < chunk.size(); i++) {
+                        pstmt.setString(i + 1, escapeLike(chunk.get(i)) + "-%");
+                    }
+                    ResultSet rs = pstmt.executeQuery();
+
+                    while (rs.next()) {
+                        DmOrderDetail detail = mapResultSetToDetail(rs);
+                        String parent = findParentOrderNo(detail.getOrderNo(), parents);
+                        if (parent != null) {
+                            result.get(parent).add(detail);
+                        }
+                    }
+                }
+            }
+        } catch (SQLException e) {
+            LogUtil.logError("批量查询DM订单明细失败: " + e.getMessage());
+            return null;
+        }
+
+        return result;
+    }
+
+    /**
+     * 根据明细订单号找到所属的主表订单号（明细订单号为"主表order_no-序号"，主表订单号本身也可能含'-'）
+     */
+    private String findParentOrderNo(String detailOrderNo, Set<String> parents) {
+        if (detailOrderNo == null) {
+            return null;
+        }
+        int idx = detailOrderNo.lastIndexOf('-');
+        while (idx > 0) {
+            String candidate = detailOrderNo.substring(0, idx);
+            if (parents.contains(candidate)) {
+                return candidate;
+            }
+            idx = detailOrderNo.lastIndexOf('-', idx - 1);
+        }
+        return null;
+    }
+
+    private String escapeLike(String value) {
+        return value.replace("!", "!!").replace("%", "!%").replace("_", "!_").replace("[", "![");
+    }
+
+    /**
+     * 主表查询列（首次查询时按远程表结构生成）
+     */
+    private ColumnProjection getOrderProjection(Connection conn) throws SQLException {
+        ColumnProjection projection = orderProjection;
+        if (projection == null) {
+            projection = buildProjection(conn, configManager.getMainTableName(), ORDER_FIELDS, true);
+            orderProjection = projection;
+        }
+        return projection;
+    }
+
+    /**
+     * 子表查询列（首次查询时按远程表结构生成）
+     */
+    private ColumnProjection getDetailProjection(Connection conn) throws SQLException {
+        ColumnProjection projection = detailProjection;
+        if (projection == null) {
+            projection = buildProjection(conn, configManager.getDetailTableName(), DETAIL_FIELDS, false);
+            detailProjection = projection;
+        }
+        return projection;
+    }
+
+    /**
+     * 将需要读取的本地字段转换为客户字段名，并与远程表实际存在的列取交集
+     * 远程表缺少的列不查询，映射时按NULL处理（与原先读取缺失字段的行为一致）
+     */
+    private ColumnProjection buildProjection(Connection conn, String tableName, String[] localFields, boolean mainTable)
+            throws SQLException {
+        Set<String> existing = new TreeSet<>(String.CASE_INSENSITIVE_ORDER);
+        try (Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT TOP 0 * FROM " + tableName)) {
+            ResultSetMetaData metaData = rs.getMetaData();
+            for (int i = 1; i <= metaData.getColumnCount(); i++) {
+                existing.add(metaData.getColumnName(i));
+            }
+        }
+
+        List<String> columns = new ArrayList<>();
+        for (String field : localFields) {
+            String sourceField = mainTable
+                    ? configManager.getSourceFieldName(field)
+                    : configManager.getSourceDetailFieldName(field);
+            if (existing.contains(sourceField)) {
+                columns.add(sourceField);
+            } else {
+                LogUtil.logWarning("DM远程表 " + tableName + " 不存在字段: " + sourceField + "，使用NULL值");
+            }
+        }
+        if (columns.isEmpty()) {
+            throw new SQLException("DM远程表 " + tableName + " 中没有可同步的字段");
+        }
+
+        LogUtil.logInfo("DM远程表 " + tableName + " 查询列: " + columns.size() + "/" + existing.size());
+        return ColumnProjection.of(columns);
+    }
+
     /**
      * 将ResultSet映射为DmOrder对象
      * 使用字段映射配置，支持客户数据库字段名与本地字段名不一致的情况
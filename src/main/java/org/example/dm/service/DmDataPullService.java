@@ -1,5 +1,6 @@
 package org.example.dm.service;
 
+import org.example.dao.CheckpointDao;
 import org.example.dm.config.DmConfigManager;
 import org.example.dm.dao.DmLocalDao;
 import org.example.dm.dao.DmRemoteDao;
@@ -9,7 +10,10 @@ import org.example.util.LogUtil;
 
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
 /**
  * DM数据拉取服务
@@ -34,17 +38,51 @@ public class DmDataPullService {
         return instance;
     }
     
+    /**
+     * 一页订单的处理结果
+     */
+    private static class PageResult {
+        private int processed;
+        private int inserted;
+        private int updated;
+        private int failed;
+        // 本页已成功处理的最大 (modify_time, source_id) 位置
+        private LocalDateTime lastTime;
+        private Integer lastSourceId;
+
+        /**
+         * 成功处理一条订单后推进本页位置
+         */
+        private void advance(DmOrder order) {
+            LocalDateTime modifyTime = order.getModifyTime();
+            if (modifyTime == null) {
+                return;
+            }
+            Integer sourceId = order.getSourceId();
+            if (lastTime == null || modifyTime.isAfter(lastTime)
+                    || (modifyTime.isEqual(lastTime) && sourceId != null
+                        && (lastSourceId == null || sourceId > lastSourceId))) {
+                lastTime = modifyTime;
+                lastSourceId = sourceId;
+            }
+        }
+    }
+    
     /**
      * 执行数据拉取同步
+     * 按 (modify_time, source_id) 组合位置逐页拉取，每页处理完成后保存位置，
+     * 一轮最多拉取 dm.sync.maxPagesPerCycle 页，剩余数据下一轮继续
      */
     public void pullDataFromRemote() {
         try {
-            // 1. 获取上次同步时间戳
+            // 1. 获取上次同步位置
             LocalDateTime lastSyncTime = localDao.getLastSyncTime();
+            Integer lastSourceId = localDao.getLastSyncSourceId();
             
             // 2. 从远程数据库查询增量数据
             int batchSize = configManager.getBatchSize();
-            List<DmOrder> remoteOrders = remoteDao.fetchIncrementalOrders(lastSyncTime, batchSize);
+            int maxPages = configManager.getMaxPagesPerCycle();
+            List<DmOrder> remoteOrders = remoteDao.fetchIncrementalOrders(lastSyncTime, lastSourceId, batchSize);
             
             if (remoteOrders.isEmpty()) {
                 LogUtil.logInfo("[DM拉取] 无新数据");
@@ -54,99 +92,212 @@ public class DmDataPullService {
             // 有数据时才输出详细日志
             String timestamp = LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss"));
             System.out.println("\n=== DM数据拉取开始 " + timestamp + " ===");
-            LogUtil.logInfo("DM上次同步时间: " + lastSyncTime);
+            LogUtil.logInfo("DM上次同步位置: " + lastSyncTime + ", source_id=" + lastSourceId);
             
-            System.out.println("=== 检测到 " + remoteOrders.size() + " 条DM订单数据，开始处理 ===");
-            
-            // 3. 处理每条订单
+            // 3. 逐页处理订单
+            int totalRecords = 0;
             int totalProcessed = 0;
             int totalInserted = 0;
             int totalUpdated = 0;
             int totalFailed = 0;
-            LocalDateTime maxModifyTime = lastSyncTime;
-            
-            for (DmOrder remoteOrder : remoteOrders) {
-                try {
-                    boolean success = processOrder(remoteOrder);
-                    
-                    if (success) {
-                        totalProcessed++;
-                        
-                        // 判断是新增还是更新
-                        Integer existingId = localDao.checkOrderExistsBySourceId(remoteOrder.getSourceId());
-                        if (existingId == null) {
-                            existingId = localDao.checkOrderExistsByOrderNo(remoteOrder.getOrderNo());
-                        }
-                        
-                        if (existingId != null) {
-                            totalUpdated++;
-                        } else {
-                            totalInserted++;
-                        }
-                        
-                        // 更新最大修改时间
-                        if (remoteOrder.getModifyTime().isAfter(maxModifyTime)) {
-                            maxModifyTime = remoteOrder.getModifyTime();
-                        }
-                    } else {
-                        totalFailed++;
-                    }
-                } catch (Exception e) {
-                    totalFailed++;
-                    LogUtil.logError("处理DM订单失败 (order_no=" + remoteOrder.getOrderNo() + "): " + e.getMessage());
+            int pages = 0;
+
+            while (true) {
+                pages++;
+                totalRecords += remoteOrders.size();
+                System.out.println("=== 第 " + pages + " 页: 检测到 " + remoteOrders.size() + " 条DM订单数据，开始处理 ===");
+
+                PageResult page = processPage(remoteOrders);
+                totalProcessed += page.processed;
+                totalInserted += page.inserted;
+                totalUpdated += page.updated;
+                totalFailed += page.failed;
+
+                if (page.lastTime == null) {
+                    // 本页没有成功处理的订单，保留位置，下一轮重试
+                    break;
+                }
+
+                // 4. 更新同步位置
+                lastSyncTime = page.lastTime;
+                lastSourceId = page.lastSourceId;
+                localDao.updateLastSyncPosition(lastSyncTime, lastSourceId);
+                // 整页处理完成，写入检查点
+                CheckpointDao.getInstance().flush();
+
+                if (remoteOrders.size() < batchSize) {
+                    break;
+                }
+                if (pages >= maxPages) {
+                    LogUtil.logInfo("[DM拉取] 本轮已拉取 " + pages + " 页，剩余数据下一轮继续");
+                    break;
+                }
+                remoteOrders = remoteDao.fetchIncrementalOrders(lastSyncTime, lastSourceId, batchSize);
+                if (remoteOrders.isEmpty()) {
+                    break;
                 }
-            }
-            
-            // 4. 更新同步时间戳
-            if (totalProcessed > 0) {
-                localDao.updateLastSyncTime(maxModifyTime);
             }
             
             // 5. 输出统计信息
             System.out.println("=== DM数据拉取完成 ===");
-            System.out.println("总记录数: " + remoteOrders.size());
+            System.out.println("总记录数: " + totalRecords);
             System.out.println("成功处理: " + totalProcessed);
             System.out.println("新增: " + totalInserted);
             System.out.println("更新: " + totalUpdated);
             System.out.println("失败: " + totalFailed);
-            System.out.println("最新时间戳: " + maxModifyTime);
+            System.out.println("最新位置: " + lastSyncTime + ", source_id=" + lastSourceId);
             
-            LogUtil.logInfo(String.format("DM数据拉取完成: 总数=%d, 成功=%d, 新增=%d, 更新=%d, 失败=%d",
-                    remoteOrders.size(), totalProcessed, totalInserted, totalUpdated, totalFailed));
+            LogUtil.logInfo(String.format("DM数据拉取完成: 页数=%d, 总数=%d, 成功=%d, 新增=%d, 更新=%d, 失败=%d",
+                    pages, totalRecords, totalProcessed, totalInserted, totalUpdated, totalFailed));
             
         } catch (Exception e) {
             LogUtil.logError("DM数据拉取过程异常: " + e.getMessage());
             e.printStackTrace();
         }
     }
+
+    /**
+     * 处理一页订单
+     * @param remoteOrders 本页远程订单（按 modify_time, source_id 升序）
+     * @return 本页处理结果
+     */
+    private PageResult processPage(List<DmOrder> remoteOrders) {
+        PageResult page = new PageResult();
+
+        // 一次查询整页订单的子表数据，批量写入和逐条回退共用；查询失败时为null
+        Map<String, List<DmOrderDetail>> detailsByOrderNo = fetchPageDetails(remoteOrders);
+
+        // 优先整页批量写入（一个事务），失败时回退为逐条处理
+        DmLocalDao.BulkUpsertResult bulkResult = detailsByOrderNo != null
+                ? bulkUpsertPage(remoteOrders, detailsByOrderNo)
+                : null;
+        if (bulkResult != null) {
+            page.processed = bulkResult.getInserted() + bulkResult.getUpdated();
+            page.inserted = bulkResult.getInserted();
+            page.updated = bulkResult.getUpdated();
+            for (DmOrder remoteOrder : remoteOrders) {
+                page.advance(remoteOrder);
+            }
+            LogUtil.logInfo(String.format("DM订单批量写入: 新增=%d, 更新=%d, 子表=%d条",
+                    bulkResult.getInserted(), bulkResult.getUpdated(), bulkResult.getDetails()));
+            return page;
+        }
+
+        // 一次查询整页订单的本地ID，新增/更新判断和统计共用
+        DmLocalDao.OrderKeyMap keyMap = localDao.lookupOrderIds(remoteOrders);
+        for (DmOrder remoteOrder : remoteOrders) {
+            try {
+                Integer existingId = resolveLocalOrderId(remoteOrder, keyMap);
+                boolean success = processOrder(remoteOrder, existingId, keyMap, detailsByOrderNo);
+            
+                if (success) {
+                    page.processed++;
+                
+                    // 判断是新增还是更新
+                    if (existingId != null) {
+                        page.updated++;
+                    } else {
+                        page.inserted++;
+                    }
+                
+                    // 推进同步位置
+                    page.advance(remoteOrder);
+                } else {
+                    page.failed++;
+                }
+            } catch (Exception e) {
+                page.failed++;
+                LogUtil.logError("处理DM订单失败 (order_no=" + remoteOrder.getOrderNo() + "): " + e.getMessage());
+            }
+        }
+        return page;
+    }
     
+    /**
+     * 一次查询整页订单的子表数据
+     * @param remoteOrders 远程订单
+     * @return 主表order_no -> 子表数据，查询失败时返回null
+     */
+    private Map<String, List<DmOrderDetail>> fetchPageDetails(List<DmOrder> remoteOrders) {
+        List<String> orderNos = new ArrayList<>();
+        for (DmOrder remoteOrder : remoteOrders) {
+            orderNos.add(remoteOrder.getOrderNo());
+        }
+        return remoteDao.fetchOrderDetailsBatch(orderNos);
+    }
+
+    /**
+     * 批量写入一页订单：子表挂到对应订单后整页合并到本地
+     * @param remoteOrders 远程订单
+     * @param detailsByOrderNo 整页子表数据
+     * @return 写入结果，失败时返回null
+     */
+    private DmLocalDao.BulkUpsertResult bulkUpsertPage(List<DmOrder> remoteOrders,
+            Map<String, List<DmOrderDetail>> detailsByOrderNo) {
+        // 同一页内按source_id去重，保留最后一次修改
+        Map<Integer, DmOrder> uniqueOrders = new LinkedHashMap<>();
+        for (DmOrder remoteOrder : remoteOrders) {
+            List<DmOrderDetail> details = detailsByOrderNo.get(remoteOrder.getOrderNo());
+            remoteOrder.setDetails(details != null ? details : new ArrayList<DmOrderDetail>());
+            uniqueOrders.remove(remoteOrder.getSourceId());
+            uniqueOrders.put(remoteOrder.getSourceId(), remoteOrder);
+        }
+        return localDao.bulkUpsertOrders(new ArrayList<>(uniqueOrders.values()));
+    }
+
+    /**
+     * 解析订单的本地ID（优先通过source_id，其次通过order_no）
+     * 整页映射查询失败时回退为逐条查询
+     * @param remoteOrder 远程订单数据
+     * @param keyMap 整页主键映射，可为null
+     * @return 本地订单ID，不存在返回null
+     */
+    private Integer resolveLocalOrderId(DmOrder remoteOrder, DmLocalDao.OrderKeyMap keyMap) {
+        if (keyMap != null) {
+            return keyMap.resolve(remoteOrder);
+        }
+        Integer localOrderId = localDao.checkOrderExistsBySourceId(remoteOrder.getSourceId());
+        if (localOrderId == null) {
+            localOrderId = localDao.checkOrderExistsByOrderNo(remoteOrder.getOrderNo());
+        }
+        return localOrderId;
+    }
+
     /**
      * 处理单个订单（主表+子表）
      * @param remoteOrder 远程订单数据
+     * @param localOrderId 本地订单ID，不存在时为null
+     * @param keyMap 整页主键映射，新增成功后回写，可为null
+     * @param detailsByOrderNo 整页子表数据，整页查询失败时为null
      * @return 是否成功
      */
-    private boolean processOrder(DmOrder remoteOrder) {
+    private boolean processOrder(DmOrder remoteOrder, Integer localOrderId, DmLocalDao.OrderKeyMap keyMap,
+            Map<String, List<DmOrderDetail>> detailsByOrderNo) {
         try {
-            // 1. 查询远程子表数据
-            // 主子表关联：子表order_no格式为"主表order_no-序号"，通过LIKE匹配关联
-            List<DmOrderDetail> remoteDetails = remoteDao.fetchOrderDetails(remoteOrder.getOrderNo());
-            remoteOrder.setDetails(remoteDetails);
-            
-            // 2. 检查本地是否存在（优先通过source_id，其次通过order_no）
-            Integer localOrderId = localDao.checkOrderExistsBySourceId(remoteOrder.getSourceId());
-            
-            if (localOrderId == null) {
-                // 通过order_no再次检查
-                localOrderId = localDao.checkOrderExistsByOrderNo(remoteOrder.getOrderNo());
+            // 1. 远程子表数据：优先使用整页查询结果，整页查询失败时才逐条查询
+            // 主子表关联：子表order_no格式为"主表order_no-序号"，逐条查询时通过LIKE匹配关联
+            List<DmOrderDetail> remoteDetails;
+            if (detailsByOrderNo != null) {
+                remoteDetails = detailsByOrderNo.get(remoteOrder.getOrderNo());
+                if (remoteDetails == null) {
+                    remoteDetails = new ArrayList<>();
+                }
+            } else {
+                remoteDetails = remoteDao.fetchOrderDetails(remoteOrder.getOrderNo());
             }
+            remoteOrder.setDetails(remoteDetails);
             
             if (localOrderId != null) {
                 // 订单已存在，执行更新
                 return updateExistingOrder(localOrderId, remoteOrder);
-            } else {
-                // 订单不存在，执行插入
-                return insertNewOrder(remoteOrder);
             }
+
+            // 订单不存在，执行插入；同一页中重复出现的订单随后走更新
+            Integer orderId = insertNewOrder(remoteOrder);
+            if (orderId != null && keyMap != null) {
+                keyMap.put(remoteOrder, orderId);
+            }
+            return orderId != null;
             
         } catch (Exception e) {
             LogUtil.logError("处理DM订单异常 (order_no=" + remoteOrder.getOrderNo() + "): " + e.getMessage());
@@ -157,16 +308,16 @@ public class DmDataPullService {
     /**
      * 插入新订单
      * @param order 订单对象
-     * @return 是否成功
+     * @return 新订单的本地ID，失败返回null
      */
-    private boolean insertNewOrder(DmOrder order) {
+    private Integer insertNewOrder(DmOrder order) {
         try {
             // 1. 插入主表
             Integer orderId = localDao.insertOrder(order);
             
             if (orderId == null) {
                 LogUtil.logError("插入DM订单主表失败 (order_no=" + order.getOrderNo() + ")");
-                return false;
+                return null;
             }
             
             // 2. 插入子表
@@ -177,11 +328,11 @@ public class DmDataPullService {
                 LogUtil.logInfo("新增DM订单: " + order.getOrderNo() + " (主表ID=" + orderId + ", 无子表数据)");
             }
             
-            return true;
+            return orderId;
             
         } catch (Exception e) {
             LogUtil.logError("插入DM订单失败 (order_no=" + order.getOrderNo() + "): " + e.getMessage());
-            return false;
+            return null;
         }
     }
     
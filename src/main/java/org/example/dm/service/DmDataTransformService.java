@@ -1,13 +1,12 @@
 package org.example.dm.service;
 
-import com.fasterxml.jackson.databind.ObjectMapper;
-import org.example.config.ConfigManager;
+import org.example.config.ConfigSnapshot;
+import org.example.config.ConfigSnapshotService;
 import org.example.dm.dao.DmLocalDao;
 import org.example.dm.model.DmOrder;
 import org.example.dm.model.DmOrderDetail;
 import org.example.util.LogUtil;
 
-import java.io.InputStream;
 import java.time.LocalDateTime;
 import java.time.ZoneId;
 import java.time.format.DateTimeFormatter;
@@ -24,14 +23,18 @@ public class DmDataTransformService {
     private static DmDataTransformService instance;
     // 简道云API要求的ISO 8601日期时间格式: yyyy-MM-dd'T'HH:mm:ss.SSS'Z'
     private static final DateTimeFormatter ISO8601_FORMATTER = DateTimeFormatter.ofPattern("yyyy-MM-dd'T'HH:mm:ss.SSS'Z'");
-    private final ObjectMapper mapper = new ObjectMapper();
-    
-    private Map<String, String> mainFieldMapping;
-    private Map<String, String> subTableMapping;
-    private String subTableWidgetId;
+    private final ConfigSnapshotService snapshots;
+    // 按当前配置快照整理的字段映射，快照中的映射替换后重新整理
+    private volatile JdyFieldMapping fieldMapping;
     
     private DmDataTransformService() {
-        loadFieldMapping();
+        this.snapshots = ConfigSnapshotService.getInstance();
+        ConfigSnapshot.MappingFile mapping = snapshots.current().getDmToJdyMapping();
+        if (mapping == null || !mapping.exists()) {
+            LogUtil.logError("加载DM字段映射配置失败: 映射文件不存在或无法解析");
+            throw new RuntimeException("加载DM字段映射配置失败");
+        }
+        LogUtil.logInfo("DM字段映射配置加载成功");
     }
     
     public static synchronized DmDataTransformService getInstance() {
@@ -42,41 +45,16 @@ public class DmDataTransformService {
     }
     
     /**
-     * 加载字段映射配置
+     * 获取当前字段映射，一次转换内只读取一次，主表和子表映射来自同一版本
      */
-    private void loadFieldMapping() {
-        try {
-            ConfigManager configManager = ConfigManager.getInstance();
-            String mappingFile = configManager.getProperty("dm.to.jdy.field.mapping.path", "dm_to_jdy_field_mapping.json");
-            
-            InputStream input = getClass().getClassLoader().getResourceAsStream(mappingFile);
-            if (input == null) {
-                input = new java.io.FileInputStream(mappingFile);
-            }
-            
-            @SuppressWarnings("unchecked")
-            Map<String, Object> config = mapper.readValue(input, Map.class);
-            
-            @SuppressWarnings("unchecked")
-            Map<String, String> mainFields = (Map<String, String>) config.get("main_fields");
-            this.mainFieldMapping = mainFields;
-            
-            @SuppressWarnings("unchecked")
-            Map<String, Object> subTables = (Map<String, Object>) config.get("sub_tables");
-            if (subTables != null && subTables.containsKey("order_details")) {
-                @SuppressWarnings("unchecked")
-                Map<String, String> detailsMapping = (Map<String, String>) subTables.get("order_details");
-                this.subTableMapping = detailsMapping;
-                this.subTableWidgetId = mainFields.get("order_details");
-            }
-            
-            LogUtil.logInfo("DM字段映射配置加载成功");
-            
-        } catch (Exception e) {
-            LogUtil.logError("加载DM字段映射配置失败: " + e.getMessage());
-            e.printStackTrace();
-            throw new RuntimeException("加载DM字段映射配置失败", e);
+    private JdyFieldMapping currentFieldMapping() {
+        ConfigSnapshot.MappingFile source = snapshots.current().getDmToJdyMapping();
+        JdyFieldMapping mapping = fieldMapping;
+        if (mapping == null || mapping.source != source) {
+            mapping = new JdyFieldMapping(source);
+            fieldMapping = mapping;
         }
+        return mapping;
     }
     
     /**
@@ -85,11 +63,22 @@ public class DmDataTransformService {
      * @return 简道云格式的数据
      */
     public Map<String, Object> convertToJdyFormat(DmOrder order) {
+        return convertToJdyFormat(order, DmLocalDao.getInstance().queryOrderDetails(order.getId()));
+    }
+
+    /**
+     * 将DM订单转换为简道云格式（明细已预先查询）
+     * @param order DM订单对象
+     * @param details 订单明细
+     * @return 简道云格式的数据
+     */
+    public Map<String, Object> convertToJdyFormat(DmOrder order, List<DmOrderDetail> details) {
         Map<String, Object> converted = new HashMap<>();
         
         try {
-            convertMainFields(order, converted);
-            convertSubTableData(order.getId(), converted);
+            JdyFieldMapping mapping = currentFieldMapping();
+            convertMainFields(mapping, order, converted);
+            convertSubTableData(mapping, details, converted);
             
         } catch (Exception e) {
             LogUtil.logError("转换DM订单数据失败 (order_id=" + order.getId() + "): " + e.getMessage());
@@ -103,74 +92,72 @@ public class DmDataTransformService {
     /**
      * 转换主表字段
      */
-    private void convertMainFields(DmOrder order, Map<String, Object> converted) {
-        putField(converted, "order_no", order.getOrderNo());
-        putField(converted, "month_settlement", order.getMonthSettlement());
-        putField(converted, "factory", order.getFactory());
-        putField(converted, "person_in_charge", order.getPersonInCharge());
-        putField(converted, "currency", order.getCurrency());
-        putField(converted, "mark", order.getMark());
-        putField(converted, "tax_rate", order.getTaxRate() != null ? order.getTaxRate().toString() : "");
-        putField(converted, "payment_terms", order.getPaymentTerms());
-        putField(converted, "remarks", order.getRemarks());
-        putField(converted, "in_warehouse", order.getInWarehouse());
-        putField(converted, "material_warehouse", order.getMaterialWarehouse());
-        putField(converted, "original_terms", order.getOriginalTerms());
-        putField(converted, "total_quantity", order.getTotalQuantity() != null ? order.getTotalQuantity().toString() : "");
-        putField(converted, "total_tax_amount", order.getTotalTaxAmount() != null ? order.getTotalTaxAmount().toString() : "");
-        putField(converted, "department", order.getDepartment());
-        putField(converted, "creator", order.getCreator());
-        putField(converted, "auditor", order.getAuditor());
-        putField(converted, "approver", order.getApprover());
+    private void convertMainFields(JdyFieldMapping mapping, DmOrder order, Map<String, Object> converted) {
+        putField(mapping, converted, "order_no", order.getOrderNo());
+        putField(mapping, converted, "month_settlement", order.getMonthSettlement());
+        putField(mapping, converted, "factory", order.getFactory());
+        putField(mapping, converted, "person_in_charge", order.getPersonInCharge());
+        putField(mapping, converted, "currency", order.getCurrency());
+        putField(mapping, converted, "mark", order.getMark());
+        putField(mapping, converted, "tax_rate", order.getTaxRate() != null ? order.getTaxRate().toString() : "");
+        putField(mapping, converted, "payment_terms", order.getPaymentTerms());
+        putField(mapping, converted, "remarks", order.getRemarks());
+        putField(mapping, converted, "in_warehouse", order.getInWarehouse());
+        putField(mapping, converted, "material_warehouse", order.getMaterialWarehouse());
+        putField(mapping, converted, "original_terms", order.getOriginalTerms());
+        putField(mapping, converted, "total_quantity", order.getTotalQuantity() != null ? order.getTotalQuantity().toString() : "");
+        putField(mapping, converted, "total_tax_amount", order.getTotalTaxAmount() != null ? order.getTotalTaxAmount().toString() : "");
+        putField(mapping, converted, "department", order.getDepartment());
+        putField(mapping, converted, "creator", order.getCreator());
+        putField(mapping, converted, "auditor", order.getAuditor());
+        putField(mapping, converted, "approver", order.getApprover());
         
         if (order.getSubmitTime() != null) {
-            putField(converted, "submit_time", formatDateTime(order.getSubmitTime()));
+            putField(mapping, converted, "submit_time", formatDateTime(order.getSubmitTime()));
         } else {
-            putField(converted, "submit_time", "");
+            putField(mapping, converted, "submit_time", "");
         }
 
         if (order.getModifyTime() != null) {
-            putField(converted, "modify_time", formatDateTime(order.getModifyTime()));
+            putField(mapping, converted, "modify_time", formatDateTime(order.getModifyTime()));
         } else {
-            putField(converted, "modify_time", "");
+            putField(mapping, converted, "modify_time", "");
         }
-        putField(converted, "order_status", String.valueOf(order.getOrderStatus()));
+        putField(mapping, converted, "order_status", String.valueOf(order.getOrderStatus()));
         
-        putField(converted, "i_ord", order.getIOrd());
+        putField(mapping, converted, "i_ord", order.getIOrd());
         
         if (order.getFillDate() != null) {
-            putField(converted, "fill_date", formatDateTime(order.getFillDate()));
+            putField(mapping, converted, "fill_date", formatDateTime(order.getFillDate()));
         } else {
-            putField(converted, "fill_date", "");
+            putField(mapping, converted, "fill_date", "");
         }
         
-        putField(converted, "price_book", order.getPriceBook());
-        putField(converted, "responsible_department", order.getResponsibleDepartment());
+        putField(mapping, converted, "price_book", order.getPriceBook());
+        putField(mapping, converted, "responsible_department", order.getResponsibleDepartment());
         
         if (order.getCurrentPaymentDate() != null) {
-            putField(converted, "current_payment_date", formatDateTime(order.getCurrentPaymentDate()));
+            putField(mapping, converted, "current_payment_date", formatDateTime(order.getCurrentPaymentDate()));
         } else {
-            putField(converted, "current_payment_date", "");
+            putField(mapping, converted, "current_payment_date", "");
         }
 
         if (order.getOriginalPaymentDate() != null) {
-            putField(converted, "original_payment_date", formatDateTime(order.getOriginalPaymentDate()));
+            putField(mapping, converted, "original_payment_date", formatDateTime(order.getOriginalPaymentDate()));
         } else {
-            putField(converted, "original_payment_date", "");
+            putField(mapping, converted, "original_payment_date", "");
         }
         
-        putField(converted, "document_type", order.getDocumentType());
+        putField(mapping, converted, "document_type", order.getDocumentType());
     }
     
     /**
      * 转换子表数据
      */
-    private void convertSubTableData(Integer orderId, Map<String, Object> converted) {
-        DmLocalDao localDao = DmLocalDao.getInstance();
-        List<DmOrderDetail> details = localDao.queryOrderDetails(orderId);
-        
+    private void convertSubTableData(JdyFieldMapping mapping, List<DmOrderDetail> details,
+            Map<String, Object> converted) {
         if (details == null || details.isEmpty()) {
-            converted.put(subTableWidgetId, Collections.singletonMap("value", new ArrayList<>()));
+            converted.put(mapping.subTableWidgetId, new ArrayList<>());
             return;
         }
         
@@ -179,48 +166,48 @@ public class DmDataTransformService {
         for (DmOrderDetail detail : details) {
             Map<String, Object> detailMap = new HashMap<>();
 
-            putSubField(detailMap, "line_no", detail.getLineNo() != null ? String.valueOf(detail.getLineNo()) : "");
-            putSubField(detailMap, "order_no", detail.getOrderNo());
-            putSubField(detailMap, "material_code", detail.getMaterialCode());
-            putSubField(detailMap, "material_desc", detail.getMaterialDesc());
-            putSubField(detailMap, "quantity", detail.getQuantity() != null ? detail.getQuantity().toString() : "");
-            putSubField(detailMap, "unit_price", detail.getUnitPrice() != null ? detail.getUnitPrice().toString() : "");
-            putSubField(detailMap, "tax_unit_price", detail.getTaxUnitPrice() != null ? detail.getTaxUnitPrice().toString() : "");
-            putSubField(detailMap, "tax_amount", detail.getTaxAmount() != null ? detail.getTaxAmount().toString() : "");
-            putSubField(detailMap, "price_book", detail.getPriceBook());
-            putSubField(detailMap, "suggested_quantity", detail.getSuggestedQuantity() != null ? detail.getSuggestedQuantity().toString() : "");
-            putSubField(detailMap, "source_doc_no", detail.getSourceDocNo());
+            putSubField(mapping, detailMap, "line_no", detail.getLineNo() != null ? String.valueOf(detail.getLineNo()) : "");
+            putSubField(mapping, detailMap, "order_no", detail.getOrderNo());
+            putSubField(mapping, detailMap, "material_code", detail.getMaterialCode());
+            putSubField(mapping, detailMap, "material_desc", detail.getMaterialDesc());
+            putSubField(mapping, detailMap, "quantity", detail.getQuantity() != null ? detail.getQuantity().toString() : "");
+            putSubField(mapping, detailMap, "unit_price", detail.getUnitPrice() != null ? detail.getUnitPrice().toString() : "");
+            putSubField(mapping, detailMap, "tax_unit_price", detail.getTaxUnitPrice() != null ? detail.getTaxUnitPrice().toString() : "");
+            putSubField(mapping, detailMap, "tax_amount", detail.getTaxAmount() != null ? detail.getTaxAmount().toString() : "");
+            putSubField(mapping, detailMap, "price_book", detail.getPriceBook());
+            putSubField(mapping, detailMap, "suggested_quantity", detail.getSuggestedQuantity() != null ? detail.getSuggestedQuantity().toString() : "");
+            putSubField(mapping, detailMap, "source_doc_no", detail.getSourceDocNo());
             
-            putSubField(detailMap, "i_ord", detail.getIOrd());
-            putSubField(detailMap, "same_auxiliary", detail.getSameAuxiliary());
-            putSubField(detailMap, "update_mark", detail.getUpdateMark());
-            putSubField(detailMap, "expand_mark", detail.getExpandMark());
+            putSubField(mapping, detailMap, "i_ord", detail.getIOrd());
+            putSubField(mapping, detailMap, "same_auxiliary", detail.getSameAuxiliary());
+            putSubField(mapping, detailMap, "update_mark", detail.getUpdateMark());
+            putSubField(mapping, detailMap, "expand_mark", detail.getExpandMark());
             
             subTableData.add(detailMap);
         }
         
-        converted.put(subTableWidgetId, Collections.singletonMap("value", subTableData));
+        converted.put(mapping.subTableWidgetId, subTableData);
     }
     
     /**
-     * 添加主表字段（包装为简道云格式）
+     * 添加主表字段（写出请求体时包装为简道云格式）
      */
-    private void putField(Map<String, Object> converted, String fieldName, Object value) {
-        String widgetId = mainFieldMapping.get(fieldName);
-        if (widgetId != null && !widgetId.equals(subTableWidgetId) && !widgetId.equals("待创建")) {
+    private void putField(JdyFieldMapping mapping, Map<String, Object> converted, String fieldName, Object value) {
+        String widgetId = mapping.mainFields.get(fieldName);
+        if (widgetId != null && !widgetId.equals(mapping.subTableWidgetId) && !widgetId.equals("待创建")) {
             String strValue = (value != null) ? value.toString().trim() : "";
-            converted.put(widgetId, Collections.singletonMap("value", strValue));
+            converted.put(widgetId, strValue);
         }
     }
     
     /**
-     * 添加子表字段（包装为简道云格式）
+     * 添加子表字段（写出请求体时包装为简道云格式）
      */
-    private void putSubField(Map<String, Object> detailMap, String fieldName, Object value) {
-        String widgetId = subTableMapping.get(fieldName);
+    private void putSubField(JdyFieldMapping mapping, Map<String, Object> detailMap, String fieldName, Object value) {
+        String widgetId = mapping.subFields.get(fieldName);
         if (widgetId != null && !widgetId.equals("待创建")) {
             String strValue = (value != null) ? value.toString().trim() : "";
-            detailMap.put(widgetId, Collections.singletonMap("value", strValue));
+            detailMap.put(widgetId, strValue);
         }
     }
 
@@ -239,4 +226,21 @@ public class DmDataTransformService {
         ZonedDateTime utcTime = beijingTime.withZoneSameInstant(ZoneOffset.UTC);
         return utcTime.format(ISO8601_FORMATTER);
     }
+
+    /**
+     * DM到简道云的字段映射：主表字段、明细子表字段及子表控件ID
+     */
+    private static final class JdyFieldMapping {
+        final ConfigSnapshot.MappingFile source;
+        final Map<String, String> mainFields;
+        final Map<String, String> subFields;
+        final String subTableWidgetId;
+
+        JdyFieldMapping(ConfigSnapshot.MappingFile source) {
+            this.source = source;
+            this.mainFields = source.getMainFields();
+            this.subFields = source.getSubTable("order_details");
+            this.subTableWidgetId = subFields != null ? mainFields.get("order_details") : null;
+        }
+    }
 }
@@ -1,9 +1,11 @@
 package org.example.dm.service;
 
 import org.example.config.ConfigManager;
+import org.example.dao.CheckpointDao;
 import org.example.dm.dao.DmLocalDao;
 import org.example.service.JiandaoyunApiService;
 import org.example.util.LogUtil;
+import org.example.util.SyncMetrics;
 
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
@@ -27,6 +29,10 @@ public class DmJdySyncService {
     private final int MAX_RETRY;
     private final long RETRY_INTERVAL;
     private final int MAX_BATCH_SIZE;
+    private final int PENDING_PAGE_SIZE;
+
+    // 积压探测最多计数的行数
+    private static final int BACKLOG_PROBE_LIMIT = 100000;
 
     private DmJdySyncService() {
         this.apiService = JiandaoyunApiService.getInstance();
@@ -39,6 +45,7 @@ public class DmJdySyncService {
         this.MAX_RETRY = Integer.parseInt(configManager.getProperty("sync.maxRetry", "10"));
         this.RETRY_INTERVAL = Long.parseLong(configManager.getProperty("sync.retryInterval", "5000"));
         this.MAX_BATCH_SIZE = Integer.parseInt(configManager.getProperty("sync.maxBatchSize", "50"));
+        this.PENDING_PAGE_SIZE = configManager.getIntProperty("dm.push.pageSize", 500);
     }
 
     public static synchronized DmJdySyncService getInstance() {
@@ -54,8 +61,17 @@ public class DmJdySyncService {
      */
     public boolean pushDataToJiandaoyun() {
         try {
-            // 1. 查询待同步的订单
-            List<org.example.dm.model.DmOrder> pendingOrders = localDao.queryPendingOrders();
+            // 先只按主键探测有无待同步订单，没有时跳过订单和明细查询
+            int backlog = localDao.countPendingOrders(BACKLOG_PROBE_LIMIT);
+            if (backlog >= 0) {
+                SyncMetrics.setBacklog(CheckpointDao.STREAM_DM, backlog);
+                if (backlog == 0) {
+                    return false;
+                }
+            }
+
+            // 1. 分页查询待同步的订单（含明细）
+            List<org.example.dm.model.DmOrder> pendingOrders = localDao.queryPendingOrderPage(0, PENDING_PAGE_SIZE);
 
             if (pendingOrders.isEmpty()) {
                 return false;
@@ -65,14 +81,25 @@ public class DmJdySyncService {
             String timestamp = LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss"));
             System.out.println("\n=== DM数据推送简道云开始 " + timestamp + " ===");
 
-            System.out.println("查询到 " + pendingOrders.size() + " 条待同步的DM订单");
-            LogUtil.logInfo("查询到 " + pendingOrders.size() + " 条待同步的DM订单");
+            int successCount = 0;
+            int totalCount = 0;
+            while (!pendingOrders.isEmpty()) {
+                totalCount += pendingOrders.size();
+                System.out.println("查询到 " + pendingOrders.size() + " 条待同步的DM订单");
+                LogUtil.logInfo("查询到 " + pendingOrders.size() + " 条待同步的DM订单");
+
+                // 2. 批量处理本页待同步订单
+                successCount += batchProcessOrders(pendingOrders);
 
-            // 2. 批量处理所有待同步订单
-            int successCount = batchProcessOrders(pendingOrders);
+                if (pendingOrders.size() < PENDING_PAGE_SIZE) {
+                    break;
+                }
+                int lastId = pendingOrders.get(pendingOrders.size() - 1).getId();
+                pendingOrders = localDao.queryPendingOrderPage(lastId, PENDING_PAGE_SIZE);
+            }
 
             System.out.println("=== DM数据推送简道云完成 ===");
-            LogUtil.logInfo("DM数据推送简道云完成: 成功 " + successCount + " 条");
+            LogUtil.logInfo("DM数据推送简道云完成: 共 " + totalCount + " 条, 成功 " + successCount + " 条");
             return true;
 
         } catch (Exception e) {
@@ -128,19 +155,26 @@ public class DmJdySyncService {
 
             System.out.println("批次 " + (i / MAX_BATCH_SIZE + 1) + ": 待创建 " + createOrders.size() + " 条, 待更新 " + updateOrders.size() + " 条");
 
+            // 本批次的同步状态统一收集，处理完成后一次写回
+            DmLocalDao.SyncStatusBatch statusBatch = new DmLocalDao.SyncStatusBatch();
+
             // 处理创建
             if (!createOrders.isEmpty()) {
-                int batchCreateSuccess = batchCreateOrders(createOrders, transformService);
+                int batchCreateSuccess = batchCreateOrders(createOrders, transformService, statusBatch);
                 createCount += batchCreateSuccess;
                 successCount += batchCreateSuccess;
             }
 
             // 处理更新
             if (!updateOrders.isEmpty()) {
-                int batchUpdateSuccess = batchUpdateOrders(updateOrders, dataIdMap, transformService);
+                int batchUpdateSuccess = batchUpdateOrders(updateOrders, dataIdMap, transformService, statusBatch);
                 updateCount += batchUpdateSuccess;
                 successCount += batchUpdateSuccess;
             }
+
+            if (!localDao.flushSyncStatus(statusBatch)) {
+                LogUtil.logError("批次 " + (i / MAX_BATCH_SIZE + 1) + " 同步状态写回失败，相关订单将在下一轮重新推送");
+            }
         }
 
         System.out.println("创建成功: " + createCount + " 条, 更新成功: " + updateCount + " 条");
@@ -150,7 +184,8 @@ public class DmJdySyncService {
     /**
      * 批量创建订单
      */
-    private int batchCreateOrders(List<org.example.dm.model.DmOrder> orders, DmDataTransformService transformService) {
+    private int batchCreateOrders(List<org.example.dm.model.DmOrder> orders, DmDataTransformService transformService,
+                                  DmLocalDao.SyncStatusBatch statusBatch) {
         if (orders.isEmpty()) {
             return 0;
         }
@@ -163,19 +198,17 @@ public class DmJdySyncService {
         // 转换数据
         for (org.example.dm.model.DmOrder order : orders) {
             try {
-                Map<String, Object> jdyData = transformService.convertToJdyFormat(order);
+                Map<String, Object> jdyData = transformService.convertToJdyFormat(order, order.getDetails());
                 if (jdyData != null) {
                     dataList.add(jdyData);
                     validOrders.add(order);
                 } else {
                     LogUtil.logError("转换DM订单失败，跳过 (order_id=" + order.getId() + ")");
-                    localDao.incrementSyncAttempts(order.getId());
-                    localDao.updateSyncError(order.getId(), "数据转换失败");
+                    statusBatch.markFailed(order.getId(), "数据转换失败");
                 }
             } catch (Exception e) {
                 LogUtil.logError("转换DM订单异常 (order_id=" + order.getId() + "): " + e.getMessage());
-                localDao.incrementSyncAttempts(order.getId());
-                localDao.updateSyncError(order.getId(), "数据转换异常: " + e.getMessage());
+                statusBatch.markFailed(order.getId(), "数据转换异常: " + e.getMessage());
             }
         }
 
@@ -194,7 +227,7 @@ public class DmJdySyncService {
                 if (batchSuccess) {
                     // 批量创建成功，更新所有订单的同步状态
                     for (org.example.dm.model.DmOrder order : validOrders) {
-                        localDao.updateSyncStatus(order.getId(), 1);
+                        statusBatch.markSynced(order.getId());
                         successCount++;
                     }
 
@@ -220,11 +253,10 @@ public class DmJdySyncService {
             }
         }
 
-        // 如果批量创建失败，更新所有订单的重试次数和错误信息
+        // 如果批量创建失败，记录所有订单的重试次数和错误信息
         if (!batchSuccess) {
             for (org.example.dm.model.DmOrder order : validOrders) {
-                localDao.incrementSyncAttempts(order.getId());
-                localDao.updateSyncError(order.getId(), "批量创建失败，已重试" + MAX_RETRY + "次");
+                statusBatch.markFailed(order.getId(), "批量创建失败，已重试" + MAX_RETRY + "次");
             }
         }
 
@@ -234,7 +266,8 @@ public class DmJdySyncService {
     /**
      * 批量更新订单
      */
-    private int batchUpdateOrders(List<org.example.dm.model.DmOrder> orders, Map<String, String> dataIdMap, DmDataTransformService transformService) {
+    private int batchUpdateOrders(List<org.example.dm.model.DmOrder> orders, Map<String, String> dataIdMap, DmDataTransformService transformService,
+                                  DmLocalDao.SyncStatusBatch statusBatch) {
         if (orders.isEmpty()) {
             return 0;
         }
@@ -244,19 +277,17 @@ public class DmJdySyncService {
         for (org.example.dm.model.DmOrder order : orders) {
             try {
                 // 转换数据
-                Map<String, Object> jdyData = transformService.convertToJdyFormat(order);
+                Map<String, Object> jdyData = transformService.convertToJdyFormat(order, order.getDetails());
                 if (jdyData == null) {
                     LogUtil.logError("转换DM订单失败，跳过 (order_id=" + order.getId() + ")");
-                    localDao.incrementSyncAttempts(order.getId());
-                    localDao.updateSyncError(order.getId(), "数据转换失败");
+                    statusBatch.markFailed(order.getId(), "数据转换失败");
                     continue;
                 }
 
                 String jdyDataId = dataIdMap.get(order.getOrderNo());
                 if (jdyDataId == null) {
                     LogUtil.logError("未找到data_id，跳过更新 (order_no=" + order.getOrderNo() + ")");
-                    localDao.incrementSyncAttempts(order.getId());
-                    localDao.updateSyncError(order.getId(), "未找到data_id");
+                    statusBatch.markFailed(order.getId(), "未找到data_id");
                     continue;
                 }
 
@@ -269,7 +300,7 @@ public class DmJdySyncService {
                         updateSuccess = apiService.updateData(APP_ID, ENTRY_ID, jdyDataId, jdyData);
 
                         if (updateSuccess) {
-                            localDao.updateSyncStatus(order.getId(), 1);
+                            statusBatch.markSynced(order.getId());
                             successCount++;
                             LogUtil.logInfo("更新DM订单成功 (order_id=" + order.getId() + ", jdy_data_id=" + jdyDataId + ")");
                         } else {
@@ -295,14 +326,12 @@ public class DmJdySyncService {
 
                 // 如果更新失败，更新重试次数和错误信息
                 if (!updateSuccess) {
-                    localDao.incrementSyncAttempts(order.getId());
-                    localDao.updateSyncError(order.getId(), "更新失败，已重试" + MAX_RETRY + "次");
+                    statusBatch.markFailed(order.getId(), "更新失败，已重试" + MAX_RETRY + "次");
                 }
 
             } catch (Exception e) {
                 LogUtil.logError("处理DM订单更新异常 (order_id=" + order.getId() + "): " + e.getMessage());
-                localDao.incrementSyncAttempts(order.getId());
-                localDao.updateSyncError(order.getId(), "处理异常: " + e.getMessage());
+                statusBatch.markFailed(order.getId(), "处理异常: " + e.getMessage());
             }
         }
 
@@ -0,0 +1,114 @@
+package org.example.model;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.util.Collection;
+import java.util.Map;
+
+/**
+ * 简道云写入出箱记录模型类
+ * 对应 jdy_outbox 表的一行，保存一次待推送的简道云写操作
+ */
+public class OutboxRecord {
+    private static final ObjectMapper mapper = new ObjectMapper();
+
+    // 数据流标识
+    public static final String STREAM_ORDER = "order";
+    public static final String STREAM_ITEM = "item";
+    public static final String STREAM_DELIVERY = "delivery";
+
+    // 操作类型
+    public static final String OP_CREATE = "CREATE"; // 新建
+    public static final String OP_UPDATE = "UPDATE"; // 按data_id更新
+    public static final String OP_UPSERT = "UPSERT"; // 推送时按查询条件判断新建或更新
+
+    private Long id;
+    private String stream;
+    private String appId;
+    private String entryId;
+    private String bizKey;
+    private String lookupConditions;
+    private String operation;
+    private String dataId;
+    private String payload;
+    private String updateOmitFields;
+    private boolean startWorkflow;
+    private int attempts;
+
+    /**
+     * 创建出箱记录
+     * @param stream 数据流标识
+     * @param appId 应用ID
+     * @param entryId 表单ID
+     * @param bizKey 业务主键（同一主键的记录按写入顺序推送）
+     * @param lookupConditions 查询已存在记录的条件（字段ID -> 值），UPSERT时使用
+     * @param operation 操作类型
+     * @param dataId 简道云数据ID，UPDATE时必填
+     * @param payload 转换后的简道云数据
+     * @param startWorkflow 新建时是否启动工作流
+     * @return 出箱记录
+     * @throws JsonProcessingException 如果序列化失败
+     */
+    public static OutboxRecord of(String stream, String appId, String entryId, String bizKey,
+            Map<String, String> lookupConditions, String operation, String dataId,
+            Map<String, Object> payload, boolean startWorkflow) throws JsonProcessingException {
+        OutboxRecord record = new OutboxRecord();
+        record.setStream(stream);
+        record.setAppId(appId);
+        record.setEntryId(entryId);
+        record.setBizKey(bizKey);
+        record.setLookupConditions(lookupConditions != null ? mapper.writeValueAsString(lookupConditions) : null);
+        record.setOperation(operation);
+        record.setDataId(dataId);
+        record.setPayload(mapper.writeValueAsString(payload));
+        record.setStartWorkflow(startWorkflow);
+        return record;
+    }
+
+    /**
+     * 设置推送时判定为更新后需从数据中移除的字段（仅新建时写入的字段），UPSERT时使用
+     * @param fieldIds 字段ID
+     * @throws JsonProcessingException 如果序列化失败
+     */
+    public void omitOnUpdate(Collection<String> fieldIds) throws JsonProcessingException {
+        this.updateOmitFields = fieldIds != null && !fieldIds.isEmpty() ? mapper.writeValueAsString(fieldIds) : null;
+    }
+
+    // Getter和Setter方法
+    public Long getId() { return id; }
+    public void setId(Long id) { this.id = id; }
+
+    public String getStream() { return stream; }
+    public void setStream(String stream) { this.stream = stream; }
+
+    public String getAppId() { return appId; }
+    public void setAppId(String appId) { this.appId = appId; }
+
+    public String getEntryId() { return entryId; }
+    public void setEntryId(String entryId) { this.entryId = entryId; }
+
+    public String getBizKey() { return bizKey; }
+    public void setBizKey(String bizKey) { this.bizKey = bizKey; }
+
+    public String getLookupConditions() { return lookupConditions; }
+    public void setLookupConditions(String lookupConditions) { this.lookupConditions = lookupConditions; }
+
+    public String getOperation() { return operation; }
+    public void setOperation(String operation) { this.operation = operation; }
+
+    public String getDataId() { return dataId; }
+    public void setDataId(String dataId) { this.dataId = dataId; }
+
+    public String getPayload() { return payload; }
+    public void setPayload(String payload) { this.payload = payload; }
+
+    public String getUpdateOmitFields() { return updateOmitFields; }
+    public void setUpdateOmitFields(String updateOmitFields) { this.updateOmitFields = updateOmitFields; }
+
+    public boolean isStartWorkflow() { return startWorkflow; }
+    public void setStartWorkflow(boolean startWorkflow) { this.startWorkflow = startWorkflow; }
+
+    public int getAttempts() { return attempts; }
+    public void setAttempts(int attempts) { this.attempts = attempts; }
+}
@@ -0,0 +1,63 @@
+package org.example.model;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+
+/**
+ * 同步检查点模型类
+ * 对应 sync_checkpoint 表的一行，每个数据流/分区一行，version 用于比较并交换（CAS）更新
+ */
+public class SyncCheckpoint {
+    private String stream;
+    private String partitionKey;
+    private Integer lastId;
+    private LocalDateTime lastTime;
+    private LocalDate syncDate;
+    private int syncCount;
+    private long version;
+
+    /**
+     * 复制检查点（缓存中的对象不直接交给调用方修改）
+     */
+    public SyncCheckpoint copy() {
+        SyncCheckpoint copy = new SyncCheckpoint();
+        copy.setStream(stream);
+        copy.setPartitionKey(partitionKey);
+        copy.setLastId(lastId);
+        copy.setLastTime(lastTime);
+        copy.setSyncDate(syncDate);
+        copy.setSyncCount(syncCount);
+        copy.setVersion(version);
+        return copy;
+    }
+
+    /**
+     * 推进检查点ID：只前进不后退，并发写入时保留较大的值
+     * @param newId 新的已同步ID
+     */
+    public void advanceLastId(int newId) {
+        lastId = lastId != null ? Math.max(lastId, newId) : newId;
+    }
+
+    // Getter和Setter方法
+    public String getStream() { return stream; }
+    public void setStream(String stream) { this.stream = stream; }
+
+    public String getPartitionKey() { return partitionKey; }
+    public void setPartitionKey(String partitionKey) { this.partitionKey = partitionKey; }
+
+    public Integer getLastId() { return lastId; }
+    public void setLastId(Integer lastId) { this.lastId = lastId; }
+
+    public LocalDateTime getLastTime() { return lastTime; }
+    public void setLastTime(LocalDateTime lastTime) { this.lastTime = lastTime; }
+
+    public LocalDate getSyncDate() { return syncDate; }
+    public void setSyncDate(LocalDate syncDate) { this.syncDate = syncDate; }
+
+    public int getSyncCount() { return syncCount; }
+    public void setSyncCount(int syncCount) { this.syncCount = syncCount; }
+
+    public long getVersion() { return version; }
+    public void setVersion(long version) { this.version = version; }
+}
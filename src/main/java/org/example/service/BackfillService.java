@@ -0,0 +1,280 @@
+package org.example.service;
+
+import org.example.config.ConfigManager;
+import org.example.dao.BackfillDao;
+import org.example.service.impl.ItemSyncServiceImpl;
+import org.example.service.impl.OrderSyncServiceImpl;
+import org.example.util.KeyLocks;
+import org.example.util.LogUtil;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * 历史数据回补服务
+ * 将源表ID空间切分为区间，由多个工作线程并行处理，各区间进度保存在 sync_backfill_range 中，
+ * 中断后重新执行同一任务即可从断点继续；回补不读写增量同步检查点，不影响增量同步。
+ * 同一业务主键可能分布在多个区间中：只写入源表中ID最大的版本，含相同主键的批次按主键串行处理，避免重复新建
+ */
+public class BackfillService {
+    private static BackfillService instance;
+
+    public static final String STREAM_ORDER = "order";
+    public static final String STREAM_ITEM = "item";
+
+    private final DatabaseService databaseService;
+    private final BackfillDao backfillDao;
+    private final int threads;
+    private final int rangeSize;
+    private final int batchSize;
+    private final long batchIntervalMillis;
+    // 正在处理的批次持有的业务主键
+    private final KeyLocks keyLocks = new KeyLocks();
+
+    private BackfillService() {
+        ConfigManager config = ConfigManager.getInstance();
+        this.databaseService = DatabaseService.getInstance();
+        this.backfillDao = BackfillDao.getInstance();
+        this.threads = Math.max(1, config.getIntProperty("sync.backfill.threads", 4));
+        this.rangeSize = Math.max(1, config.getIntProperty("sync.backfill.rangeSize", 10000));
+        this.batchSize = Math.max(1, config.getIntProperty("sync.backfill.batchSize", 50));
+        this.batchIntervalMillis = config.getIntProperty("sync.backfill.batchIntervalMs", 0);
+    }
+
+    public static synchronized BackfillService getInstance() {
+        if (instance == null) {
+            instance = new BackfillService();
+        }
+        return instance;
+    }
+
+    /**
+     * 执行回补任务
+     * @param stream 数据流（order/item）
+     * @param jobName 回补任务名，为空时使用数据流名；同名任务从上次进度继续
+     * @return 是否全部区间都已完成
+     */
+    public boolean run(String stream, String jobName) {
+        if (!STREAM_ORDER.equals(stream) && !STREAM_ITEM.equals(stream)) {
+            LogUtil.logError("[回补] 不支持的数据流: " + stream + "，支持: order, item");
+            return false;
+        }
+        String job = jobName != null && !jobName.trim().isEmpty() ? jobName.trim() : stream;
+
+        Boolean initialized = backfillDao.hasRanges(job);
+        if (initialized == null) {
+            return false;
+        }
+        if (!initialized) {
+            int[] bounds = STREAM_ORDER.equals(stream)
+                    ? databaseService.getOrderIdBounds()
+                    : databaseService.getItemIdBounds();
+            if (bounds == null) {
+                LogUtil.logInfo("[回补] " + stream + " 源表无数据，无需回补");
+                return true;
+            }
+            int count = backfillDao.createRanges(job, bounds[0], bounds[1], rangeSize);
+            if (count < 0) {
+                return false;
+            }
+            LogUtil.logInfo(String.format("[回补] 任务 %s 已切分: ID %d-%d, 共 %d 个区间",
+                    job, bounds[0], bounds[1], count));
+        }
+
+        List<BackfillDao.Range> ranges = backfillDao.findUnfinishedRanges(job);
+        if (ranges.isEmpty()) {
+            LogUtil.logInfo("[回补] 任务 " + job + " 已全部完成");
+            return true;
+        }
+        LogUtil.logInfo(String.format("[回补] 任务 %s 开始: 未完成区间 %d 个, 工作线程 %d 个",
+                job, ranges.size(), threads));
+
+        AtomicInteger threadIndex = new AtomicInteger();
+        ExecutorService executor = Executors.newFixedThreadPool(Math.min(threads, ranges.size()), r -> {
+            Thread t = new Thread(r, "backfill-" + job + "-" + threadIndex.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+
+        AtomicInteger totalRecords = new AtomicInteger();
+        List<Future<Boolean>> futures = new ArrayList<>();
+        for (BackfillDao.Range range : ranges) {
+            futures.add(executor.submit(() -> processRange(stream, range, totalRecords)));
+        }
+
+        int finished = 0;
+        try {
+            for (Future<Boolean> future : futures) {
+                try {
+                    if (future.get()) {
+                        finished++;
+                    }
+                } catch (ExecutionException e) {
+                    LogUtil.logError("[回补] 区间处理异常: " + e.getCause().getMessage());
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            LogUtil.logWarning("[回补] 任务 " + job + " 被中断，重新执行即可从断点继续");
+        } finally {
+            executor.shutdownNow();
+        }
+
+        LogUtil.logInfo(String.format("[回补] 任务 %s 结束: 完成区间 %d/%d, 处理记录 %d 条",
+                job, finished, ranges.size(), totalRecords.get()));
+        return finished == ranges.size();
+    }
+
+    /**
+     * 处理单个区间，每批处理完成后记录进度
+     * @return 区间是否处理完成
+     */
+    private boolean processRange(String stream, BackfillDao.Range range, AtomicInteger totalRecords)
+            throws InterruptedException {
+        // 区间内的数据库读取共用工作线程的一个连接
+        try (UnitOfWork unitOfWork = databaseService.beginUnitOfWork("回补区间 " + range.getId())) {
+            return processRange(stream, range, range.getLastId(), totalRecords);
+        }
+    }
+
+    private boolean processRange(String stream, BackfillDao.Range range, int lastId, AtomicInteger totalRecords)
+            throws InterruptedException {
+
+        while (lastId < range.getRangeEnd()) {
+            if (Thread.currentThread().isInterrupted()) {
+                throw new InterruptedException();
+            }
+
+            List<Map<String, Object>> data = STREAM_ORDER.equals(stream)
+                    ? databaseService.fetchOrderDataInRange(lastId, range.getRangeEnd(), batchSize)
+                    : databaseService.fetchItemDataInRange(lastId, range.getRangeEnd(), batchSize);
+            if (data == null) {
+                // 查询失败，保留进度，下次执行时从断点继续
+                return false;
+            }
+            if (data.isEmpty()) {
+                break;
+            }
+
+            // 不同区间可能含同一业务主键的多个版本：只写入源表中ID最大的版本，
+            // 避免后处理完的区间用旧版本覆盖简道云中的新版本
+            List<Map<String, Object>> versions = STREAM_ORDER.equals(stream)
+                    ? databaseService.fetchOrderVersions(jobNums(data))
+                    : databaseService.fetchItemVersions(jobNums(data));
+            if (versions == null) {
+                return false;
+            }
+            Consumer<List<Map<String, Object>>> writer = STREAM_ORDER.equals(stream)
+                    ? OrderSyncServiceImpl.getInstance()::backfill
+                    : ItemSyncServiceImpl.getInstance()::backfill;
+            applyBatch(stream, data, latestIds(stream, versions), keyLocks, writer);
+            totalRecords.addAndGet(data.size());
+
+            Integer batchMaxId = (Integer) data.get(data.size() - 1).get("id");
+            lastId = batchMaxId != null ? batchMaxId : range.getRangeEnd();
+            boolean done = data.size() < batchSize || lastId >= range.getRangeEnd();
+            if (!backfillDao.updateProgress(range.getId(), lastId, done)) {
+                return false;
+            }
+            if (done) {
+                return true;
+            }
+
+            // 每个工作线程独立限速，控制对简道云接口的调用频率
+            if (batchIntervalMillis > 0) {
+                Thread.sleep(batchIntervalMillis);
+            }
+        }
+
+        return backfillDao.updateProgress(range.getId(), lastId, true);
+    }
+
+    /**
+     * 回补一批数据：丢弃已被更新版本取代的记录，其余记录按业务主键加锁后写入简道云
+     * 同一业务主键只写入源表中ID最大的版本，各区间处理的先后不影响简道云中的最终数据；
+     * 含相同主键的批次串行写入（各自查询不到就会各自新建出重复记录），主键互不相同的批次仍并行
+     * @param latestIds 业务主键 -> 源表中的最大ID，见 {@link #latestIds}
+     * @param writer 写入简道云（查询已存在记录后更新或新建）
+     * @return 写入的记录数
+     */
+    static int applyBatch(String stream, List<Map<String, Object>> data, Map<String, Integer> latestIds,
+            KeyLocks keyLocks, Consumer<List<Map<String, Object>>> writer) throws InterruptedException {
+        List<Map<String, Object>> current = new ArrayList<>();
+        for (Map<String, Object> record : data) {
+            String key = businessKey(stream, record);
+            Integer latestId = key != null ? latestIds.get(key) : null;
+            Integer id = (Integer) record.get("id");
+            if (latestId == null || id == null || id >= latestId) {
+                current.add(record);
+            }
+        }
+        if (current.isEmpty()) {
+            return 0;
+        }
+        try (KeyLocks.Lease lease = keyLocks.acquire(businessKeys(stream, current))) {
+            writer.accept(current);
+        }
+        return current.size();
+    }
+
+    /**
+     * 各业务主键在源表中的最大ID
+     * @param versions 源表中同一批工单号下的全部行（id 及业务主键列）
+     * @return 业务主键 -> 最大ID
+     */
+    static Map<String, Integer> latestIds(String stream, List<Map<String, Object>> versions) {
+        Map<String, Integer> latestIds = new HashMap<>();
+        for (Map<String, Object> version : versions) {
+            String key = businessKey(stream, version);
+            Integer id = (Integer) version.get("id");
+            if (key != null && id != null) {
+                latestIds.merge(key, id, Math::max);
+            }
+        }
+        return latestIds;
+    }
+
+    private static List<String> jobNums(List<Map<String, Object>> data) {
+        Set<String> jobNums = new LinkedHashSet<>();
+        for (Map<String, Object> record : data) {
+            Object jobNum = record.get("job_num");
+            if (jobNum != null) {
+                jobNums.add(jobNum.toString());
+            }
+        }
+        return new ArrayList<>(jobNums);
+    }
+
+    /**
+     * 批次数据的业务主键：订单为工单号，物料为工单号+物料号+料号所属分（与简道云中查询已存在记录的条件一致）
+     */
+    static Set<String> businessKeys(String stream, List<Map<String, Object>> data) {
+        Set<String> keys = new HashSet<>();
+        for (Map<String, Object> record : data) {
+            String key = businessKey(stream, record);
+            if (key != null) {
+                keys.add(key);
+            }
+        }
+        return keys;
+    }
+
+    private static String businessKey(String stream, Map<String, Object> record) {
+        if (STREAM_ORDER.equals(stream)) {
+            Object jobNum = record.get("job_num");
+            return jobNum != null ? jobNum.toString() : null;
+        }
+        return record.get("job_num") + "|" + record.get("item_number") + "|" + record.get("item_classification");
+    }
+}
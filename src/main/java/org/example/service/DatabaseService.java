@@ -3,6 +3,12 @@ package org.example.service;
 import com.zaxxer.hikari.HikariConfig;
 import com.zaxxer.hikari.HikariDataSource;
 
+import org.example.config.ConfigManager;
+import org.example.config.ConfigSnapshotService;
+import org.example.config.FieldMappingLoader;
+import org.example.dao.CheckpointDao;
+import org.example.model.SyncCheckpoint;
+import org.example.util.ColumnProjection;
 import org.example.util.LogUtil;
 import org.example.util.Constants;
 
@@ -25,10 +31,30 @@ import java.util.Properties;
 public class DatabaseService {
     private static DatabaseService instance;
     private static HikariDataSource dataSource;
+    private static final int ID_CHUNK_SIZE = 500; // IN 查询每段ID数量，避免超出参数上限
+    private static final int BACKLOG_PROBE_LIMIT = 100000; // 积压探测最多计数的行数
+    // 采购物料通知单主表可读取的列（readDeliveryRecord 支持的列）
+    private static final String[] DELIVERY_COLUMNS = {
+            "id", "sid", "osp_code", "tran_date", "asn_num", "vendor_name",
+            "po_num", "create_date", "comments", "create_time"};
+    private final CheckpointDao checkpointDao = CheckpointDao.getInstance();
+    // 按通知单字段映射生成，映射文件更新后重新生成
+    private volatile ColumnProjection deliveryProjection;
+    // 工作单元内是否使用只读快照事务
+    private final boolean snapshotReads =
+            ConfigManager.getInstance().getBooleanProperty("sync.uow.snapshot", false);
     
     // 私有构造函数，防止外部实例化
     private DatabaseService() {
         initializeConnectionPool();
+        this.deliveryProjection = buildDeliveryProjection();
+        ConfigSnapshotService.getInstance().addReloadListener(() -> deliveryProjection = buildDeliveryProjection());
+    }
+
+    private static ColumnProjection buildDeliveryProjection() {
+        // id 用于推进检查点，asn_num 用于查询简道云已有记录和出箱业务主键，无论映射是否配置都必须读取
+        return ColumnProjection.of(new String[]{"id", "asn_num"}, DELIVERY_COLUMNS,
+                FieldMappingLoader.getInstance().getMappedColumns(Constants.DEFAULT_DELIVERY_FIELD_MAPPING_PATH, null));
     }
     
     // 单例模式获取实例
@@ -113,6 +139,11 @@ public class DatabaseService {
      * @throws SQLException SQL异常
      */
     private Connection getConnection() throws SQLException {
+        // 当前线程处于工作单元中时复用其连接
+        Connection bound = UnitOfWork.currentConnection();
+        if (bound != null) {
+            return bound;
+        }
         if (dataSource == null) {
             throw new SQLException("数据库连接池未初始化");
         }
@@ -128,6 +159,25 @@ public class DatabaseService {
         }
     }
     
+    /**
+     * 开始工作单元，阶段内本服务的查询复用同一个连接和预编译语句
+     * 当前线程已有工作单元时加入该工作单元
+     * @param stage 阶段名称（用于日志）
+     * @return 工作单元，获取连接失败时返回null（查询退回为各自借用连接）
+     */
+    public UnitOfWork beginUnitOfWork(String stage) {
+        UnitOfWork nested = UnitOfWork.joinCurrent(stage);
+        if (nested != null) {
+            return nested;
+        }
+        try {
+            return UnitOfWork.begin(stage, getConnection(), snapshotReads);
+        } catch (SQLException e) {
+            LogUtil.logWarning("[" + stage + "] 开始工作单元失败，查询将各自获取连接: " + e.getMessage());
+            return null;
+        }
+    }
+
     /**
      * 关闭连接池
      */
@@ -158,15 +208,8 @@ public class DatabaseService {
      * @return 上次同步ID，如果不存在则返回null
      */
     public Integer getLastSyncId() {
-        try (Connection conn = getConnection();
-             Statement stmt = conn.createStatement()) {
-            ResultSet rs = stmt.executeQuery("SELECT TOP 1 last_sync_id FROM sync_status ORDER BY id DESC");
-            Integer result = rs.next() ? rs.getInt("last_sync_id") : null;
-            return result;
-        } catch (SQLException e) {
-            LogUtil.logError("获取同步ID失败: " + e.getMessage());
-            return null;
-        }
+        SyncCheckpoint checkpoint = checkpointDao.get(CheckpointDao.STREAM_ORDER);
+        return checkpoint != null ? checkpoint.getLastId() : null;
     }
     
     /**
@@ -179,39 +222,15 @@ public class DatabaseService {
         result.put("sync_date", today);
         result.put("sync_count", 0); // 默认计数为0
 
-        try (Connection conn = getConnection();
-             Statement stmt = conn.createStatement()) {
-            ResultSet rs = stmt.executeQuery("SELECT TOP 1 sync_date, sync_count FROM sync_status ORDER BY id DESC");
-            if (rs.next()) {
-                java.sql.Date syncDate = rs.getDate("sync_date");
-                // 获取sync_count作为字符串
-                String syncCodeStr = rs.getString("sync_count");
-
-                // 计算字符在CUSTOM_CODE_CHARS中的索引
-                int syncCount = 0;
-                if (syncCodeStr != null && !syncCodeStr.trim().isEmpty()) {
-                    char codeChar = syncCodeStr.trim().charAt(0); // 取第一个字符
-                    // 在CUSTOM_CODE_CHARS数组中查找该字符的索引
-                    for (int i = 0; i < Constants.CUSTOM_CODE_CHARS.length; i++) {
-                        if (Constants.CUSTOM_CODE_CHARS[i] == codeChar) {
-                            syncCount = i;
-                            break;
-                        }
-                    }
-                }
-
-                if (syncDate != null) {
-                    LocalDate lastSyncDate = syncDate.toLocalDate();
-                    result.put("sync_date", lastSyncDate);
+        SyncCheckpoint checkpoint = checkpointDao.get(CheckpointDao.STREAM_ORDER);
+        if (checkpoint != null && checkpoint.getSyncDate() != null) {
+            LocalDate lastSyncDate = checkpoint.getSyncDate();
+            result.put("sync_date", lastSyncDate);
 
-                    // 如果是同一天，使用计算出的索引；否则重置为0
-                    if (lastSyncDate.equals(today)) {
-                        result.put("sync_count", syncCount);
-                    }
-                }
+            // 如果是同一天，使用保存的计数；否则重置为0
+            if (lastSyncDate.equals(today)) {
+                result.put("sync_count", checkpoint.getSyncCount());
             }
-        } catch (SQLException e) {
-            LogUtil.logError("获取同步日期和计数失败: " + e.getMessage());
         }
 
         return result;
@@ -224,54 +243,29 @@ public class DatabaseService {
      * @param syncCount 同步计数
      */
     public void updateSyncStatus(int lastSyncId, LocalDate syncDate, int syncCount) {
-        // 获取当前索引对应的自定义码字符
-        String syncCodeChar = (syncCount < Constants.CUSTOM_CODE_MAX_COUNT) ? 
-                String.valueOf(Constants.CUSTOM_CODE_CHARS[syncCount]) : "Z";
-
-        String sql = "UPDATE sync_status SET last_sync_id = ?, sync_date = ?, sync_count = ? WHERE id = (SELECT MAX(id) FROM sync_status)";
-
-        try (Connection conn = getConnection();
-             PreparedStatement pstmt = conn.prepareStatement(sql)) {
-
-            pstmt.setInt(1, lastSyncId);
-            pstmt.setDate(2, java.sql.Date.valueOf(syncDate));
-            // 存储字符而不是数字
-            pstmt.setString(3, syncCodeChar);
-            int rowsAffected = pstmt.executeUpdate();
-
-            if (rowsAffected == 0) {
-                insertInitialSyncStatus(conn, lastSyncId, syncDate, syncCount);
-            }
-            // 同步状态已更新
-        } catch (SQLException e) {
-            LogUtil.logError("更新同步状态失败: " + e.getMessage());
-        }
+        checkpointDao.update(CheckpointDao.STREAM_ORDER, CheckpointDao.DEFAULT_PARTITION,
+                checkpoint -> applyOrderCheckpoint(checkpoint, lastSyncId, syncDate, syncCount));
     }
-    
+
     /**
-     * 插入初始同步状态
+     * 使用指定连接更新同步状态（可参与调用方事务）
      * @param conn 数据库连接
      * @param lastSyncId 最新同步ID
      * @param syncDate 同步日期
      * @param syncCount 同步计数
-     * @throws SQLException 如果插入失败
-     */
-    private void insertInitialSyncStatus(Connection conn, int lastSyncId, LocalDate syncDate, int syncCount) throws SQLException {
-        // 获取当前索引对应的自定义码字符
-        String syncCodeChar = (syncCount < Constants.CUSTOM_CODE_MAX_COUNT) ? 
-                String.valueOf(Constants.CUSTOM_CODE_CHARS[syncCount]) : "Z";
-
-        String insertSql = "INSERT INTO sync_status (last_sync_id, item_sync_id, sync_date, sync_count) VALUES (?, 0, ?, ?)";
-        try (PreparedStatement pstmt = conn.prepareStatement(insertSql)) {
-            pstmt.setInt(1, lastSyncId);
-            pstmt.setDate(2, java.sql.Date.valueOf(syncDate));
-            // 存储字符而不是数字
-            pstmt.setString(3, syncCodeChar);
-            pstmt.executeUpdate();
-
-            LogUtil.logInfo(String.format("插入初始同步状态: ID=%d", lastSyncId));
-        }
+     * @throws SQLException 如果更新失败
+     */
+    public void updateSyncStatus(Connection conn, int lastSyncId, LocalDate syncDate, int syncCount) throws SQLException {
+        checkpointDao.update(conn, CheckpointDao.STREAM_ORDER, CheckpointDao.DEFAULT_PARTITION,
+                checkpoint -> applyOrderCheckpoint(checkpoint, lastSyncId, syncDate, syncCount));
     }
+
+    private static void applyOrderCheckpoint(SyncCheckpoint checkpoint, int lastSyncId, LocalDate syncDate, int syncCount) {
+        checkpoint.advanceLastId(lastSyncId);
+        checkpoint.setSyncDate(syncDate);
+        checkpoint.setSyncCount(syncCount);
+    }
+
     
     /**
      * 获取新增订单数据
@@ -309,6 +303,7 @@ public class DatabaseService {
                 
                 return data;
             } catch (SQLException e) {
+                UnitOfWork.discardConnection(e);
                 retryCount++;
                 if (retryCount >= Constants.MAX_RETRY) {
                     LogUtil.logError("查询订单数据失败，已重试" + Constants.MAX_RETRY + "次: " + e.getMessage());
@@ -363,6 +358,7 @@ public class DatabaseService {
                 
                 return data;
             } catch (SQLException e) {
+                UnitOfWork.discardConnection(e);
                 retryCount++;
                 if (retryCount >= Constants.MAX_RETRY) {
                     LogUtil.logError("查询物料数据失败，已重试" + Constants.MAX_RETRY + "次: " + e.getMessage());
@@ -414,6 +410,7 @@ public class DatabaseService {
                 
                 return data;
             } catch (SQLException e) {
+                UnitOfWork.discardConnection(e);
                 retryCount++;
                 if (retryCount >= Constants.MAX_RETRY) {
                     LogUtil.logError("查询物料数据失败，已重试" + Constants.MAX_RETRY + "次: " + e.getMessage());
@@ -435,15 +432,8 @@ public class DatabaseService {
      * @return 上次同步ID，如果不存在则返回null
      */
     public Integer getLastItemSyncId() {
-        try (Connection conn = getConnection();
-             Statement stmt = conn.createStatement()) {
-            ResultSet rs = stmt.executeQuery("SELECT TOP 1 item_sync_id FROM sync_status ORDER BY id DESC");
-            Integer result = rs.next() ? rs.getInt("item_sync_id") : null;
-            return result;
-        } catch (SQLException e) {
-            LogUtil.logError("获取物料同步ID失败: " + e.getMessage());
-            return null;
-        }
+        SyncCheckpoint checkpoint = checkpointDao.get(CheckpointDao.STREAM_ITEM);
+        return checkpoint != null ? checkpoint.getLastId() : null;
     }
     
     /**
@@ -451,22 +441,19 @@ public class DatabaseService {
      * @param lastItemSyncId 最新物料同步ID
      */
     public void updateItemSyncStatus(int lastItemSyncId) {
-        String sql = "UPDATE sync_status SET item_sync_id = ? WHERE id = (SELECT MAX(id) FROM sync_status)";
-
-        try (Connection conn = getConnection();
-             PreparedStatement pstmt = conn.prepareStatement(sql)) {
-
-            pstmt.setInt(1, lastItemSyncId);
-            int rowsAffected = pstmt.executeUpdate();
+        checkpointDao.update(CheckpointDao.STREAM_ITEM, CheckpointDao.DEFAULT_PARTITION,
+                checkpoint -> checkpoint.advanceLastId(lastItemSyncId));
+    }
 
-            if (rowsAffected == 0) {
-                LogUtil.logError("更新物料同步状态失败，不存在记录");
-            }
-            
-            // 物料同步状态已更新
-        } catch (SQLException e) {
-            LogUtil.logError("更新物料同步状态失败: " + e.getMessage());
-        }
+    /**
+     * 使用指定连接更新物料同步状态（可参与调用方事务）
+     * @param conn 数据库连接
+     * @param lastItemSyncId 最新物料同步ID
+     * @throws SQLException 如果更新失败
+     */
+    public void updateItemSyncStatus(Connection conn, int lastItemSyncId) throws SQLException {
+        checkpointDao.update(conn, CheckpointDao.STREAM_ITEM, CheckpointDao.DEFAULT_PARTITION,
+                checkpoint -> checkpoint.advanceLastId(lastItemSyncId));
     }
 
     /**
@@ -474,15 +461,8 @@ public class DatabaseService {
      * @return 上次同步ID，如果不存在则返回null
      */
     public Integer getLastDeliverySyncId() {
-        try (Connection conn = getConnection();
-             Statement stmt = conn.createStatement()) {
-            ResultSet rs = stmt.executeQuery("SELECT TOP 1 delivery_sync_id FROM sync_status ORDER BY id DESC");
-            Integer result = rs.next() ? rs.getInt("delivery_sync_id") : null;
-            return result;
-        } catch (SQLException e) {
-            LogUtil.logError("获取采购物料通知单同步ID失败: " + e.getMessage());
-            return null;
-        }
+        SyncCheckpoint checkpoint = checkpointDao.get(CheckpointDao.STREAM_DELIVERY);
+        return checkpoint != null ? checkpoint.getLastId() : null;
     }
 
     /**
@@ -492,7 +472,8 @@ public class DatabaseService {
      */
     public List<Map<String, Object>> fetchNewDeliveryData(Integer lastSyncId) {
         List<Map<String, Object>> data = new ArrayList<>();
-        String sql = "SELECT * FROM po_delivery_notice " +
+        ColumnProjection projection = deliveryProjection;
+        String sql = "SELECT " + projection.selectList() + " FROM po_delivery_notice " +
                 (lastSyncId != null ? "WHERE id > ? ORDER BY id ASC" : "ORDER BY id ASC");
 
         try (Connection conn = getConnection();
@@ -502,20 +483,10 @@ public class DatabaseService {
             ResultSet rs = pstmt.executeQuery();
 
             while (rs.next()) {
-                Map<String, Object> record = new HashMap<>();
-                record.put("id", rs.getInt("id"));
-                record.put("sid", rs.getString("sid"));
-                record.put("osp_code", rs.getString("osp_code"));
-                record.put("tran_date", rs.getString("tran_date"));
-                record.put("asn_num", rs.getString("asn_num"));
-                record.put("vendor_name", rs.getString("vendor_name"));
-                record.put("po_num", rs.getString("po_num"));
-                record.put("create_date", rs.getString("create_date"));
-                record.put("comments", rs.getString("comments"));
-                record.put("create_time", rs.getTimestamp("create_time"));
-                data.add(record);
+                data.add(readDeliveryRecord(rs, projection));
             }
         } catch (SQLException e) {
+            UnitOfWork.discardConnection(e);
             LogUtil.logError("获取新增采购物料通知单数据失败: " + e.getMessage());
         }
 
@@ -523,44 +494,319 @@ public class DatabaseService {
     }
 
     /**
-     * 更新采购物料通知单同步状态
-     * @param lastDeliverySyncId 最新采购物料通知单同步ID
+     * 按ID获取订单数据（变更跟踪模式）
+     * @param ids 订单ID列表
+     * @return 订单数据列表，按ID升序
      */
-    public void updateDeliverySyncStatus(int lastDeliverySyncId) {
-        String sql = "UPDATE sync_status SET delivery_sync_id = ? WHERE id = (SELECT MAX(id) FROM sync_status)";
+    public List<Map<String, Object>> fetchOrderDataByIds(List<Integer> ids) {
+        return fetchByIds("oms_order", Constants.ORDER_FIELDS, ids);
+    }
+
+    /**
+     * 按ID获取物料数据（变更跟踪模式）
+     * @param ids 物料ID列表
+     * @return 物料数据列表，按ID升序
+     */
+    public List<Map<String, Object>> fetchItemDataByIds(List<Integer> ids) {
+        return fetchByIds("oms_job_item_info", Constants.ITEM_FIELDS, ids);
+    }
+
+    /**
+     * 按ID获取采购物料通知单数据（变更跟踪模式）
+     * @param ids 通知单ID列表
+     * @return 通知单数据列表，按ID升序
+     */
+    public List<Map<String, Object>> fetchDeliveryDataByIds(List<Integer> ids) {
+        List<Map<String, Object>> data = new ArrayList<>();
+        ColumnProjection projection = deliveryProjection;
+        try (Connection conn = getConnection()) {
+            for (int start = 0; start < ids.size(); start += ID_CHUNK_SIZE) {
+                List<Integer> chunk = ids.subList(start, Math.min(start + ID_CHUNK_SIZE, ids.size()));
+                try (PreparedStatement pstmt = conn.prepareStatement(
+                        "SELECT " + projection.selectList() + " FROM po_delivery_notice WHERE id IN (" +
+                                placeholders(chunk.size()) + ") ORDER BY id ASC")) {
+                    for (int i = 0; i < chunk.size(); i++) {
+                        pstmt.setInt(i + 1, chunk.get(i));
+                    }
+                    ResultSet rs = pstmt.executeQuery();
+                    while (rs.next()) {
+                        data.add(readDeliveryRecord(rs, projection));
+                    }
+                }
+            }
+        } catch (SQLException e) {
+            UnitOfWork.discardConnection(e);
+            LogUtil.logError("按ID获取采购物料通知单数据失败: " + e.getMessage());
+        }
+        return data;
+    }
+
+    /**
+     * 按ID分段查询指定字段
+     */
+    private List<Map<String, Object>> fetchByIds(String tableName, String fields, List<Integer> ids) {
+        List<Map<String, Object>> data = new ArrayList<>();
+        String[] fieldNames = fields.split(", ");
+
+        try (Connection conn = getConnection()) {
+            for (int start = 0; start < ids.size(); start += ID_CHUNK_SIZE) {
+                List<Integer> chunk = ids.subList(start, Math.min(start + ID_CHUNK_SIZE, ids.size()));
+                String sql = "SELECT " + fields + " FROM " + tableName +
+                        " WHERE id IN (" + placeholders(chunk.size()) + ") ORDER BY id ASC";
+                try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
+                    for (int i = 0; i < chunk.size(); i++) {
+                        pstmt.setInt(i + 1, chunk.get(i));
+                    }
+                    ResultSet rs = pstmt.executeQuery();
+                    while (rs.next()) {
+                        data.add(readFields(rs, fieldNames));
+                    }
+                }
+            }
+        } catch (SQLException e) {
+            UnitOfWork.discardConnection(e);
+            LogUtil.logError("按ID获取" + tableName + "数据失败: " + e.getMessage());
+        }
+        return data;
+    }
+
+    /**
+     * 探测订单表中待同步的记录数
+     * @param lastSyncId 上次同步ID
+     * @return 待同步记录数（最多计数到探测上限），查询失败时返回-1
+     */
+    public int probeOrderBacklog(Integer lastSyncId) {
+        return probeBacklog("oms_order", lastSyncId);
+    }
+
+    /**
+     * 探测物料表中待同步的记录数
+     * @param lastSyncId 上次同步ID
+     * @return 待同步记录数（最多计数到探测上限），查询失败时返回-1
+     */
+    public int probeItemBacklog(Integer lastSyncId) {
+        return probeBacklog("oms_job_item_info", lastSyncId);
+    }
+
+    /**
+     * 探测采购物料通知单表中待同步的记录数
+     * @param lastSyncId 上次同步ID
+     * @return 待同步记录数（最多计数到探测上限），查询失败时返回-1
+     */
+    public int probeDeliveryBacklog(Integer lastSyncId) {
+        return probeBacklog("po_delivery_notice", lastSyncId);
+    }
+
+    /**
+     * 只读取主键的轻量探测：在聚集索引上按 id > 检查点做范围查找并计数，
+     * 没有新数据时只需一次索引查找，不读取任何业务列
+     */
+    private int probeBacklog(String tableName, Integer lastSyncId) {
+        String sql = "SELECT COUNT(*) FROM (SELECT TOP " + BACKLOG_PROBE_LIMIT + " id FROM " + tableName +
+                (lastSyncId != null ? " WHERE id > ?" : "") + ") t";
 
         try (Connection conn = getConnection();
              PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            if (lastSyncId != null) {
+                pstmt.setInt(1, lastSyncId);
+            }
+            try (ResultSet rs = pstmt.executeQuery()) {
+                return rs.next() ? rs.getInt(1) : 0;
+            }
+        } catch (SQLException e) {
+            UnitOfWork.discardConnection(e);
+            LogUtil.logError("探测" + tableName + "待同步数据失败: " + e.getMessage());
+            return -1;
+        }
+    }
 
-            pstmt.setInt(1, lastDeliverySyncId);
-            int rowsAffected = pstmt.executeUpdate();
+    /**
+     * 获取订单表的ID范围（回补模式）
+     * @return {最小ID, 最大ID}，表为空或查询失败时返回null
+     */
+    public int[] getOrderIdBounds() {
+        return getIdBounds("oms_order");
+    }
 
-            if (rowsAffected == 0) {
-                // 如果没有记录，插入初始记录
-                insertInitialDeliverySyncStatus(conn, lastDeliverySyncId);
+    /**
+     * 获取物料表的ID范围（回补模式）
+     * @return {最小ID, 最大ID}，表为空或查询失败时返回null
+     */
+    public int[] getItemIdBounds() {
+        return getIdBounds("oms_job_item_info");
+    }
+
+    /**
+     * 获取ID区间内的订单数据（回补模式）
+     * @param afterId 起始ID（不含）
+     * @param endId 结束ID（含）
+     * @param maxBatchSize 最大批次大小
+     * @return 订单数据列表，按ID升序，查询失败时返回null
+     */
+    public List<Map<String, Object>> fetchOrderDataInRange(int afterId, int endId, int maxBatchSize) {
+        return fetchRange("oms_order", Constants.ORDER_FIELDS, afterId, endId, maxBatchSize);
+    }
+
+    /**
+     * 获取ID区间内的物料数据（回补模式）
+     * @param afterId 起始ID（不含）
+     * @param endId 结束ID（含）
+     * @param maxBatchSize 最大批次大小
+     * @return 物料数据列表，按ID升序，查询失败时返回null
+     */
+    public List<Map<String, Object>> fetchItemDataInRange(int afterId, int endId, int maxBatchSize) {
+        return fetchRange("oms_job_item_info", Constants.ITEM_FIELDS, afterId, endId, maxBatchSize);
+    }
+
+    /**
+     * 按工单号获取订单表中全部版本的ID（回补模式，用于判断记录是否已被更新版本取代）
+     * @param jobNums 工单号列表
+     * @return 各行的 id、job_num，查询失败时返回null
+     */
+    public List<Map<String, Object>> fetchOrderVersions(List<String> jobNums) {
+        return fetchByJobNums("oms_order", "id, job_num", jobNums);
+    }
+
+    /**
+     * 按工单号获取物料表中全部版本的ID及业务主键列（回补模式，用于判断记录是否已被更新版本取代）
+     * @param jobNums 工单号列表
+     * @return 各行的 id、job_num、item_number、item_classification，查询失败时返回null
+     */
+    public List<Map<String, Object>> fetchItemVersions(List<String> jobNums) {
+        return fetchByJobNums("oms_job_item_info", "id, job_num, item_number, item_classification", jobNums);
+    }
+
+    /**
+     * 按工单号分段查询指定字段
+     * @return 数据列表，查询失败时返回null
+     */
+    private List<Map<String, Object>> fetchByJobNums(String tableName, String fields, List<String> jobNums) {
+        List<Map<String, Object>> data = new ArrayList<>();
+        String[] fieldNames = fields.split(", ");
+
+        try (Connection conn = getConnection()) {
+            for (int start = 0; start < jobNums.size(); start += ID_CHUNK_SIZE) {
+                List<String> chunk = jobNums.subList(start, Math.min(start + ID_CHUNK_SIZE, jobNums.size()));
+                String sql = "SELECT " + fields + " FROM " + tableName +
+                        " WHERE job_num IN (" + placeholders(chunk.size()) + ")";
+                try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
+                    for (int i = 0; i < chunk.size(); i++) {
+                        pstmt.setString(i + 1, chunk.get(i));
+                    }
+                    ResultSet rs = pstmt.executeQuery();
+                    while (rs.next()) {
+                        data.add(readFields(rs, fieldNames));
+                    }
+                }
+            }
+        } catch (SQLException e) {
+            UnitOfWork.discardConnection(e);
+            LogUtil.logError("按工单号获取" + tableName + "数据失败: " + e.getMessage());
+            return null;
+        }
+        return data;
+    }
+
+    private int[] getIdBounds(String tableName) {
+        try (Connection conn = getConnection();
+             Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT MIN(id), MAX(id) FROM " + tableName)) {
+            if (rs.next()) {
+                int minId = rs.getInt(1);
+                if (!rs.wasNull()) {
+                    return new int[]{minId, rs.getInt(2)};
+                }
             }
-            
-            // 采购物料通知单同步状态已更新
         } catch (SQLException e) {
-            LogUtil.logError("更新采购物料通知单同步状态失败: " + e.getMessage());
+            UnitOfWork.discardConnection(e);
+            LogUtil.logError("获取" + tableName + "的ID范围失败: " + e.getMessage());
         }
+        return null;
     }
 
     /**
-     * 插入初始采购物料通知单同步状态
-     * @param conn 数据库连接
-     * @param lastDeliverySyncId 最新采购物料通知单同步ID
-     * @throws SQLException 如果插入失败
+     * 按ID区间查询指定字段
+     * @return 数据列表，查询失败时返回null（避免把失败当作区间已处理完）
      */
-    private void insertInitialDeliverySyncStatus(Connection conn, int lastDeliverySyncId) throws SQLException {
-        String insertSql = "INSERT INTO sync_status (last_sync_id, item_sync_id, delivery_sync_id, sync_date, sync_count) VALUES (0, 0, ?, ?, 'A')";
-        try (PreparedStatement pstmt = conn.prepareStatement(insertSql)) {
-            pstmt.setInt(1, lastDeliverySyncId);
-            pstmt.setDate(2, java.sql.Date.valueOf(LocalDate.now()));
-            pstmt.executeUpdate();
+    private List<Map<String, Object>> fetchRange(String tableName, String fields, int afterId, int endId,
+            int maxBatchSize) {
+        List<Map<String, Object>> data = new ArrayList<>();
+        String[] fieldNames = fields.split(", ");
+        String sql = "SELECT TOP " + maxBatchSize + " " + fields + " FROM " + tableName +
+                " WHERE id > ? AND id <= ? ORDER BY id ASC";
 
-            LogUtil.logInfo(String.format("插入初始采购物料通知单同步状态: ID=%d", lastDeliverySyncId));
+        try (Connection conn = getConnection();
+             PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            pstmt.setInt(1, afterId);
+            pstmt.setInt(2, endId);
+            ResultSet rs = pstmt.executeQuery();
+            while (rs.next()) {
+                data.add(readFields(rs, fieldNames));
+            }
+        } catch (SQLException e) {
+            UnitOfWork.discardConnection(e);
+            LogUtil.logError("按ID区间获取" + tableName + "数据失败: " + e.getMessage());
+            return null;
+        }
+        return data;
+    }
+
+    /**
+     * 读取一行指定字段，日期时间转换为java.time类型
+     */
+    private static Map<String, Object> readFields(ResultSet rs, String[] fieldNames) throws SQLException {
+        Map<String, Object> record = new HashMap<>();
+        for (String field : fieldNames) {
+            Object value = rs.getObject(field);
+            if (value instanceof java.sql.Date) {
+                value = ((java.sql.Date) value).toLocalDate();
+            } else if (value instanceof java.sql.Timestamp) {
+                value = ((java.sql.Timestamp) value).toLocalDateTime();
+            }
+            record.put(field, value);
+        }
+        return record;
+    }
+
+    private static String placeholders(int count) {
+        return String.join(", ", Collections.nCopies(count, "?"));
+    }
+
+    /**
+     * 读取一行采购物料通知单数据（仅读取投影中的列）
+     */
+    private Map<String, Object> readDeliveryRecord(ResultSet rs, ColumnProjection projection) throws SQLException {
+        Map<String, Object> record = new HashMap<>();
+        for (String column : projection.getColumns()) {
+            if ("id".equals(column)) {
+                record.put(column, rs.getInt(column));
+            } else if ("create_time".equals(column)) {
+                record.put(column, rs.getTimestamp(column));
+            } else {
+                record.put(column, rs.getString(column));
+            }
         }
+        return record;
+    }
+
+    /**
+     * 更新采购物料通知单同步状态
+     * @param lastDeliverySyncId 最新采购物料通知单同步ID
+     */
+    public void updateDeliverySyncStatus(int lastDeliverySyncId) {
+        checkpointDao.update(CheckpointDao.STREAM_DELIVERY, CheckpointDao.DEFAULT_PARTITION,
+                checkpoint -> checkpoint.advanceLastId(lastDeliverySyncId));
+    }
+
+    /**
+     * 使用指定连接更新采购物料通知单同步状态（可参与调用方事务）
+     * @param conn 数据库连接
+     * @param lastDeliverySyncId 最新采购物料通知单同步ID
+     * @throws SQLException 如果更新失败
+     */
+    public void updateDeliverySyncStatus(Connection conn, int lastDeliverySyncId) throws SQLException {
+        checkpointDao.update(conn, CheckpointDao.STREAM_DELIVERY, CheckpointDao.DEFAULT_PARTITION,
+                checkpoint -> checkpoint.advanceLastId(lastDeliverySyncId));
     }
     
     /**
@@ -583,8 +829,13 @@ public class DatabaseService {
      * @return 子表数据列表
      */
     public List<Map<String, Object>> querySubTableWithMapping(int parentId, String tableName, Map<String, String> fieldMapping, String foreignKeyField) {
-        String sql = "SELECT * FROM " + tableName + " WHERE " + foreignKeyField + " = ?";
         List<Map<String, Object>> result = new ArrayList<>();
+        if (fieldMapping == null || fieldMapping.isEmpty()) {
+            return result;
+        }
+        // 只查询映射中配置的列
+        String sql = "SELECT " + ColumnProjection.of(fieldMapping.keySet()).selectList() +
+                " FROM " + tableName + " WHERE " + foreignKeyField + " = ?";
         
         try (Connection conn = getConnection();
              PreparedStatement pstmt = conn.prepareStatement(sql)) {
@@ -592,26 +843,76 @@ public class DatabaseService {
             ResultSet rs = pstmt.executeQuery();
             
             while (rs.next()) {
-                Map<String, Object> item = new HashMap<>();
-                for (Map.Entry<String, String> entry : fieldMapping.entrySet()) {
-                    String srcField = entry.getKey();
-                    String destField = entry.getValue();
-                    Object value = rs.getObject(srcField);
-                    if (value == null) {
-                        value = "";
-                    } else if (value instanceof Number) {
-                        value = value.toString();
-                    } else if (value instanceof String) {
-                        value = ((String) value).trim();
-                    }
-                    item.put(destField, Collections.singletonMap("value", value));
-                }
-                result.add(item);
+                result.add(readSubTableRow(rs, fieldMapping));
             }
         } catch (SQLException e) {
+            UnitOfWork.discardConnection(e);
             LogUtil.logError("查询子表数据失败: " + e.getMessage());
         }
         
         return result;
     }
+
+    /**
+     * 按父表ID批量查询子表数据，在同步线程上一次取回整页记录的子表
+     * @param parentIds 父表ID列表
+     * @param tableName 表名
+     * @param fieldMapping 字段映射
+     * @param foreignKeyField 外键字段名
+     * @return 父表ID -> 子表数据列表；没有子表数据的父表不在结果中，查询失败时返回已取回的部分
+     */
+    public Map<Integer, List<Map<String, Object>>> querySubTablesWithMapping(List<Integer> parentIds, String tableName,
+            Map<String, String> fieldMapping, String foreignKeyField) {
+        Map<Integer, List<Map<String, Object>>> result = new HashMap<>();
+        if (fieldMapping == null || fieldMapping.isEmpty() || parentIds.isEmpty()) {
+            return result;
+        }
+        // 只查询映射中配置的列，另加外键列用于分组
+        List<String> columns = new ArrayList<>(fieldMapping.keySet());
+        columns.add(foreignKeyField);
+        String selectList = ColumnProjection.of(columns).selectList();
+
+        try (Connection conn = getConnection()) {
+            for (int start = 0; start < parentIds.size(); start += ID_CHUNK_SIZE) {
+                List<Integer> chunk = parentIds.subList(start, Math.min(start + ID_CHUNK_SIZE, parentIds.size()));
+                String sql = "SELECT " + selectList + " FROM " + tableName +
+                        " WHERE " + foreignKeyField + " IN (" + placeholders(chunk.size()) + ")";
+                try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
+                    for (int i = 0; i < chunk.size(); i++) {
+                        pstmt.setInt(i + 1, chunk.get(i));
+                    }
+                    ResultSet rs = pstmt.executeQuery();
+                    while (rs.next()) {
+                        result.computeIfAbsent(rs.getInt(foreignKeyField), id -> new ArrayList<>())
+                                .add(readSubTableRow(rs, fieldMapping));
+                    }
+                }
+            }
+        } catch (SQLException e) {
+            UnitOfWork.discardConnection(e);
+            LogUtil.logError("批量查询子表" + tableName + "数据失败: " + e.getMessage());
+        }
+        return result;
+    }
+
+    /**
+     * 读取一行子表数据，按字段映射转换为控件ID -> 值
+     */
+    private Map<String, Object> readSubTableRow(ResultSet rs, Map<String, String> fieldMapping) throws SQLException {
+        Map<String, Object> item = new HashMap<>();
+        for (Map.Entry<String, String> entry : fieldMapping.entrySet()) {
+            String srcField = entry.getKey();
+            String destField = entry.getValue();
+            Object value = rs.getObject(srcField);
+            if (value == null) {
+                value = "";
+            } else if (value instanceof Number) {
+                value = value.toString();
+            } else if (value instanceof String) {
+                value = ((String) value).trim();
+            }
+            item.put(destField, value);
+        }
+        return item;
+    }
 } 
\ No newline at end of file
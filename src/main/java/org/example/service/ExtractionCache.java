@@ -0,0 +1,186 @@
+package org.example.service;
+
+import org.example.config.ConfigManager;
+import org.example.util.LogUtil;
+
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+/**
+ * 产品信息提取结果缓存
+ * 同一产品系列的工单及同一工单的各个版本，合并后的生产指示文本往往完全相同，
+ * 以合并文本为键缓存图档号、卷标、VID/PID等完整提取结果，命中时不再重复执行正则提取。
+ * 按最近最少使用淘汰，条目数和估算内存占用均有上限；产品信息数据库或提取规则变化时需调用 invalidate 清空。
+ */
+public class ExtractionCache {
+    private static ExtractionCache instance;
+
+    // 每个条目除文本外的估算固定开销（字节）：链表节点、结果对象、两个Map
+    private static final int ENTRY_OVERHEAD_BYTES = 400;
+
+    /**
+     * 一段合并文本的完整提取结果（不可变）
+     */
+    public static final class Result {
+        private final Map<String, String> documentNumbers;
+        private final String volumeLabel;
+        private final Map<String, String> productInfo;
+        private final long estimatedBytes;
+
+        public Result(Map<String, String> documentNumbers, String volumeLabel, Map<String, String> productInfo) {
+            this.documentNumbers = Collections.unmodifiableMap(new LinkedHashMap<>(documentNumbers));
+            this.volumeLabel = volumeLabel;
+            this.productInfo = Collections.unmodifiableMap(new LinkedHashMap<>(productInfo));
+            this.estimatedBytes = sizeOf(documentNumbers) + sizeOf(productInfo)
+                    + 2L * (volumeLabel != null ? volumeLabel.length() : 0);
+        }
+
+        public Map<String, String> getDocumentNumbers() {
+            return documentNumbers;
+        }
+
+        public String getVolumeLabel() {
+            return volumeLabel;
+        }
+
+        public Map<String, String> getProductInfo() {
+            return productInfo;
+        }
+
+        private static long sizeOf(Map<String, String> map) {
+            long chars = 0;
+            for (Map.Entry<String, String> entry : map.entrySet()) {
+                chars += entry.getKey().length() + (entry.getValue() != null ? entry.getValue().length() : 0);
+            }
+            return 2 * chars;
+        }
+    }
+
+    private final int maxEntries;
+    private final long maxBytes;
+    private final LinkedHashMap<String, Result> entries = new LinkedHashMap<>(256, 0.75f, true);
+    private long usedBytes = 0;
+    // 每次清空加1：清空前开始的提取结果可能按旧规则得出，不再写入缓存
+    private long generation = 0;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    private ExtractionCache() {
+        ConfigManager config = ConfigManager.getInstance();
+        this.maxEntries = Math.max(0, config.getIntProperty("sync.extraction.cache.maxEntries", 5000));
+        this.maxBytes = Math.max(0, config.getIntProperty("sync.extraction.cache.maxMemoryKB", 16384)) * 1024L;
+    }
+
+    public static synchronized ExtractionCache getInstance() {
+        if (instance == null) {
+            instance = new ExtractionCache();
+        }
+        return instance;
+    }
+
+    /**
+     * 获取合并文本的提取结果，未命中时执行提取并缓存
+     * @param text 合并后的生产指示文本
+     * @param extractor 提取函数（在锁外执行，并发未命中时可能重复提取同一文本）
+     * @return 提取结果
+     */
+    public Result get(String text, Function<String, Result> extractor) {
+        if (maxEntries == 0 || maxBytes == 0) {
+            return extractor.apply(text);
+        }
+        long startGeneration;
+        synchronized (this) {
+            Result cached = entries.get(text);
+            if (cached != null) {
+                hits.incrementAndGet();
+                return cached;
+            }
+            startGeneration = generation;
+        }
+        misses.incrementAndGet();
+
+        Result result = extractor.apply(text);
+        long bytes = entryBytes(text, result);
+        if (bytes > maxBytes) {
+            // 单条超过内存上限的文本不缓存
+            return result;
+        }
+        synchronized (this) {
+            if (generation != startGeneration) {
+                return result;
+            }
+            Result previous = entries.put(text, result);
+            if (previous != null) {
+                usedBytes -= entryBytes(text, previous);
+            }
+            usedBytes += bytes;
+            evictIfNeeded();
+        }
+        return result;
+    }
+
+    /**
+     * 清空缓存（产品信息数据库或提取规则变化后调用）
+     * @param reason 原因（用于日志）
+     */
+    public synchronized void invalidate(String reason) {
+        if (!entries.isEmpty()) {
+            LogUtil.logInfo("[提取缓存] " + reason + "，清空 " + entries.size() + " 条缓存");
+        }
+        entries.clear();
+        usedBytes = 0;
+        generation++;
+    }
+
+    /**
+     * 输出缓存命中统计
+     */
+    public void logStats() {
+        long hitCount = hits.get();
+        long missCount = misses.get();
+        long total = hitCount + missCount;
+        if (total == 0) {
+            return;
+        }
+        int size;
+        long bytes;
+        synchronized (this) {
+            size = entries.size();
+            bytes = usedBytes;
+        }
+        LogUtil.logInfo(String.format("[提取缓存] 命中 %d, 未命中 %d, 命中率 %.1f%%, 淘汰 %d, 条目 %d, 约 %d KB",
+                hitCount, missCount, 100.0 * hitCount / total, evictions.get(), size, bytes / 1024));
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    public long getEvictions() {
+        return evictions.get();
+    }
+
+    private void evictIfNeeded() {
+        Iterator<Map.Entry<String, Result>> iterator = entries.entrySet().iterator();
+        while ((entries.size() > maxEntries || usedBytes > maxBytes) && iterator.hasNext()) {
+            Map.Entry<String, Result> eldest = iterator.next();
+            usedBytes -= entryBytes(eldest.getKey(), eldest.getValue());
+            iterator.remove();
+            evictions.incrementAndGet();
+        }
+    }
+
+    private static long entryBytes(String text, Result result) {
+        return ENTRY_OVERHEAD_BYTES + 2L * text.length() + result.estimatedBytes;
+    }
+}
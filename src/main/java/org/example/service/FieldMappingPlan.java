@@ -0,0 +1,147 @@
+package org.example.service;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.UnaryOperator;
+
+/**
+ * 字段映射执行计划
+ * 由字段映射配置一次编译而成，记录每个字段的源字段、目标控件和转换方式，
+ * 转换每条记录时按数组顺序执行，不再遍历映射配置、判断子表或按字段名查找日期字段。
+ * 编译完成后不再修改，可在多个线程间共享。
+ */
+public final class FieldMappingPlan {
+
+    /**
+     * 字段转换方式
+     */
+    public enum Kind {
+        // 文本：toString 后去除首尾空白，null 转为空字符串
+        TEXT,
+        // 日期：格式化为 yyyy-MM-dd
+        DATE,
+        // 时间戳：格式化为 yyyy-MM-dd HH:mm:ss
+        TIMESTAMP
+    }
+
+    /**
+     * 主表字段转换步骤
+     */
+    public static final class Step {
+        final String source;
+        final String destination;
+        final Kind kind;
+
+        Step(String source, String destination, Kind kind) {
+            this.source = source;
+            this.destination = destination;
+            this.kind = kind;
+        }
+    }
+
+    /**
+     * 子表查询步骤
+     */
+    public static final class SubTableStep {
+        final String key;
+        final String destination;
+        final String table;
+        final String foreignKey;
+        final Map<String, String> mapping;
+
+        SubTableStep(String key, String destination, String table, String foreignKey, Map<String, String> mapping) {
+            this.key = key;
+            this.destination = destination;
+            this.table = table;
+            this.foreignKey = foreignKey;
+            this.mapping = mapping;
+        }
+    }
+
+    private final Map<String, String> fieldMapping;
+    private final Map<String, Map<String, String>> subTables;
+    private final Step[] fieldSteps;
+    private final Step[] timestampSteps;
+    private final SubTableStep[] subTableSteps;
+
+    private FieldMappingPlan(Map<String, String> fieldMapping, Map<String, Map<String, String>> subTables,
+            Step[] fieldSteps, Step[] timestampSteps, SubTableStep[] subTableSteps) {
+        this.fieldMapping = fieldMapping;
+        this.subTables = subTables;
+        this.fieldSteps = fieldSteps;
+        this.timestampSteps = timestampSteps;
+        this.subTableSteps = subTableSteps;
+    }
+
+    /**
+     * 编译字段映射
+     * @param fieldMapping 主表字段映射：源字段 -> 目标控件
+     * @param subTables 子表字段映射，可为null；其键在主表映射中对应子表控件
+     * @param dateFields 按日期格式化的源字段
+     * @param timestampFields 按时间戳格式化的源字段，在其他字段之后写入
+     * @param subTableSources 子表键 -> {子表名, 外键字段}，只编译其中列出的子表
+     * @param sourceRename 源字段名到记录列名的转换，可为null
+     * @return 执行计划
+     */
+    public static FieldMappingPlan compile(Map<String, String> fieldMapping, Map<String, Map<String, String>> subTables,
+            Set<String> dateFields, Set<String> timestampFields, Map<String, String[]> subTableSources,
+            UnaryOperator<String> sourceRename) {
+        Map<String, Map<String, String>> safeSubTables = subTables != null
+                ? subTables : Collections.<String, Map<String, String>>emptyMap();
+
+        List<Step> fields = new ArrayList<>();
+        List<Step> timestamps = new ArrayList<>();
+        if (fieldMapping != null) {
+            for (Map.Entry<String, String> entry : fieldMapping.entrySet()) {
+                String source = entry.getKey();
+                if (safeSubTables.containsKey(source)) {
+                    continue;
+                }
+                String column = sourceRename != null ? sourceRename.apply(source) : source;
+                if (timestampFields.contains(source)) {
+                    timestamps.add(new Step(column, entry.getValue(), Kind.TIMESTAMP));
+                } else {
+                    Kind kind = dateFields.contains(source) ? Kind.DATE : Kind.TEXT;
+                    fields.add(new Step(column, entry.getValue(), kind));
+                }
+            }
+        }
+
+        List<SubTableStep> subTableSteps = new ArrayList<>();
+        for (Map.Entry<String, String[]> source : subTableSources.entrySet()) {
+            Map<String, String> mapping = safeSubTables.get(source.getKey());
+            if (mapping != null) {
+                String destination = fieldMapping != null ? fieldMapping.get(source.getKey()) : null;
+                subTableSteps.add(new SubTableStep(source.getKey(), destination, source.getValue()[0],
+                        source.getValue()[1], Collections.unmodifiableMap(new LinkedHashMap<>(mapping))));
+            }
+        }
+
+        return new FieldMappingPlan(fieldMapping, subTables,
+                fields.toArray(new Step[0]), timestamps.toArray(new Step[0]),
+                subTableSteps.toArray(new SubTableStep[0]));
+    }
+
+    /**
+     * 计划是否由给定的映射配置编译而来（按对象判断，配置重新加载后需重新编译）
+     */
+    public boolean isCompiledFrom(Map<String, String> fieldMapping, Map<String, Map<String, String>> subTables) {
+        return this.fieldMapping == fieldMapping && this.subTables == subTables;
+    }
+
+    Step[] getFieldSteps() {
+        return fieldSteps;
+    }
+
+    Step[] getTimestampSteps() {
+        return timestampSteps;
+    }
+
+    SubTableStep[] getSubTableSteps() {
+        return subTableSteps;
+    }
+}
@@ -51,4 +51,10 @@ public interface ItemSyncService extends SyncService {
      * @param lastItemSyncId 最后同步ID
      */
     void updateItemSyncStatus(int lastItemSyncId);
+
+    /**
+     * 回补处理一批历史物料，不推进增量同步检查点
+     * @param data 物料数据
+     */
+    void backfill(List<Map<String, Object>> data);
 }
\ No newline at end of file
@@ -3,6 +3,7 @@ package org.example.service;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import org.example.config.ConfigManager;
 import org.example.util.HttpUtil;
+import org.example.util.JdyPayloadWriter;
 import org.example.util.LogUtil;
 
 import java.io.IOException;
@@ -51,14 +52,8 @@ public class JiandaoyunApiService {
      */
     public boolean createData(String appId, String entryId, List<Map<String, Object>> dataList, boolean isStartWorkflow)
             throws IOException {
-        // 构建请求体
-        Map<String, Object> payload = new HashMap<>();
-        payload.put("app_id", appId);
-        payload.put("entry_id", entryId);
-        payload.put("data_list", dataList);
-        payload.put("is_start_workflow", isStartWorkflow);
-
-        String jsonBody = mapper.writeValueAsString(payload);
+        // 直接写出请求体
+        byte[] jsonBody = JdyPayloadWriter.createBody(appId, entryId, dataList, isStartWorkflow);
 
         String response = HttpUtil.sendPostRequest(apiUrl, jsonBody, apiToken);
         boolean success = isResponseSuccess(response);
@@ -327,19 +322,10 @@ public class JiandaoyunApiService {
      */
     public boolean updateData(String appId, String entryId, String dataId, Map<String, Object> data)
             throws IOException {
-        // 构建更新请求体
-        Map<String, Object> payload = new HashMap<>();
-        payload.put("app_id", appId);
-        payload.put("entry_id", entryId);
-        payload.put("data_id", dataId);
-        payload.put("data", data);
-        payload.put("is_start_trigger", true); // 添加触发智能助手参数
+        // 直接写出更新请求体（含触发智能助手参数）
+        byte[] jsonBody = JdyPayloadWriter.updateBody(appId, entryId, dataId, data);
 
         // 发送请求
-        String jsonBody = mapper.writeValueAsString(payload);
-        
-
-        
         String response = HttpUtil.sendPostRequest(updateUrl, jsonBody, apiToken);
         
         boolean success = isResponseSuccess(response);
@@ -421,15 +407,8 @@ public class JiandaoyunApiService {
      * @throws IOException 如果请求失败
      */
     public boolean updateDeliveryRecord(String appId, String entryId, String dataId, Map<String, Object> record) throws IOException {
-        // 构建更新请求体
-        Map<String, Object> payload = new HashMap<>();
-        payload.put("app_id", appId);
-        payload.put("entry_id", entryId);
-        payload.put("data_id", dataId);
-        payload.put("data", record);
-        payload.put("is_start_trigger", true);
-
-        String jsonBody = mapper.writeValueAsString(payload);
+        // 直接写出更新请求体
+        byte[] jsonBody = JdyPayloadWriter.updateBody(appId, entryId, dataId, record);
         String response = HttpUtil.sendPostRequest(updateUrl, jsonBody, apiToken);
         
         return isResponseSuccess(response);
@@ -58,4 +58,10 @@ public interface OrderSyncService extends SyncService {
      * @param syncCount 同步计数
      */
     void updateSyncStatus(int lastSyncId, LocalDate syncDate, int syncCount);
+
+    /**
+     * 回补处理一批历史订单，不推进增量同步检查点
+     * @param data 订单数据
+     */
+    void backfill(List<Map<String, Object>> data);
 }
\ No newline at end of file
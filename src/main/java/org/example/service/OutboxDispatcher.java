@@ -0,0 +1,241 @@
+package org.example.service;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.example.config.ConfigManager;
+import org.example.dao.OutboxDao;
+import org.example.model.OutboxRecord;
+import org.example.util.LogUtil;
+
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 简道云写入出箱分发服务
+ * 从 jdy_outbox 批量认领待推送记录并并发推送到简道云：
+ * 新建记录按表单合并为批量创建，更新记录逐条并发推送
+ */
+public class OutboxDispatcher {
+    private static final ObjectMapper mapper = new ObjectMapper();
+    private static final TypeReference<Map<String, Object>> PAYLOAD_TYPE = new TypeReference<Map<String, Object>>() {
+    };
+    private static final TypeReference<Map<String, String>> CONDITIONS_TYPE = new TypeReference<Map<String, String>>() {
+    };
+    private static final TypeReference<List<String>> FIELDS_TYPE = new TypeReference<List<String>>() {
+    };
+    private static final int CREATE_BATCH_SIZE = 100; // 简道云批量创建上限
+    private static OutboxDispatcher instance;
+
+    private final OutboxDao outboxDao;
+    private final JiandaoyunApiService apiService;
+    private final boolean enabled;
+    private final int claimSize;
+    private final int dispatchThreads;
+    private final int maxAttempts;
+    private final int leaseMinutes;
+    private final long retryBackoffSeconds;
+    private ExecutorService executor;
+
+    private OutboxDispatcher() {
+        ConfigManager config = ConfigManager.getInstance();
+        this.outboxDao = OutboxDao.getInstance();
+        this.apiService = JiandaoyunApiService.getInstance();
+        this.enabled = config.getBooleanProperty("sync.outbox.enabled", false);
+        this.claimSize = config.getIntProperty("sync.outbox.claimSize", 500);
+        this.dispatchThreads = config.getIntProperty("sync.outbox.dispatchThreads", 4);
+        this.maxAttempts = config.getIntProperty("sync.outbox.maxAttempts", 10);
+        this.leaseMinutes = config.getIntProperty("sync.outbox.leaseMinutes", 10);
+        this.retryBackoffSeconds = config.getIntProperty("sync.outbox.retryBackoffSeconds", 60);
+    }
+
+    public static synchronized OutboxDispatcher getInstance() {
+        if (instance == null) {
+            instance = new OutboxDispatcher();
+        }
+        return instance;
+    }
+
+    /**
+     * 是否启用出箱模式
+     */
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * 推送出箱中的待处理记录，直到没有可认领的记录
+     * @return 是否处理了数据
+     */
+    public boolean dispatch() {
+        int totalDone = 0;
+        int totalFailed = 0;
+
+        while (true) {
+            List<OutboxRecord> claimed = outboxDao.claim(claimSize, leaseMinutes);
+            if (claimed.isEmpty()) {
+                break;
+            }
+
+            AtomicInteger done = new AtomicInteger();
+            AtomicInteger failed = new AtomicInteger();
+            List<Future<?>> futures = new ArrayList<>();
+
+            // 新建记录按表单合并批量创建，其余记录逐条并发推送
+            // （认领时同一业务主键只会取到一条，不同记录之间无顺序依赖）
+            Map<String, List<OutboxRecord>> createsByForm = new LinkedHashMap<>();
+            for (OutboxRecord record : claimed) {
+                if (OutboxRecord.OP_CREATE.equals(record.getOperation())) {
+                    String formKey = record.getAppId() + "|" + record.getEntryId() + "|" + record.isStartWorkflow();
+                    createsByForm.computeIfAbsent(formKey, k -> new ArrayList<>()).add(record);
+                } else {
+                    futures.add(getExecutor().submit(() -> dispatchSingle(record, done, failed)));
+                }
+            }
+            for (List<OutboxRecord> creates : createsByForm.values()) {
+                for (int i = 0; i < creates.size(); i += CREATE_BATCH_SIZE) {
+                    List<OutboxRecord> batch = creates.subList(i, Math.min(i + CREATE_BATCH_SIZE, creates.size()));
+                    futures.add(getExecutor().submit(() -> dispatchCreateBatch(batch, done, failed)));
+                }
+            }
+
+            for (Future<?> future : futures) {
+                try {
+                    future.get();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    LogUtil.logWarning("出箱推送被中断，未完成的记录将在租约到期后重新认领");
+                    return totalDone + done.get() > 0;
+                } catch (ExecutionException e) {
+                    LogUtil.logError("出箱推送任务异常: " + e.getCause().getMessage());
+                }
+            }
+
+            totalDone += done.get();
+            totalFailed += failed.get();
+
+            if (claimed.size() < claimSize) {
+                break;
+            }
+        }
+
+        if (totalDone > 0 || totalFailed > 0) {
+            LogUtil.logInfo("[出箱推送] 成功 " + totalDone + " 条，失败 " + totalFailed + " 条");
+        }
+        return totalDone > 0 || totalFailed > 0;
+    }
+
+    /**
+     * 批量创建同一表单的新建记录，批量失败时逐条重试
+     */
+    private void dispatchCreateBatch(List<OutboxRecord> batch, AtomicInteger done, AtomicInteger failed) {
+        OutboxRecord first = batch.get(0);
+        try {
+            List<Map<String, Object>> dataList = new ArrayList<>();
+            for (OutboxRecord record : batch) {
+                dataList.add(mapper.readValue(record.getPayload(), PAYLOAD_TYPE));
+            }
+            if (apiService.createData(first.getAppId(), first.getEntryId(), dataList, first.isStartWorkflow())) {
+                List<Long> ids = new ArrayList<>();
+                for (OutboxRecord record : batch) {
+                    ids.add(record.getId());
+                }
+                outboxDao.markDone(ids);
+                done.addAndGet(batch.size());
+                return;
+            }
+            LogUtil.logWarning("出箱批量创建失败，改为逐条推送，共 " + batch.size() + " 条");
+        } catch (IOException e) {
+            LogUtil.logWarning("出箱批量创建异常，改为逐条推送: " + e.getMessage());
+        }
+
+        for (OutboxRecord record : batch) {
+            dispatchSingle(record, done, failed);
+        }
+    }
+
+    /**
+     * 推送单条记录并回写出箱状态
+     */
+    private void dispatchSingle(OutboxRecord record, AtomicInteger done, AtomicInteger failed) {
+        String error;
+        try {
+            error = dispatchOne(record);
+        } catch (Exception e) {
+            error = e.getMessage() != null ? e.getMessage() : e.getClass().getSimpleName();
+        }
+
+        if (error == null) {
+            outboxDao.markDone(Collections.singletonList(record.getId()));
+            done.incrementAndGet();
+        } else {
+            LogUtil.logError("出箱记录推送失败 [" + record.getStream() + "/" + record.getBizKey() + "]: " + error);
+            outboxDao.markRetry(record.getId(), error, maxAttempts, retryBackoffSeconds);
+            failed.incrementAndGet();
+        }
+    }
+
+    /**
+     * 推送单条记录
+     * @return 错误信息，成功时返回null
+     */
+    private String dispatchOne(OutboxRecord record) throws IOException {
+        Map<String, Object> payload = mapper.readValue(record.getPayload(), PAYLOAD_TYPE);
+        String operation = record.getOperation();
+        String dataId = record.getDataId();
+
+        if (OutboxRecord.OP_UPSERT.equals(operation)) {
+            // 写入时该主键仍在出箱中，推送时再确认简道云中是否已存在
+            Map<String, String> conditions = record.getLookupConditions() != null
+                    ? mapper.readValue(record.getLookupConditions(), CONDITIONS_TYPE)
+                    : Collections.<String, String>emptyMap();
+            Map<String, String> existing = apiService.queryDataWithMultipleConditions(
+                    record.getAppId(), record.getEntryId(), conditions);
+            dataId = existing.get("data_id");
+            operation = dataId != null ? OutboxRecord.OP_UPDATE : OutboxRecord.OP_CREATE;
+            if (dataId != null && record.getUpdateOmitFields() != null) {
+                // 按新建写入的完整数据，判定为更新时移除仅新建时写入的字段
+                for (String fieldId : mapper.readValue(record.getUpdateOmitFields(), FIELDS_TYPE)) {
+                    payload.remove(fieldId);
+                }
+            }
+        }
+
+        boolean success;
+        if (OutboxRecord.OP_UPDATE.equals(operation)) {
+            if (dataId == null) {
+                return "缺少data_id";
+            }
+            success = apiService.updateData(record.getAppId(), record.getEntryId(), dataId, payload);
+        } else if (OutboxRecord.OP_CREATE.equals(operation)) {
+            success = apiService.createData(record.getAppId(), record.getEntryId(),
+                    Collections.singletonList(payload), record.isStartWorkflow());
+        } else {
+            return "未知的操作类型: " + operation;
+        }
+        return success ? null : "简道云返回失败";
+    }
+
+    private synchronized ExecutorService getExecutor() {
+        if (executor == null) {
+            AtomicInteger threadIndex = new AtomicInteger();
+            executor = Executors.newFixedThreadPool(Math.max(1, dispatchThreads), r -> {
+                Thread t = new Thread(r, "outbox-dispatch-" + threadIndex.incrementAndGet());
+                t.setDaemon(true);
+                return t;
+            });
+        }
+        return executor;
+    }
+
+    /**
+     * 关闭推送线程池
+     */
+    public synchronized void shutdown() {
+        if (executor != null) {
+            executor.shutdown();
+            executor = null;
+        }
+    }
+}
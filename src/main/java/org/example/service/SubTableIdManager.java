@@ -113,15 +113,8 @@ public class SubTableIdManager {
                 continue;
             }
 
-            // 获取更新数据中的子表
-            Object subTableObj = updateData.get(widgetId);
-            if (!(subTableObj instanceof Map)) {
-                continue;
-            }
-
-            @SuppressWarnings("unchecked")
-            Map<String, Object> subTableMap = (Map<String, Object>) subTableObj;
-            Object valueObj = subTableMap.get("value");
+            // 获取更新数据中的子表（行列表）
+            Object valueObj = updateData.get(widgetId);
             if (!(valueObj instanceof List)) {
                 continue;
             }
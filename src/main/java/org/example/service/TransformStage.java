@@ -0,0 +1,122 @@
+package org.example.service;
+
+import org.example.config.ConfigManager;
+import org.example.util.LogUtil;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+/**
+ * 并行转换阶段
+ * 把一页源数据的转换（正则提取、汇总、子表查询）分摊到共享的 ForkJoin 线程池中执行，
+ * 结果按输入顺序返回；单条记录转换异常只影响该条记录（结果为null），不影响同一页的其他记录。
+ * 查询简道云、分配自定义码、写入检查点等有顺序要求的步骤仍由调用方按输入顺序执行。
+ */
+public class TransformStage {
+    private static TransformStage instance;
+
+    private final int parallelism;
+    private final ForkJoinPool pool;
+
+    private TransformStage() {
+        int defaultParallelism = Math.min(4, Runtime.getRuntime().availableProcessors());
+        this.parallelism = Math.max(1,
+                ConfigManager.getInstance().getIntProperty("sync.transform.parallelism", defaultParallelism));
+        if (parallelism > 1) {
+            AtomicInteger threadIndex = new AtomicInteger();
+            this.pool = new ForkJoinPool(parallelism, p -> {
+                ForkJoinWorkerThread t = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(p);
+                t.setName("transform-" + threadIndex.incrementAndGet());
+                return t;
+            }, null, false);
+        } else {
+            this.pool = null;
+        }
+    }
+
+    public static synchronized TransformStage getInstance() {
+        if (instance == null) {
+            instance = new TransformStage();
+        }
+        return instance;
+    }
+
+    /**
+     * 转换一页记录
+     * @param records 源记录
+     * @param converter 单条记录的转换函数，返回null表示跳过该记录
+     * @param stage 阶段名称（用于日志）
+     * @return 与输入等长、顺序一致的转换结果，跳过或转换异常的记录对应null
+     */
+    public <T> List<T> transform(List<Map<String, Object>> records, Function<Map<String, Object>, T> converter,
+            String stage) {
+        Object[] results = new Object[records.size()];
+        if (pool == null || records.size() < 2) {
+            convertRange(records, 0, records.size(), converter, stage, results);
+        } else {
+            // 每个任务至少处理一条记录，按线程数的4倍切分以平衡各记录转换耗时的差异
+            int threshold = Math.max(1, records.size() / (parallelism * 4));
+            pool.invoke(new ConvertTask<>(records, 0, records.size(), threshold, converter, stage, results));
+        }
+
+        @SuppressWarnings("unchecked")
+        List<T> converted = (List<T>) new ArrayList<>(Arrays.asList(results));
+        return converted;
+    }
+
+    private static <T> void convertRange(List<Map<String, Object>> records, int from, int to,
+            Function<Map<String, Object>, T> converter, String stage, Object[] results) {
+        for (int i = from; i < to; i++) {
+            Map<String, Object> record = records.get(i);
+            try {
+                results[i] = converter.apply(record);
+            } catch (Exception e) {
+                LogUtil.logError(String.format("[%s] 记录转换异常，跳过 (id=%s): %s",
+                        stage, record.get("id"), e.getMessage()));
+                results[i] = null;
+            }
+        }
+    }
+
+    /**
+     * 按下标区间二分的转换任务，各任务只写结果数组中自己的区间
+     */
+    private static final class ConvertTask<T> extends RecursiveAction {
+        private final List<Map<String, Object>> records;
+        private final int from;
+        private final int to;
+        private final int threshold;
+        private final Function<Map<String, Object>, T> converter;
+        private final String stage;
+        private final Object[] results;
+
+        ConvertTask(List<Map<String, Object>> records, int from, int to, int threshold,
+                Function<Map<String, Object>, T> converter, String stage, Object[] results) {
+            this.records = records;
+            this.from = from;
+            this.to = to;
+            this.threshold = threshold;
+            this.converter = converter;
+            this.stage = stage;
+            this.results = results;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= threshold) {
+                convertRange(records, from, to, converter, stage, results);
+                return;
+            }
+            int mid = (from + to) >>> 1;
+            invokeAll(new ConvertTask<>(records, from, mid, threshold, converter, stage, results),
+                    new ConvertTask<>(records, mid, to, threshold, converter, stage, results));
+        }
+    }
+}
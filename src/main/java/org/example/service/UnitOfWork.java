@@ -0,0 +1,274 @@
+package org.example.service;
+
+import org.example.util.LogUtil;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * 工作单元
+ * 在一个同步阶段内把一个数据库连接绑定到当前线程，阶段内 DatabaseService 的所有查询复用该连接，
+ * 不再每次查询都从连接池借出并校验连接；同一SQL的 PreparedStatement 缓存在连接上重复使用。
+ * 可选使用只读的快照隔离事务，使一次读取阶段内的多次读取看到同一时刻的数据
+ * （需要数据库开启 ALLOW_SNAPSHOT_ISOLATION）。快照事务只覆盖数据库读取：阶段内第一次读取时开始，
+ * 调用简道云接口前由 endReads 提交，之后再读取时重新开始，不在等待接口响应期间长时间持有快照。
+ *
+ * 用法: try (UnitOfWork uow = databaseService.beginUnitOfWork("订单同步")) { ... }
+ * 当前线程已有工作单元时返回嵌套的工作单元，关闭时不释放外层连接。
+ */
+public class UnitOfWork implements AutoCloseable {
+    private static final ThreadLocal<UnitOfWork> CURRENT = new ThreadLocal<>();
+
+    // SQL Server 快照隔离级别（SQLServerConnection.TRANSACTION_SNAPSHOT）
+    private static final int TRANSACTION_SNAPSHOT = 0x1000;
+
+    private final String stage;
+    private final Connection connection;
+    private final Connection sharedConnection;
+    private final boolean owner;
+    private boolean snapshot;
+    private final Map<String, CachedStatement> statementCache = new HashMap<>();
+    private int statementHits = 0;
+    // 快照事务是否进行中，及开始前连接的隔离级别
+    private boolean inSnapshot;
+    // 连接已归还（正常结束或读取出错后放弃）
+    private boolean released;
+    private int previousIsolation;
+
+    private UnitOfWork(String stage, Connection connection, boolean owner, boolean snapshot) {
+        this.stage = stage;
+        this.connection = connection;
+        this.owner = owner;
+        this.snapshot = snapshot;
+        this.sharedConnection = owner ? (Connection) Proxy.newProxyInstance(
+                Connection.class.getClassLoader(), new Class<?>[]{Connection.class}, new ConnectionHandler())
+                : null;
+    }
+
+    /**
+     * 开始工作单元并绑定到当前线程
+     * @param stage 阶段名称（用于日志）
+     * @param connection 从连接池借出的连接，工作单元关闭时归还
+     * @param snapshot 读取时是否使用只读快照事务
+     * @return 工作单元
+     */
+    static UnitOfWork begin(String stage, Connection connection, boolean snapshot) {
+        UnitOfWork unit = new UnitOfWork(stage, connection, true, snapshot);
+        CURRENT.set(unit);
+        return unit;
+    }
+
+    /**
+     * 当前线程已有工作单元时返回嵌套的工作单元
+     * @param stage 阶段名称
+     * @return 嵌套工作单元，当前线程没有工作单元时返回null
+     */
+    static UnitOfWork joinCurrent(String stage) {
+        UnitOfWork current = CURRENT.get();
+        return current != null ? new UnitOfWork(stage, current.connection, false, current.snapshot) : null;
+    }
+
+    /**
+     * 获取当前线程绑定的连接（用于读取）
+     * 返回的连接关闭时不会归还连接池，预编译语句关闭时只清空参数；使用快照读取时按需开始快照事务
+     * @return 共享连接，当前线程没有工作单元时返回null
+     */
+    static Connection currentConnection() {
+        UnitOfWork current = CURRENT.get();
+        if (current == null) {
+            return null;
+        }
+        if (current.snapshot && !current.inSnapshot) {
+            current.beginSnapshot();
+        }
+        return current.sharedConnection;
+    }
+
+    /**
+     * 读取出错时放弃当前线程工作单元的连接：结束快照事务、关闭缓存的语句并归还连接（断开的连接由连接池剔除），
+     * 工作单元剩余的读取（含重试）各自从连接池获取新连接，不再复用可能已断开的连接
+     * @param cause 读取异常
+     */
+    static void discardConnection(SQLException cause) {
+        UnitOfWork current = CURRENT.get();
+        if (current != null) {
+            LogUtil.logWarning("[" + current.stage + "] 读取失败，放弃工作单元的连接，之后的读取各自获取连接: "
+                    + cause.getMessage());
+            current.close();
+        }
+    }
+
+    /**
+     * 结束当前线程工作单元的快照事务（如有），在调用简道云接口等耗时操作前调用
+     * 连接仍绑定在工作单元上，之后的读取开始新的快照
+     */
+    public static void endReads() {
+        UnitOfWork current = CURRENT.get();
+        if (current != null) {
+            current.endSnapshot();
+        }
+    }
+
+    private void beginSnapshot() {
+        try {
+            previousIsolation = connection.getTransactionIsolation();
+            connection.setAutoCommit(false);
+            connection.setTransactionIsolation(TRANSACTION_SNAPSHOT);
+            connection.setReadOnly(true);
+            inSnapshot = true;
+        } catch (SQLException e) {
+            LogUtil.logWarning("[" + stage + "] 开启快照事务失败，本阶段不使用快照读取: " + e.getMessage());
+            snapshot = false;
+            restoreConnection();
+        }
+    }
+
+    private void endSnapshot() {
+        if (!inSnapshot) {
+            return;
+        }
+        inSnapshot = false;
+        try {
+            // 只读事务，提交即可释放快照
+            connection.commit();
+        } catch (SQLException e) {
+            LogUtil.logWarning("[" + stage + "] 结束快照事务失败: " + e.getMessage());
+        }
+        restoreConnection();
+    }
+
+    private void restoreConnection() {
+        try {
+            connection.setAutoCommit(true);
+            connection.setReadOnly(false);
+            connection.setTransactionIsolation(previousIsolation != 0 ? previousIsolation
+                    : Connection.TRANSACTION_READ_COMMITTED);
+        } catch (SQLException e) {
+            LogUtil.logWarning("[" + stage + "] 恢复连接设置失败: " + e.getMessage());
+        }
+    }
+
+    /**
+     * 结束工作单元：关闭缓存的语句，结束快照事务并归还连接
+     */
+    @Override
+    public void close() {
+        if (!owner || released) {
+            return;
+        }
+        released = true;
+        if (CURRENT.get() == this) {
+            CURRENT.remove();
+        }
+
+        for (CachedStatement cached : statementCache.values()) {
+            try {
+                cached.statement.close();
+            } catch (SQLException e) {
+                LogUtil.logWarning("关闭预编译语句失败: " + e.getMessage());
+            }
+        }
+
+        endSnapshot();
+        try {
+            connection.close();
+        } catch (SQLException e) {
+            LogUtil.logError("关闭连接失败: " + e.getMessage());
+        }
+
+        if (statementHits > 0) {
+            LogUtil.logInfo(String.format("[%s] 复用连接完成: 预编译语句 %d 条, 复用 %d 次",
+                    stage, statementCache.size(), statementHits));
+        }
+    }
+
+    /**
+     * 共享连接：close 不归还连接，prepareStatement(sql) 走语句缓存
+     */
+    private class ConnectionHandler implements InvocationHandler {
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            switch (method.getName()) {
+                case "close":
+                    return null;
+                case "prepareStatement":
+                    if (args.length == 1) {
+                        return prepare((String) args[0]);
+                    }
+                    break;
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                default:
+                    break;
+            }
+            return invokeTarget(connection, method, args);
+        }
+    }
+
+    private PreparedStatement prepare(String sql) throws SQLException {
+        CachedStatement cached = statementCache.get(sql);
+        if (cached == null) {
+            cached = new CachedStatement(connection.prepareStatement(sql));
+            statementCache.put(sql, cached);
+        } else if (cached.inUse) {
+            // 同一SQL嵌套使用时，内层使用独立语句
+            return connection.prepareStatement(sql);
+        } else {
+            statementHits++;
+        }
+        cached.inUse = true;
+        return cached.proxy;
+    }
+
+    /**
+     * 缓存的预编译语句：close 只清空参数并标记为可复用
+     */
+    private static class CachedStatement implements InvocationHandler {
+        private final PreparedStatement statement;
+        private final PreparedStatement proxy;
+        private boolean inUse;
+
+        CachedStatement(PreparedStatement statement) {
+            this.statement = statement;
+            this.proxy = (PreparedStatement) Proxy.newProxyInstance(PreparedStatement.class.getClassLoader(),
+                    new Class<?>[]{PreparedStatement.class}, this);
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            switch (method.getName()) {
+                case "close":
+                    if (inUse) {
+                        inUse = false;
+                        statement.clearParameters();
+                    }
+                    return null;
+                case "isClosed":
+                    return !inUse || statement.isClosed();
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                default:
+                    return invokeTarget(statement, method, args);
+            }
+        }
+    }
+
+    private static Object invokeTarget(Object target, Method method, Object[] args) throws Throwable {
+        try {
+            return method.invoke(target, args);
+        } catch (InvocationTargetException e) {
+            throw e.getCause();
+        }
+    }
+}
@@ -5,12 +5,19 @@ import org.example.service.JiandaoyunApiService;
 import org.example.service.DataTransformService;
 import org.example.service.DataValidationService;
 import org.example.service.DatabaseService;
+import org.example.service.OutboxDispatcher;
+import org.example.service.TransformStage;
+import org.example.service.UnitOfWork;
 import org.example.service.impl.DataValidationServiceImpl;
 import org.example.config.ConfigManager;
+import org.example.config.ConfigSnapshot;
+import org.example.dao.ChangeTrackingDao;
+import org.example.dao.CheckpointDao;
+import org.example.dao.OutboxDao;
+import org.example.model.OutboxRecord;
 import org.example.util.LogUtil;
+import org.example.util.SyncMetrics;
 
-import com.fasterxml.jackson.databind.ObjectMapper;
-import java.io.File;
 import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
@@ -35,6 +42,42 @@ public class DeliveryNoticeSyncServiceImpl implements DeliveryNoticeSyncService
     private final int MAX_RETRY;
     private final long RETRY_INTERVAL;
     private final int MAX_BATCH_SIZE;
+    private final String CAPTURE_MODE;
+    // 映射文件不存在时使用的内置字段映射
+    private static final Map<String, String> DEFAULT_MAIN_FIELDS;
+    private static final Map<String, Map<String, String>> DEFAULT_SUB_TABLES;
+    static {
+        Map<String, String> mainFields = new HashMap<>();
+        mainFields.put("sid", "_widget_1756190493399");
+        mainFields.put("osp_code", "_widget_1756190493400");
+        mainFields.put("tran_date", "_widget_1756190493401");
+        mainFields.put("asn_num", "_widget_1756190493402");
+        mainFields.put("vendor_name", "_widget_1756190493403");
+        mainFields.put("po_num", "_widget_1756190493404");
+        mainFields.put("comments", "_widget_1756190493405");
+        mainFields.put("delivery_details", "_widget_1756190493406");
+        
+        Map<String, String> deliveryDetails = new HashMap<>();
+        deliveryDetails.put("line_num", "_widget_1756190493408");
+        deliveryDetails.put("item_num", "_widget_1756190493409");
+        deliveryDetails.put("lot_flag", "_widget_1756190493410");
+        deliveryDetails.put("item_pn", "_widget_1756190493411");
+        deliveryDetails.put("item_desc", "_widget_1756190493412");
+        deliveryDetails.put("qty", "_widget_1756190493413");
+        deliveryDetails.put("delivery_date", "_widget_1756190493414");
+        deliveryDetails.put("asn_line", "_widget_1756190493415");
+        deliveryDetails.put("plant_code", "_widget_1756190493416");
+        deliveryDetails.put("warehouse_code", "_widget_1756190493417");
+        deliveryDetails.put("product_line", "_widget_1756190493418");
+        deliveryDetails.put("comments", "_widget_1756190493419");
+        deliveryDetails.put("attribute1", "_widget_1756190493420");
+        deliveryDetails.put("attribute2", "_widget_1756190493421");
+        deliveryDetails.put("attribute3", "_widget_1756190493422");
+
+        DEFAULT_MAIN_FIELDS = Collections.unmodifiableMap(mainFields);
+        DEFAULT_SUB_TABLES = Collections.singletonMap("delivery_details",
+                Collections.unmodifiableMap(deliveryDetails));
+    }
     
     private DeliveryNoticeSyncServiceImpl() {
         this.apiService = JiandaoyunApiService.getInstance();
@@ -48,6 +91,7 @@ public class DeliveryNoticeSyncServiceImpl implements DeliveryNoticeSyncService
         this.MAX_RETRY = Integer.parseInt(configManager.getProperty("sync.maxRetry", "10"));
         this.RETRY_INTERVAL = Long.parseLong(configManager.getProperty("sync.retryInterval", "5000"));
         this.MAX_BATCH_SIZE = Integer.parseInt(configManager.getProperty("sync.maxBatchSize", "50"));
+        this.CAPTURE_MODE = configManager.getProperty("sync.capture.mode", "id");
     }
     
     public static synchronized DeliveryNoticeSyncServiceImpl getInstance() {
@@ -59,14 +103,38 @@ public class DeliveryNoticeSyncServiceImpl implements DeliveryNoticeSyncService
     
     @Override
     public boolean syncProcess() {
-        try {
+        // 本轮同步的数据库读取（主表、子表）共用一个连接
+        try (UnitOfWork unitOfWork = databaseService.beginUnitOfWork("采购物料通知单同步")) {
             // 获取上次同步ID
             Integer lastSyncId = getLastDeliverySyncId();
 
-            // 获取新数据
-            List<Map<String, Object>> newData = fetchNewDeliveryData(lastSyncId);
+            // 获取新数据（变更跟踪模式下获取新增或修改过的通知单，含明细变更）
+            ChangeTrackingDao.ChangeSet changeSet = null;
+            List<Map<String, Object>> newData;
+            if ("changetracking".equalsIgnoreCase(CAPTURE_MODE)) {
+                changeSet = ChangeTrackingDao.getInstance().captureChanges("delivery", "po_delivery_notice",
+                        Collections.singletonMap("po_delivery_notice_detail", "notice_id"));
+                if (changeSet == null) {
+                    return false;
+                }
+                newData = changeSet.getIds().isEmpty()
+                        ? Collections.<Map<String, Object>>emptyList()
+                        : databaseService.fetchDeliveryDataByIds(changeSet.getIds());
+            } else {
+                // 先只按主键探测有无新数据，没有时跳过全量查询
+                int backlog = databaseService.probeDeliveryBacklog(lastSyncId);
+                if (backlog >= 0) {
+                    SyncMetrics.setBacklog(CheckpointDao.STREAM_DELIVERY, backlog);
+                }
+                newData = backlog == 0
+                        ? Collections.<Map<String, Object>>emptyList()
+                        : fetchNewDeliveryData(lastSyncId);
+            }
 
             if (newData.isEmpty()) {
+                if (changeSet != null) {
+                    ChangeTrackingDao.getInstance().commit(changeSet);
+                }
                 return false;
             }
 
@@ -75,6 +143,14 @@ public class DeliveryNoticeSyncServiceImpl implements DeliveryNoticeSyncService
             System.out.println("\n=== MSD采购物料通知单同步开始 " + timestamp + " ===");
             System.out.println("获取到 " + newData.size() + " 条新数据");
 
+            if (OutboxDispatcher.getInstance().isEnabled()) {
+                enqueueToOutbox(newData, lastSyncId);
+                if (changeSet != null) {
+                    ChangeTrackingDao.getInstance().commit(changeSet);
+                }
+                return true;
+            }
+
             int totalProcessed = 0;
             int totalUploaded = 0;
             int maxId = lastSyncId != null ? lastSyncId : 0;
@@ -85,8 +161,14 @@ public class DeliveryNoticeSyncServiceImpl implements DeliveryNoticeSyncService
                 List<Map<String, Object>> batch = newData.subList(i, endIndex);
                 
                 List<Map<String, Object>> processedBatch = new ArrayList<>();
-                
-                for (Map<String, Object> record : batch) {
+
+                // 并行转换本批数据，结果与输入顺序一致
+                List<Map<String, Object>> convertedBatch = convertDeliveryPage(batch);
+                // 本批数据库读取完成，查询和上传简道云前结束快照事务
+                UnitOfWork.endReads();
+
+                for (int j = 0; j < batch.size(); j++) {
+                    Map<String, Object> record = batch.get(j);
                     try {
                         // 更新最大ID
                         Integer recordId = (Integer) record.get("id");
@@ -94,8 +176,7 @@ public class DeliveryNoticeSyncServiceImpl implements DeliveryNoticeSyncService
                             maxId = recordId;
                         }
 
-                        // 转换数据
-                        Map<String, Object> convertedData = convertDeliveryData(record);
+                        Map<String, Object> convertedData = convertedBatch.get(j);
                         if (convertedData == null) {
                             continue;
                         }
@@ -139,6 +220,11 @@ public class DeliveryNoticeSyncServiceImpl implements DeliveryNoticeSyncService
             // 更新同步状态
             if (maxId > (lastSyncId != null ? lastSyncId : 0)) {
                 updateDeliverySyncStatus(maxId);
+                // 本页已推送到简道云，立即写入检查点，程序崩溃后不重复推送本页
+                CheckpointDao.getInstance().flush();
+            }
+            if (changeSet != null) {
+                ChangeTrackingDao.getInstance().commit(changeSet);
             }
 
             System.out.println("=== 采购物料通知单同步完成，处理 " + totalProcessed + " 条数据 ===");
@@ -151,6 +237,76 @@ public class DeliveryNoticeSyncServiceImpl implements DeliveryNoticeSyncService
         }
     }
 
+    /**
+     * 出箱模式：转换数据与同步状态在同一事务中写入出箱，由出箱分发服务推送到简道云
+     */
+    private void enqueueToOutbox(List<Map<String, Object>> newData, Integer lastSyncId) {
+        OutboxDao outboxDao = OutboxDao.getInstance();
+        int maxId = lastSyncId != null ? lastSyncId : 0;
+
+        List<String> asnNums = new ArrayList<>();
+        for (Map<String, Object> record : newData) {
+            Object asnNum = record.get("asn_num");
+            if (asnNum != null) {
+                asnNums.add(asnNum.toString().trim());
+            }
+        }
+        // 仍在出箱中的ASN单号可能尚未在简道云创建，推送时再判断新建或更新
+        Set<String> inFlightKeys = outboxDao.findInFlightKeys(OutboxRecord.STREAM_DELIVERY, asnNums);
+
+        // 并行转换整页数据，结果与输入顺序一致
+        List<Map<String, Object>> convertedList = convertDeliveryPage(newData);
+        // 数据库读取完成，写入出箱前结束快照事务
+        UnitOfWork.endReads();
+
+        List<OutboxRecord> records = new ArrayList<>();
+        for (int i = 0; i < newData.size(); i++) {
+            Map<String, Object> record = newData.get(i);
+            try {
+                Integer recordId = (Integer) record.get("id");
+                if (recordId != null && recordId > maxId) {
+                    maxId = recordId;
+                }
+
+                Map<String, Object> convertedData = convertedList.get(i);
+                if (convertedData == null) {
+                    continue;
+                }
+
+                String asnNum = (String) record.get("asn_num");
+                if (asnNum == null || asnNum.trim().isEmpty()) {
+                    LogUtil.logError("ASN单号为空，跳过记录");
+                    continue;
+                }
+                asnNum = asnNum.trim();
+
+                String operation;
+                String dataId = null;
+                if (inFlightKeys.contains(asnNum)) {
+                    operation = OutboxRecord.OP_UPSERT;
+                } else {
+                    Map<String, String> existingRecord = queryExistingDeliveryRecord(asnNum);
+                    dataId = existingRecord != null ? existingRecord.get("_id") : null;
+                    operation = dataId != null ? OutboxRecord.OP_UPDATE : OutboxRecord.OP_CREATE;
+                }
+
+                records.add(OutboxRecord.of(OutboxRecord.STREAM_DELIVERY, APP_ID, ENTRY_ID, asnNum,
+                        Collections.singletonMap("_widget_1756190493402", asnNum), // ASN单号字段
+                        operation, dataId, convertedData, false));
+            } catch (Exception e) {
+                LogUtil.logError("处理记录异常: " + e.getMessage());
+            }
+        }
+
+        final int lastId = maxId;
+        OutboxDao.CheckpointUpdate checkpoint = lastId > (lastSyncId != null ? lastSyncId : 0)
+                ? conn -> databaseService.updateDeliverySyncStatus(conn, lastId)
+                : null;
+        if (outboxDao.enqueue(records, checkpoint)) {
+            System.out.println("=== 采购物料通知单已写入出箱，共 " + records.size() + " 条数据 ===");
+        }
+    }
+
     @Override
     public Integer getLastDeliverySyncId() {
         try {
@@ -230,93 +386,41 @@ public class DeliveryNoticeSyncServiceImpl implements DeliveryNoticeSyncService
     }
 
     /**
-     * 转换采购物料通知单数据
+     * 并行转换一页采购物料通知单数据，结果与输入顺序一致
+     * 字段映射取自配置快照（启动时加载一次，文件变化时整体替换），整页复用同一份映射及其编译后的执行计划；
+     * 子表数据在同步线程上按本页通知单ID批量查询（使用工作单元的连接和快照），并行转换只做计算
      */
-    private Map<String, Object> convertDeliveryData(Map<String, Object> record) {
-        try {
-            // 加载字段映射配置
-            Map<String, Object> mappingConfig = loadDeliveryFieldMapping();
-            if (mappingConfig == null) {
-                LogUtil.logError("无法加载采购物料通知单字段映射配置");
-                return null;
-            }
+    private List<Map<String, Object>> convertDeliveryPage(List<Map<String, Object>> page) {
+        ConfigSnapshot.MappingFile mapping = configManager.getSnapshot().getDeliveryMapping();
+        if (mapping == null) {
+            LogUtil.logError("无法加载采购物料通知单字段映射配置");
+            return Collections.nCopies(page.size(), null);
+        }
 
-            @SuppressWarnings("unchecked")
-            Map<String, String> mainFields = (Map<String, String>) mappingConfig.get("main_fields");
-            @SuppressWarnings("unchecked")
-            Map<String, Map<String, String>> subTables = (Map<String, Map<String, String>>) mappingConfig.get("sub_tables");
+        // 外置配置文件不存在时使用硬编码配置作为备用
+        Map<String, String> mainFields = mapping.exists() ? mapping.getMainFields() : DEFAULT_MAIN_FIELDS;
+        Map<String, Map<String, String>> subTables = mapping.exists() ? mapping.getSubTables() : DEFAULT_SUB_TABLES;
 
-            // 使用DataTransformService进行数据转换
-            return transformService.convertDeliveryData(record, mainFields, subTables);
-            
-        } catch (Exception e) {
-            LogUtil.logError("转换采购物料通知单数据异常: " + e.getMessage());
-            return null;
-        }
+        Map<String, Map<Integer, List<Map<String, Object>>>> subTableRows =
+                transformService.prefetchDeliverySubTables(page, mainFields, subTables);
+        return TransformStage.getInstance().transform(page,
+                record -> convertDeliveryData(record, mainFields, subTables, subTableRows),
+                "采购物料通知单转换");
     }
 
     /**
-     * 加载采购物料通知单字段映射配置
-     * 优先使用外置配置文件，如果不存在则使用硬编码配置作为备用
+     * 转换采购物料通知单数据
      */
-    private Map<String, Object> loadDeliveryFieldMapping() {
+    private Map<String, Object> convertDeliveryData(Map<String, Object> record, Map<String, String> mainFields,
+            Map<String, Map<String, String>> subTables,
+            Map<String, Map<Integer, List<Map<String, Object>>>> subTableRows) {
         try {
-            // 首先尝试加载外置配置文件
-            String mappingPath = "po_delivery_notice_field_mapping.json";
-            File mappingFile = new File(mappingPath);
-            
-            if (mappingFile.exists()) {
-                // 使用外置配置文件
-                ObjectMapper mapper = new ObjectMapper();
-                @SuppressWarnings("unchecked")
-                Map<String, Object> config = mapper.readValue(mappingFile, Map.class);
-                LogUtil.logInfo("采购物料通知单字段映射配置文件加载成功: " + mappingPath);
-                return config;
-            } else {
-                LogUtil.logInfo("外置配置文件不存在，使用硬编码配置: " + mappingPath);
-            }
-            
-            // 备用硬编码配置
-            Map<String, Object> config = new HashMap<>();
-            
-            Map<String, String> mainFields = new HashMap<>();
-            mainFields.put("sid", "_widget_1756190493399");
-            mainFields.put("osp_code", "_widget_1756190493400");
-            mainFields.put("tran_date", "_widget_1756190493401");
-            mainFields.put("asn_num", "_widget_1756190493402");
-            mainFields.put("vendor_name", "_widget_1756190493403");
-            mainFields.put("po_num", "_widget_1756190493404");
-            mainFields.put("comments", "_widget_1756190493405");
-            mainFields.put("delivery_details", "_widget_1756190493406");
-            
-            Map<String, String> deliveryDetails = new HashMap<>();
-            deliveryDetails.put("line_num", "_widget_1756190493408");
-            deliveryDetails.put("item_num", "_widget_1756190493409");
-            deliveryDetails.put("lot_flag", "_widget_1756190493410");
-            deliveryDetails.put("item_pn", "_widget_1756190493411");
-            deliveryDetails.put("item_desc", "_widget_1756190493412");
-            deliveryDetails.put("qty", "_widget_1756190493413");
-            deliveryDetails.put("delivery_date", "_widget_1756190493414");
-            deliveryDetails.put("asn_line", "_widget_1756190493415");
-            deliveryDetails.put("plant_code", "_widget_1756190493416");
-            deliveryDetails.put("warehouse_code", "_widget_1756190493417");
-            deliveryDetails.put("product_line", "_widget_1756190493418");
-            deliveryDetails.put("comments", "_widget_1756190493419");
-            deliveryDetails.put("attribute1", "_widget_1756190493420");
-            deliveryDetails.put("attribute2", "_widget_1756190493421");
-            deliveryDetails.put("attribute3", "_widget_1756190493422");
-            
-            Map<String, Map<String, String>> subTables = new HashMap<>();
-            subTables.put("delivery_details", deliveryDetails);
-            
-            config.put("main_fields", mainFields);
-            config.put("sub_tables", subTables);
-            
-            return config;
+            // 使用DataTransformService进行数据转换
+            return transformService.convertDeliveryData(record, mainFields, subTables, subTableRows);
             
         } catch (Exception e) {
-            LogUtil.logError("加载采购物料通知单字段映射配置失败: " + e.getMessage());
+            LogUtil.logError("转换采购物料通知单数据异常: " + e.getMessage());
             return null;
         }
     }
-}
\ No newline at end of file
+}
@@ -5,11 +5,21 @@ import org.example.service.JiandaoyunApiService;
 import org.example.service.DataTransformService;
 import org.example.service.DataValidationService;
 import org.example.service.DatabaseService;
+import org.example.service.OutboxDispatcher;
+import org.example.service.TransformStage;
+import org.example.service.UnitOfWork;
+import org.example.dao.ChangeTrackingDao;
+import org.example.dao.CheckpointDao;
 import org.example.dao.ItemDao;
+import org.example.dao.OutboxDao;
 import org.example.model.ItemRecord;
+import org.example.model.OutboxRecord;
 import org.example.config.ConfigManager;
 import org.example.config.FieldMappingConfig;
 import org.example.util.LogUtil;
+import org.example.util.SyncMetrics;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
 
 import java.time.LocalDate;
 import java.time.LocalDateTime;
@@ -28,6 +38,7 @@ public class ItemSyncServiceImpl implements ItemSyncService {
     private final DataValidationService validationService;
     private final DatabaseService databaseService;
     private final ItemDao itemDao;
+    private final OutboxDao outboxDao;
     private final ConfigManager configManager;
     private final FieldMappingConfig fieldMappingConfig;
 
@@ -37,6 +48,7 @@ public class ItemSyncServiceImpl implements ItemSyncService {
     private final int MAX_RETRY;
     private final long RETRY_INTERVAL;
     private final int MAX_BATCH_SIZE;
+    private final String CAPTURE_MODE;
 
     private ItemSyncServiceImpl() {
         this.apiService = JiandaoyunApiService.getInstance();
@@ -44,6 +56,7 @@ public class ItemSyncServiceImpl implements ItemSyncService {
         this.validationService = DataValidationServiceImpl.getInstance();
         this.databaseService = DatabaseService.getInstance();
         this.itemDao = ItemDao.getInstance();
+        this.outboxDao = OutboxDao.getInstance();
         this.configManager = ConfigManager.getInstance();
         this.fieldMappingConfig = FieldMappingConfig.getInstance();
 
@@ -53,6 +66,7 @@ public class ItemSyncServiceImpl implements ItemSyncService {
         this.MAX_RETRY = Integer.parseInt(configManager.getProperty("sync.maxRetry", "10"));
         this.RETRY_INTERVAL = Long.parseLong(configManager.getProperty("sync.retryInterval", "5000"));
         this.MAX_BATCH_SIZE = Integer.parseInt(configManager.getProperty("sync.maxBatchSize", "100"));
+        this.CAPTURE_MODE = configManager.getProperty("sync.capture.mode", "id");
     }
 
     public static synchronized ItemSyncServiceImpl getInstance() {
@@ -64,10 +78,24 @@ public class ItemSyncServiceImpl implements ItemSyncService {
 
     @Override
     public boolean syncProcess() {
-        try {
+        // 本轮同步的数据库读取（主表、子表）共用一个连接
+        try (UnitOfWork unitOfWork = databaseService.beginUnitOfWork("物料同步")) {
             // 获取上次同步ID
             Integer lastSyncId = getLastItemSyncId();
 
+            if ("changetracking".equalsIgnoreCase(CAPTURE_MODE)) {
+                return syncChangedItems(lastSyncId);
+            }
+
+            // 先只按主键探测有无新数据，没有时跳过全量查询、转换和上传
+            int backlog = databaseService.probeItemBacklog(lastSyncId);
+            if (backlog >= 0) {
+                SyncMetrics.setBacklog(CheckpointDao.STREAM_ITEM, backlog);
+                if (backlog == 0) {
+                    return false;
+                }
+            }
+
             // 获取新数据
             List<Map<String, Object>> newData = fetchNewItemData(lastSyncId);
 
@@ -81,7 +109,7 @@ public class ItemSyncServiceImpl implements ItemSyncService {
             System.out.println("=== 检测到新物料数据，开始处理 ===");
 
             // 处理数据
-            processItemData(newData);
+            processItemData(newData, lastSyncId, true);
             return true;
 
         } catch (Exception e) {
@@ -90,6 +118,40 @@ public class ItemSyncServiceImpl implements ItemSyncService {
         }
     }
 
+    /**
+     * 变更跟踪模式：只同步自上次版本以来新增或修改过的物料
+     */
+    private boolean syncChangedItems(Integer lastSyncId) {
+        ChangeTrackingDao changeTrackingDao = ChangeTrackingDao.getInstance();
+        ChangeTrackingDao.ChangeSet changeSet = changeTrackingDao.captureChanges(
+                "item", "oms_job_item_info", Collections.<String, String>emptyMap());
+        if (changeSet == null) {
+            return false;
+        }
+        if (changeSet.getIds().isEmpty()) {
+            changeTrackingDao.commit(changeSet);
+            return false;
+        }
+
+        String timestamp = LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss"));
+        System.out.println("\n=== MSD物料同步开始 " + timestamp + " ===");
+        System.out.println("=== 检测到 " + changeSet.getIds().size() + " 条物料变更，开始处理 ===");
+
+        List<Integer> ids = changeSet.getIds();
+        int checkpointId = lastSyncId != null ? lastSyncId : 0;
+        for (int i = 0; i < ids.size(); i += MAX_BATCH_SIZE) {
+            List<Integer> chunk = ids.subList(i, Math.min(i + MAX_BATCH_SIZE, ids.size()));
+            List<Map<String, Object>> data = databaseService.fetchItemDataByIds(chunk);
+            if (!data.isEmpty()) {
+                processItemData(data, checkpointId, true);
+                checkpointId = Math.max(checkpointId, chunk.get(chunk.size() - 1));
+            }
+        }
+
+        changeTrackingDao.commit(changeSet);
+        return true;
+    }
+
     @Override
     public String getCustomCode(LocalDate currentDate, int lastCount) {
         // 物料同步不需要自定义码
@@ -193,10 +255,17 @@ public class ItemSyncServiceImpl implements ItemSyncService {
         databaseService.updateItemSyncStatus(lastItemSyncId);
     }
 
+    @Override
+    public void backfill(List<Map<String, Object>> data) {
+        processItemData(data, null, false);
+    }
+
     /**
      * 处理物料数据
+     * @param lastSyncId 当前同步ID，变更跟踪模式下同步ID不会回退到更小的值
+     * @param advanceCheckpoint 是否推进物料增量同步检查点（回补模式下为false）
      */
-    private void processItemData(List<Map<String, Object>> newData) {
+    private void processItemData(List<Map<String, Object>> newData, Integer lastSyncId, boolean advanceCheckpoint) {
         // 去重处理
         newData = validationService.removeDuplicateItemRecords(newData);
 
@@ -213,7 +282,30 @@ public class ItemSyncServiceImpl implements ItemSyncService {
         int newRecords = 0;
         int maxId = 0;
 
-        for (Map<String, Object> record : newData) {
+        // 出箱模式下，仍在出箱中的物料可能尚未在简道云创建，推送时再按查询条件判断新建或更新
+        boolean outboxEnabled = OutboxDispatcher.getInstance().isEnabled();
+        Set<String> inFlightKeys = Collections.emptySet();
+        List<OutboxRecord> outboxRecords = new ArrayList<>();
+        if (outboxEnabled) {
+            List<String> bizKeys = new ArrayList<>();
+            for (Map<String, Object> record : newData) {
+                bizKeys.add(record.get("job_num") + "|" + record.get("item_number") + "|"
+                        + record.get("item_classification"));
+            }
+            inFlightKeys = outboxDao.findInFlightKeys(OutboxRecord.STREAM_ITEM, bizKeys);
+        }
+
+        // 并行转换整页数据，结果与输入顺序一致
+        List<Map<String, Object>> convertedList = TransformStage.getInstance().transform(newData,
+                record -> validationService.isValidItemRecord(record)
+                        ? transformService.convertItemData(record)
+                        : null,
+                "物料转换");
+        // 数据库读取完成，查询和上传简道云前结束快照事务
+        UnitOfWork.endReads();
+
+        for (int i = 0; i < newData.size(); i++) {
+            Map<String, Object> record = newData.get(i);
             try {
                 totalRecords++;
 
@@ -228,21 +320,34 @@ public class ItemSyncServiceImpl implements ItemSyncService {
                 String itemClassification = (String) record.get("item_classification");
                 String itemKey = jobNum + "|" + itemNumber; // 使用工单号+物料号作为唯一标识
 
-                // 转换记录数据
-                Map<String, Object> converted = transformService.convertItemData(record);
+                Map<String, Object> converted = convertedList.get(i);
                 if (converted != null) {
                     itemKeyToRecordMap.put(itemKey, converted);
 
-                    // 使用工单号+物料号+料号所属分精确查询物料是否已存在
-                    Map<String, String> existingItem = queryExistingItem(jobNum, itemNumber, itemClassification);
-                    if (!existingItem.isEmpty() && existingItem.containsKey("data_id")) {
-                        String dataId = existingItem.get("data_id");
-                        dataIdMap.put(itemKey, dataId);
-                        updateItems.add(converted);
+                    if (outboxEnabled && inFlightKeys.contains(itemKey + "|" + itemClassification)) {
+                        outboxRecords.add(buildItemOutboxRecord(jobNum, itemNumber, itemClassification,
+                                OutboxRecord.OP_UPSERT, null, converted));
                         existingRecords++;
                     } else {
-                        newItems.add(converted);
-                        newRecords++;
+                        // 使用工单号+物料号+料号所属分精确查询物料是否已存在
+                        Map<String, String> existingItem = queryExistingItem(jobNum, itemNumber, itemClassification);
+                        if (!existingItem.isEmpty() && existingItem.containsKey("data_id")) {
+                            String dataId = existingItem.get("data_id");
+                            dataIdMap.put(itemKey, dataId);
+                            updateItems.add(converted);
+                            existingRecords++;
+                            if (outboxEnabled) {
+                                outboxRecords.add(buildItemOutboxRecord(jobNum, itemNumber, itemClassification,
+                                        OutboxRecord.OP_UPDATE, dataId, converted));
+                            }
+                        } else {
+                            newItems.add(converted);
+                            newRecords++;
+                            if (outboxEnabled) {
+                                outboxRecords.add(buildItemOutboxRecord(jobNum, itemNumber, itemClassification,
+                                        OutboxRecord.OP_CREATE, null, converted));
+                            }
+                        }
                     }
                 } else {
                     LogUtil.logError("物料数据转换失败: " + itemKey);
@@ -262,6 +367,20 @@ public class ItemSyncServiceImpl implements ItemSyncService {
         LogUtil.logInfo(String.format("处理记录汇总：总记录数=%d, 有效记录数=%d, 已存在记录=%d, 新记录=%d",
                 totalRecords, validRecords, existingRecords, newRecords));
 
+        if (lastSyncId != null && maxId > 0) {
+            maxId = Math.max(maxId, lastSyncId);
+        }
+
+        if (outboxEnabled) {
+            // 转换数据与同步状态在同一事务中写入出箱
+            final int lastId = advanceCheckpoint ? maxId : 0;
+            if (outboxDao.enqueue(outboxRecords,
+                    lastId > 0 ? conn -> databaseService.updateItemSyncStatus(conn, lastId) : null)) {
+                LogUtil.logInfo(String.format("物料已写入出箱: %d 条 (最新ID: %d)", outboxRecords.size(), lastId));
+            }
+            return;
+        }
+
         // 上传新建数据
         int successCreate = 0;
         if (!newItems.isEmpty()) {
@@ -278,9 +397,17 @@ public class ItemSyncServiceImpl implements ItemSyncService {
             successUpdate = updateExistingItems(updateItems, dataIdMap, itemKeyToRecordMap);
         }
 
+        if (!advanceCheckpoint) {
+            LogUtil.logInfo(String.format("物料回补完成: 新建成功 %d/%d, 更新成功 %d/%d (最大ID: %d)",
+                    successCreate, newItems.size(), successUpdate, updateItems.size(), maxId));
+            return;
+        }
+
         // 更新同步状态
         if (maxId > 0) {
             updateItemSyncStatus(maxId);
+            // 本页已推送到简道云，立即写入检查点，程序崩溃后不重复推送本页
+            CheckpointDao.getInstance().flush();
             LogUtil.logInfo(String.format("物料同步完成: 新建成功 %d/%d, 更新成功 %d/%d (最新ID: %d)",
                     successCreate, newItems.size(), successUpdate, updateItems.size(), maxId));
         } else {
@@ -351,6 +478,22 @@ public class ItemSyncServiceImpl implements ItemSyncService {
         return successUpdate;
     }
 
+    /**
+     * 构建物料出箱记录
+     */
+    private OutboxRecord buildItemOutboxRecord(String jobNum, String itemNumber, String itemClassification,
+            String operation, String dataId, Map<String, Object> converted) throws JsonProcessingException {
+        Map<String, String> conditions = new HashMap<>();
+        conditions.put(configManager.getItemFieldMapping("job_num"), jobNum);
+        conditions.put(configManager.getItemFieldMapping("item_number"), itemNumber);
+        conditions.put(configManager.getItemFieldMapping("item_classification"), itemClassification);
+
+        boolean isStartWorkflow = Boolean.parseBoolean(configManager.getProperty("jdy.isStartWorkflow", "false"));
+        return OutboxRecord.of(OutboxRecord.STREAM_ITEM, APP_ID, ITEM_ENTRY_ID,
+                jobNum + "|" + itemNumber + "|" + itemClassification,
+                conditions, operation, dataId, converted, isStartWorkflow);
+    }
+
     /**
      * 单个物料记录上传
      */
@@ -387,25 +530,19 @@ public class ItemSyncServiceImpl implements ItemSyncService {
             String itemNumberField = configManager.getItemFieldMapping("item_number");
 
             if (jobNumField != null && record.containsKey(jobNumField)) {
-                Object fieldValue = record.get(jobNumField);
-                if (fieldValue instanceof Map) {
-                    Object value = ((Map<?, ?>) fieldValue).get("value");
-                    if (value != null) {
-                        identifier.append("工单:").append(value.toString());
-                    }
+                Object value = record.get(jobNumField);
+                if (value != null) {
+                    identifier.append("工单:").append(value.toString());
                 }
             }
 
             if (itemNumberField != null && record.containsKey(itemNumberField)) {
-                Object fieldValue = record.get(itemNumberField);
-                if (fieldValue instanceof Map) {
-                    Object value = ((Map<?, ?>) fieldValue).get("value");
-                    if (value != null) {
-                        if (identifier.length() > 0) {
-                            identifier.append(", ");
-                        }
-                        identifier.append("物料:").append(value.toString());
+                Object value = record.get(itemNumberField);
+                if (value != null) {
+                    if (identifier.length() > 0) {
+                        identifier.append(", ");
                     }
+                    identifier.append("物料:").append(value.toString());
                 }
             }
         } catch (Exception e) {
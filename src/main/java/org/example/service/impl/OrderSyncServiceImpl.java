@@ -5,11 +5,21 @@ import org.example.service.JiandaoyunApiService;
 import org.example.service.DataTransformService;
 import org.example.service.DataValidationService;
 import org.example.service.DatabaseService;
+import org.example.service.ExtractionCache;
+import org.example.service.OutboxDispatcher;
+import org.example.service.TransformStage;
+import org.example.service.UnitOfWork;
+import org.example.dao.ChangeTrackingDao;
+import org.example.dao.CheckpointDao;
 import org.example.dao.OrderDao;
+import org.example.dao.OutboxDao;
 import org.example.model.OrderRecord;
+import org.example.model.OutboxRecord;
 import org.example.config.ConfigManager;
+import org.example.config.ConfigSnapshot;
 import org.example.config.FieldMappingConfig;
 import org.example.util.LogUtil;
+import org.example.util.SyncMetrics;
 
 import java.time.LocalDate;
 import java.time.LocalDateTime;
@@ -28,6 +38,7 @@ public class OrderSyncServiceImpl implements OrderSyncService {
     private final DataValidationService validationService;
     private final DatabaseService databaseService;
     private final OrderDao orderDao;
+    private final OutboxDao outboxDao;
     private final ConfigManager configManager;
     private final FieldMappingConfig fieldMappingConfig;
 
@@ -37,6 +48,15 @@ public class OrderSyncServiceImpl implements OrderSyncService {
     private final int MAX_RETRY;
     private final long RETRY_INTERVAL;
     private final int MAX_BATCH_SIZE;
+    private final String CAPTURE_MODE;
+
+    // 变更跟踪模式下需要一并捕获的子表（子表名 -> 外键字段）
+    private static final Map<String, String> CHILD_TABLES = new LinkedHashMap<>();
+    static {
+        CHILD_TABLES.put("oms_require_component", "order_id");
+        CHILD_TABLES.put("oms_test_process_scheme", "order_id");
+        CHILD_TABLES.put("oms_wafer_dc", "order_id");
+    }
 
     // 自定义码相关常量
     private static final String CUSTOM_CODE_FIELD = "_widget_1748317817210";
@@ -44,6 +64,9 @@ public class OrderSyncServiceImpl implements OrderSyncService {
 
     // 更新时需要移除的字段（避免覆盖已有值）
     private static final String DATE_FIELD_TO_REMOVE = "_widget_1748238705999"; // 日期字段
+    // 出箱UPSERT判定为更新时移除的字段：日期字段和新建时分配的自定义码
+    private static final List<String> UPDATE_OMIT_FIELDS = Collections.unmodifiableList(
+            Arrays.asList(DATE_FIELD_TO_REMOVE, CUSTOM_CODE_FIELD));
 
     private OrderSyncServiceImpl() {
         this.apiService = JiandaoyunApiService.getInstance();
@@ -51,6 +74,7 @@ public class OrderSyncServiceImpl implements OrderSyncService {
         this.validationService = DataValidationServiceImpl.getInstance();
         this.databaseService = DatabaseService.getInstance();
         this.orderDao = OrderDao.getInstance();
+        this.outboxDao = OutboxDao.getInstance();
         this.configManager = ConfigManager.getInstance();
         this.fieldMappingConfig = FieldMappingConfig.getInstance();
 
@@ -60,6 +84,7 @@ public class OrderSyncServiceImpl implements OrderSyncService {
         this.MAX_RETRY = Integer.parseInt(configManager.getProperty("sync.maxRetry", "10"));
         this.RETRY_INTERVAL = Long.parseLong(configManager.getProperty("sync.retryInterval", "5000"));
         this.MAX_BATCH_SIZE = Integer.parseInt(configManager.getProperty("sync.maxBatchSize", "50"));
+        this.CAPTURE_MODE = configManager.getProperty("sync.capture.mode", "id");
     }
 
     public static synchronized OrderSyncServiceImpl getInstance() {
@@ -71,7 +96,8 @@ public class OrderSyncServiceImpl implements OrderSyncService {
 
     @Override
     public boolean syncProcess() {
-        try {
+        // 本轮同步的数据库读取（主表、子表）共用一个连接
+        try (UnitOfWork unitOfWork = databaseService.beginUnitOfWork("订单同步")) {
             // 获取上次同步ID
             Integer lastSyncId = getLastSyncId();
 
@@ -87,6 +113,19 @@ public class OrderSyncServiceImpl implements OrderSyncService {
                 syncCount = 0;
             }
 
+            if ("changetracking".equalsIgnoreCase(CAPTURE_MODE)) {
+                return syncChangedOrders(lastSyncId, syncDate, syncCount);
+            }
+
+            // 先只按主键探测有无新数据，没有时跳过全量查询、转换和上传
+            int backlog = databaseService.probeOrderBacklog(lastSyncId);
+            if (backlog >= 0) {
+                SyncMetrics.setBacklog(CheckpointDao.STREAM_ORDER, backlog);
+                if (backlog == 0) {
+                    return false;
+                }
+            }
+
             // 获取新数据
             List<Map<String, Object>> newData = fetchNewData(lastSyncId);
 
@@ -100,7 +139,7 @@ public class OrderSyncServiceImpl implements OrderSyncService {
             System.out.println("=== 检测到新订单数据，开始处理 ===");
 
             // 处理数据
-            processOrderData(newData, syncDate, syncCount);
+            processOrderData(newData, syncDate, syncCount, lastSyncId, true);
             return true;
 
         } catch (Exception e) {
@@ -109,6 +148,39 @@ public class OrderSyncServiceImpl implements OrderSyncService {
         }
     }
 
+    /**
+     * 变更跟踪模式：只同步自上次版本以来新增或修改过的订单（含子表变更）
+     */
+    private boolean syncChangedOrders(Integer lastSyncId, LocalDate syncDate, int syncCount) {
+        ChangeTrackingDao changeTrackingDao = ChangeTrackingDao.getInstance();
+        ChangeTrackingDao.ChangeSet changeSet = changeTrackingDao.captureChanges("order", "oms_order", CHILD_TABLES);
+        if (changeSet == null) {
+            return false;
+        }
+        if (changeSet.getIds().isEmpty()) {
+            changeTrackingDao.commit(changeSet);
+            return false;
+        }
+
+        String timestamp = LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss"));
+        System.out.println("\n=== MSD订单同步开始 " + timestamp + " ===");
+        System.out.println("=== 检测到 " + changeSet.getIds().size() + " 条订单变更，开始处理 ===");
+
+        List<Integer> ids = changeSet.getIds();
+        int checkpointId = lastSyncId != null ? lastSyncId : 0;
+        for (int i = 0; i < ids.size(); i += MAX_BATCH_SIZE) {
+            List<Integer> chunk = ids.subList(i, Math.min(i + MAX_BATCH_SIZE, ids.size()));
+            List<Map<String, Object>> data = databaseService.fetchOrderDataByIds(chunk);
+            if (!data.isEmpty()) {
+                syncCount = processOrderData(data, syncDate, syncCount, checkpointId, true);
+                checkpointId = Math.max(checkpointId, chunk.get(chunk.size() - 1));
+            }
+        }
+
+        changeTrackingDao.commit(changeSet);
+        return true;
+    }
+
     @Override
     public String getCustomCode(LocalDate currentDate, int lastCount) {
         // 实现自定义码生成逻辑
@@ -201,10 +273,20 @@ public class OrderSyncServiceImpl implements OrderSyncService {
         databaseService.updateSyncStatus(lastSyncId, syncDate, syncCount);
     }
 
+    @Override
+    public void backfill(List<Map<String, Object>> data) {
+        processOrderData(data, LocalDate.now(), 0, null, false);
+    }
+
     /**
      * 处理订单数据
+     * @param lastSyncId 当前同步ID，变更跟踪模式下同步ID不会回退到更小的值
+     * @param advanceCheckpoint 是否推进订单增量同步检查点；回补模式下为false，
+     *                          同时不分配按日计数的自定义码
+     * @return 处理后的同步计数
      */
-    private void processOrderData(List<Map<String, Object>> newData, LocalDate syncDate, int syncCount) {
+    private int processOrderData(List<Map<String, Object>> newData, LocalDate syncDate, int syncCount,
+            Integer lastSyncId, boolean advanceCheckpoint) {
         // 去重处理
         newData = validationService.removeDuplicateRecords(newData);
 
@@ -214,6 +296,38 @@ public class OrderSyncServiceImpl implements OrderSyncService {
         Map<String, String> dataIdMap = new HashMap<>();
         Map<String, Map<String, Object>> orderRecordMap = new HashMap<>();
         Map<String, Map<String, Object>> updateRecordMap = new HashMap<>();
+        // 出箱中的工单按新建数据写入，推送时判定新建或更新
+        Map<String, Map<String, Object>> upsertRecordMap = new LinkedHashMap<>();
+        List<String> createKeys = new ArrayList<>();
+
+        // 出箱模式下，仍在出箱中的工单可能尚未在简道云创建，不能按查询结果判断新建
+        boolean outboxEnabled = OutboxDispatcher.getInstance().isEnabled();
+        Set<String> inFlightKeys = Collections.emptySet();
+        if (outboxEnabled) {
+            List<String> jobNumbers = new ArrayList<>();
+            for (Map<String, Object> record : newData) {
+                Object jobNum = record.get("job_num");
+                if (jobNum != null) {
+                    jobNumbers.add(jobNum.toString());
+                }
+            }
+            inFlightKeys = outboxDao.findInFlightKeys(OutboxRecord.STREAM_ORDER, jobNumbers);
+        }
+
+        // 并行转换整页数据，结果与输入顺序一致；整页使用同一版本配置快照中的映射
+        ConfigSnapshot.MappingFile orderMapping = configManager.getSnapshot().getOrderMapping();
+        Map<String, String> fieldMapping = orderMapping.getMainFields();
+        Map<String, Map<String, String>> subTables = orderMapping.getSubTables();
+        // 子表数据在同步线程上按本页订单ID批量查询（使用工作单元的连接和快照），并行转换只做计算
+        Map<String, Map<Integer, List<Map<String, Object>>>> subTableRows =
+                transformService.prefetchOrderSubTables(newData, fieldMapping, subTables);
+        List<Map<String, Object>> convertedList = TransformStage.getInstance().transform(newData,
+                record -> validationService.isValidRecord(record)
+                        ? transformService.convertData(record, fieldMapping, subTables, subTableRows)
+                        : null,
+                "订单转换");
+        // 数据库读取完成，查询和上传简道云前结束快照事务
+        UnitOfWork.endReads();
 
         int maxId = 0;
         int customCodeCount = 0;
@@ -222,7 +336,9 @@ public class OrderSyncServiceImpl implements OrderSyncService {
         int existingRecords = 0;
         int newRecords = 0;
 
-        for (Map<String, Object> record : newData) {
+        // 按输入顺序查询是否已存在、分配自定义码，保证自定义码序号与串行处理时一致
+        for (int i = 0; i < newData.size(); i++) {
+            Map<String, Object> record = newData.get(i);
             try {
                 totalRecords++;
 
@@ -235,20 +351,25 @@ public class OrderSyncServiceImpl implements OrderSyncService {
                 String jobNumber = (String) record.get("job_num");
 
                 // 检查是否已存在
-                Map<String, String> existingRecord = queryExistingRecord(jobNumber);
-                Map<String, Object> converted;
-
-                // 转换数据
-                converted = transformService.convertData(
-                        record,
-                        configManager.getFieldMapping(),
-                        configManager.getSubTables());
+                boolean inFlight = inFlightKeys.contains(jobNumber);
+                Map<String, String> existingRecord = inFlight
+                        ? Collections.<String, String>emptyMap()
+                        : queryExistingRecord(jobNumber);
+                Map<String, Object> converted = convertedList.get(i);
 
                 if (converted != null) {
                     orderRecordMap.put(jobNumber, converted);
 
-                    // 检查是否已存在
-                    if (!existingRecord.isEmpty() && existingRecord.containsKey("data_id")) {
+                    if (inFlight) {
+                        // 工单仍在出箱中，简道云中可能尚未创建：写入完整的新建数据（含自定义码），
+                        // 推送时判定为更新再移除日期字段和自定义码
+                        if (applyCustomCode(record, converted, advanceCheckpoint, syncDate,
+                                syncCount + customCodeCount)) {
+                            customCodeCount++;
+                        }
+                        upsertRecordMap.put(jobNumber, converted);
+                        existingRecords++;
+                    } else if (!existingRecord.isEmpty() && existingRecord.containsKey("data_id")) {
                         // 数据已存在，准备更新
                         // 从更新数据中移除日期字段，避免覆盖简道云中已有的值
                         // 其他提取字段仍然更新，以便客户需求变更时能及时同步
@@ -263,16 +384,13 @@ public class OrderSyncServiceImpl implements OrderSyncService {
                         // 数据不存在，新建数据
 
                         // 添加自定义码（如果需要）
-                        String jobStatus = (String) record.get("job_status");
-                        if (jobStatus != null && "已发放".equals(jobStatus.trim())) {
-                            int currentCodeIndex = syncCount + customCodeCount;
-                            String customCode = getCustomCode(syncDate, currentCodeIndex);
-                            converted.put(CUSTOM_CODE_FIELD,
-                                    Collections.singletonMap("value", customCode));
+                        if (applyCustomCode(record, converted, advanceCheckpoint, syncDate,
+                                syncCount + customCodeCount)) {
                             customCodeCount++;
                         }
 
                         transformedData.add(converted);
+                        createKeys.add(jobNumber);
                         newRecords++;
                     }
                 }
@@ -289,6 +407,17 @@ public class OrderSyncServiceImpl implements OrderSyncService {
         // 输出处理结果汇总
         LogUtil.logInfo(String.format("处理记录汇总：总记录数=%d, 有效记录数=%d, 已存在记录=%d, 新记录=%d",
                 totalRecords, validRecords, existingRecords, newRecords));
+        ExtractionCache.getInstance().logStats();
+
+        if (lastSyncId != null && maxId > 0) {
+            maxId = Math.max(maxId, lastSyncId);
+        }
+
+        if (outboxEnabled) {
+            enqueueToOutbox(transformedData, createKeys, dataIdMap, updateRecordMap, upsertRecordMap,
+                    advanceCheckpoint ? maxId : 0, syncDate, syncCount + customCodeCount);
+            return syncCount + customCodeCount;
+        }
 
         // 上传新建数据
         int successCreate = 0;
@@ -306,15 +435,85 @@ public class OrderSyncServiceImpl implements OrderSyncService {
             LogUtil.logInfo("没有需要更新的订单");
         }
 
+        if (!advanceCheckpoint) {
+            LogUtil.logInfo(String.format("订单回补完成: 新建成功 %d/%d, 更新成功 %d/%d (最大ID: %d)",
+                    successCreate, transformedData.size(), successUpdate, updateData.size(), maxId));
+            return syncCount;
+        }
+
         // 更新同步状态
         if (maxId > 0) {
             int newSyncCount = syncCount + customCodeCount;
             updateSyncStatus(maxId, syncDate, newSyncCount);
+            // 本页已推送到简道云，立即写入检查点：sync_count 是当日自定义码的分配位置，
+            // 留在写后缓冲中时程序崩溃会回退计数，已使用的自定义码被再次分配
+            CheckpointDao.getInstance().flush();
             LogUtil.logInfo(String.format("订单同步完成: 新建成功 %d/%d, 更新成功 %d/%d (最新ID: %d)",
                     successCreate, transformedData.size(),
                     successUpdate, updateData.size(),
                     maxId));
         }
+        return syncCount + customCodeCount;
+    }
+
+    /**
+     * 已发放的新工单添加自定义码（回补模式不分配）
+     * @return 是否分配了自定义码
+     */
+    private boolean applyCustomCode(Map<String, Object> record, Map<String, Object> converted,
+            boolean advanceCheckpoint, LocalDate syncDate, int codeIndex) {
+        String jobStatus = (String) record.get("job_status");
+        if (advanceCheckpoint && jobStatus != null && "已发放".equals(jobStatus.trim())) {
+            converted.put(CUSTOM_CODE_FIELD, getCustomCode(syncDate, codeIndex));
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * 将转换后的数据与同步状态在同一事务中写入出箱，由出箱分发服务推送到简道云
+     */
+    private void enqueueToOutbox(List<Map<String, Object>> transformedData, List<String> createKeys,
+            Map<String, String> dataIdMap, Map<String, Map<String, Object>> updateRecordMap,
+            Map<String, Map<String, Object>> upsertRecordMap, int maxId, LocalDate syncDate, int newSyncCount) {
+        String jobNumField = configManager.getFieldMapping("job_num");
+        boolean isStartWorkflow = Boolean.parseBoolean(configManager.getProperty("jdy.isStartWorkflow", "false"));
+        List<OutboxRecord> records = new ArrayList<>();
+
+        try {
+            for (int i = 0; i < transformedData.size(); i++) {
+                String jobNumber = createKeys.get(i);
+                records.add(OutboxRecord.of(OutboxRecord.STREAM_ORDER, APP_ID, ENTRY_ID, jobNumber,
+                        Collections.singletonMap(jobNumField, jobNumber), OutboxRecord.OP_CREATE, null,
+                        transformedData.get(i), isStartWorkflow));
+            }
+            for (Map.Entry<String, String> entry : dataIdMap.entrySet()) {
+                String jobNumber = entry.getKey();
+                String dataId = entry.getValue();
+                records.add(OutboxRecord.of(OutboxRecord.STREAM_ORDER, APP_ID, ENTRY_ID, jobNumber,
+                        Collections.singletonMap(jobNumField, jobNumber), OutboxRecord.OP_UPDATE, dataId,
+                        updateRecordMap.get(jobNumber), isStartWorkflow));
+            }
+            for (Map.Entry<String, Map<String, Object>> entry : upsertRecordMap.entrySet()) {
+                String jobNumber = entry.getKey();
+                OutboxRecord record = OutboxRecord.of(OutboxRecord.STREAM_ORDER, APP_ID, ENTRY_ID, jobNumber,
+                        Collections.singletonMap(jobNumField, jobNumber), OutboxRecord.OP_UPSERT, null,
+                        entry.getValue(), isStartWorkflow);
+                record.omitOnUpdate(UPDATE_OMIT_FIELDS);
+                records.add(record);
+            }
+        } catch (Exception e) {
+            LogUtil.logError("序列化出箱数据失败: " + e.getMessage());
+            return;
+        }
+
+        OutboxDao.CheckpointUpdate checkpoint = maxId > 0
+                ? conn -> databaseService.updateSyncStatus(conn, maxId, syncDate, newSyncCount)
+                : null;
+        if (outboxDao.enqueue(records, checkpoint)) {
+            LogUtil.logInfo(String.format("订单已写入出箱: 新建 %d 条, 更新 %d 条, 待定 %d 条 (最新ID: %d)",
+                    transformedData.size(), dataIdMap.size(), upsertRecordMap.size(), maxId));
+        }
     }
 
     /**
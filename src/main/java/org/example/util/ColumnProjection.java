@@ -0,0 +1,98 @@
+package org.example.util;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * 查询列投影
+ * 由字段映射配置生成明确的查询列清单，替代 SELECT *，只读取实际同步的列。
+ * 列清单 = 必需列（主键、关联键、同步状态等代码自身依赖的列）+ 字段映射中已配置的列
+ */
+public class ColumnProjection {
+    private final List<String> columns;
+    private final Set<String> columnSet;
+
+    private ColumnProjection(Collection<String> columns) {
+        this.columnSet = Collections.unmodifiableSet(new LinkedHashSet<>(columns));
+        this.columns = Collections.unmodifiableList(new ArrayList<>(columnSet));
+    }
+
+    /**
+     * 按给定列创建投影
+     * @param columns 列名
+     * @return 列投影
+     */
+    public static ColumnProjection of(Collection<String> columns) {
+        return new ColumnProjection(columns);
+    }
+
+    /**
+     * 按必需列和字段映射创建投影
+     * @param required 必需列，始终查询
+     * @param candidates 候选列（表中代码能够读取的列），为null时不限制；结果中映射列按候选列顺序排列
+     * @param mapped 字段映射中已配置的源字段，为null时（映射未加载）查询全部候选列
+     * @return 列投影
+     */
+    public static ColumnProjection of(String[] required, String[] candidates, Set<String> mapped) {
+        Set<String> columns = new LinkedHashSet<>();
+        Collections.addAll(columns, required);
+        if (candidates == null) {
+            if (mapped != null) {
+                columns.addAll(mapped);
+            }
+        } else {
+            for (String column : candidates) {
+                if (mapped == null || mapped.contains(column)) {
+                    columns.add(column);
+                }
+            }
+        }
+        return new ColumnProjection(columns);
+    }
+
+    /**
+     * 获取投影列
+     * @return 列名列表（不可修改）
+     */
+    public List<String> getColumns() {
+        return columns;
+    }
+
+    /**
+     * 投影中是否包含指定列
+     * @param column 列名
+     * @return 是否包含
+     */
+    public boolean contains(String column) {
+        return columnSet.contains(column);
+    }
+
+    /**
+     * 生成查询列清单，如 [id], [order_no]
+     * @return 列清单
+     */
+    public String selectList() {
+        return selectList(null);
+    }
+
+    /**
+     * 生成带表别名的查询列清单，如 d.[id], d.[order_no]
+     * @param alias 表别名，为null时不加前缀
+     * @return 列清单
+     */
+    public String selectList(String alias) {
+        String prefix = alias != null ? alias + "." : "";
+        StringBuilder sb = new StringBuilder();
+        for (String column : columns) {
+            if (sb.length() > 0) {
+                sb.append(", ");
+            }
+            sb.append(prefix).append('[').append(column.replace("]", "]]")).append(']');
+        }
+        return sb.toString();
+    }
+}
@@ -25,6 +25,7 @@ public class Constants {
     // 配置文件路径
     public static final String DEFAULT_FIELD_MAPPING_PATH = "field_mapping.json";
     public static final String DEFAULT_ITEM_FIELD_MAPPING_PATH = "item_field_mapping.json";
+    public static final String DEFAULT_DELIVERY_FIELD_MAPPING_PATH = "po_delivery_notice_field_mapping.json";
     
     // 简道云API相关常量
     public static final String API_CONTENT_TYPE = "application/json; charset=UTF-8";
@@ -0,0 +1,35 @@
+package org.example.util;
+
+import java.util.List;
+import java.util.regex.Pattern;
+
+/**
+ * 文本提取通用正则
+ * 生产指示分段、十六进制字符过滤等与具体提取规则无关的正则在类加载时一次编译，所有记录、所有线程共用。
+ * 图档号、卷标、VID/PID、厂商名、产品名、文件格式等提取规则定义在提取规则文件中，由 ExtractionRuleSet 编译。
+ */
+public final class ExtractionPatterns {
+
+    // 生产指示分段：按行、分号或数字序号分割
+    public static final Pattern SEGMENT_SPLIT = Pattern.compile("[\\n;]|(?<=\\d\\.)|(?<=\\d、)");
+
+    // VID/PID 中的非十六进制字符
+    public static final Pattern NON_HEX = Pattern.compile("[^A-F0-9]");
+
+    private ExtractionPatterns() {
+    }
+
+    /**
+     * 依次应用清理规则：每条规则删除匹配内容后去除首尾空白
+     * @param value 待清理文本
+     * @param rules 清理规则
+     * @return 清理后的文本
+     */
+    public static String cleanup(String value, List<Pattern> rules) {
+        String result = value;
+        for (Pattern rule : rules) {
+            result = rule.matcher(result).replaceAll("").trim();
+        }
+        return result;
+    }
+}
@@ -0,0 +1,642 @@
+package org.example.util;
+
+import com.fasterxml.jackson.databind.JsonNode;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+/**
+ * 编译后的文本提取规则集
+ * 由提取规则文件（extraction_rules.json）编译得到：图档号分类规则、卷标规则、产品信息规则在加载时一次编译，
+ * 全部关键词、锚点词和分隔符合并为一个关键词扫描器，正则全部预编译；
+ * 图档号规则按触发关键词分组，每条记录只执行文本中出现了触发关键词的规则。
+ * 编译完成后不再修改，可在多个线程间共享；规则文件更新时整体替换为新的规则集。
+ */
+public final class ExtractionRuleSet {
+    // 关键词前缀：表示该关键词必须不出现
+    private static final String ABSENT_PREFIX = "!";
+
+    private final int version;
+    private final String source;
+
+    // 图档号
+    private final Pattern docPattern;
+    private final Map<String, String> docFields;
+    private final List<DocRule> segmentRules;
+    private final List<String> subSegmentSeparators;
+    private final Pattern subSegmentSplit;
+    private final List<DocRule> subSegmentRules;
+    private final int fullTextContext;
+    private final List<DocRule> fullTextTriggers;
+    private final List<DocRule> fullTextRules;
+    // 触发关键词 -> 规则编号
+    private final Map<String, int[]> rulesByTrigger;
+    private final int docRuleCount;
+
+    // 卷标、产品信息
+    private final FieldRule volumeLabel;
+    private final FieldRule volumeLabelTargeted;
+    private final List<FieldRule> productInfo;
+
+    private final KeywordScanner scanner;
+
+    private ExtractionRuleSet(JsonNode root, String source) {
+        this.source = source;
+        this.version = root.path("version").asInt(0);
+
+        JsonNode doc = required(root, "documentNumbers");
+        this.docPattern = compile(requiredText(doc, "pattern"), 0, "documentNumbers.pattern");
+        this.docFields = Collections.unmodifiableMap(readFields(required(doc, "fields")));
+
+        int[] nextId = { 0 };
+        this.segmentRules = readDocRules(doc, "segmentRules", nextId);
+        this.subSegmentSeparators = readStrings(doc.get("subSegmentSeparators"), false);
+        this.subSegmentSplit = subSegmentSeparators.isEmpty() ? null : alternation(subSegmentSeparators);
+        this.subSegmentRules = readDocRules(doc, "subSegmentRules", nextId);
+        this.fullTextContext = doc.path("fullTextContext").asInt(20);
+        this.fullTextTriggers = readDocRules(doc, "fullTextTriggers", nextId);
+        this.fullTextRules = readDocRules(doc, "fullTextRules", nextId);
+        this.docRuleCount = nextId[0];
+        this.rulesByTrigger = indexByTrigger();
+
+        this.volumeLabel = new FieldRule(required(root, "volumeLabel"), "volumeLabel");
+        this.volumeLabelTargeted = new FieldRule(required(root, "volumeLabelTargeted"), "volumeLabelTargeted");
+        List<FieldRule> info = new ArrayList<>();
+        for (JsonNode node : required(root, "productInfo")) {
+            FieldRule rule = new FieldRule(node, "productInfo");
+            if (rule.widget == null) {
+                throw new IllegalArgumentException("产品信息规则 " + rule.name + " 缺少 widget");
+            }
+            info.add(rule);
+        }
+        this.productInfo = Collections.unmodifiableList(info);
+
+        this.scanner = new KeywordScanner(collectKeywords().toArray(new String[0]));
+    }
+
+    /**
+     * 编译提取规则
+     * @param root 规则文件的JSON根节点
+     * @param source 规则来源（文件路径或类路径资源名，用于日志）
+     * @return 编译后的规则集
+     * @throws IllegalArgumentException 如果规则定义不完整或正则无效
+     */
+    public static ExtractionRuleSet compile(JsonNode root, String source) {
+        return new ExtractionRuleSet(root, source);
+    }
+
+    public int getVersion() {
+        return version;
+    }
+
+    public String getSource() {
+        return source;
+    }
+
+    /**
+     * 图档号规则、卷标规则、产品信息规则的总数
+     */
+    public int getRuleCount() {
+        return docRuleCount + 2 + productInfo.size();
+    }
+
+    /**
+     * 关键词扫描器（全部关键词、锚点词、分隔符，英文为大写）
+     */
+    public KeywordScanner getScanner() {
+        return scanner;
+    }
+
+    /**
+     * 对文本分词
+     */
+    public InstructionText tokenize(String text) {
+        return InstructionText.of(text, scanner);
+    }
+
+    /**
+     * 图档号控件（控件ID -> 名称，按规则文件中的顺序）
+     */
+    public Map<String, String> getDocumentFields() {
+        return docFields;
+    }
+
+    public Pattern getDocumentPattern() {
+        return docPattern;
+    }
+
+    public FieldRule getVolumeLabel() {
+        return volumeLabel;
+    }
+
+    public FieldRule getVolumeLabelTargeted() {
+        return volumeLabelTargeted;
+    }
+
+    public List<FieldRule> getProductInfo() {
+        return productInfo;
+    }
+
+    /**
+     * 提取各类图档号
+     * 1. 逐段落（按行、分号、数字序号切分）执行段落规则，段落含分隔符时再逐子段落执行子段落规则；
+     * 2. 任一全文触发规则成立时，对全文每个图档号按前后上下文执行全文规则。
+     * 规则只在关键词之后查找图档号；文本中没有触发关键词的规则直接跳过。
+     *
+     * @param tokens 分词结果（须由本规则集的扫描器生成）
+     * @return 控件ID -> 图档号，未提取到的控件为空字符串
+     */
+    public Map<String, String> extractDocumentNumbers(InstructionText tokens) {
+        Map<String, String> result = new LinkedHashMap<>();
+        for (String widget : docFields.keySet()) {
+            result.put(widget, "");
+        }
+        if (tokens.isBlank()) {
+            return result;
+        }
+
+        String text = tokens.text();
+        KeywordScanner.KeywordIndex keywords = tokens.keywords();
+        boolean[] active = activeRules(keywords, text.length());
+        Matcher docMatcher = docPattern.matcher(text);
+
+        // 段落、子段落中的关键词判断只查询位置索引，不再反复扫描文本
+        for (int[] segment : tokens.clauses()) {
+            int start = segment[0];
+            int end = segment[1];
+            applyRules(segmentRules, active, keywords, docMatcher, start, end, result);
+
+            // 复合段落（如"丝印：UN410003A + 彩卡：UN504001A"）按分隔符拆分后逐个处理
+            if (subSegmentSplit != null && containsAny(keywords, subSegmentSeparators, start, end)) {
+                for (int[] sub : InstructionText.splitRanges(subSegmentSplit, text, start, end)) {
+                    applyRules(subSegmentRules, active, keywords, docMatcher, sub[0], sub[1], result);
+                }
+            }
+        }
+
+        if (needFullTextSearch(active, keywords, text.length(), result)) {
+            fullTextSearch(active, keywords, text, result);
+        }
+        return result;
+    }
+
+    /**
+     * 本条记录可能成立的规则：文本中出现了规则任一关键词组的触发关键词
+     */
+    private boolean[] activeRules(KeywordScanner.KeywordIndex keywords, int length) {
+        boolean[] active = new boolean[docRuleCount];
+        for (Map.Entry<String, int[]> entry : rulesByTrigger.entrySet()) {
+            if (keywords.contains(entry.getKey(), 0, length)) {
+                for (int id : entry.getValue()) {
+                    active[id] = true;
+                }
+            }
+        }
+        return active;
+    }
+
+    private void applyRules(List<DocRule> rules, boolean[] active, KeywordScanner.KeywordIndex keywords,
+            Matcher docMatcher, int start, int end, Map<String, String> result) {
+        for (DocRule rule : rules) {
+            if (active[rule.id] && rule.applies(keywords, start, end, result)) {
+                int from = rule.keywordPosition(keywords, start, end);
+                if (from < 0 || from > end) {
+                    continue;
+                }
+                docMatcher.region(from, end);
+                if (docMatcher.find()) {
+                    result.put(rule.widget, docMatcher.group());
+                }
+            }
+        }
+    }
+
+    private boolean needFullTextSearch(boolean[] active, KeywordScanner.KeywordIndex keywords, int length,
+            Map<String, String> result) {
+        for (DocRule trigger : fullTextTriggers) {
+            if (active[trigger.id] && trigger.applies(keywords, 0, length, result)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 全文搜索：对每个图档号，按其前后上下文判断类型，第一条成立且关键词在图档号之前的规则生效
+     */
+    private void fullTextSearch(boolean[] active, KeywordScanner.KeywordIndex keywords, String text,
+            Map<String, String> result) {
+        int length = text.length();
+        Matcher matcher = docPattern.matcher(text);
+        while (matcher.find()) {
+            String docNumber = matcher.group();
+            int start = Math.max(0, matcher.start() - fullTextContext);
+            int end = Math.min(length, matcher.end() + fullTextContext);
+            // 上下文中该图档号第一次出现的位置（不晚于本次匹配，必然落在上下文内）
+            int docPos = text.indexOf(docNumber, start);
+
+            for (DocRule rule : fullTextRules) {
+                if (active[rule.id] && rule.applies(keywords, start, end, result)) {
+                    int keywordPos = rule.keywordPosition(keywords, start, end);
+                    if (keywordPos >= 0 && docPos > keywordPos) {
+                        result.put(rule.widget, docNumber);
+                        break;
+                    }
+                }
+            }
+        }
+    }
+
+    private static boolean containsAny(KeywordScanner.KeywordIndex keywords, List<String> candidates,
+            int start, int end) {
+        for (String keyword : candidates) {
+            if (keywords.contains(keyword, start, end)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private Map<String, int[]> indexByTrigger() {
+        Map<String, List<Integer>> grouped = new LinkedHashMap<>();
+        for (List<DocRule> rules : Arrays.asList(segmentRules, subSegmentRules, fullTextTriggers, fullTextRules)) {
+            for (DocRule rule : rules) {
+                for (String[] group : rule.required) {
+                    // 关键词组中的第一个关键词作为触发关键词
+                    List<Integer> ids = grouped.computeIfAbsent(group[0], k -> new ArrayList<>());
+                    if (!ids.contains(rule.id)) {
+                        ids.add(rule.id);
+                    }
+                }
+            }
+        }
+        Map<String, int[]> index = new LinkedHashMap<>();
+        for (Map.Entry<String, List<Integer>> entry : grouped.entrySet()) {
+            int[] ids = new int[entry.getValue().size()];
+            for (int i = 0; i < ids.length; i++) {
+                ids[i] = entry.getValue().get(i);
+            }
+            index.put(entry.getKey(), ids);
+        }
+        return Collections.unmodifiableMap(index);
+    }
+
+    private Set<String> collectKeywords() {
+        Set<String> keywords = new LinkedHashSet<>(subSegmentSeparators);
+        for (List<DocRule> rules : Arrays.asList(segmentRules, subSegmentRules, fullTextTriggers, fullTextRules)) {
+            for (DocRule rule : rules) {
+                rule.collectKeywords(keywords);
+            }
+        }
+        keywords.addAll(volumeLabel.anchors);
+        keywords.addAll(volumeLabelTargeted.anchors);
+        for (FieldRule rule : productInfo) {
+            keywords.addAll(rule.anchors);
+        }
+        return keywords;
+    }
+
+    private List<DocRule> readDocRules(JsonNode doc, String name, int[] nextId) {
+        List<DocRule> rules = new ArrayList<>();
+        JsonNode nodes = doc.get(name);
+        if (nodes != null) {
+            for (JsonNode node : nodes) {
+                rules.add(new DocRule(node, nextId[0]++, name));
+            }
+        }
+        // 按优先级升序执行，优先级相同时保持文件中的顺序
+        rules.sort(Comparator.comparingInt(rule -> rule.priority));
+        return Collections.unmodifiableList(rules);
+    }
+
+    private static Map<String, String> readFields(JsonNode node) {
+        Map<String, String> fields = new LinkedHashMap<>();
+        node.fields().forEachRemaining(entry -> fields.put(entry.getKey(), entry.getValue().asText()));
+        if (fields.isEmpty()) {
+            throw new IllegalArgumentException("documentNumbers.fields 不能为空");
+        }
+        return fields;
+    }
+
+    private static JsonNode required(JsonNode node, String name) {
+        JsonNode child = node.get(name);
+        if (child == null || child.isNull()) {
+            throw new IllegalArgumentException("提取规则缺少 " + name);
+        }
+        return child;
+    }
+
+    private static String requiredText(JsonNode node, String name) {
+        String value = required(node, name).asText();
+        if (value.isEmpty()) {
+            throw new IllegalArgumentException("提取规则 " + name + " 不能为空");
+        }
+        return value;
+    }
+
+    /**
+     * 读取字符串数组，英文关键词按需转为大写（与扫描文本时的大小写转换一致）
+     */
+    private static List<String> readStrings(JsonNode node, boolean foldCase) {
+        if (node == null || node.isNull()) {
+            return Collections.emptyList();
+        }
+        List<String> values = new ArrayList<>();
+        for (JsonNode item : node) {
+            String value = item.asText();
+            if (!value.isEmpty()) {
+                values.add(foldCase ? InstructionText.foldCase(value) : value);
+            }
+        }
+        return Collections.unmodifiableList(values);
+    }
+
+    private static Pattern compile(String regex, int flags, String where) {
+        try {
+            return Pattern.compile(regex, flags);
+        } catch (PatternSyntaxException e) {
+            throw new IllegalArgumentException(where + " 正则无效: " + e.getDescription() + " (" + regex + ")", e);
+        }
+    }
+
+    private static Pattern alternation(List<String> separators) {
+        StringBuilder regex = new StringBuilder();
+        for (String separator : separators) {
+            if (regex.length() > 0) {
+                regex.append('|');
+            }
+            regex.append(Pattern.quote(separator));
+        }
+        return Pattern.compile(regex.toString());
+    }
+
+    /**
+     * 一条图档号规则
+     * keywords 为关键词组列表，任一组的全部关键词都出现（"!"开头的关键词须不出现）时规则成立；
+     * exclude 中任一关键词出现时规则不成立；图档号只在 after 中各关键词首次出现位置的最大值之后查找。
+     */
+    private final class DocRule {
+        private final int id;
+        private final String name;
+        private final String widget;
+        private final int priority;
+        private final String[][] required;
+        private final String[][] absent;
+        private final String[] exclude;
+        private final String[] after;
+        private final boolean afterKeywordEnd;
+        private final boolean onlyIfEmpty;
+
+        DocRule(JsonNode node, int id, String phase) {
+            this.id = id;
+            this.name = node.path("name").asText(phase + "#" + id);
+            this.widget = requiredText(node, "widget");
+            if (!docFields.containsKey(widget)) {
+                throw new IllegalArgumentException("图档号规则 " + name + " 的控件 " + widget
+                        + " 未在 documentNumbers.fields 中声明");
+            }
+            this.priority = node.path("priority").asInt(0);
+
+            JsonNode groups = required(node, "keywords");
+            if (groups.size() == 0) {
+                throw new IllegalArgumentException("图档号规则 " + name + " 的 keywords 不能为空");
+            }
+            this.required = new String[groups.size()][];
+            this.absent = new String[groups.size()][];
+            Set<String> positives = new LinkedHashSet<>();
+            for (int g = 0; g < groups.size(); g++) {
+                List<String> present = new ArrayList<>();
+                List<String> missing = new ArrayList<>();
+                for (String keyword : readStrings(groups.get(g), true)) {
+                    if (keyword.startsWith(ABSENT_PREFIX) && keyword.length() > 1) {
+                        missing.add(keyword.substring(ABSENT_PREFIX.length()));
+                    } else {
+                        present.add(keyword);
+                    }
+                }
+                if (present.isEmpty()) {
+                    throw new IllegalArgumentException("图档号规则 " + name + " 的第 " + (g + 1)
+                            + " 组关键词至少需要一个必须出现的关键词");
+                }
+                positives.addAll(present);
+                this.required[g] = present.toArray(new String[0]);
+                this.absent[g] = missing.toArray(new String[0]);
+            }
+            this.exclude = readStrings(node.get("exclude"), true).toArray(new String[0]);
+            List<String> afterKeywords = readStrings(node.get("after"), true);
+            // 未指定 after 时，在各组必须出现的关键词之后查找
+            this.after = (afterKeywords.isEmpty() ? new ArrayList<>(positives) : afterKeywords)
+                    .toArray(new String[0]);
+            this.afterKeywordEnd = node.path("afterKeywordEnd").asBoolean(false);
+            this.onlyIfEmpty = node.path("onlyIfEmpty").asBoolean(false);
+        }
+
+        boolean applies(KeywordScanner.KeywordIndex keywords, int start, int end, Map<String, String> result) {
+            if (onlyIfEmpty && !result.get(widget).isEmpty()) {
+                return false;
+            }
+            for (String keyword : exclude) {
+                if (keywords.contains(keyword, start, end)) {
+                    return false;
+                }
+            }
+            for (int g = 0; g < required.length; g++) {
+                if (groupMatches(keywords, start, end, g)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        private boolean groupMatches(KeywordScanner.KeywordIndex keywords, int start, int end, int g) {
+            for (String keyword : required[g]) {
+                if (!keywords.contains(keyword, start, end)) {
+                    return false;
+                }
+            }
+            for (String keyword : absent[g]) {
+                if (keywords.contains(keyword, start, end)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        /**
+         * 查找图档号的起点：after 中各关键词在区间内首次出现位置的最大值，均未出现时返回-1
+         */
+        int keywordPosition(KeywordScanner.KeywordIndex keywords, int start, int end) {
+            int maxPos = -1;
+            for (String keyword : after) {
+                int pos = keywords.first(keyword, start, end);
+                if (pos >= 0 && afterKeywordEnd) {
+                    pos += keyword.length();
+                }
+                maxPos = Math.max(maxPos, pos);
+            }
+            return maxPos;
+        }
+
+        void collectKeywords(Set<String> keywords) {
+            for (int g = 0; g < required.length; g++) {
+                keywords.addAll(Arrays.asList(required[g]));
+                keywords.addAll(Arrays.asList(absent[g]));
+            }
+            keywords.addAll(Arrays.asList(exclude));
+            keywords.addAll(Arrays.asList(after));
+        }
+    }
+
+    /**
+     * 一类字段提取规则（卷标、VID、PID、厂商名、产品名、文件格式）
+     * 文本中含有任一锚点词时按顺序尝试各正则，取第一个格式化后非空的匹配（第1个捕获组）。
+     */
+    public static final class FieldRule {
+        private final String name;
+        private final String widget;
+        private final String dbKey;
+        private final List<String> anchors;
+        private final List<Pattern> patterns;
+        private final List<Pattern> cleanup;
+        private final Format format;
+
+        FieldRule(JsonNode node, String where) {
+            this.name = node.path("name").asText(where);
+            this.widget = node.hasNonNull("widget") ? node.get("widget").asText() : null;
+            this.dbKey = node.hasNonNull("dbKey") ? node.get("dbKey").asText() : null;
+            this.anchors = readStrings(required(node, "anchors"), true);
+            if (anchors.isEmpty()) {
+                throw new IllegalArgumentException("提取规则 " + name + " 的 anchors 不能为空");
+            }
+            this.format = Format.of(node.path("format").asText("text"), name);
+
+            List<Pattern> compiled = new ArrayList<>();
+            for (String regex : readStrings(required(node, "patterns"), false)) {
+                Pattern pattern = compile(regex, Pattern.CASE_INSENSITIVE, name);
+                if (pattern.matcher("").groupCount() < 1) {
+                    throw new IllegalArgumentException(name + " 正则缺少捕获组: " + regex);
+                }
+                compiled.add(pattern);
+            }
+            if (compiled.isEmpty()) {
+                throw new IllegalArgumentException("提取规则 " + name + " 的 patterns 不能为空");
+            }
+            this.patterns = Collections.unmodifiableList(compiled);
+
+            List<Pattern> cleanupRules = new ArrayList<>();
+            for (String regex : readStrings(node.get("cleanup"), false)) {
+                cleanupRules.add(compile(regex, 0, name + ".cleanup"));
+            }
+            this.cleanup = Collections.unmodifiableList(cleanupRules);
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        /**
+         * 目标控件ID，卷标规则为null（由调用方决定写入的控件）
+         */
+        public String getWidget() {
+            return widget;
+        }
+
+        /**
+         * 产品信息数据库中对应的字段名，为null时不从数据库补全
+         */
+        public String getDbKey() {
+            return dbKey;
+        }
+
+        public List<String> getAnchors() {
+            return anchors;
+        }
+
+        public List<Pattern> getPatterns() {
+            return patterns;
+        }
+
+        public List<Pattern> getCleanup() {
+            return cleanup;
+        }
+
+        /**
+         * 从文本中提取字段值
+         * @param tokens 分词结果（须由所属规则集的扫描器生成）
+         * @return 提取结果，未提取到时返回空字符串
+         */
+        public String extract(InstructionText tokens) {
+            if (tokens.isBlank()) {
+                return "";
+            }
+            for (Pattern pattern : tokens.applicable(patterns, anchors)) {
+                Matcher matcher = tokens.find(pattern);
+                if (matcher != null) {
+                    String value = format(matcher.group(1));
+                    if (!value.isEmpty()) {
+                        return value;
+                    }
+                }
+            }
+            return "";
+        }
+
+        /**
+         * 格式化匹配结果并应用清理规则
+         */
+        public String format(String raw) {
+            String value = raw.trim();
+            switch (format) {
+                case UPPER:
+                    value = value.toUpperCase();
+                    break;
+                case HEX4:
+                    // 只保留十六进制字符，支持3位或4位，3位时补齐为4位
+                    value = ExtractionPatterns.NON_HEX.matcher(value.toUpperCase()).replaceAll("");
+                    if (value.length() == 3) {
+                        value = "0" + value;
+                    } else if (value.length() != 4) {
+                        return "";
+                    }
+                    break;
+                default:
+                    break;
+            }
+            return ExtractionPatterns.cleanup(value, cleanup);
+        }
+    }
+
+    /**
+     * 字段值格式：text 原样（去除首尾空白），upper 转大写，hex4 四位十六进制
+     */
+    private enum Format {
+        TEXT, UPPER, HEX4;
+
+        private static final Map<String, Format> BY_NAME = new HashMap<>();
+        static {
+            for (Format format : values()) {
+                BY_NAME.put(format.name().toLowerCase(), format);
+            }
+        }
+
+        static Format of(String name, String rule) {
+            Format format = BY_NAME.get(name.toLowerCase());
+            if (format == null) {
+                throw new IllegalArgumentException("提取规则 " + rule + " 的 format 无效: " + name
+                        + "（可选 text、upper、hex4）");
+            }
+            return format;
+        }
+    }
+}
@@ -25,6 +25,18 @@ public class HttpUtil {
      * @throws IOException 如果发生IO异常
      */
     public static String sendPostRequest(String url, String jsonBody, String apiToken) throws IOException {
+        return sendPostRequest(url, jsonBody.getBytes(CHARSET_UTF8), apiToken);
+    }
+
+    /**
+     * 发送POST请求
+     * @param url 请求URL
+     * @param jsonBody UTF-8 编码的请求体
+     * @param apiToken API令牌
+     * @return 响应内容
+     * @throws IOException 如果发生IO异常
+     */
+    public static String sendPostRequest(String url, byte[] jsonBody, String apiToken) throws IOException {
         URL urlObj = new URL(url);
         HttpURLConnection conn = (HttpURLConnection) urlObj.openConnection();
         conn.setRequestMethod("POST");
@@ -38,8 +50,7 @@ public class HttpUtil {
 
         // 写入请求体
         try (OutputStream os = conn.getOutputStream()) {
-            byte[] input = jsonBody.getBytes(CHARSET_UTF8);
-            os.write(input, 0, input.length);
+            os.write(jsonBody, 0, jsonBody.length);
         }
 
         // 获取响应
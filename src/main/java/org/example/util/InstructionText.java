@@ -0,0 +1,169 @@
+package org.example.util;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * 生产指示文本的一次性分词结果
+ * 合并后的生产指示文本在提取前只处理一遍：按行、分号、数字序号切分为子句（以原文区间表示），
+ * 对 ASCII 字母统一转为大写后用关键词扫描器扫描一遍，得到图档号关键词和各提取规则锚点词的位置。
+ * 图档号、卷标、VID/PID、厂商名、产品名、文件格式、型号容量等提取都读取同一份结果：
+ * 不再各自切分文本、各自转换大小写；文本中不含某类规则的锚点词时直接跳过该类全部正则；
+ * 各类正则共用同一个 Matcher，按型号容量查到的产品信息在多个提取步骤间复用。
+ * 实例只在单个线程内使用。
+ */
+public final class InstructionText {
+    private final String text;
+    private final boolean blank;
+    private final KeywordScanner.KeywordIndex keywords;
+    private List<int[]> clauses;
+    private Matcher matcher;
+    private Map<String, String> productInfo;
+
+    private InstructionText(String text, KeywordScanner scanner) {
+        this.text = text != null ? text : "";
+        this.blank = this.text.trim().isEmpty();
+        this.keywords = scanner.scan(foldCase(this.text));
+    }
+
+    /**
+     * 对文本分词
+     * @param text 合并后的生产指示文本，可为null
+     * @param scanner 关键词扫描器，关键词中的英文字母须为大写
+     * @return 分词结果
+     */
+    public static InstructionText of(String text, KeywordScanner scanner) {
+        return new InstructionText(text, scanner);
+    }
+
+    /**
+     * 原文
+     */
+    public String text() {
+        return text;
+    }
+
+    /**
+     * 原文是否为空或只含空白
+     */
+    public boolean isBlank() {
+        return blank;
+    }
+
+    /**
+     * 关键词位置索引（位置为原文下标，英文关键词不区分大小写）
+     */
+    public KeywordScanner.KeywordIndex keywords() {
+        return keywords;
+    }
+
+    /**
+     * 按行、分号或数字序号切分出的子句，以原文区间 [start, end) 表示，已去除首尾空白并跳过空子句
+     */
+    public List<int[]> clauses() {
+        if (clauses == null) {
+            clauses = Collections.unmodifiableList(
+                    splitRanges(ExtractionPatterns.SEGMENT_SPLIT, text, 0, text.length()));
+        }
+        return clauses;
+    }
+
+    /**
+     * 文本中是否出现任一锚点词
+     * @param anchors 锚点词（须已注册到扫描器）
+     */
+    public boolean mentions(List<String> anchors) {
+        for (String anchor : anchors) {
+            if (keywords.contains(anchor, 0, text.length())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 需要执行的规则：文本含有该类规则的锚点词时返回全部规则，否则返回空列表
+     * @param patterns 一类提取规则
+     * @param anchors 该类规则的锚点词
+     */
+    public List<Pattern> applicable(List<Pattern> patterns, List<String> anchors) {
+        return mentions(anchors) ? patterns : Collections.<Pattern>emptyList();
+    }
+
+    /**
+     * 用共用的 Matcher 在全文中查找正则的第一个匹配
+     * @param pattern 正则
+     * @return 已定位到第一个匹配的 Matcher，未匹配时返回null；下次调用前有效
+     */
+    public Matcher find(Pattern pattern) {
+        if (matcher == null) {
+            matcher = pattern.matcher(text);
+        } else {
+            matcher.usePattern(pattern);
+            matcher.reset();
+        }
+        return matcher.find() ? matcher : null;
+    }
+
+    /**
+     * 按文本中的型号和容量查到的产品信息，首次调用时识别并缓存
+     * @param resolver 识别并查询的函数
+     */
+    public Map<String, String> productInfo(Function<String, Map<String, String>> resolver) {
+        if (productInfo == null) {
+            productInfo = resolver.apply(text);
+        }
+        return productInfo;
+    }
+
+    /**
+     * 按分隔符把文本区间切分为子区间，去除首尾空白并跳过空区间
+     * 与 String.split 的切分结果一致，但以原文中的位置表示，便于查询关键词位置索引
+     */
+    public static List<int[]> splitRanges(Pattern separator, String text, int from, int to) {
+        List<int[]> ranges = new ArrayList<>();
+        Matcher separatorMatcher = separator.matcher(text).region(from, to);
+        int start = from;
+        while (separatorMatcher.find()) {
+            addTrimmedRange(ranges, text, start, separatorMatcher.start());
+            start = separatorMatcher.end();
+        }
+        addTrimmedRange(ranges, text, start, to);
+        return ranges;
+    }
+
+    private static void addTrimmedRange(List<int[]> ranges, String text, int start, int end) {
+        while (start < end && text.charAt(start) <= ' ') {
+            start++;
+        }
+        while (end > start && text.charAt(end - 1) <= ' ') {
+            end--;
+        }
+        if (start < end) {
+            ranges.add(new int[] { start, end });
+        }
+    }
+
+    /**
+     * ASCII 字母转大写，其他字符不变，长度与原文一致（与正则 CASE_INSENSITIVE 的默认比较范围相同）
+     * 注册到扫描器的关键词也须经同样转换
+     */
+    public static String foldCase(String text) {
+        char[] chars = null;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c >= 'a' && c <= 'z') {
+                if (chars == null) {
+                    chars = text.toCharArray();
+                }
+                chars[i] = (char) (c - ('a' - 'A'));
+            }
+        }
+        return chars != null ? new String(chars) : text;
+    }
+}
@@ -0,0 +1,159 @@
+package org.example.util;
+
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.util.ByteArrayBuilder;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.IOException;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 简道云请求体写入工具
+ * 转换结果中只保存字段的原始值（控件ID -> 值，子表为行列表，行内同样为控件ID -> 值），
+ * 新建、更新请求直接用 JsonGenerator 按 {"控件ID":{"value":...}} 结构写出 UTF-8 字节，
+ * 不再为每个字段创建 {"value": ...} 包装对象，也不为请求体构建外层 HashMap。
+ * 字段值已是 Map 时视为已包装，原样写出（兼容改造前写入出箱的数据）；子表行ID "_id" 不包装。
+ * 字符串、数字、布尔、Map、集合直接写出，其他类型交给 ObjectMapper，结果与原序列化方式一致。
+ */
+public final class JdyPayloadWriter {
+    private static final ObjectMapper mapper = new ObjectMapper();
+    private static final JsonFactory factory = mapper.getFactory();
+
+    // 子表行ID字段，写出时不包装
+    private static final String ROW_ID = "_id";
+
+    private JdyPayloadWriter() {
+    }
+
+    /**
+     * 写出新建数据请求体
+     * @param appId 应用ID
+     * @param entryId 表单ID
+     * @param dataList 转换后的数据列表
+     * @param isStartWorkflow 是否启动工作流
+     * @return UTF-8 编码的请求体
+     * @throws IOException 如果写出失败
+     */
+    public static byte[] createBody(String appId, String entryId, List<Map<String, Object>> dataList,
+            boolean isStartWorkflow) throws IOException {
+        ByteArrayBuilder buffer = new ByteArrayBuilder();
+        try {
+            try (JsonGenerator gen = factory.createGenerator(buffer, JsonEncoding.UTF8)) {
+                gen.setCodec(mapper);
+                gen.writeStartObject();
+                gen.writeStringField("app_id", appId);
+                gen.writeStringField("entry_id", entryId);
+                gen.writeArrayFieldStart("data_list");
+                for (Map<String, Object> data : dataList) {
+                    writeRecord(gen, data);
+                }
+                gen.writeEndArray();
+                gen.writeBooleanField("is_start_workflow", isStartWorkflow);
+                gen.writeEndObject();
+            }
+            return buffer.toByteArray();
+        } finally {
+            buffer.release();
+        }
+    }
+
+    /**
+     * 写出更新数据请求体（触发智能助手）
+     * @param appId 应用ID
+     * @param entryId 表单ID
+     * @param dataId 数据ID
+     * @param data 转换后的数据
+     * @return UTF-8 编码的请求体
+     * @throws IOException 如果写出失败
+     */
+    public static byte[] updateBody(String appId, String entryId, String dataId, Map<String, Object> data)
+            throws IOException {
+        ByteArrayBuilder buffer = new ByteArrayBuilder();
+        try {
+            try (JsonGenerator gen = factory.createGenerator(buffer, JsonEncoding.UTF8)) {
+                gen.setCodec(mapper);
+                gen.writeStartObject();
+                gen.writeStringField("app_id", appId);
+                gen.writeStringField("entry_id", entryId);
+                gen.writeStringField("data_id", dataId);
+                gen.writeFieldName("data");
+                writeRecord(gen, data);
+                gen.writeBooleanField("is_start_trigger", true);
+                gen.writeEndObject();
+            }
+            return buffer.toByteArray();
+        } finally {
+            buffer.release();
+        }
+    }
+
+    /**
+     * 写出一条记录（主表数据或子表行）：每个字段写为 {"value": 值}，子表的行逐行按同样结构写出
+     */
+    private static void writeRecord(JsonGenerator gen, Map<String, Object> record) throws IOException {
+        gen.writeStartObject();
+        for (Map.Entry<String, Object> field : record.entrySet()) {
+            gen.writeFieldName(field.getKey());
+            Object value = field.getValue();
+            if (ROW_ID.equals(field.getKey()) || value instanceof Map) {
+                writeValue(gen, value);
+                continue;
+            }
+            gen.writeStartObject();
+            gen.writeFieldName("value");
+            if (value instanceof List) {
+                gen.writeStartArray();
+                for (Object element : (List<?>) value) {
+                    if (element instanceof Map) {
+                        @SuppressWarnings("unchecked")
+                        Map<String, Object> row = (Map<String, Object>) element;
+                        writeRecord(gen, row);
+                    } else {
+                        writeValue(gen, element);
+                    }
+                }
+                gen.writeEndArray();
+            } else {
+                writeValue(gen, value);
+            }
+            gen.writeEndObject();
+        }
+        gen.writeEndObject();
+    }
+
+    /**
+     * 递归写出字段值
+     */
+    private static void writeValue(JsonGenerator gen, Object value) throws IOException {
+        if (value == null) {
+            gen.writeNull();
+        } else if (value instanceof String) {
+            gen.writeString((String) value);
+        } else if (value instanceof Map) {
+            gen.writeStartObject();
+            for (Map.Entry<?, ?> entry : ((Map<?, ?>) value).entrySet()) {
+                gen.writeFieldName(String.valueOf(entry.getKey()));
+                writeValue(gen, entry.getValue());
+            }
+            gen.writeEndObject();
+        } else if (value instanceof Collection) {
+            gen.writeStartArray();
+            for (Object element : (Collection<?>) value) {
+                writeValue(gen, element);
+            }
+            gen.writeEndArray();
+        } else if (value instanceof Integer || value instanceof Long
+                || value instanceof Short || value instanceof Byte) {
+            gen.writeNumber(((Number) value).longValue());
+        } else if (value instanceof Boolean) {
+            gen.writeBoolean((Boolean) value);
+        } else {
+            // 其他类型（BigDecimal、数组、日期等）沿用 ObjectMapper 的序列化方式
+            gen.writeObject(value);
+        }
+    }
+}
@@ -0,0 +1,58 @@
+package org.example.util;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * 业务主键锁
+ * 按业务主键串行化"查询是否存在 -> 新建"这类操作：一次性获取一组主键，任一主键被其他线程持有时整体等待，
+ * 获取后全部持有直到释放。不会出现持有部分主键再等待其他主键的情况，多个线程各自获取多组主键也不会死锁。
+ */
+public class KeyLocks {
+    private final Set<String> held = new HashSet<>();
+
+    /**
+     * 获取一组业务主键，直到这些主键都未被其他线程持有
+     * @param keys 业务主键（null忽略）
+     * @return 持有凭证，关闭时释放全部主键
+     * @throws InterruptedException 等待时被中断
+     */
+    public Lease acquire(Collection<String> keys) throws InterruptedException {
+        Set<String> wanted = new HashSet<>(keys);
+        wanted.remove(null);
+        synchronized (this) {
+            while (!Collections.disjoint(held, wanted)) {
+                wait();
+            }
+            held.addAll(wanted);
+        }
+        return new Lease(wanted);
+    }
+
+    private synchronized void release(Set<String> keys) {
+        held.removeAll(keys);
+        notifyAll();
+    }
+
+    /**
+     * 持有的一组业务主键
+     */
+    public final class Lease implements AutoCloseable {
+        private final Set<String> keys;
+        private boolean released;
+
+        private Lease(Set<String> keys) {
+            this.keys = keys;
+        }
+
+        @Override
+        public void close() {
+            if (!released) {
+                released = true;
+                release(keys);
+            }
+        }
+    }
+}
@@ -0,0 +1,164 @@
+package org.example.util;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+
+/**
+ * 多关键词扫描器（Aho–Corasick 自动机）
+ * 关键词集合在构造时编译为自动机，之后对任意文本只需从头到尾扫描一遍，
+ * 即可得到每个关键词的全部出现位置（含相互重叠的关键词，如"不干胶贴纸"与"贴纸"）。
+ * 构造完成后不再修改，可在多个线程间共享。
+ */
+public final class KeywordScanner {
+    private final String[] keywords;
+    private final Map<String, Integer> keywordIds = new HashMap<>();
+
+    // 自动机：每个状态的转移表、失败指针、到达该状态时匹配到的关键词
+    private final List<Map<Character, Integer>> transitions = new ArrayList<>();
+    private final int[] fail;
+    private final int[][] outputs;
+
+    /**
+     * 按关键词集合构建自动机
+     * @param keywords 关键词（重复的关键词只保留一个）
+     */
+    public KeywordScanner(String... keywords) {
+        List<String> unique = new ArrayList<>();
+        for (String keyword : keywords) {
+            if (keyword != null && !keyword.isEmpty() && !keywordIds.containsKey(keyword)) {
+                keywordIds.put(keyword, unique.size());
+                unique.add(keyword);
+            }
+        }
+        this.keywords = unique.toArray(new String[0]);
+
+        // 1. 构建关键词前缀树
+        List<List<Integer>> stateOutputs = new ArrayList<>();
+        transitions.add(new HashMap<>());
+        stateOutputs.add(new ArrayList<>());
+        for (int id = 0; id < this.keywords.length; id++) {
+            int state = 0;
+            for (char c : this.keywords[id].toCharArray()) {
+                Integer next = transitions.get(state).get(c);
+                if (next == null) {
+                    next = transitions.size();
+                    transitions.add(new HashMap<>());
+                    stateOutputs.add(new ArrayList<>());
+                    transitions.get(state).put(c, next);
+                }
+                state = next;
+            }
+            stateOutputs.get(state).add(id);
+        }
+
+        // 2. 按层次遍历计算失败指针，并合并失败链上的输出
+        this.fail = new int[transitions.size()];
+        Queue<Integer> queue = new ArrayDeque<>(transitions.get(0).values());
+        while (!queue.isEmpty()) {
+            int state = queue.poll();
+            for (Map.Entry<Character, Integer> edge : transitions.get(state).entrySet()) {
+                int child = edge.getValue();
+                int f = fail[state];
+                while (f != 0 && !transitions.get(f).containsKey(edge.getKey())) {
+                    f = fail[f];
+                }
+                Integer target = transitions.get(f).get(edge.getKey());
+                fail[child] = target != null && target != child ? target : 0;
+                stateOutputs.get(child).addAll(stateOutputs.get(fail[child]));
+                queue.add(child);
+            }
+        }
+
+        this.outputs = new int[stateOutputs.size()][];
+        for (int i = 0; i < outputs.length; i++) {
+            List<Integer> ids = stateOutputs.get(i);
+            outputs[i] = new int[ids.size()];
+            for (int j = 0; j < ids.size(); j++) {
+                outputs[i][j] = ids.get(j);
+            }
+        }
+    }
+
+    /**
+     * 扫描文本，记录全部关键词的出现位置
+     * @param text 文本
+     * @return 关键词位置索引
+     */
+    public KeywordIndex scan(String text) {
+        int[][] positions = new int[keywords.length][];
+        int[] counts = new int[keywords.length];
+        int state = 0;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            Integer next = transitions.get(state).get(c);
+            while (next == null && state != 0) {
+                state = fail[state];
+                next = transitions.get(state).get(c);
+            }
+            state = next != null ? next : 0;
+            for (int id : outputs[state]) {
+                int[] list = positions[id];
+                if (list == null) {
+                    list = positions[id] = new int[4];
+                } else if (counts[id] == list.length) {
+                    list = positions[id] = Arrays.copyOf(list, list.length * 2);
+                }
+                // 关键词在 i 处结束，记录起始位置（同一关键词的位置按升序产生）
+                list[counts[id]++] = i - keywords[id].length() + 1;
+            }
+        }
+        return new KeywordIndex(positions, counts);
+    }
+
+    /**
+     * 一段文本的关键词位置索引
+     * 位置均为关键词在被扫描文本中的起始下标
+     */
+    public final class KeywordIndex {
+        private final int[][] positions;
+        private final int[] counts;
+
+        private KeywordIndex(int[][] positions, int[] counts) {
+            this.positions = positions;
+            this.counts = counts;
+        }
+
+        /**
+         * 查找关键词在区间 [from, to) 内的第一次完整出现
+         * @param keyword 关键词（必须在构造扫描器时给出）
+         * @param from 区间起点（含）
+         * @param to 区间终点（不含）
+         * @return 起始位置，未出现时返回-1
+         */
+        public int first(String keyword, int from, int to) {
+            Integer id = keywordIds.get(keyword);
+            if (id == null) {
+                throw new IllegalArgumentException("未注册的关键词: " + keyword);
+            }
+            int[] list = positions[id];
+            if (list == null) {
+                return -1;
+            }
+            int index = Arrays.binarySearch(list, 0, counts[id], from);
+            if (index < 0) {
+                index = -index - 1;
+            }
+            if (index < counts[id] && list[index] + keyword.length() <= to) {
+                return list[index];
+            }
+            return -1;
+        }
+
+        /**
+         * 关键词是否完整出现在区间 [from, to) 内
+         */
+        public boolean contains(String keyword, int from, int to) {
+            return first(keyword, from, to) >= 0;
+        }
+    }
+}
@@ -0,0 +1,52 @@
+package org.example.util;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 同步运行指标
+ * 以数值指标（gauge）记录各数据流最近一次探测到的待同步积压量，每轮同步结束时由定时任务输出汇总日志
+ */
+public final class SyncMetrics {
+    private static final Map<String, Long> BACKLOG = new ConcurrentHashMap<>();
+
+    private SyncMetrics() {
+    }
+
+    /**
+     * 记录数据流的积压量
+     * @param stream 数据流标识
+     * @param size 待同步记录数
+     */
+    public static void setBacklog(String stream, long size) {
+        BACKLOG.put(stream, size);
+    }
+
+    /**
+     * 获取全部数据流的积压量
+     * @return 数据流 -> 待同步记录数（按数据流排序）
+     */
+    public static Map<String, Long> snapshotBacklog() {
+        return new TreeMap<>(BACKLOG);
+    }
+
+    /**
+     * 输出各数据流积压量的汇总日志（所有数据流均无积压时不输出）
+     */
+    public static void logBacklogSummary() {
+        Map<String, Long> backlog = snapshotBacklog();
+        long total = 0;
+        StringBuilder detail = new StringBuilder();
+        for (Map.Entry<String, Long> entry : backlog.entrySet()) {
+            total += Math.max(0, entry.getValue());
+            if (detail.length() > 0) {
+                detail.append(", ");
+            }
+            detail.append(entry.getKey()).append('=').append(entry.getValue());
+        }
+        if (total > 0) {
+            LogUtil.logInfo("[积压] 本轮探测到待同步 " + total + " 条: " + detail);
+        }
+    }
+}
@@ -0,0 +1,120 @@
+package org.example.dm.dao;
+
+import org.example.DatabaseConnectionPool;
+import org.example.dm.model.DmOrder;
+import org.example.dm.model.DmOrderDetail;
+
+import java.math.BigDecimal;
+import java.sql.Connection;
+import java.sql.Statement;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * DM订单明细写入吞吐对比
+ * 在配置的本地数据库上，分别用参数化批处理和 SQLServerBulkCopy 将同一批明细写入临时表，输出每秒行数。
+ * 全程在一个事务中进行并最终回滚，不会留下数据。
+ *
+ * 用法: DmDetailIngestBenchmark [订单数=50] [每单明细数=300] [轮次=5]
+ */
+public class DmDetailIngestBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        int orderCount = args.length > 0 ? Integer.parseInt(args[0]) : 50;
+        int linesPerOrder = args.length > 1 ? Integer.parseInt(args[1]) : 300;
+        int rounds = args.length > 2 ? Integer.parseInt(args[2]) : 5;
+
+        List<DmOrder> orders = buildOrders(orderCount, linesPerOrder);
+        int rows = orderCount * linesPerOrder;
+
+        System.out.println("========================================");
+        System.out.println("DM明细写入吞吐对比: " + orderCount + " 单 x " + linesPerOrder + " 行 = " + rows + " 行/轮");
+        System.out.println("========================================");
+
+        try (Connection conn = DatabaseConnectionPool.getConnection()) {
+            conn.setAutoCommit(false);
+            try {
+                DmLocalDao.createStagingTables(conn);
+
+                // 预热一轮，排除首次编译执行计划和类加载的影响
+                runBatch(conn, orders);
+                runBulkCopy(conn, orders);
+
+                long batchNanos = 0;
+                long bulkNanos = 0;
+                for (int i = 1; i <= rounds; i++) {
+                    long batch = runBatch(conn, orders);
+                    long bulk = runBulkCopy(conn, orders);
+                    batchNanos += batch;
+                    bulkNanos += bulk;
+                    System.out.printf("第%d轮: 批处理 %.1f ms, 批量复制 %.1f ms%n", i, batch / 1e6, bulk / 1e6);
+                }
+
+                System.out.println("----------------------------------------");
+                System.out.printf("参数化批处理: %.0f 行/秒%n", rows * rounds / (batchNanos / 1e9));
+                System.out.printf("SQLServerBulkCopy: %.0f 行/秒%n", rows * rounds / (bulkNanos / 1e9));
+                System.out.printf("加速比: %.2fx%n", (double) batchNanos / bulkNanos);
+            } finally {
+                conn.rollback();
+                try (Statement stmt = conn.createStatement()) {
+                    DmLocalDao.dropStagingTables(stmt);
+                }
+                conn.setAutoCommit(true);
+            }
+        } finally {
+            DatabaseConnectionPool.closePool();
+        }
+    }
+
+    private static long runBatch(Connection conn, List<DmOrder> orders) throws Exception {
+        truncate(conn);
+        long start = System.nanoTime();
+        DmLocalDao.stageDetailsWithBatch(conn, orders);
+        return System.nanoTime() - start;
+    }
+
+    private static long runBulkCopy(Connection conn, List<DmOrder> orders) throws Exception {
+        truncate(conn);
+        long start = System.nanoTime();
+        DmLocalDao.stageDetailsWithBulkCopy(conn, orders);
+        return System.nanoTime() - start;
+    }
+
+    private static void truncate(Connection conn) throws Exception {
+        try (Statement stmt = conn.createStatement()) {
+            stmt.execute("TRUNCATE TABLE " + DmLocalDao.DETAIL_STAGING_TABLE);
+        }
+    }
+
+    private static List<DmOrder> buildOrders(int orderCount, int linesPerOrder) {
+        List<DmOrder> orders = new ArrayList<>();
+        LocalDateTime now = LocalDateTime.now().withNano(0);
+        for (int i = 1; i <= orderCount; i++) {
+            DmOrder order = new DmOrder();
+            order.setOrderNo("BENCH" + i);
+            List<DmOrderDetail> details = new ArrayList<>();
+            for (int line = 1; line <= linesPerOrder; line++) {
+                DmOrderDetail detail = new DmOrderDetail();
+                detail.setOrderNo("BENCH" + i + "-" + line);
+                detail.setLineNo(line);
+                detail.setMaterialCode("MAT-" + (line % 97));
+                detail.setMaterialDesc("基准测试物料描述 " + line);
+                detail.setQuantity(BigDecimal.valueOf(line));
+                detail.setUnitPrice(new BigDecimal("12.50"));
+                detail.setTaxUnitPrice(new BigDecimal("14.13"));
+                detail.setTaxAmount(new BigDecimal("1.63"));
+                detail.setPriceBook("PB01");
+                detail.setSuggestedQuantity(BigDecimal.valueOf(line));
+                detail.setSourceDocNo("SRC" + i);
+                detail.setModifyTime(now);
+                detail.setSourceId(i * 10000 + line);
+                detail.setIOrd(String.valueOf(line));
+                details.add(detail);
+            }
+            order.setDetails(details);
+            orders.add(order);
+        }
+        return orders;
+    }
+}
@@ -0,0 +1,131 @@
+package org.example.service;
+
+import org.example.util.KeyLocks;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * 回补区间并行写入测试
+ * 两个区间含同一工单号的不同版本，由两个线程分别调用 BackfillService.applyBatch 写入模拟的简道云
+ * （先查询是否存在，隔一段接口耗时后新建或更新），分别让旧版本所在区间先处理和后处理，
+ * 校验每个工单只新建一次，且简道云中最终保存的都是源表中ID最大的版本。
+ */
+public class BackfillKeyLockTest {
+
+    public static void main(String[] args) throws Exception {
+        // 区间1 (0, 10000] 与区间2 (10000, 20000] 都含工单 J-001，ID较大的 10007 为新版本
+        List<Map<String, Object>> range1 = Arrays.asList(order(15, "J-001"), order(16, "J-002"));
+        List<Map<String, Object>> range2 = Arrays.asList(order(10007, "J-001"), order(10008, "J-003"));
+        List<Map<String, Object>> sourceTable = new ArrayList<>(range1);
+        sourceTable.addAll(range2);
+        Map<String, Integer> latestIds = BackfillService.latestIds(BackfillService.STREAM_ORDER, sourceTable);
+
+        boolean passed = true;
+        passed &= check("旧版本区间先处理", run(range1, range2, latestIds));
+        passed &= check("新版本区间先处理", run(range2, range1, latestIds));
+
+        System.out.println("----------------------------------------");
+        System.out.println(passed ? "通过" : "失败");
+        if (!passed) {
+            System.exit(1);
+        }
+    }
+
+    private static boolean check(String scenario, FakeJdy jdy) {
+        System.out.println(scenario + ":");
+        boolean passed = true;
+        Map<String, Integer> expected = new HashMap<>();
+        expected.put("J-001", 10007);
+        expected.put("J-002", 16);
+        expected.put("J-003", 10008);
+        for (Map.Entry<String, Integer> entry : expected.entrySet()) {
+            String jobNum = entry.getKey();
+            int created = jdy.creates.containsKey(jobNum) ? jdy.creates.get(jobNum).get() : 0;
+            Integer version = jdy.records.get(jobNum);
+            boolean ok = created == 1 && entry.getValue().equals(version);
+            passed &= ok;
+            System.out.println("  " + (ok ? "✓ " : "✗ ") + jobNum + " 新建次数: " + created
+                    + ", 简道云中的版本: " + version + "（期望 " + entry.getValue() + "）");
+        }
+        return passed;
+    }
+
+    /**
+     * 两个区间批次并行写入，first 先开始，second 稍后开始
+     */
+    private static FakeJdy run(List<Map<String, Object>> first, List<Map<String, Object>> second,
+            Map<String, Integer> latestIds) throws InterruptedException {
+        FakeJdy jdy = new FakeJdy();
+        KeyLocks keyLocks = new KeyLocks();
+
+        List<Thread> workers = new ArrayList<>();
+        long delay = 0;
+        for (List<Map<String, Object>> batch : Arrays.asList(first, second)) {
+            long startDelay = delay;
+            Thread worker = new Thread(() -> {
+                try {
+                    Thread.sleep(startDelay);
+                    BackfillService.applyBatch(BackfillService.STREAM_ORDER, batch, latestIds, keyLocks, jdy);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            });
+            worker.start();
+            workers.add(worker);
+            delay += 20;
+        }
+        for (Thread worker : workers) {
+            worker.join();
+        }
+        return jdy;
+    }
+
+    /**
+     * 模拟简道云：与 OrderSyncServiceImpl.backfill 相同，先逐条查询是否已存在，再更新或新建，
+     * 查询与写入之间有接口调用耗时
+     */
+    private static class FakeJdy implements Consumer<List<Map<String, Object>>> {
+        final Map<String, Integer> records = new ConcurrentHashMap<>();
+        final Map<String, AtomicInteger> creates = new ConcurrentHashMap<>();
+
+        @Override
+        public void accept(List<Map<String, Object>> batch) {
+            List<Map<String, Object>> toCreate = new ArrayList<>();
+            List<Map<String, Object>> toUpdate = new ArrayList<>();
+            for (Map<String, Object> record : batch) {
+                if (records.containsKey(record.get("job_num"))) {
+                    toUpdate.add(record);
+                } else {
+                    toCreate.add(record);
+                }
+            }
+            try {
+                Thread.sleep(100);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            for (Map<String, Object> record : toCreate) {
+                String jobNum = (String) record.get("job_num");
+                creates.computeIfAbsent(jobNum, k -> new AtomicInteger()).incrementAndGet();
+                records.put(jobNum, (Integer) record.get("id"));
+            }
+            for (Map<String, Object> record : toUpdate) {
+                records.put((String) record.get("job_num"), (Integer) record.get("id"));
+            }
+        }
+    }
+
+    private static Map<String, Object> order(int id, String jobNum) {
+        Map<String, Object> record = new HashMap<>();
+        record.put("id", id);
+        record.put("job_num", jobNum);
+        return record;
+    }
+}
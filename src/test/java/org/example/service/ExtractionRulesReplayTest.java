@@ -0,0 +1,210 @@
+package org.example.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.example.util.ExtractionRuleSet;
+import org.example.util.InstructionText;
+
+import java.io.File;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 提取规则回放测试
+ * 用样例生产指示文本回放提取规则，校验图档号、卷标（含针对性卷标）、VID/PID、厂商名、产品名、文件格式的提取结果。
+ * 修改规则文件后先用本测试回放，确认样例结果不变（或只按预期变化）再放到工作目录生效。
+ * 期望结果只含从文本直接提取的值，不含按型号从产品信息数据库补全的值；未列出的字段期望为空。
+ *
+ * 用法: ExtractionRulesReplayTest [规则文件路径，默认使用内置规则]
+ */
+public class ExtractionRulesReplayTest {
+    private static final ObjectMapper mapper = new ObjectMapper();
+    private static final String VOLUME_LABEL = "卷标";
+
+    // 样例文本及期望结果（控件ID或"卷标" -> 值）
+    private static final List<Object[]> SAMPLES = Arrays.asList(
+            sample("1、FOR Lexar S60 2、文件参考：U-00173 Lexar品牌USB产品生产参数清单 " +
+                    "3、包装文件参考：迈仕渡UDP模块产品工业包装规范 4、主机ZJCL003X0132，返工测试，全匹 " +
+                    "5、订单需求3k#按雷克沙生产清单执行即可，参考文件U-00173 Lexar品牌USB产品生产参数清单#For V40/S60/TT2 6. " +
+                    "卷标：小绿魔+ 7. VID：3535 8. PID：764 9. 厂商名：aigo 10. 产品名：C2（不支持中文命名） 11. " +
+                    "文件系统：FAT32",
+                    "_widget_1750382988528", "3535",
+                    "_widget_1750382988529", "0764",
+                    "_widget_1750382988524", "aigo",
+                    "_widget_1750382988526", "C2",
+                    "_widget_1750389457663", "FAT32",
+                    VOLUME_LABEL, "小绿魔+"),
+            sample("第三批交期需求9/231. 卷标烧录：EVM EnX , 其他信息依照我司默认即可。丝印：UN410003A + 彩卡：UN504001A；" +
+                    "彩盒：CL120001A；背面镭雕-MTB124001A；客制箱唛贴纸 XM20001；不干胶贴纸 BG30002A",
+                    "_widget_1749434759620", "UN410003A",
+                    "_widget_1749437052124", "XM20001",
+                    "_widget_1749434759622", "MTB124001A",
+                    "_widget_1749434759623", "UN504001A",
+                    "_widget_1749434759624", "CL120001A",
+                    "_widget_1749467309784", "XM20001",
+                    "_widget_1749467309785", "BG30002A",
+                    VOLUME_LABEL, "EVM EnX"),
+            sample("2. 烧录信息要求：卷标请烧录EVM Nano+ （注意带+号），其他信息依照我司默认即可。VID/PID:21C4/0CD1 Inquiry " +
+                    "-Vendor:Lexar Inquiryproduct:USB Flash Drive Volume name：Lexar R/W File " +
+                    "system:exFAT",
+                    "_widget_1750382988528", "21C4",
+                    "_widget_1750382988529", "0CD1",
+                    "_widget_1750382988524", "Lexar",
+                    "_widget_1750382988526", "USB Flash Drive",
+                    "_widget_1750389457663", "EXFAT",
+                    VOLUME_LABEL, "Lexar"),
+            sample("1.产品按标准流程生产 2.外箱按客户要求贴标 3.出货前抽检，本单无烧录及印刷要求"),
+            sample("1、FOR Lexar S60 2、烧录信息要求：卷标请烧录EVM Nano+ （注意带+号），其他信息依照我司默认即可",
+                    VOLUME_LABEL, "EVM Nano+"),
+            sample("1、FOR Lexar S60 2、文件参考：U-00173 Lexar品牌USB产品生产参数清单 " +
+                    "3、包装文件参考：迈仕渡UDP模块产品工业包装规范 4、主机ZJCL003X0132，返工测试，全匹 " +
+                    "5、订单需求3k#按雷克沙生产清单执行即可，参考文件U-00173  Lexar品牌USB产品生产参数清单#For V40/S60/TT2"),
+            sample("移印客制图档：KZ100201A\n彩喷：CP20031；镭雕：LD300045B",
+                    "_widget_1749437052124", "KZ100201A",
+                    "_widget_1749434759621", "CP20031",
+                    "_widget_1749434759622", "LD300045B"),
+            sample("中性图档 ZX5001 用于外壳\n丝印客制 SK6002A",
+                    "_widget_1749437052124", "ZX5001"),
+            sample("金手指面图档：JS70001\n非金手指面镭雕 FJ80002",
+                    "_widget_1749434759622", "JS70001"),
+            sample("彩印图档 CY9001A, 彩盒 HB10002",
+                    "_widget_1749434759621", "CY9001A",
+                    "_widget_1749434759624", "HB10002"),
+            sample("贴纸：TZ11001A\n箱唛 XM12002",
+                    "_widget_1749467309784", "XM12002",
+                    "_widget_1749467309785", "TZ11001A"),
+            sample("箱唛贴纸按客户 XT13003A; 不干胶 BG14004",
+                    "_widget_1749467309784", "XT13003A",
+                    "_widget_1749467309785", "BG14004"),
+            sample("移印 + 彩卡图档 YY15005A + CK16006",
+                    "_widget_1749434759620", "YY15005A",
+                    "_widget_1749434759623", "YY15005A"),
+            sample("本单移印，图档号见附件 AB17007 彩卡同上",
+                    "_widget_1749434759620", "AB17007"),
+            sample("客制移印 KY18008，背面镭雕-LD19009A",
+                    "_widget_1749437052124", "KY18008",
+                    "_widget_1749434759622", "LD19009A"),
+            sample("2. VID: 18A5 3. PID: 0251 4. 厂商名&厂商信息: Verbatim 产品名&产品信息: Store n Go " +
+                    "文件格式: NTFS 提前备货",
+                    "_widget_1750382988528", "18A5",
+                    "_widget_1750382988529", "0251",
+                    "_widget_1750382988524", "Verbatim",
+                    "_widget_1750382988526", "Store n Go",
+                    "_widget_1750389457663", "NTFS"),
+            sample("Vendor Str:Kingston Product Str:DataTraveler Volume name：KINGSTON R/W",
+                    "_widget_1750382988524", "Kingston",
+                    "_widget_1750382988526", "DataTraveler",
+                    VOLUME_LABEL, "KINGSTON"),
+            sample("1. 卷标：Lexar Media 2. VID：abc 3. PID：12345 4. 厂商名：雷克沙 5. 产品名：JumpDrive",
+                    "_widget_1750382988528", "0ABC",
+                    "_widget_1750382988524", "雷克沙",
+                    "_widget_1750382988526", "JumpDrive",
+                    VOLUME_LABEL, "Lexar Media"),
+            sample("卷标请烧录 MY DISK（大写）",
+                    VOLUME_LABEL, "MY DISK"),
+            sample("彩卡CK20010A+彩盒CH21011A，移印YI22012",
+                    "_widget_1749434759620", "YI22012",
+                    "_widget_1749434759623", "CK20010A",
+                    "_widget_1749434759624", "CH21011A"),
+            sample("镭雕 金手指面 LD23013 彩喷 CP24014A 丝印 SY25015",
+                    "_widget_1749434759620", "SY25015",
+                    "_widget_1749434759621", "CP24014A",
+                    "_widget_1749434759622", "LD23013"));
+
+    public static void main(String[] args) throws Exception {
+        ExtractionRuleSet rules = args.length > 0 ? loadFile(args[0]) : loadDefault();
+
+        System.out.println("========================================");
+        System.out.println("提取规则回放: " + rules.getSource() + "（版本 " + rules.getVersion()
+                + "，共 " + rules.getRuleCount() + " 条规则）");
+        System.out.println("========================================");
+
+        int failed = 0;
+        for (int i = 0; i < SAMPLES.size(); i++) {
+            String text = (String) SAMPLES.get(i)[0];
+            @SuppressWarnings("unchecked")
+            Map<String, String> expected = (Map<String, String>) SAMPLES.get(i)[1];
+            Map<String, String> actual = extract(rules, text);
+
+            StringBuilder mismatches = new StringBuilder();
+            for (Map.Entry<String, String> entry : actual.entrySet()) {
+                String expectedValue = expected.getOrDefault(entry.getKey(), "");
+                if (!expectedValue.equals(entry.getValue())) {
+                    mismatches.append(String.format("%n    %s: 期望 [%s], 实际 [%s]",
+                            describe(rules, entry.getKey()), expectedValue, entry.getValue()));
+                }
+            }
+            if (mismatches.length() == 0) {
+                System.out.println("✓ 样例" + (i + 1));
+            } else {
+                failed++;
+                System.out.println("✗ 样例" + (i + 1) + ": " + abbreviate(text) + mismatches);
+            }
+        }
+
+        System.out.println("----------------------------------------");
+        System.out.println("通过 " + (SAMPLES.size() - failed) + "/" + SAMPLES.size());
+        if (failed > 0) {
+            throw new IllegalStateException(failed + " 个样例的提取结果与期望不一致");
+        }
+    }
+
+    /**
+     * 按同步时的顺序提取：图档号、卷标（直接提取失败时使用针对性提取）、产品信息
+     */
+    private static Map<String, String> extract(ExtractionRuleSet rules, String text) {
+        InstructionText tokens = rules.tokenize(text);
+        Map<String, String> result = new LinkedHashMap<>(rules.extractDocumentNumbers(tokens));
+        String label = rules.getVolumeLabel().extract(tokens);
+        if (label.isEmpty()) {
+            label = rules.getVolumeLabelTargeted().extract(tokens);
+        }
+        result.put(VOLUME_LABEL, label);
+        for (ExtractionRuleSet.FieldRule rule : rules.getProductInfo()) {
+            result.put(rule.getWidget(), rule.extract(tokens));
+        }
+        return result;
+    }
+
+    private static ExtractionRuleSet loadFile(String path) throws Exception {
+        File file = new File(path);
+        return ExtractionRuleSet.compile(mapper.readTree(file), file.getAbsolutePath());
+    }
+
+    private static ExtractionRuleSet loadDefault() throws Exception {
+        try (InputStream input = ExtractionRulesReplayTest.class.getClassLoader()
+                .getResourceAsStream("extraction_rules.json")) {
+            if (input == null) {
+                throw new IllegalStateException("内置提取规则 extraction_rules.json 未找到");
+            }
+            return ExtractionRuleSet.compile(mapper.readTree(input), "classpath:extraction_rules.json");
+        }
+    }
+
+    private static String describe(ExtractionRuleSet rules, String key) {
+        String name = rules.getDocumentFields().get(key);
+        if (name == null) {
+            for (ExtractionRuleSet.FieldRule rule : rules.getProductInfo()) {
+                if (key.equals(rule.getWidget())) {
+                    name = rule.getName();
+                }
+            }
+        }
+        return name != null ? name + "(" + key + ")" : key;
+    }
+
+    private static String abbreviate(String text) {
+        String oneLine = text.replace('\n', ' ');
+        return oneLine.length() > 40 ? oneLine.substring(0, 40) + "..." : oneLine;
+    }
+
+    private static Object[] sample(String text, String... expected) {
+        Map<String, String> values = new LinkedHashMap<>();
+        for (int i = 0; i + 1 < expected.length; i += 2) {
+            values.put(expected[i], expected[i + 1]);
+        }
+        return new Object[] { text, values };
+    }
+}
@@ -0,0 +1,138 @@
+package org.example.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.example.util.JdyPayloadWriter;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 简道云请求体序列化分配量对比
+ * 按订单的数据形态（约110个主表字段、3个子表）构造一批转换结果，分别用
+ * "每个字段新建包装 + 外层 HashMap + ObjectMapper 序列化"（改造前的做法）和
+ * "只保存原始值 + JdyPayloadWriter 写出时包装"生成新建请求，输出每批的内存分配量和耗时。
+ * 同时校验两种方式生成的 JSON 内容一致。
+ *
+ * 用法: JdyPayloadBenchmark [每批记录数=100] [批次数=200]
+ */
+public class JdyPayloadBenchmark {
+    private static final ObjectMapper mapper = new ObjectMapper();
+
+    private static final int MAIN_FIELDS = 110;
+    private static final int SUB_TABLES = 3;
+    private static final int SUB_ROWS = 5;
+    private static final int SUB_FIELDS = 8;
+
+    public static void main(String[] args) throws Exception {
+        int records = args.length > 0 ? Integer.parseInt(args[0]) : 100;
+        int batches = args.length > 1 ? Integer.parseInt(args[1]) : 200;
+
+        System.out.println("========================================");
+        System.out.println("请求体序列化分配量对比: " + records + " 条/批, " + batches + " 批");
+        System.out.println("========================================");
+
+        byte[] before = buildBefore(records);
+        byte[] after = buildAfter(records);
+        if (!mapper.readTree(before).equals(mapper.readTree(after))) {
+            throw new IllegalStateException("两种方式生成的请求体不一致");
+        }
+        System.out.println("请求体大小: " + after.length + " 字节/批");
+
+        // 预热，排除类加载和即时编译的影响
+        for (int i = 0; i < 50; i++) {
+            buildBefore(records);
+            buildAfter(records);
+        }
+
+        long[] beforeCost = measure(true, records, batches);
+        long[] afterCost = measure(false, records, batches);
+
+        System.out.println("----------------------------------------");
+        System.out.printf("改造前: %.1f KB/批, %.2f ms/批%n", beforeCost[0] / 1024.0 / batches, beforeCost[1] / 1e6 / batches);
+        System.out.printf("改造后: %.1f KB/批, %.2f ms/批%n", afterCost[0] / 1024.0 / batches, afterCost[1] / 1e6 / batches);
+        if (afterCost[0] > 0) {
+            System.out.printf("分配量减少: %.1f%%%n", 100.0 * (beforeCost[0] - afterCost[0]) / beforeCost[0]);
+        }
+    }
+
+    /**
+     * @return {分配字节数, 耗时纳秒}，当前JVM不支持线程分配统计时分配字节数为-1
+     */
+    private static long[] measure(boolean before, int records, int batches) throws Exception {
+        long startBytes = allocatedBytes();
+        long start = System.nanoTime();
+        int sink = 0;
+        for (int i = 0; i < batches; i++) {
+            sink += (before ? buildBefore(records) : buildAfter(records)).length;
+        }
+        long elapsed = System.nanoTime() - start;
+        long bytes = startBytes < 0 ? -1 : allocatedBytes() - startBytes;
+        if (sink == Integer.MIN_VALUE) {
+            System.out.println(sink);
+        }
+        return new long[]{bytes, elapsed};
+    }
+
+    /**
+     * 改造前的做法：每个字段新建包装，请求体先组装为 HashMap 再由 ObjectMapper 序列化为字符串
+     */
+    private static byte[] buildBefore(int records) throws Exception {
+        List<Map<String, Object>> dataList = new ArrayList<>(records);
+        for (int i = 0; i < records; i++) {
+            dataList.add(buildRecord(i, true));
+        }
+        Map<String, Object> payload = new HashMap<>();
+        payload.put("app_id", "app");
+        payload.put("entry_id", "entry");
+        payload.put("data_list", dataList);
+        payload.put("is_start_workflow", true);
+        return mapper.writeValueAsString(payload).getBytes("UTF-8");
+    }
+
+    private static byte[] buildAfter(int records) throws Exception {
+        List<Map<String, Object>> dataList = new ArrayList<>(records);
+        for (int i = 0; i < records; i++) {
+            dataList.add(buildRecord(i, false));
+        }
+        return JdyPayloadWriter.createBody("app", "entry", dataList, true);
+    }
+
+    /**
+     * 构造一条转换结果，约三分之一字段为空值
+     */
+    private static Map<String, Object> buildRecord(int index, boolean before) {
+        Map<String, Object> converted = new HashMap<>();
+        for (int f = 0; f < MAIN_FIELDS; f++) {
+            String value = f % 3 == 0 ? "" : "值" + index + "-" + f;
+            converted.put("_widget_" + (1700000000000L + f), wrap(value, before));
+        }
+        for (int t = 0; t < SUB_TABLES; t++) {
+            List<Map<String, Object>> rows = new ArrayList<>(SUB_ROWS);
+            for (int r = 0; r < SUB_ROWS; r++) {
+                Map<String, Object> row = new HashMap<>();
+                for (int f = 0; f < SUB_FIELDS; f++) {
+                    row.put("_widget_" + (1800000000000L + t * 100 + f), wrap(f % 2 == 0 ? "" : "R" + r, before));
+                }
+                rows.add(row);
+            }
+            converted.put("_widget_" + (1900000000000L + t), wrap(rows, before));
+        }
+        return converted;
+    }
+
+    private static Object wrap(Object value, boolean before) {
+        return before ? Collections.singletonMap("value", value) : value;
+    }
+
+    private static long allocatedBytes() {
+        java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (bean instanceof com.sun.management.ThreadMXBean) {
+            return ((com.sun.management.ThreadMXBean) bean).getThreadAllocatedBytes(Thread.currentThread().getId());
+        }
+        return -1;
+    }
+}
@@ -30,6 +30,7 @@ public class ProductInfoExtractionTest {
         test.testIntelligentProductInfoExtraction();
         test.testMultipleModelRecognition();
         test.testS60InDifferentFormats();
+        test.testExplicitLabelOverModelDefault();
         
         System.out.println("\n========================================");
         System.out.println("所有测试完成");
@@ -175,6 +176,21 @@ public class ProductInfoExtractionTest {
         }
     }
 
+    public void testExplicitLabelOverModelDefault() {
+        System.out.println("\n【测试5】文本明确写出的卷标优先于型号默认卷标");
+        String testText = "1、FOR Lexar S60 2、烧录信息要求：卷标请烧录EVM Nano+ （注意带+号），其他信息依照我司默认即可";
+
+        String volumeLabel = transformService.extractVolumeLabelIntelligently(testText);
+        System.out.println("原始文本: " + testText);
+        System.out.println("提取的卷标: " + volumeLabel);
+
+        if ("EVM Nano+".equals(volumeLabel)) {
+            System.out.println("✓ 使用文本中的卷标，未被S60的默认卷标覆盖");
+        } else {
+            System.out.println("✗ 卷标提取错误，期望EVM Nano+，实际: " + volumeLabel);
+        }
+    }
+
     public void testS60InDifferentFormats() {
         System.out.println("\n【测试4】S60在不同文本格式中的识别");
         String[] testTexts = {
@@ -275,10 +291,8 @@ public class ProductInfoExtractionTest {
                 
                 // 检查VID字段
                 Object vidObj = converted.get("_widget_1750382988528");
-                if (vidObj != null && vidObj instanceof Map) {
-                    @SuppressWarnings("unchecked")
-                    Map<String, Object> vidMap = (Map<String, Object>) vidObj;
-                    String vid = (String) vidMap.get("value");
+                if (vidObj instanceof String) {
+                    String vid = (String) vidObj;
                     System.out.println("  VID: " + vid);
                     if (!"21C4".equals(vid)) {
                         System.out.println("  ✗ VID错误，期望21C4，实际: " + vid);
@@ -288,10 +302,8 @@ public class ProductInfoExtractionTest {
                 
                 // 检查PID字段
                 Object pidObj = converted.get("_widget_1750382988529");
-                if (pidObj != null && pidObj instanceof Map) {
-                    @SuppressWarnings("unchecked")
-                    Map<String, Object> pidMap = (Map<String, Object>) pidObj;
-                    String pid = (String) pidMap.get("value");
+                if (pidObj instanceof String) {
+                    String pid = (String) pidObj;
                     System.out.println("  PID: " + pid);
                     if (!"0CC7".equals(pid)) {
                         System.out.println("  ✗ PID错误，期望0CC7，实际: " + pid);
@@ -301,10 +313,8 @@ public class ProductInfoExtractionTest {
                 
                 // 检查厂商名
                 Object vendorObj = converted.get("_widget_1750382988524");
-                if (vendorObj != null && vendorObj instanceof Map) {
-                    @SuppressWarnings("unchecked")
-                    Map<String, Object> vendorMap = (Map<String, Object>) vendorObj;
-                    String vendor = (String) vendorMap.get("value");
+                if (vendorObj instanceof String) {
+                    String vendor = (String) vendorObj;
                     System.out.println("  厂商名: " + vendor);
                     if (!"Lexar".equals(vendor)) {
                         System.out.println("  ✗ 厂商名错误，期望Lexar，实际: " + vendor);
@@ -314,10 +324,8 @@ public class ProductInfoExtractionTest {
                 
                 // 检查产品名
                 Object productObj = converted.get("_widget_1750382988526");
-                if (productObj != null && productObj instanceof Map) {
-                    @SuppressWarnings("unchecked")
-                    Map<String, Object> productMap = (Map<String, Object>) productObj;
-                    String product = (String) productMap.get("value");
+                if (productObj instanceof String) {
+                    String product = (String) productObj;
                     System.out.println("  产品名: " + product);
                     if (!"USB Flash Drive".equals(product)) {
                         System.out.println("  ✗ 产品名错误，期望USB Flash Drive，实际: " + product);
@@ -327,10 +335,8 @@ public class ProductInfoExtractionTest {
                 
                 // 检查文件系统
                 Object fsObj = converted.get("_widget_1750389457663");
-                if (fsObj != null && fsObj instanceof Map) {
-                    @SuppressWarnings("unchecked")
-                    Map<String, Object> fsMap = (Map<String, Object>) fsObj;
-                    String fileSystem = (String) fsMap.get("value");
+                if (fsObj instanceof String) {
+                    String fileSystem = (String) fsObj;
                     System.out.println("  文件系统: " + fileSystem);
                     if (!"FAT32".equals(fileSystem)) {
                         System.out.println("  ✗ 文件系统错误，期望FAT32，实际: " + fileSystem);
@@ -340,10 +346,8 @@ public class ProductInfoExtractionTest {
                 
                 // 检查卷标
                 Object volumeObj = converted.get("_widget_1750382988523");
-                if (volumeObj != null && volumeObj instanceof Map) {
-                    @SuppressWarnings("unchecked")
-                    Map<String, Object> volumeMap = (Map<String, Object>) volumeObj;
-                    String volumeLabel = (String) volumeMap.get("value");
+                if (volumeObj instanceof String) {
+                    String volumeLabel = (String) volumeObj;
                     System.out.println("  卷标: " + volumeLabel);
                     if (!"Lexar".equals(volumeLabel)) {
                         System.out.println("  ✗ 卷标错误，期望Lexar，实际: " + volumeLabel);
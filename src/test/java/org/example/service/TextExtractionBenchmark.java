@@ -0,0 +1,128 @@
+package org.example.service;
+
+import org.example.config.ExtractionRules;
+import org.example.util.ExtractionRuleSet;
+
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * 文本提取耗时对比
+ * 对同一批生产指示文本，分别用"每条记录重新编译正则"（改造前的做法）和提取规则集中预编译的正则
+ * 执行卷标、针对性卷标、VID/PID/厂商名/产品名/文件格式提取，输出每条记录的平均耗时。
+ * 同时校验两种方式的卷标提取结果一致。
+ *
+ * 用法: TextExtractionBenchmark [每轮记录数=20000] [轮次=5]
+ */
+public class TextExtractionBenchmark {
+
+    private static final String[] SAMPLES = {
+            "1、FOR Lexar S60 2、文件参考：U-00173 Lexar品牌USB产品生产参数清单 3、包装文件参考：迈仕渡UDP模块产品工业包装规范 " +
+                    "4、主机ZJCL003X0132，返工测试，全匹 5、订单需求3k#按雷克沙生产清单执行即可，参考文件U-00173 " +
+                    "Lexar品牌USB产品生产参数清单#For V40/S60/TT2 6. 卷标：小绿魔+ 7. VID：3535 8. PID：764 " +
+                    "9. 厂商名：aigo 10. 产品名：C2（不支持中文命名） 11. 文件系统：FAT32",
+            "第三批交期需求9/231. 卷标烧录：EVM EnX , 其他信息依照我司默认即可。丝印：UN410003A + 彩卡：UN504001A；" +
+                    "彩盒：CL120001A；背面镭雕-MTB124001A；客制箱唛贴纸 XM20001；不干胶贴纸 BG30002A",
+            "2. 烧录信息要求：卷标请烧录EVM Nano+ （注意带+号），其他信息依照我司默认即可。VID/PID:21C4/0CD1 " +
+                    "Inquiry -Vendor:Lexar Inquiryproduct:USB Flash Drive Volume name：Lexar R/W File system:exFAT",
+            "1.产品按标准流程生产 2.外箱按客户要求贴标 3.出货前抽检，本单无烧录及印刷要求"
+    };
+
+    public static void main(String[] args) {
+        int records = args.length > 0 ? Integer.parseInt(args[0]) : 20000;
+        int rounds = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+
+        DataTransformService service = DataTransformService.getInstance();
+        ExtractionRuleSet rules = ExtractionRules.getInstance().current();
+
+        System.out.println("========================================");
+        System.out.println("文本提取耗时对比: " + records + " 条/轮, " + rounds + " 轮");
+        System.out.println("========================================");
+
+        for (String sample : SAMPLES) {
+            check(recompiled(sample, rules.getVolumeLabel()), service.extractVolumeLabel(sample), "卷标");
+            check(recompiled(sample, rules.getVolumeLabelTargeted()),
+                    service.extractVolumeLabelTargeted(sample), "针对性卷标");
+        }
+
+        // 预热，排除类加载和即时编译的影响
+        runRecompiled(rules, records);
+        runPrecompiled(service, records);
+
+        long beforeNanos = 0;
+        long afterNanos = 0;
+        for (int i = 1; i <= rounds; i++) {
+            long before = runRecompiled(rules, records);
+            long after = runPrecompiled(service, records);
+            beforeNanos += before;
+            afterNanos += after;
+            System.out.printf("第%d轮: 每次编译 %.1f ms, 预编译 %.1f ms%n", i, before / 1e6, after / 1e6);
+        }
+
+        System.out.println("----------------------------------------");
+        System.out.printf("每次编译: %.2f µs/条%n", beforeNanos / 1e3 / records / rounds);
+        System.out.printf("预编译:   %.2f µs/条%n", afterNanos / 1e3 / records / rounds);
+        System.out.printf("加速比: %.2fx%n", (double) beforeNanos / afterNanos);
+    }
+
+    private static long runRecompiled(ExtractionRuleSet rules, int records) {
+        long start = System.nanoTime();
+        int sink = 0;
+        for (int i = 0; i < records; i++) {
+            String text = SAMPLES[i % SAMPLES.length];
+            sink += recompiled(text, rules.getVolumeLabel()).length();
+            sink += recompiled(text, rules.getVolumeLabelTargeted()).length();
+            for (ExtractionRuleSet.FieldRule rule : rules.getProductInfo()) {
+                sink += recompiled(text, rule).length();
+            }
+        }
+        long elapsed = System.nanoTime() - start;
+        consume(sink);
+        return elapsed;
+    }
+
+    private static long runPrecompiled(DataTransformService service, int records) {
+        long start = System.nanoTime();
+        int sink = 0;
+        for (int i = 0; i < records; i++) {
+            String text = SAMPLES[i % SAMPLES.length];
+            sink += service.extractVolumeLabel(text).length();
+            sink += service.extractVolumeLabelTargeted(text).length();
+            sink += service.extractProductInfo(text).size();
+        }
+        long elapsed = System.nanoTime() - start;
+        consume(sink);
+        return elapsed;
+    }
+
+    /**
+     * 改造前的做法：每次调用都重新编译提取正则和清理正则
+     */
+    private static String recompiled(String text, ExtractionRuleSet.FieldRule rule) {
+        for (Pattern compiled : rule.getPatterns()) {
+            Matcher matcher = Pattern.compile(compiled.pattern(), compiled.flags()).matcher(text);
+            if (matcher.find()) {
+                String result = matcher.group(1).trim();
+                for (Pattern cleanup : rule.getCleanup()) {
+                    result = result.replaceAll(cleanup.pattern(), "").trim();
+                }
+                if (!result.isEmpty()) {
+                    return result;
+                }
+            }
+        }
+        return "";
+    }
+
+    private static void check(String expected, String actual, String name) {
+        if (!expected.equals(actual)) {
+            throw new IllegalStateException(name + "提取结果不一致: 期望 [" + expected + "], 实际 [" + actual + "]");
+        }
+    }
+
+    private static void consume(int sink) {
+        if (sink == Integer.MIN_VALUE) {
+            System.out.println(sink);
+        }
+    }
+}